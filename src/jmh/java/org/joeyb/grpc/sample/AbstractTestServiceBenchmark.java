@@ -0,0 +1,64 @@
+package org.joeyb.grpc.sample;
+
+import com.google.common.base.Strings;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared state for the {@link TestServiceGrpc} benchmarks. Every benchmark is measured for both throughput and
+ * sampled latency, which gives the percentile distribution in the JSON report.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public abstract class AbstractTestServiceBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    public int messageSize;
+
+    @Param
+    public BenchmarkTransport transport;
+
+    protected TestServiceGrpc.TestServiceStub asyncStub;
+    protected TestServiceGrpc.TestServiceBlockingStub blockingStub;
+    protected TestRequest request;
+
+    private BenchmarkEndpoint endpoint;
+
+    /**
+     * Starts the server for the selected transport and connects the stubs to it.
+     */
+    @Setup
+    public void setUpEndpoint() throws Exception {
+        endpoint = transport.start(createService());
+
+        asyncStub = TestServiceGrpc.newStub(endpoint.channel());
+        blockingStub = TestServiceGrpc.newBlockingStub(endpoint.channel());
+        request = TestRequest.newBuilder().setMessage(Strings.repeat("x", messageSize)).build();
+    }
+
+    @TearDown
+    public void tearDownEndpoint() throws InterruptedException {
+        endpoint.close();
+    }
+
+    /**
+     * Returns the service instance that the benchmark server hosts.
+     */
+    protected abstract TestServiceImpl createService();
+}
@@ -0,0 +1,196 @@
+package org.joeyb.grpc.sample;
+
+import com.google.common.base.Strings;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares buffer allocator settings on {@code BiDirectionalStreaming} calls over a plaintext loopback connection, with
+ * the same allocator on the server and the client. Besides throughput, the {@code gcMillis} counter is the time that
+ * the JVM spent collecting garbage, summed over the measurement iterations. The resident memory of the process, which
+ * includes the direct memory that the allocators hold on to, is printed at the end of each trial on Linux.
+ *
+ * <p>{@code pooled} is Netty's default, {@code pooledUncached} turns off the thread-local caches so that every
+ * allocation goes to an arena, and {@code unpooled} allocates and frees every buffer on its own.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class AllocatorBenchmark {
+
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    @Param({"pooled", "pooledUncached", "unpooled"})
+    public String allocator;
+
+    @Param({"16384"})
+    public int messageSize;
+
+    @Param({"100"})
+    public int streamLength;
+
+    private TestServiceGrpc.TestServiceStub asyncStub;
+    private ManagedChannel channel;
+    private TestRequest request;
+    private Server server;
+
+    /**
+     * Starts the server and connects to it, each with an allocator of the selected settings.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        server = new ServerTransportSettings(0, 0, 0, 0, 0, newAllocator())
+                .configure(NettyServerBuilder.forPort(0), null)
+                .addService(new TestServiceImpl(streamLength))
+                .build()
+                .start();
+        channel = new ClientTransportSettings(0, 0, newAllocator())
+                .configure(NettyChannelBuilder.forAddress("localhost", server.getPort()))
+                .negotiationType(NegotiationType.PLAINTEXT)
+                .build();
+        asyncStub = TestServiceGrpc.newStub(channel);
+        request = TestRequest.newBuilder().setMessage(Strings.repeat("x", messageSize)).build();
+    }
+
+    /**
+     * Prints the resident memory and shuts everything down.
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        long residentBytes = residentBytes();
+
+        if (residentBytes > 0) {
+            System.out.printf("Resident memory: %d MiB%n", residentBytes >> 20);
+        }
+
+        channel.shutdownNow();
+        server.shutdownNow();
+
+        channel.awaitTermination(5, TimeUnit.SECONDS);
+        server.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Measures a stream of {@code streamLength} requests that are sent before any response is awaited.
+     */
+    @Benchmark
+    public int biDirectionalStreaming(GcCounters counters) throws InterruptedException {
+        CompletionObserver responseObserver = new CompletionObserver(false);
+        StreamObserver<TestRequest> requestObserver = asyncStub.biDirectionalStreaming(responseObserver);
+
+        for (int i = 0; i < streamLength; i++) {
+            requestObserver.onNext(request);
+        }
+
+        requestObserver.onCompleted();
+
+        int responseCount = responseObserver.await();
+
+        counters.sample();
+
+        return responseCount;
+    }
+
+    private ByteBufAllocator newAllocator() {
+        switch (allocator) {
+            case "pooled":
+                return AllocatorSettings.defaults(AllocatorType.POOLED).newAllocator();
+            case "pooledUncached":
+                return new AllocatorSettings(AllocatorType.POOLED,
+                                             PooledByteBufAllocator.defaultNumHeapArena(),
+                                             PooledByteBufAllocator.defaultNumDirectArena(),
+                                             PooledByteBufAllocator.defaultPageSize(),
+                                             PooledByteBufAllocator.defaultMaxOrder(),
+                                             0,
+                                             0,
+                                             0).newAllocator();
+            case "unpooled":
+                return AllocatorSettings.defaults(AllocatorType.UNPOOLED).newAllocator();
+            default:
+                throw new IllegalArgumentException("Unknown allocator " + allocator);
+        }
+    }
+
+    private static long residentBytes() {
+        try {
+            for (String line : Files.readAllLines(PROC_STATUS, StandardCharsets.US_ASCII)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException e) {
+            // Not Linux.
+        }
+
+        return 0;
+    }
+
+    /**
+     * GC time reported next to the {@link #biDirectionalStreaming(GcCounters)} timings.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class GcCounters {
+
+        public long gcMillis;
+
+        private long iterationStartGcMillis;
+
+        /**
+         * Starts counting the GC time of a new iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            iterationStartGcMillis = totalGcMillis();
+            gcMillis = 0;
+        }
+
+        void sample() {
+            gcMillis = totalGcMillis() - iterationStartGcMillis;
+        }
+
+        private static long totalGcMillis() {
+            long millis = 0;
+
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                millis += Math.max(0, collector.getCollectionTime());
+            }
+
+            return millis;
+        }
+    }
+}
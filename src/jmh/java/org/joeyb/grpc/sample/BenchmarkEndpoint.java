@@ -0,0 +1,37 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A running benchmark server paired with a channel connected to it.
+ */
+final class BenchmarkEndpoint implements AutoCloseable {
+
+    private final ManagedChannel channel;
+    private final Server server;
+
+    BenchmarkEndpoint(Server server, ManagedChannel channel) {
+        this.channel = channel;
+        this.server = server;
+    }
+
+    ManagedChannel channel() {
+        return channel;
+    }
+
+    Server server() {
+        return server;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        channel.shutdownNow();
+        server.shutdownNow();
+
+        channel.awaitTermination(5, TimeUnit.SECONDS);
+        server.awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
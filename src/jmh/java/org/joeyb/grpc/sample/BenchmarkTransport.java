@@ -0,0 +1,88 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.BindableService;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+
+import java.util.UUID;
+
+/**
+ * The transports that every {@link TestServiceGrpc} benchmark is run against.
+ */
+public enum BenchmarkTransport {
+
+    /**
+     * The in-process transport, configured the same way as {@code GrpcServerRule}.
+     */
+    IN_PROCESS {
+        @Override
+        BenchmarkEndpoint start(BindableService service) throws Exception {
+            String serverName = UUID.randomUUID().toString();
+
+            Server server = InProcessServerBuilder.forName(serverName)
+                    .directExecutor()
+                    .addService(service)
+                    .build()
+                    .start();
+
+            ManagedChannel channel = InProcessChannelBuilder.forName(serverName)
+                    .directExecutor()
+                    .build();
+
+            return new BenchmarkEndpoint(server, channel);
+        }
+    },
+
+    /**
+     * Netty over a plaintext loopback connection.
+     */
+    NETTY_PLAINTEXT {
+        @Override
+        BenchmarkEndpoint start(BindableService service) throws Exception {
+            Server server = NettyServerBuilder.forPort(0)
+                    .addService(service)
+                    .build()
+                    .start();
+
+            ManagedChannel channel = NettyChannelBuilder.forAddress("localhost", server.getPort())
+                    .negotiationType(NegotiationType.PLAINTEXT)
+                    .build();
+
+            return new BenchmarkEndpoint(server, channel);
+        }
+    },
+
+    /**
+     * Netty over a loopback connection secured with mutual TLS using the bundled {@code grpc-certs}.
+     */
+    NETTY_TLS {
+        @Override
+        BenchmarkEndpoint start(BindableService service) throws Exception {
+            Server server = NettyServerBuilder.forPort(0)
+                    .sslContext(ServerApplication.newSslContextBuilder().build())
+                    .addService(service)
+                    .build()
+                    .start();
+
+            ManagedChannel channel = NettyChannelBuilder.forAddress("localhost", server.getPort())
+                    .negotiationType(NegotiationType.TLS)
+                    .overrideAuthority(ClientApplication.TEST_SERVER_HOST)
+                    .sslContext(ClientApplication.newSslContextBuilder().build())
+                    .build();
+
+            return new BenchmarkEndpoint(server, channel);
+        }
+    };
+
+    /**
+     * Starts a server hosting the given service and returns it along with a channel connected to it.
+     *
+     * @param service the service to host
+     */
+    abstract BenchmarkEndpoint start(BindableService service) throws Exception;
+}
@@ -0,0 +1,59 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.stub.StreamObserver;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link StreamObserver} that lets a benchmark thread block until the call it observes has finished.
+ */
+final class CompletionObserver implements StreamObserver<TestResponse> {
+
+    private final CountDownLatch completionLatch = new CountDownLatch(1);
+    private final boolean expectError;
+
+    private volatile Throwable error;
+    private volatile int responseCount;
+
+    CompletionObserver(boolean expectError) {
+        this.expectError = expectError;
+    }
+
+    @Override
+    public void onNext(TestResponse value) {
+        responseCount++;
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        error = t;
+        completionLatch.countDown();
+    }
+
+    @Override
+    public void onCompleted() {
+        completionLatch.countDown();
+    }
+
+    /**
+     * Waits for the call to finish and returns the number of responses that were received.
+     *
+     * @throws IllegalStateException if the call does not finish in time or ends in an unexpected way
+     */
+    int await() throws InterruptedException {
+        if (!completionLatch.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Call did not complete on time.");
+        }
+
+        if (expectError && error == null) {
+            throw new IllegalStateException("Call completed but was expected to fail.");
+        }
+
+        if (!expectError && error != null) {
+            throw new IllegalStateException("Call failed unexpectedly.", error);
+        }
+
+        return responseCount;
+    }
+}
@@ -0,0 +1,178 @@
+package org.joeyb.grpc.sample;
+
+import com.google.common.base.Strings;
+
+import io.grpc.Codec;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CPU cost of compressing and decompressing {@link TestRequest}s of a range of sizes and contents, next
+ * to the number of bytes that compression saves. The {@code wireBytes} and {@code compressedBytes} counters of the
+ * {@code compress} benchmark are reported as rates, so their ratio is the compression ratio and their difference per
+ * operation is the number of bytes saved per message. Use these results to pick {@code --compression-threshold}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class CompressionBenchmark {
+
+    @Param({"GZIP"})
+    public MessageCompression compression;
+
+    @Param({"16", "64", "256", "1024", "4096", "16384", "65536"})
+    public int payloadSize;
+
+    @Param
+    public PayloadContent content;
+
+    private Codec codec;
+    private byte[] compressedRequest;
+    private ByteArrayOutputStream output;
+    private TestRequest request;
+    private byte[] serializedRequest;
+
+    /**
+     * Builds the request and its compressed form.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        codec = compression.codec();
+        request = TestRequest.newBuilder().setMessage(content.create(payloadSize)).build();
+        serializedRequest = request.toByteArray();
+        output = new ByteArrayOutputStream(serializedRequest.length + 64);
+        compressedRequest = compressInto(request, output);
+    }
+
+    /**
+     * Measures compressing one request, as the transport does before framing it.
+     */
+    @Benchmark
+    public int compress(ByteCounters counters) throws IOException {
+        int compressedSize = compressInto(request, output).length;
+
+        counters.wireBytes += request.getSerializedSize();
+        counters.compressedBytes += compressedSize;
+
+        return compressedSize;
+    }
+
+    /**
+     * Measures decompressing and parsing one request, as the receiving side does.
+     */
+    @Benchmark
+    public TestRequest decompress() throws IOException {
+        return TestRequest.parseFrom(codec.decompress(new ByteArrayInputStream(compressedRequest)));
+    }
+
+    /**
+     * Measures parsing one uncompressed request, the baseline for {@link #decompress()}.
+     */
+    @Benchmark
+    public TestRequest parse() throws IOException {
+        return TestRequest.parseFrom(new ByteArrayInputStream(serializedRequest));
+    }
+
+    private byte[] compressInto(TestRequest value, ByteArrayOutputStream target) throws IOException {
+        target.reset();
+
+        try (OutputStream compressed = codec.compress(target)) {
+            value.writeTo(compressed);
+        }
+
+        return target.toByteArray();
+    }
+
+    /**
+     * The kinds of message content, from highly to barely compressible.
+     */
+    public enum PayloadContent {
+
+        /**
+         * A single repeated character, like the requests of the other benchmarks.
+         */
+        REPEATED {
+            @Override
+            String create(int size) {
+                return Strings.repeat("x", size);
+            }
+        },
+
+        /**
+         * Words drawn from a small vocabulary, roughly like log lines or JSON keys.
+         */
+        TEXT {
+            @Override
+            String create(int size) {
+                String[] words = {"request", "response", "message", "status", "server", "client", "payload", "id"};
+                Random random = new Random(size);
+                StringBuilder builder = new StringBuilder(size + 16);
+
+                while (builder.length() < size) {
+                    builder.append(words[random.nextInt(words.length)]).append(' ').append(random.nextInt(1000));
+                }
+
+                return builder.substring(0, size);
+            }
+        },
+
+        /**
+         * Random alphanumeric characters, like tokens or already compressed data encoded as text.
+         */
+        RANDOM {
+            @Override
+            String create(int size) {
+                String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+                Random random = new Random(size);
+                StringBuilder builder = new StringBuilder(size);
+
+                for (int i = 0; i < size; i++) {
+                    builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+
+                return builder.toString();
+            }
+        };
+
+        abstract String create(int size);
+    }
+
+    /**
+     * Byte counts reported next to the {@link #compress(ByteCounters)} timings.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class ByteCounters {
+
+        public long compressedBytes;
+        public long wireBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            compressedBytes = 0;
+            wireBytes = 0;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.joeyb.grpc.sample;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A loopback TCP relay that sits between a client and a server and counts what the server sends. Over loopback with
+ * {@code TCP_NODELAY} each socket read usually returns the bytes of one write by the server, so the number of reads
+ * approximates the number of write syscalls that the server made. When the connection is TLS, the relay also counts
+ * the records that the server sent by following the 5-byte record headers.
+ */
+final class CountingRelay implements AutoCloseable {
+
+    private static final int TLS_RECORD_HEADER_BYTES = 5;
+
+    private final boolean countTlsRecords;
+    private final AtomicLong serverReads = new AtomicLong();
+    private final ServerSocket serverSocket;
+    private final int targetPort;
+    private final AtomicLong tlsRecords = new AtomicLong();
+
+    /**
+     * Starts relaying connections to the given loopback port.
+     *
+     * @param targetPort the port of the server
+     * @param countTlsRecords whether the server's bytes are TLS records that should be counted
+     */
+    CountingRelay(int targetPort, boolean countTlsRecords) throws IOException {
+        this.countTlsRecords = countTlsRecords;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.targetPort = targetPort;
+
+        startDaemon("relay-accept", this::acceptConnections);
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    long serverReads() {
+        return serverReads.get();
+    }
+
+    long tlsRecords() {
+        return tlsRecords.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void acceptConnections() {
+        try {
+            while (true) {
+                Socket client = serverSocket.accept();
+                Socket server = new Socket(InetAddress.getLoopbackAddress(), targetPort);
+
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+
+                startDaemon("relay-upstream", () -> relay(client, server, false));
+                startDaemon("relay-downstream", () -> relay(server, client, true));
+            }
+        } catch (IOException e) {
+            // The relay was closed.
+        }
+    }
+
+    private void relay(Socket from, Socket to, boolean count) {
+        byte[] buffer = new byte[64 * 1024];
+        byte[] recordHeader = new byte[TLS_RECORD_HEADER_BYTES];
+        int recordHeaderBytes = 0;
+        int recordRemainingBytes = 0;
+
+        try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+            int read;
+
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+
+                if (!count) {
+                    continue;
+                }
+
+                serverReads.incrementAndGet();
+
+                if (!countTlsRecords) {
+                    continue;
+                }
+
+                int i = 0;
+
+                while (i < read) {
+                    if (recordRemainingBytes > 0) {
+                        int skipped = Math.min(recordRemainingBytes, read - i);
+
+                        i += skipped;
+                        recordRemainingBytes -= skipped;
+                    } else {
+                        recordHeader[recordHeaderBytes++] = buffer[i++];
+
+                        // The last two header bytes are the length of the record's body.
+                        if (recordHeaderBytes == TLS_RECORD_HEADER_BYTES) {
+                            tlsRecords.incrementAndGet();
+                            recordHeaderBytes = 0;
+                            recordRemainingBytes = (recordHeader[3] & 0xff) << 8 | recordHeader[4] & 0xff;
+                        }
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            // One side of the connection was closed.
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            closeQuietly(from);
+            closeQuietly(to);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to do.
+        }
+    }
+
+    private static void startDaemon(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,175 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.stub.StreamObserver;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures {@code DownloadFile} and {@code UploadFile} transfers of a whole file. The {@code fileBytes} counter is
+ * reported as a rate, so it is the transfer throughput in bytes per second. Run with {@code -prof gc} to see how much
+ * heap each transfer allocates, and pass a larger {@code -p fileSize=...} to measure multi-gigabyte transfers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 5)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+public class FileTransferBenchmark {
+
+    private static final String FILE_NAME = "transfer.bin";
+
+    @Param({"65536", "1048576"})
+    public int chunkSize;
+
+    @Param({"67108864"})
+    public long fileSize;
+
+    @Param({"NETTY_PLAINTEXT"})
+    public BenchmarkTransport transport;
+
+    private TestServiceGrpc.TestServiceStub asyncStub;
+    private TestServiceGrpc.TestServiceBlockingStub blockingStub;
+    private BenchmarkEndpoint endpoint;
+    private Path fileRoot;
+
+    /**
+     * Writes a file of random bytes to a new file root and starts a server that transfers files in that root.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        fileRoot = Files.createTempDirectory("file-transfer-benchmark");
+
+        writeRandomFile(fileRoot.resolve(FILE_NAME), fileSize);
+
+        endpoint = transport.start(TestServiceImpl.newBuilder().fileRoot(fileRoot).build());
+
+        asyncStub = TestServiceGrpc.newStub(endpoint.channel());
+        blockingStub = TestServiceGrpc.newBlockingStub(endpoint.channel());
+    }
+
+    /**
+     * Shuts the server down and deletes the file root.
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        endpoint.close();
+
+        try (Stream<Path> files = Files.list(fileRoot)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+
+        Files.delete(fileRoot);
+    }
+
+    /**
+     * Measures downloading the whole file.
+     */
+    @Benchmark
+    public long download(TransferCounters counters) {
+        Iterator<FileChunk> chunks = blockingStub.downloadFile(DownloadFileRequest.newBuilder()
+                .setFileName(FILE_NAME)
+                .setChunkSize(chunkSize)
+                .build());
+
+        long size = 0;
+
+        while (chunks.hasNext()) {
+            size += chunks.next().getData().size();
+        }
+
+        counters.fileBytes += size;
+
+        return size;
+    }
+
+    /**
+     * Measures uploading the whole file, which replaces the copy that the previous invocation uploaded.
+     */
+    @Benchmark
+    public long upload(TransferCounters counters) throws Exception {
+        CompletableFuture<UploadFileResponse> response = new CompletableFuture<>();
+
+        MappedFileChunks chunks = new MappedFileChunks(FileChannel.open(fileRoot.resolve(FILE_NAME)), chunkSize);
+
+        asyncStub.uploadFile(new FileUploadWriter(chunks, "uploaded.bin", new StreamObserver<UploadFileResponse>() {
+            @Override
+            public void onNext(UploadFileResponse value) {
+                response.complete(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                response.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        }));
+
+        long size = response.get(5, TimeUnit.MINUTES).getSize();
+
+        counters.fileBytes += size;
+
+        return size;
+    }
+
+    private static void writeRandomFile(Path file, long size) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(1024 * 1024);
+        Random random = new Random(size);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (long written = 0; written < size; ) {
+                random.nextBytes(block.array());
+                block.clear().limit((int) Math.min(block.capacity(), size - written));
+
+                while (block.hasRemaining()) {
+                    written += channel.write(block);
+                }
+            }
+        }
+    }
+
+    /**
+     * File bytes reported next to the transfer timings.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class TransferCounters {
+
+        public long fileBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            fileBytes = 0;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast a single {@code ServerStreaming} call can stream over a link with the given round trip time, for a
+ * range of HTTP/2 flow-control windows. A stream cannot have more than one window in flight per round trip, so the
+ * smaller windows top out at window divided by round trip time, while the larger ones are limited by the rest of the
+ * stack. The {@code bytes} counter is reported as a rate, i.e. the streaming throughput in bytes per second.
+ *
+ * <p>The link is a {@link LatencyRelay} that delays each direction by half the round trip time. Both sides use the
+ * same window, though the client's is the one that limits a server stream. 65535 bytes is the HTTP/2 default and
+ * 1048576 bytes is gRPC's.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+public class FlowControlWindowBenchmark {
+
+    @Param({"65535", "1048576", "4194304", "16777216"})
+    public int flowControlWindow;
+
+    @Param({"10"})
+    public long roundTripMillis;
+
+    @Param({"65536"})
+    public int responseSize;
+
+    @Param({"64"})
+    public int responseCount;
+
+    private TestServiceGrpc.TestServiceStub asyncStub;
+    private ManagedChannel channel;
+    private LatencyRelay relay;
+    private TestRequest request;
+    private Server server;
+
+    /**
+     * Starts the server behind a relay and connects to it with the window under test on both sides.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        server = new ServerTransportSettings(flowControlWindow, 0, 0, 0, 0)
+                .configure(NettyServerBuilder.forPort(0), null)
+                .addService(new TestServiceImpl(responseCount))
+                .build()
+                .start();
+        relay = new LatencyRelay(server.getPort(), TimeUnit.MILLISECONDS.toNanos(roundTripMillis) / 2);
+
+        channel = new ClientTransportSettings(flowControlWindow, 0)
+                .configure(NettyChannelBuilder.forAddress(InetAddress.getLoopbackAddress().getHostAddress(),
+                                                          relay.port()))
+                .negotiationType(NegotiationType.PLAINTEXT)
+                .build();
+        asyncStub = TestServiceGrpc.newStub(channel);
+        request = TestRequest.newBuilder()
+                .setResponseCount(responseCount)
+                .setResponsePayloadSize(responseSize)
+                .build();
+    }
+
+    /**
+     * Shuts everything down.
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        channel.shutdownNow();
+        server.shutdownNow();
+        relay.close();
+
+        channel.awaitTermination(5, TimeUnit.SECONDS);
+        server.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Measures one server stream of {@code responseCount} responses with payloads of {@code responseSize} bytes.
+     */
+    @Benchmark
+    public int serverStreaming(StreamedBytes streamedBytes) throws InterruptedException {
+        CompletionObserver responseObserver = new CompletionObserver(false);
+
+        asyncStub.serverStreaming(request, responseObserver);
+
+        int responses = responseObserver.await();
+
+        streamedBytes.bytes += (long) responses * responseSize;
+
+        return responses;
+    }
+
+    /**
+     * Payload bytes reported next to the {@link #serverStreaming(StreamedBytes)} timings.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class StreamedBytes {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+}
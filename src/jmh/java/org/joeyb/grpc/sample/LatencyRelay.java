@@ -0,0 +1,151 @@
+package org.joeyb.grpc.sample;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A loopback TCP relay that delays everything it forwards by a fixed time in each direction, which turns loopback into
+ * a link with the round trip time of a real network but almost none of its bandwidth limits. Bytes are delayed rather
+ * than throttled, so whatever the sender has in flight arrives after one delay, the way it would on a long link.
+ */
+final class LatencyRelay implements AutoCloseable {
+
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final long delayNanos;
+    private final ServerSocket serverSocket;
+    private final int targetPort;
+
+    /**
+     * Starts relaying connections to the given loopback port.
+     *
+     * @param targetPort the port of the server
+     * @param delayNanos the delay of each direction, so half the round trip time
+     */
+    LatencyRelay(int targetPort, long delayNanos) throws IOException {
+        this.delayNanos = delayNanos;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.targetPort = targetPort;
+
+        startDaemon("relay-accept", this::acceptConnections);
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void acceptConnections() {
+        try {
+            while (true) {
+                Socket client = serverSocket.accept();
+                Socket server = new Socket(InetAddress.getLoopbackAddress(), targetPort);
+
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+
+                relay(client, server, "relay-upstream");
+                relay(server, client, "relay-downstream");
+            }
+        } catch (IOException e) {
+            // The relay was closed.
+        }
+    }
+
+    /**
+     * Relays one direction of a connection with a reader thread, which timestamps the chunks it reads, and a writer
+     * thread, which forwards each chunk once it is due.
+     */
+    private void relay(Socket from, Socket to, String name) {
+        BlockingQueue<DelayedChunk> chunks = new LinkedBlockingQueue<>();
+
+        startDaemon(name + "-reader", () -> read(from, chunks));
+        startDaemon(name + "-writer", () -> write(from, to, chunks));
+    }
+
+    // The writer closes the sockets, once it has forwarded everything that was read before the end of the stream.
+    private void read(Socket from, BlockingQueue<DelayedChunk> chunks) {
+        byte[] buffer = new byte[64 * 1024];
+
+        try {
+            InputStream in = from.getInputStream();
+            int read;
+
+            while ((read = in.read(buffer)) >= 0) {
+                chunks.add(new DelayedChunk(System.nanoTime() + delayNanos, Arrays.copyOf(buffer, read)));
+            }
+        } catch (SocketException e) {
+            // One side of the connection was closed.
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            chunks.add(new DelayedChunk(System.nanoTime() + delayNanos, END_OF_STREAM));
+        }
+    }
+
+    private static void write(Socket from, Socket to, BlockingQueue<DelayedChunk> chunks) {
+        try (OutputStream out = to.getOutputStream()) {
+            while (true) {
+                DelayedChunk chunk = chunks.take();
+                long remainingNanos;
+
+                while ((remainingNanos = chunk.dueNanos - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(remainingNanos);
+                }
+
+                if (chunk.bytes == END_OF_STREAM) {
+                    return;
+                }
+
+                out.write(chunk.bytes);
+            }
+        } catch (InterruptedException | SocketException e) {
+            // The relay was interrupted or one side of the connection was closed.
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            closeQuietly(from);
+            closeQuietly(to);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to do.
+        }
+    }
+
+    private static void startDaemon(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static final class DelayedChunk {
+
+        final byte[] bytes;
+        final long dueNanos;
+
+        DelayedChunk(long dueNanos, byte[] bytes) {
+            this.bytes = bytes;
+            this.dueNanos = dueNanos;
+        }
+    }
+}
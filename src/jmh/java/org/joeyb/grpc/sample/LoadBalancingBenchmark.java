@@ -0,0 +1,103 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the aggregate {@code Unary} throughput of one channel that balances its calls across several servers. Each
+ * server has its own connection, and so its own event loop on either side, which a single connection is limited to.
+ * On a box with enough cores, throughput should grow with the number of servers until the cores are used up. Run the
+ * same comparison across processes with several {@code ServerApplication} instances and the client's
+ * {@code --targets} option.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 5)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(16)
+@Warmup(iterations = 3, time = 5)
+public class LoadBalancingBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int servers;
+
+    @Param({"ROUND_ROBIN", "LEAST_REQUESTS"})
+    public LoadBalancing loadBalancing;
+
+    private final List<Server> serverList = new ArrayList<>();
+    private final TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+
+    private TestServiceGrpc.TestServiceBlockingStub blockingStub;
+    private ManagedChannel channel;
+
+    /**
+     * Starts the servers and a channel that balances across them.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+
+        for (int i = 0; i < servers; i++) {
+            Server server = NettyServerBuilder.forPort(0)
+                    .addService(new TestServiceImpl(1))
+                    .build()
+                    .start();
+
+            serverList.add(server);
+            addresses.add(new InetSocketAddress("localhost", server.getPort()));
+        }
+
+        StaticNameResolverFactory nameResolverFactory = new StaticNameResolverFactory(addresses);
+
+        channel = loadBalancing.configure(NettyChannelBuilder.forTarget(nameResolverFactory.target())
+                .nameResolverFactory(nameResolverFactory)
+                .negotiationType(NegotiationType.PLAINTEXT))
+                .build();
+
+        blockingStub = TestServiceGrpc.newBlockingStub(channel);
+    }
+
+    /**
+     * Shuts the channel and servers down.
+     */
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow();
+        serverList.forEach(Server::shutdownNow);
+
+        channel.awaitTermination(5, TimeUnit.SECONDS);
+
+        for (Server server : serverList) {
+            server.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Benchmark
+    public TestResponse unary() {
+        return blockingStub.unary(request);
+    }
+}
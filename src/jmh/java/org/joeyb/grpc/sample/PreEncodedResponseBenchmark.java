@@ -0,0 +1,88 @@
+package org.joeyb.grpc.sample;
+
+import com.google.common.base.Strings;
+
+import io.grpc.Drainable;
+import io.grpc.MethodDescriptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-message server work of the standard protobuf path with {@link PreEncodedResponses}: parsing a
+ * request off the wire, creating its response and draining the response into an output buffer. Run it with
+ * {@code -prof gc} to see the allocation rate of each path, e.g.
+ * {@code ./gradlew jmh -PjmhArgs="PreEncodedResponseBenchmark -prof gc"}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class PreEncodedResponseBenchmark {
+
+    private static final MethodDescriptor.Marshaller<TestRequest> PROTOBUF_REQUEST_MARSHALLER =
+            TestServiceGrpc.METHOD_UNARY.getRequestMarshaller();
+
+    private static final MethodDescriptor.Marshaller<TestResponse> PROTOBUF_RESPONSE_MARSHALLER =
+            TestServiceGrpc.METHOD_UNARY.getResponseMarshaller();
+
+    @Param({"16", "1024", "65536"})
+    public int messageSize;
+
+    private byte[] requestBytes;
+    private ByteArrayOutputStream output;
+
+    /**
+     * Encodes the request once and sizes the output buffer so that draining into it never allocates.
+     */
+    @Setup
+    public void setUp() {
+        requestBytes = TestRequest.newBuilder()
+                .setMessage(Strings.repeat("x", messageSize))
+                .build()
+                .toByteArray();
+
+        output = new ByteArrayOutputStream(2 * requestBytes.length + 64);
+    }
+
+    /**
+     * Measures the standard path, which decodes the message into a {@link String} and encodes the response from one.
+     */
+    @Benchmark
+    public int protobuf() throws IOException {
+        TestRequest request = PROTOBUF_REQUEST_MARSHALLER.parse(new ByteArrayInputStream(requestBytes));
+        return drain(PROTOBUF_RESPONSE_MARSHALLER.stream(TestServiceImpl.createResponse(request)));
+    }
+
+    /**
+     * Measures the pre-encoded path, which keeps the message as raw bytes from request to response.
+     */
+    @Benchmark
+    public int preEncoded() throws IOException {
+        TestRequest request = PreEncodedResponses.REQUEST_MARSHALLER.parse(new ByteArrayInputStream(requestBytes));
+        return drain(PreEncodedResponses.RESPONSE_MARSHALLER.stream(
+                PreEncodedResponses.encodeResponse(request.getMessageBytes())));
+    }
+
+    private int drain(InputStream response) throws IOException {
+        output.reset();
+        return ((Drainable) response).drainTo(output);
+    }
+}
@@ -0,0 +1,99 @@
+package org.joeyb.grpc.sample;
+
+import com.google.common.base.Strings;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the server threading models that {@link ServerApplication} can be configured with, over a plaintext
+ * loopback connection. Run with several JMH threads ({@code -t}) to see how each model behaves under concurrency.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class ServerThreadingBenchmark {
+
+    @Param({"DEFAULT", "DIRECT", "FORK_JOIN", "FIXED"})
+    public HandlerExecutor executor;
+
+    @Param({"NIO", "EPOLL"})
+    public NettyTransport transport;
+
+    private TestServiceGrpc.TestServiceStub asyncStub;
+    private TestServiceGrpc.TestServiceBlockingStub blockingStub;
+    private BenchmarkEndpoint endpoint;
+    private TestRequest request;
+    private ServerThreading threading;
+
+    /**
+     * Starts a server with the selected threading model and connects the stubs to it.
+     */
+    @Setup
+    public void setUpEndpoint() throws Exception {
+        ServerOptions options = new ServerOptions();
+        options.executor = executor;
+        options.transport = transport;
+
+        threading = ServerThreading.create(options);
+
+        Server server = threading.configure(NettyServerBuilder.forPort(0))
+                .addService(new TestServiceImpl(10))
+                .build()
+                .start();
+
+        ManagedChannel channel = NettyChannelBuilder.forAddress("localhost", server.getPort())
+                .negotiationType(NegotiationType.PLAINTEXT)
+                .build();
+
+        endpoint = new BenchmarkEndpoint(server, channel);
+
+        asyncStub = TestServiceGrpc.newStub(channel);
+        blockingStub = TestServiceGrpc.newBlockingStub(channel);
+        request = TestRequest.newBuilder().setMessage(Strings.repeat("x", 16)).build();
+    }
+
+    @TearDown
+    public void tearDownEndpoint() throws InterruptedException {
+        endpoint.close();
+        threading.close();
+    }
+
+    /**
+     * Measures a bi-directional stream of ten small messages.
+     */
+    @Benchmark
+    public int biDirectionalStreaming() throws InterruptedException {
+        CompletionObserver responseObserver = new CompletionObserver(false);
+
+        RpcMethod.BI_DIRECTIONAL_STREAMING.start(asyncStub, request, 10, responseObserver);
+
+        return responseObserver.await();
+    }
+
+    @Benchmark
+    public TestResponse unary() {
+        return blockingStub.unary(request);
+    }
+}
@@ -0,0 +1,119 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.Iterator;
+
+/**
+ * Benchmarks the streaming methods and their error variants across a range of stream lengths. For server streaming
+ * the stream length is the number of responses, for the other shapes it is the number of requests. The error mode only
+ * affects the error variants, which are compared against their successful counterparts.
+ */
+public class StreamingBenchmark extends AbstractTestServiceBenchmark {
+
+    @Param({"DETAILED", "FAST"})
+    public ErrorMode errorMode;
+
+    @Param({"1", "10", "100"})
+    public int streamLength;
+
+    /**
+     * Measures a bi-directional stream that echoes each request.
+     */
+    @Benchmark
+    public int biDirectionalStreaming() throws InterruptedException {
+        CompletionObserver responseObserver = new CompletionObserver(false);
+
+        sendRequests(asyncStub.biDirectionalStreaming(responseObserver));
+
+        return responseObserver.await();
+    }
+
+    /**
+     * Measures a bi-directional stream that fails once the client half-closes.
+     */
+    @Benchmark
+    public int biDirectionalStreamingError() throws InterruptedException {
+        CompletionObserver responseObserver = new CompletionObserver(true);
+
+        sendRequests(asyncStub.biDirectionalStreamingError(responseObserver));
+
+        return responseObserver.await();
+    }
+
+    /**
+     * Measures a client stream that is answered with a single aggregated response.
+     */
+    @Benchmark
+    public int clientStreaming() throws InterruptedException {
+        CompletionObserver responseObserver = new CompletionObserver(false);
+
+        sendRequests(asyncStub.clientStreaming(responseObserver));
+
+        return responseObserver.await();
+    }
+
+    /**
+     * Measures a client stream that fails once the client half-closes.
+     */
+    @Benchmark
+    public int clientStreamingError() throws InterruptedException {
+        CompletionObserver responseObserver = new CompletionObserver(true);
+
+        sendRequests(asyncStub.clientStreamingError(responseObserver));
+
+        return responseObserver.await();
+    }
+
+    /**
+     * Measures a server stream of {@code streamLength} responses.
+     */
+    @Benchmark
+    public int serverStreaming() {
+        Iterator<TestResponse> responses = blockingStub.serverStreaming(request);
+
+        int responseCount = 0;
+
+        while (responses.hasNext()) {
+            responses.next();
+            responseCount++;
+        }
+
+        return responseCount;
+    }
+
+    /**
+     * Measures a server stream that fails immediately.
+     */
+    @Benchmark
+    public Status serverStreamingError() {
+        try {
+            blockingStub.serverStreamingError(request).hasNext();
+        } catch (StatusRuntimeException e) {
+            return e.getStatus();
+        }
+
+        throw new IllegalStateException("Call completed but was expected to fail.");
+    }
+
+    @Override
+    protected TestServiceImpl createService() {
+        return TestServiceImpl.newBuilder()
+                .errorMode(errorMode)
+                .serverStreamingResponseCount(streamLength)
+                .build();
+    }
+
+    private void sendRequests(StreamObserver<TestRequest> requestObserver) {
+        for (int i = 0; i < streamLength; i++) {
+            requestObserver.onNext(request);
+        }
+
+        requestObserver.onCompleted();
+    }
+}
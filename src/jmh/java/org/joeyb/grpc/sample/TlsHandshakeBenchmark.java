@@ -0,0 +1,165 @@
+package org.joeyb.grpc.sample;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.ReferenceCountUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+/**
+ * Measures how many TLS handshakes per second a server can complete, which is what limits reconnecting after a deploy.
+ * The handshakes run between in-memory engines, so only the TLS work is measured. A full handshake does the key
+ * agreement and exchanges certificates in both directions, since the server requires mutual auth. A resumed handshake
+ * reuses the session of an earlier one instead.
+ *
+ * <p>The provider only applies to the server. The client always uses the JDK provider, since Netty's OpenSSL client
+ * engines do not resume sessions. ALPN is turned off, because the JDK provider needs the Jetty ALPN agent for it on
+ * Java 8, and it does not change the cost of a handshake.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class TlsHandshakeBenchmark {
+
+    // Clients only resume sessions with the peer that they were established with.
+    private static final String PEER_HOST = ClientApplication.TEST_SERVER_HOST;
+    private static final int PEER_PORT = 443;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    // A handshake takes a handful of round trips, so anything close to this is stuck.
+    private static final int MAX_HANDSHAKE_ROUND_TRIPS = 100;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Param({"JDK", "OPENSSL"})
+    public TlsProvider provider;
+
+    @Param({"false", "true"})
+    public boolean resumed;
+
+    private SslContext clientContext;
+    private SslContext serverContext;
+
+    /**
+     * Builds the contexts from the applications' certificates and makes sure that sessions are resumed exactly when
+     * they should be, so that a misconfiguration cannot silently measure the wrong kind of handshake.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        serverContext = ServerApplication.newSslContextBuilder()
+                .sslProvider(provider.sslProvider())
+                .applicationProtocolConfig(ApplicationProtocolConfig.DISABLED)
+                .build();
+        clientContext = ClientApplication.newSslContextBuilder()
+                .sslProvider(SslProvider.JDK)
+                .applicationProtocolConfig(ApplicationProtocolConfig.DISABLED)
+                .build();
+
+        if (resumed != Arrays.equals(handshake(), handshake())) {
+            throw new IllegalStateException(resumed ? "Sessions were not resumed" : "Sessions were resumed");
+        }
+    }
+
+    /**
+     * Measures one handshake, returning the ID of its session.
+     */
+    @Benchmark
+    public byte[] handshake() throws SSLException {
+        SSLEngine client = resumed
+                ? clientContext.newEngine(ByteBufAllocator.DEFAULT, PEER_HOST, PEER_PORT)
+                : clientContext.newEngine(ByteBufAllocator.DEFAULT);
+        SSLEngine server = serverContext.newEngine(ByteBufAllocator.DEFAULT);
+
+        try {
+            handshake(client, server);
+
+            return client.getSession().getId();
+        } finally {
+            ReferenceCountUtil.release(client);
+            ReferenceCountUtil.release(server);
+        }
+    }
+
+    private static void handshake(SSLEngine client, SSLEngine server) throws SSLException {
+        ByteBuffer clientPackets = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer serverPackets = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer application = ByteBuffer.allocate(BUFFER_SIZE);
+
+        client.beginHandshake();
+        server.beginHandshake();
+
+        for (int i = 0; i < MAX_HANDSHAKE_ROUND_TRIPS; i++) {
+            if (isHandshakeFinished(client) && isHandshakeFinished(server)) {
+                return;
+            }
+
+            wrap(client, clientPackets);
+            unwrap(server, clientPackets, application);
+            wrap(server, serverPackets);
+            unwrap(client, serverPackets, application);
+        }
+
+        throw new IllegalStateException("Handshake did not finish");
+    }
+
+    private static boolean isHandshakeFinished(SSLEngine engine) {
+        return engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+    private static void wrap(SSLEngine engine, ByteBuffer packets) throws SSLException {
+        SSLEngineResult result;
+
+        do {
+            result = engine.wrap(EMPTY, packets);
+            runDelegatedTasks(engine);
+        } while (result.bytesProduced() > 0);
+    }
+
+    private static void unwrap(SSLEngine engine, ByteBuffer packets, ByteBuffer application) throws SSLException {
+        packets.flip();
+
+        while (packets.hasRemaining()) {
+            SSLEngineResult result = engine.unwrap(packets, application);
+
+            runDelegatedTasks(engine);
+            application.clear();
+
+            if (result.getStatus() != SSLEngineResult.Status.OK || result.bytesConsumed() == 0) {
+                break;
+            }
+        }
+
+        packets.compact();
+    }
+
+    private static void runDelegatedTasks(SSLEngine engine) {
+        Runnable task;
+
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+}
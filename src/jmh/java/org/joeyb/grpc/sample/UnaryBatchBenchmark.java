@@ -0,0 +1,101 @@
+package org.joeyb.grpc.sample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares sending {@code batchSize} messages as concurrent {@code Unary} calls with sending them as one
+ * {@code UnaryBatch} call, either built directly or gathered by a {@link UnaryBatcher}. Every operation handles all
+ * {@code batchSize} messages, so the results are directly comparable and the message rate is the throughput times
+ * the batch size.
+ */
+public class UnaryBatchBenchmark extends AbstractTestServiceBenchmark {
+
+    @Param({"10", "50"})
+    public int batchSize;
+
+    private TestBatchRequest batchRequest;
+    private UnaryBatcher batcher;
+    private ScheduledExecutorService batchScheduler;
+
+    /**
+     * Builds the batch request and a batcher whose batches fill up after {@code batchSize} calls. JMH runs this after
+     * the superclass has set up the stubs and the request.
+     */
+    @Setup
+    public void setUpBatching() {
+        TestBatchRequest.Builder builder = TestBatchRequest.newBuilder();
+
+        for (int i = 0; i < batchSize; i++) {
+            builder.addRequests(request);
+        }
+
+        batchRequest = builder.build();
+        batchScheduler = Executors.newSingleThreadScheduledExecutor();
+        batcher = new UnaryBatcher(asyncStub, batchSize, TimeUnit.SECONDS.toNanos(1), batchScheduler);
+    }
+
+    @TearDown
+    public void tearDownBatching() {
+        batchScheduler.shutdownNow();
+    }
+
+    /**
+     * Measures {@code batchSize} concurrent unary calls.
+     */
+    @Benchmark
+    public int unary() throws InterruptedException {
+        CompletionObserver[] responseObservers = new CompletionObserver[batchSize];
+
+        for (int i = 0; i < batchSize; i++) {
+            responseObservers[i] = new CompletionObserver(false);
+            asyncStub.unary(request, responseObservers[i]);
+        }
+
+        return awaitAll(responseObservers);
+    }
+
+    /**
+     * Measures a single batch call that carries {@code batchSize} requests.
+     */
+    @Benchmark
+    public int unaryBatch() {
+        return blockingStub.unaryBatch(batchRequest).getResponsesCount();
+    }
+
+    /**
+     * Measures {@code batchSize} unary calls that a {@link UnaryBatcher} gathers into a single batch call.
+     */
+    @Benchmark
+    public int unaryBatcher() throws InterruptedException {
+        CompletionObserver[] responseObservers = new CompletionObserver[batchSize];
+
+        for (int i = 0; i < batchSize; i++) {
+            responseObservers[i] = new CompletionObserver(false);
+            batcher.unary(request, responseObservers[i]);
+        }
+
+        return awaitAll(responseObservers);
+    }
+
+    @Override
+    protected TestServiceImpl createService() {
+        return new TestServiceImpl(1);
+    }
+
+    private static int awaitAll(CompletionObserver[] responseObservers) throws InterruptedException {
+        int responseCount = 0;
+
+        for (CompletionObserver responseObserver : responseObservers) {
+            responseCount += responseObserver.await();
+        }
+
+        return responseCount;
+    }
+}
@@ -0,0 +1,44 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Benchmarks the {@code Unary} and {@code UnaryError} methods. The error mode only affects {@code UnaryError}, so
+ * {@code unary} doubles as the success path baseline for each error mode.
+ */
+public class UnaryBenchmark extends AbstractTestServiceBenchmark {
+
+    @Param({"DETAILED", "FAST"})
+    public ErrorMode errorMode;
+
+    @Benchmark
+    public TestResponse unary() {
+        return blockingStub.unary(request);
+    }
+
+    /**
+     * Measures a unary call that always fails.
+     */
+    @Benchmark
+    public Status unaryError() {
+        try {
+            blockingStub.unaryError(request);
+        } catch (StatusRuntimeException e) {
+            return e.getStatus();
+        }
+
+        throw new IllegalStateException("Call completed but was expected to fail.");
+    }
+
+    @Override
+    protected TestServiceImpl createService() {
+        return TestServiceImpl.newBuilder()
+                .errorMode(errorMode)
+                .serverStreamingResponseCount(1)
+                .build();
+    }
+}
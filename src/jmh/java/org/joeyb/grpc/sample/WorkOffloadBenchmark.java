@@ -0,0 +1,120 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how the handler executor and the size of the work executor affect the throughput and latency of unary
+ * calls that do simulated work, over a plaintext loopback connection. With zero work threads the work runs on the
+ * handler executor, which for {@code DIRECT} blocks the event loop, and for {@code FIXED} limits concurrent calls to
+ * its thread count. Otherwise the work is offloaded to a fixed pool of that many threads.
+ *
+ * <p>Each call spends {@code cpuMicros} of CPU time and then blocks for an exponentially distributed time with a mean
+ * of {@code ioLatencyMicros}, which together stand in for a service that does a little work around a backend call.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Threads(64)
+@Warmup(iterations = 5, time = 1)
+public class WorkOffloadBenchmark {
+
+    // Large enough that the benchmark's threads never have their work rejected.
+    private static final int WORK_QUEUE_SIZE = 1024;
+
+    @Param({"DEFAULT", "DIRECT", "FIXED"})
+    public HandlerExecutor executor;
+
+    @Param({"0", "16", "64"})
+    public int workThreads;
+
+    @Param({"50"})
+    public long cpuMicros;
+
+    @Param({"1000"})
+    public long ioLatencyMicros;
+
+    private TestServiceGrpc.TestServiceBlockingStub blockingStub;
+    private BenchmarkEndpoint endpoint;
+    private TestRequest request;
+    private ServerThreading threading;
+    private ExecutorService workExecutor;
+
+    /**
+     * Starts a server with the selected executors and workload, and connects the stub to it.
+     */
+    @Setup
+    public void setUpEndpoint() throws Exception {
+        ServerOptions options = new ServerOptions();
+        options.executor = executor;
+
+        threading = ServerThreading.create(options);
+        workExecutor = workThreads > 0 ? ServerApplication.newWorkExecutor(workThreads, WORK_QUEUE_SIZE) : null;
+
+        TestServiceImpl service = TestServiceImpl.newBuilder()
+                .workExecutor(workExecutor)
+                .workload(RpcMethod.UNARY, Workload.newBuilder()
+                        .setCpuMicros(cpuMicros)
+                        .setIoLatencyMicros(ioLatencyMicros)
+                        .setIoLatencyDistribution(LatencyDistribution.EXPONENTIAL)
+                        .build())
+                .build();
+
+        Server server = threading.configure(NettyServerBuilder.forPort(0))
+                .addService(service)
+                .build()
+                .start();
+
+        ManagedChannel channel = NettyChannelBuilder.forAddress("localhost", server.getPort())
+                .negotiationType(NegotiationType.PLAINTEXT)
+                .build();
+
+        endpoint = new BenchmarkEndpoint(server, channel);
+
+        blockingStub = TestServiceGrpc.newBlockingStub(channel);
+        request = TestRequest.newBuilder().setMessage("work").build();
+    }
+
+    /**
+     * Closes the endpoint and shuts down the server's executors.
+     */
+    @TearDown
+    public void tearDownEndpoint() throws InterruptedException {
+        endpoint.close();
+        threading.close();
+
+        if (workExecutor != null) {
+            workExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Measures one unary call, including its simulated work.
+     */
+    @Benchmark
+    public TestResponse unary() {
+        return blockingStub.unary(request);
+    }
+}
@@ -0,0 +1,208 @@
+package org.joeyb.grpc.sample;
+
+import com.google.common.base.Strings;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what coalescing {@code BiDirectionalStreaming} response writes gains and costs. The server is reached
+ * through a {@link CountingRelay}, so the {@code serverReads} and {@code tlsRecords} counters of the {@code burst}
+ * benchmark show how many socket writes and TLS records the server needed. The counters are reported as rates, so
+ * dividing them by the benchmark's score gives the count per stream.
+ *
+ * <p>{@code burst} sends a whole stream of requests before waiting for the responses, which is where coalescing
+ * helps. {@code pingPong} waits for each response before sending the next request, so no burst ever fills up and
+ * every response waits for the full delay. Its latency shows the cost of coalescing for interactive streams.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class WriteCoalescingBenchmark {
+
+    @Param({"1", "8", "32"})
+    public int coalesceMessages;
+
+    @Param({"100"})
+    public long coalesceDelayMicros;
+
+    @Param({"16"})
+    public int messageSize;
+
+    @Param({"100"})
+    public int streamLength;
+
+    @Param({"false", "true"})
+    public boolean tls;
+
+    private TestServiceGrpc.TestServiceStub asyncStub;
+    private ManagedChannel channel;
+    private BlockingQueue<TestResponse> pingPongResponses;
+    private StreamObserver<TestRequest> pingPongStream;
+    private CountingRelay relay;
+    private TestRequest request;
+    private ScheduledExecutorService scheduler;
+    private Server server;
+
+    /**
+     * Starts the server behind a relay, connects to it and opens the long-lived stream of {@code pingPong}.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        TestServiceImpl.Builder service = TestServiceImpl.newBuilder();
+
+        if (coalesceMessages > 1) {
+            service.writeCoalescing(new WriteCoalescing(coalesceMessages,
+                                                        Integer.MAX_VALUE,
+                                                        TimeUnit.MICROSECONDS.toNanos(coalesceDelayMicros),
+                                                        scheduler));
+        }
+
+        NettyServerBuilder serverBuilder = NettyServerBuilder.forPort(0).addService(service.build());
+
+        if (tls) {
+            serverBuilder.sslContext(ServerApplication.newSslContextBuilder().build());
+        }
+
+        server = serverBuilder.build().start();
+        relay = new CountingRelay(server.getPort(), tls);
+
+        NettyChannelBuilder channelBuilder =
+                NettyChannelBuilder.forAddress(InetAddress.getLoopbackAddress().getHostAddress(), relay.port());
+
+        if (tls) {
+            channelBuilder.negotiationType(NegotiationType.TLS)
+                    .overrideAuthority(ClientApplication.TEST_SERVER_HOST)
+                    .sslContext(ClientApplication.newSslContextBuilder().build());
+        } else {
+            channelBuilder.negotiationType(NegotiationType.PLAINTEXT);
+        }
+
+        channel = channelBuilder.build();
+        asyncStub = TestServiceGrpc.newStub(channel);
+        request = TestRequest.newBuilder().setMessage(Strings.repeat("x", messageSize)).build();
+
+        pingPongResponses = new LinkedBlockingQueue<>();
+        pingPongStream = asyncStub.biDirectionalStreaming(new StreamObserver<TestResponse>() {
+            @Override
+            public void onNext(TestResponse value) {
+                pingPongResponses.add(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+    }
+
+    /**
+     * Closes the stream of {@code pingPong} and shuts everything down.
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        pingPongStream.onCompleted();
+
+        channel.shutdownNow();
+        server.shutdownNow();
+        relay.close();
+        scheduler.shutdownNow();
+
+        channel.awaitTermination(5, TimeUnit.SECONDS);
+        server.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Measures a stream of {@code streamLength} requests that are sent before any response is awaited.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int burst(WriteCounters counters) throws InterruptedException {
+        final long serverReads = relay.serverReads();
+        final long tlsRecords = relay.tlsRecords();
+
+        CompletionObserver responseObserver = new CompletionObserver(false);
+        StreamObserver<TestRequest> requestObserver = asyncStub.biDirectionalStreaming(responseObserver);
+
+        for (int i = 0; i < streamLength; i++) {
+            requestObserver.onNext(request);
+        }
+
+        requestObserver.onCompleted();
+
+        int responseCount = responseObserver.await();
+
+        counters.serverReads += relay.serverReads() - serverReads;
+        counters.tlsRecords += relay.tlsRecords() - tlsRecords;
+
+        return responseCount;
+    }
+
+    /**
+     * Measures one request and its response on a long-lived stream.
+     */
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    public TestResponse pingPong() throws InterruptedException {
+        pingPongStream.onNext(request);
+
+        TestResponse response = pingPongResponses.poll(30, TimeUnit.SECONDS);
+
+        if (response == null) {
+            throw new IllegalStateException("Response did not arrive on time.");
+        }
+
+        return response;
+    }
+
+    /**
+     * Socket writes and TLS records reported next to the {@link #burst(WriteCounters)} timings.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class WriteCounters {
+
+        public long serverReads;
+        public long tlsRecords;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            serverReads = 0;
+            tlsRecords = 0;
+        }
+    }
+}
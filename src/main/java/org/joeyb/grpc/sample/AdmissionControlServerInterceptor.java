@@ -0,0 +1,157 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Keeps a {@link GradientConcurrencyLimit} per method and rejects calls over the limit with
+ * {@code RESOURCE_EXHAUSTED} before their handler is started. The current limits and the number of rejected calls are
+ * published through {@link ServerMetrics}.
+ *
+ * <p>Only unary methods are limited. The duration of a streaming call is driven by the client as much as by the
+ * server, so it says nothing about whether the server is queueing work.
+ */
+class AdmissionControlServerInterceptor implements ServerInterceptor {
+
+    private final int initialLimit;
+    private final ConcurrentMap<String, GradientConcurrencyLimit> limits = new ConcurrentHashMap<>();
+    private final int maxLimit;
+    private final ServerMetrics metrics;
+    private final int minLimit;
+
+    /**
+     * Creates an interceptor whose per-method limits start at the given value and stay within the given bounds.
+     *
+     * @param metrics the metrics to publish the limits and rejections to
+     * @param initialLimit the limit of each method before any of its calls have finished
+     * @param minLimit the lowest that a limit can go
+     * @param maxLimit the highest that a limit can go
+     */
+    AdmissionControlServerInterceptor(ServerMetrics metrics, int initialLimit, int minLimit, int maxLimit) {
+        checkArgument(minLimit > 0, "minLimit must be positive");
+        checkArgument(minLimit <= initialLimit && initialLimit <= maxLimit,
+                      "initialLimit must be between minLimit and maxLimit");
+
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.metrics = metrics;
+        this.minLimit = minLimit;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                                                                 Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        if (call.getMethodDescriptor().getType() != MethodDescriptor.MethodType.UNARY) {
+            return next.startCall(call, headers);
+        }
+
+        String fullMethodName = call.getMethodDescriptor().getFullMethodName();
+        MethodMetrics methodMetrics = metrics.forMethod(fullMethodName);
+        GradientConcurrencyLimit limit = limitFor(fullMethodName, methodMetrics);
+
+        if (!limit.tryAcquire()) {
+            methodMetrics.callRejected();
+            call.close(Status.RESOURCE_EXHAUSTED.withDescription(
+                    "Concurrency limit of " + limit.limit() + " reached for " + fullMethodName), new Metadata());
+
+            return new ServerCall.Listener<ReqT>() {
+            };
+        }
+
+        AdmittedServerCall<ReqT, RespT> admittedCall = new AdmittedServerCall<>(call, limit, methodMetrics);
+
+        ServerCall.Listener<ReqT> listener;
+
+        try {
+            listener = next.startCall(admittedCall, headers);
+        } catch (RuntimeException e) {
+            admittedCall.release(false);
+            throw e;
+        }
+
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+            @Override
+            public void onCancel() {
+                admittedCall.release(false);
+                super.onCancel();
+            }
+
+            // gRPC closes the stream of a handler that throws without going through the call, so this is the only
+            // place that its slot is returned.
+            @Override
+            public void onComplete() {
+                admittedCall.release(false);
+                super.onComplete();
+            }
+        };
+    }
+
+    private GradientConcurrencyLimit limitFor(String fullMethodName, MethodMetrics methodMetrics) {
+        GradientConcurrencyLimit limit = limits.get(fullMethodName);
+
+        return limit != null ? limit : limits.computeIfAbsent(fullMethodName, name -> {
+            methodMetrics.concurrencyLimitChanged(initialLimit);
+            return new GradientConcurrencyLimit(initialLimit, minLimit, maxLimit);
+        });
+    }
+
+    private static class AdmittedServerCall<ReqT, RespT>
+            extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<AdmittedServerCall> RELEASED_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(AdmittedServerCall.class, "released");
+
+        private final GradientConcurrencyLimit limit;
+        private final MethodMetrics methodMetrics;
+        private final long startNanos;
+
+        private volatile int released;
+
+        private AdmittedServerCall(ServerCall<ReqT, RespT> delegate,
+                                   GradientConcurrencyLimit limit,
+                                   MethodMetrics methodMetrics) {
+            super(delegate);
+
+            this.limit = limit;
+            this.methodMetrics = methodMetrics;
+            this.startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            release(status.getCode() != Status.Code.CANCELLED);
+            super.close(status, trailers);
+        }
+
+        /**
+         * Returns the call's slot to the limit, unless it already has been. Calls that were cancelled or never started
+         * are not sampled, since their latency says nothing about how long the server took to handle them.
+         */
+        private void release(boolean sampleLatency) {
+            if (!RELEASED_UPDATER.compareAndSet(this, 0, 1)) {
+                return;
+            }
+
+            if (sampleLatency) {
+                limit.onSuccess(System.nanoTime() - startNanos);
+                methodMetrics.concurrencyLimitChanged(limit.limit());
+            } else {
+                limit.onIgnore();
+            }
+        }
+    }
+}
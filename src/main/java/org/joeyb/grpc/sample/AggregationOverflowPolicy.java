@@ -0,0 +1,17 @@
+package org.joeyb.grpc.sample;
+
+/**
+ * What {@link TestServiceImpl} does once the messages of a client stream no longer fit in its retained byte limit.
+ */
+public enum AggregationOverflowPolicy {
+
+    /**
+     * Keep the messages that fit, drop the rest and note how many were dropped in the result.
+     */
+    TRUNCATE,
+
+    /**
+     * Fail the call with {@code RESOURCE_EXHAUSTED} as soon as the limit is exceeded.
+     */
+    REJECT
+}
@@ -0,0 +1,60 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.grpc.netty.GrpcHttp2ConnectionHandler;
+import io.grpc.netty.ProtocolNegotiator;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.AsciiString;
+
+/**
+ * A server {@link ProtocolNegotiator} that sets the buffer allocator of every connection before the delegate
+ * negotiates its protocol. {@link io.grpc.netty.NettyServerBuilder} has no way to set the options of the channels it
+ * accepts, but the negotiation handler is the first handler that each of them gets, before anything has been read.
+ */
+final class AllocatorProtocolNegotiator implements ProtocolNegotiator {
+
+    private final ByteBufAllocator allocator;
+    private final ProtocolNegotiator delegate;
+
+    /**
+     * Creates a negotiator that sets the allocator of the connections that the delegate negotiates.
+     *
+     * @param delegate the negotiator of the connections' protocol, e.g. TLS
+     * @param allocator the allocator of the connections' buffers
+     */
+    AllocatorProtocolNegotiator(ProtocolNegotiator delegate, ByteBufAllocator allocator) {
+        this.allocator = checkNotNull(allocator, "allocator");
+        this.delegate = checkNotNull(delegate, "delegate");
+    }
+
+    @Override
+    public Handler newHandler(GrpcHttp2ConnectionHandler grpcHandler) {
+        return new AllocatorHandler(delegate.newHandler(grpcHandler));
+    }
+
+    /**
+     * Sets the allocator and then hands over to the delegate's handler.
+     */
+    private final class AllocatorHandler extends ChannelHandlerAdapter implements Handler {
+
+        private final Handler negotiationHandler;
+
+        AllocatorHandler(Handler negotiationHandler) {
+            this.negotiationHandler = negotiationHandler;
+        }
+
+        @Override
+        public AsciiString scheme() {
+            return negotiationHandler.scheme();
+        }
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) {
+            ctx.channel().config().setAllocator(allocator);
+            ctx.pipeline().replace(this, null, negotiationHandler);
+        }
+    }
+}
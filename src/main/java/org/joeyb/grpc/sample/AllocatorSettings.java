@@ -0,0 +1,105 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * The settings of the buffer allocator that a server's or client's connections use. The pooled allocator splits its
+ * memory into arenas, which threads are spread across to avoid contention, and each arena into chunks of
+ * {@code pageSize << maxOrder} bytes. Buffers larger than a chunk are not pooled. Each thread also caches a number of
+ * recently freed buffers of each size class, so that they can be reused without going to an arena.
+ */
+class AllocatorSettings {
+
+    private final int directArenas;
+    private final int heapArenas;
+    private final int maxOrder;
+    private final int normalCacheSize;
+    private final int pageSize;
+    private final int smallCacheSize;
+    private final int tinyCacheSize;
+    private final AllocatorType type;
+
+    /**
+     * Creates allocator settings. The sizes only apply to the pooled allocator.
+     *
+     * @param type the type of allocator
+     * @param heapArenas the number of heap arenas
+     * @param directArenas the number of direct arenas
+     * @param pageSize the size of a page in bytes, a power of two of at least 4096
+     * @param maxOrder the number of times a chunk can be halved until it is a page
+     * @param tinyCacheSize the number of buffers under 512 bytes that each thread caches per size
+     * @param smallCacheSize the number of buffers under a page that each thread caches per size
+     * @param normalCacheSize the number of larger buffers that each thread caches per size
+     */
+    AllocatorSettings(AllocatorType type,
+                      int heapArenas,
+                      int directArenas,
+                      int pageSize,
+                      int maxOrder,
+                      int tinyCacheSize,
+                      int smallCacheSize,
+                      int normalCacheSize) {
+        checkArgument(heapArenas >= 0, "heapArenas must not be negative");
+        checkArgument(directArenas >= 0, "directArenas must not be negative");
+        checkArgument(tinyCacheSize >= 0, "tinyCacheSize must not be negative");
+        checkArgument(smallCacheSize >= 0, "smallCacheSize must not be negative");
+        checkArgument(normalCacheSize >= 0, "normalCacheSize must not be negative");
+
+        this.directArenas = directArenas;
+        this.heapArenas = heapArenas;
+        this.maxOrder = maxOrder;
+        this.normalCacheSize = normalCacheSize;
+        this.pageSize = pageSize;
+        this.smallCacheSize = smallCacheSize;
+        this.tinyCacheSize = tinyCacheSize;
+        this.type = checkNotNull(type, "type");
+    }
+
+    /**
+     * Returns settings of the given type with Netty's default sizes.
+     *
+     * @param type the type of allocator
+     */
+    static AllocatorSettings defaults(AllocatorType type) {
+        return new AllocatorSettings(type,
+                                     PooledByteBufAllocator.defaultNumHeapArena(),
+                                     PooledByteBufAllocator.defaultNumDirectArena(),
+                                     PooledByteBufAllocator.defaultPageSize(),
+                                     PooledByteBufAllocator.defaultMaxOrder(),
+                                     PooledByteBufAllocator.defaultTinyCacheSize(),
+                                     PooledByteBufAllocator.defaultSmallCacheSize(),
+                                     PooledByteBufAllocator.defaultNormalCacheSize());
+    }
+
+    /**
+     * Creates an allocator with these settings, which prefers direct buffers unless Netty has been told otherwise.
+     * Pooled allocators are {@link InstrumentedPooledByteBufAllocator}s, so that their statistics can be reported.
+     *
+     * @throws IllegalArgumentException if the page size or max order is out of range
+     */
+    ByteBufAllocator newAllocator() {
+        boolean preferDirect = PlatformDependent.directBufferPreferred();
+
+        switch (type) {
+            case POOLED:
+                return new InstrumentedPooledByteBufAllocator(preferDirect,
+                                                              heapArenas,
+                                                              directArenas,
+                                                              pageSize,
+                                                              maxOrder,
+                                                              tinyCacheSize,
+                                                              smallCacheSize,
+                                                              normalCacheSize);
+            case UNPOOLED:
+                return new UnpooledByteBufAllocator(preferDirect);
+            default:
+                throw new IllegalStateException("Unknown allocator type " + type);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.joeyb.grpc.sample;
+
+/**
+ * The Netty buffer allocators that the applications' connections can use.
+ */
+public enum AllocatorType {
+
+    /**
+     * Netty's jemalloc-style pool, which carves buffers out of large chunks in per-thread arenas and keeps recently
+     * freed buffers in thread-local caches. Allocating is cheap and produces no garbage, but the chunks stay allocated
+     * once the pool has grown.
+     */
+    POOLED,
+
+    /**
+     * Allocates every buffer on its own and frees it when it is released, so memory goes back as soon as traffic
+     * drops, at the cost of an allocation per buffer.
+     */
+    UNPOOLED
+}
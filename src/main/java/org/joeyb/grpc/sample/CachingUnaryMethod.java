@@ -0,0 +1,59 @@
+package org.joeyb.grpc.sample;
+
+import com.google.protobuf.ByteString;
+
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Puts a {@link ResponseCache} in front of the serialized unary method of {@link TestServiceImpl}. The serialized
+ * request is the cache key, so a hit sends the cached bytes as they are, without parsing the request or building a
+ * response. A miss lets the delegate answer the request and caches its serialized response.
+ *
+ * <p>Only successful responses are cached. This relies on {@code Unary} being idempotent, so that the same request
+ * always gets the same response.
+ */
+class CachingUnaryMethod implements SerializedUnaryMethod {
+
+    private final ResponseCache cache;
+    private final SerializedUnaryMethod delegate;
+
+    /**
+     * Creates a method that serves from the given cache.
+     *
+     * @param cache the cache to serve from
+     * @param delegate the method that answers cache misses
+     */
+    CachingUnaryMethod(ResponseCache cache, SerializedUnaryMethod delegate) {
+        this.cache = cache;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void invoke(ByteString request, StreamObserver<ByteString> responseObserver) {
+        ByteString cachedResponse = cache.get(request);
+
+        if (cachedResponse != null) {
+            responseObserver.onNext(cachedResponse);
+            responseObserver.onCompleted();
+            return;
+        }
+
+        delegate.invoke(request, new StreamObserver<ByteString>() {
+            @Override
+            public void onNext(ByteString value) {
+                cache.put(request, value);
+                responseObserver.onNext(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                responseObserver.onError(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                responseObserver.onCompleted();
+            }
+        });
+    }
+}
@@ -0,0 +1,142 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The times at which one sampled call entered each of its {@link TracePhase}s. Phases can be marked from any thread,
+ * and only the first time that a call enters a phase is kept.
+ */
+class CallTrace {
+
+    private static final TracePhase[] PHASES = TracePhase.values();
+
+    private final String fullMethodName;
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(PHASES.length);
+
+    private volatile Status.Code status;
+
+    CallTrace(String fullMethodName) {
+        this.fullMethodName = fullMethodName;
+    }
+
+    /**
+     * Marks the call as having entered the phase now.
+     */
+    void mark(TracePhase phase) {
+        mark(phase, System.nanoTime());
+    }
+
+    /**
+     * Marks the call as having entered the phase at the given time, unless it already has.
+     *
+     * @param phase the phase
+     * @param nanos the {@link System#nanoTime()} that the phase started at
+     */
+    void mark(TracePhase phase, long nanos) {
+        // Zero stands for a phase that was never entered, which nanoTime() returns about once every 292 years.
+        phaseNanos.compareAndSet(phase.ordinal(), 0, nanos);
+    }
+
+    /**
+     * Sets the status that the call finished with, unless it already has one.
+     */
+    void finish(Status.Code code) {
+        if (status == null) {
+            status = code;
+        }
+    }
+
+    String fullMethodName() {
+        return fullMethodName;
+    }
+
+    /**
+     * Returns the time from the call's first phase to its last.
+     */
+    long durationNanos() {
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+
+        for (int i = 0; i < PHASES.length; i++) {
+            long nanos = phaseNanos.get(i);
+
+            if (nanos != 0) {
+                first = Math.min(first, nanos);
+                last = Math.max(last, nanos);
+            }
+        }
+
+        return first <= last ? last - first : 0;
+    }
+
+    Trace toProto() {
+        Trace.Builder builder = Trace.newBuilder()
+                .setFullMethodName(fullMethodName)
+                .setStatus(status != null ? status.name() : "")
+                .setDurationNanos(durationNanos());
+
+        for (PhaseTiming phase : phaseTimings()) {
+            builder.addPhases(phase);
+        }
+
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder()
+                .append(fullMethodName)
+                .append(' ')
+                .append(status)
+                .append(" in ")
+                .append(TimeUnit.NANOSECONDS.toMicros(durationNanos()))
+                .append(" us:");
+
+        for (PhaseTiming phase : phaseTimings()) {
+            builder.append(' ')
+                    .append(phase.getPhase())
+                    .append(" +")
+                    .append(TimeUnit.NANOSECONDS.toMicros(phase.getOffsetNanos()))
+                    .append(" us");
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Returns the phases that the call entered, in the order it entered them, relative to the first.
+     */
+    private List<PhaseTiming> phaseTimings() {
+        List<TracePhase> phases = new ArrayList<>(PHASES.length);
+        long first = Long.MAX_VALUE;
+
+        for (TracePhase phase : PHASES) {
+            long nanos = phaseNanos.get(phase.ordinal());
+
+            if (nanos != 0) {
+                phases.add(phase);
+                first = Math.min(first, nanos);
+            }
+        }
+
+        final long origin = first;
+        List<PhaseTiming> timings = new ArrayList<>(phases.size());
+
+        for (TracePhase phase : phases) {
+            timings.add(PhaseTiming.newBuilder()
+                                .setPhase(phase.name())
+                                .setOffsetNanos(phaseNanos.get(phase.ordinal()) - origin)
+                                .build());
+        }
+
+        timings.sort(Comparator.comparingLong(PhaseTiming::getOffsetNanos));
+
+        return timings;
+    }
+}
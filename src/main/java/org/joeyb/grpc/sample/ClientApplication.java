@@ -1,53 +1,134 @@
 package org.joeyb.grpc.sample;
 
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterException;
 import com.google.common.io.Resources;
 
 import io.grpc.ManagedChannel;
 import io.grpc.netty.GrpcSslContexts;
 import io.grpc.netty.NegotiationType;
 import io.grpc.netty.NettyChannelBuilder;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.security.cert.CertificateException;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ClientApplication {
 
-    private static final String TEST_SERVER_HOST = "foo.test.google.fr";
+    static final String TEST_SERVER_HOST = "foo.test.google.fr";
 
     /**
-     * Main client entry point.
+     * Main client entry point. Runs a load test against the server and reports the achieved throughput and latency.
      *
-     * @param args command-line arguments
+     * @param args command-line arguments, see {@link ClientOptions}
      */
     public static void main(String[] args) throws CertificateException,
                                                   IOException,
                                                   InterruptedException,
                                                   URISyntaxException {
-        File caCert = new File(Resources.getResource("grpc-certs/ca.pem").toURI());
-        File clientCertChain = new File(Resources.getResource("grpc-certs/client.pem").toURI());
-        File clientKey = new File(Resources.getResource("grpc-certs/client.key").toURI());
+        ClientOptions options = new ClientOptions();
+        JCommander commander = new JCommander(options);
 
-        SslContextBuilder sslContextBuilder = GrpcSslContexts.forClient()
-                .keyManager(clientCertChain, clientKey)
-                .trustManager(caCert);
+        commander.setProgramName(ClientApplication.class.getSimpleName());
+
+        try {
+            commander.parse(args);
+            options.validate();
+        } catch (ParameterException e) {
+            System.err.println(e.getMessage());
+            commander.usage();
+            System.exit(1);
+        }
+
+        if (options.help) {
+            commander.usage();
+            return;
+        }
+
+        SslContext sslContext = options.tlsSettings().configure(newSslContextBuilder()).build();
+        ByteBufAllocator allocator = options.allocatorSettings().newAllocator();
+        TraceRecorder traceRecorder = options.isTracing()
+                ? new TraceRecorder(options.traceBufferSize, options.traceSampleRate)
+                : null;
+        List<ManagedChannel> channels = new ArrayList<>(options.channels);
+
+        for (int i = 0; i < options.channels; i++) {
+            NettyChannelBuilder channelBuilder = newChannelBuilder(options, sslContext, allocator);
+
+            if (traceRecorder != null) {
+                channelBuilder.intercept(new TracingClientInterceptor(traceRecorder));
+            }
+
+            channels.add(channelBuilder.build());
+        }
+
+        try {
+            LoadReport report = new LoadGenerator(channels, options, traceRecorder).run();
+
+            report.print(System.out);
+
+            if (options.outputFile != null) {
+                Files.write(Paths.get(options.outputFile), report.toJson().getBytes(StandardCharsets.UTF_8));
+            }
+        } finally {
+            channels.forEach(ManagedChannel::shutdown);
+        }
+    }
 
-        NettyChannelBuilder channelBuilder = NettyChannelBuilder.forAddress("localhost", 10000)
+    /**
+     * Returns a {@link NettyChannelBuilder} for a TLS channel to the server described by the options, or balanced
+     * across the {@code --targets} if there are any, with the transport settings of the options and compressing
+     * requests if the options ask for it.
+     */
+    static NettyChannelBuilder newChannelBuilder(ClientOptions options,
+                                                 SslContext sslContext,
+                                                 ByteBufAllocator allocator) {
+        NettyChannelBuilder channelBuilder = options.transportSettings(allocator)
+                .configure(newTargetChannelBuilder(options))
                 .negotiationType(NegotiationType.TLS)
                 .overrideAuthority(TEST_SERVER_HOST)
-                .sslContext(sslContextBuilder.build());
+                .sslContext(sslContext)
+                .compressorRegistry(MessageCompression.compressorRegistry())
+                .decompressorRegistry(MessageCompression.decompressorRegistry());
 
-        ManagedChannel channel = channelBuilder.build();
+        if (options.compression != MessageCompression.IDENTITY) {
+            channelBuilder.intercept(new CompressionClientInterceptor(options.compression,
+                                                                      options.compressionThresholdBytes));
+        }
 
-        TestServiceGrpc.TestServiceBlockingStub stub = TestServiceGrpc.newBlockingStub(channel);
+        return channelBuilder;
+    }
 
-        TestResponse response = stub.unary(TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build());
+    private static NettyChannelBuilder newTargetChannelBuilder(ClientOptions options) {
+        if (options.targets.isEmpty()) {
+            return NettyChannelBuilder.forAddress(options.host, options.port);
+        }
+
+        StaticNameResolverFactory nameResolverFactory = new StaticNameResolverFactory(options.targetAddresses());
+
+        return options.loadBalancing.configure(NettyChannelBuilder.forTarget(nameResolverFactory.target())
+                .nameResolverFactory(nameResolverFactory));
+    }
 
-        System.out.println("Response message = " + response.getMessage());
+    /**
+     * Returns an {@link SslContextBuilder} that presents the bundled client certificate and trusts the test CA.
+     */
+    static SslContextBuilder newSslContextBuilder() throws URISyntaxException {
+        File caCert = new File(Resources.getResource("grpc-certs/ca.pem").toURI());
+        File clientCertChain = new File(Resources.getResource("grpc-certs/client.pem").toURI());
+        File clientKey = new File(Resources.getResource("grpc-certs/client.key").toURI());
 
-        channel.shutdown();
+        return GrpcSslContexts.forClient()
+                .keyManager(clientCertChain, clientKey)
+                .trustManager(caCert);
     }
 }
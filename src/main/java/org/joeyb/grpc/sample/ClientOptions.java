@@ -0,0 +1,300 @@
+package org.joeyb.grpc.sample;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.net.HostAndPort;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command-line options for {@link ClientApplication}.
+ */
+class ClientOptions {
+
+    @Parameter(names = "--help", help = true, description = "Print usage and exit")
+    boolean help;
+
+    @Parameter(names = "--host", description = "Server host")
+    String host = "localhost";
+
+    @Parameter(names = "--port", description = "Server port")
+    int port = 10000;
+
+    @Parameter(names = "--targets",
+            description = "Comma-separated host:port addresses of several servers to balance calls across, in place of "
+                    + "--host and --port")
+    List<String> targets = new ArrayList<>();
+
+    @Parameter(names = "--load-balancing", description = "How calls are balanced across the --targets")
+    LoadBalancing loadBalancing = LoadBalancing.ROUND_ROBIN;
+
+    @Parameter(names = "--method", description = "The TestService method to call")
+    RpcMethod method = RpcMethod.UNARY;
+
+    @Parameter(names = "--channels", description = "Number of channels to spread calls across")
+    int channels = 1;
+
+    @Parameter(names = "--concurrency", description = "Number of independent call generators")
+    int concurrency = 1;
+
+    @Parameter(names = "--rate",
+            description = "Target calls per second across all generators (open loop), or 0 for closed loop")
+    double rate;
+
+    @Parameter(names = "--outstanding-calls",
+            description = "Calls each generator keeps in flight when running closed loop")
+    int outstandingCalls = 1;
+
+    @Parameter(names = "--duration", description = "Measurement duration in seconds")
+    int durationSeconds = 30;
+
+    @Parameter(names = "--warmup", description = "Warmup duration in seconds, excluded from the results")
+    int warmupSeconds = 5;
+
+    @Parameter(names = "--payload-size", description = "Size in bytes of each request's payload")
+    int payloadSize = 16;
+
+    @Parameter(names = "--payload-type", description = "Kind of data that each request's payload is made of")
+    PayloadType payloadType = PayloadType.TEXT;
+
+    @Parameter(names = "--stream-length", description = "Messages per call for the streaming methods")
+    int streamLength = 10;
+
+    @Parameter(names = "--workload-cpu-micros",
+            description = "Microseconds of CPU work that each request asks the server for, instead of its default")
+    long workloadCpuMicros;
+
+    @Parameter(names = "--workload-io-latency-micros",
+            description = "Mean microseconds that each request asks the server to block for, instead of its default")
+    long workloadIoLatencyMicros;
+
+    @Parameter(names = "--workload-io-latency-distribution",
+            description = "Distribution that the server draws the blocking time of each request from")
+    LatencyDistribution workloadIoLatencyDistribution = LatencyDistribution.CONSTANT;
+
+    @Parameter(names = "--batch-size",
+            description = "Maximum UNARY calls gathered into one UnaryBatch call, or 1 to send each call on its own")
+    int batchSize = 1;
+
+    @Parameter(names = "--batch-window-micros",
+            description = "Longest time a batched call waits for its batch to fill up")
+    long batchWindowMicros = 1000;
+
+    @Parameter(names = "--flow-control-window",
+            description = "Initial HTTP/2 flow-control window of each stream in bytes, or 0 for gRPC's default")
+    int flowControlWindow;
+
+    @Parameter(names = "--max-message-size", description = "Largest response in bytes, or 0 for gRPC's default")
+    int maxMessageSize;
+
+    @Parameter(names = "--allocator", description = "Allocator of the connections' buffers")
+    AllocatorType allocator = AllocatorType.POOLED;
+
+    @Parameter(names = "--allocator-heap-arenas", description = "Number of heap arenas of the POOLED allocator")
+    int allocatorHeapArenas = PooledByteBufAllocator.defaultNumHeapArena();
+
+    @Parameter(names = "--allocator-direct-arenas", description = "Number of direct arenas of the POOLED allocator")
+    int allocatorDirectArenas = PooledByteBufAllocator.defaultNumDirectArena();
+
+    @Parameter(names = "--allocator-page-size",
+            description = "Page size in bytes of the POOLED allocator, a power of two of at least 4096")
+    int allocatorPageSize = PooledByteBufAllocator.defaultPageSize();
+
+    @Parameter(names = "--allocator-max-order",
+            description = "Chunks of the POOLED allocator are 2 to the power of this many pages")
+    int allocatorMaxOrder = PooledByteBufAllocator.defaultMaxOrder();
+
+    @Parameter(names = "--allocator-tiny-cache-size",
+            description = "Buffers under 512 bytes that each thread caches per size, or 0 to not cache them")
+    int allocatorTinyCacheSize = PooledByteBufAllocator.defaultTinyCacheSize();
+
+    @Parameter(names = "--allocator-small-cache-size",
+            description = "Buffers under a page that each thread caches per size, or 0 to not cache them")
+    int allocatorSmallCacheSize = PooledByteBufAllocator.defaultSmallCacheSize();
+
+    @Parameter(names = "--allocator-normal-cache-size",
+            description = "Buffers of a page or more that each thread caches per size, or 0 to not cache them")
+    int allocatorNormalCacheSize = PooledByteBufAllocator.defaultNormalCacheSize();
+
+    @Parameter(names = "--tls-provider", description = "TLS implementation: AUTO uses OPENSSL when available, else JDK")
+    TlsProvider tlsProvider = TlsProvider.AUTO;
+
+    @Parameter(names = "--tls-ciphers",
+            description = "Comma-separated cipher suites in order of preference, gRPC's defaults if unset")
+    List<String> tlsCiphers = new ArrayList<>();
+
+    @Parameter(names = "--tls-session-cache-size",
+            description = "Most TLS sessions kept for resumption, or 0 for the provider's default")
+    long tlsSessionCacheSize;
+
+    @Parameter(names = "--tls-session-timeout-seconds",
+            description = "How long a TLS session can be resumed for, or 0 for the provider's default")
+    long tlsSessionTimeoutSeconds;
+
+    @Parameter(names = "--compression", description = "Codec that requests are compressed with")
+    MessageCompression compression = MessageCompression.IDENTITY;
+
+    @Parameter(names = "--compression-threshold",
+            description = "Requests smaller than this many bytes are sent uncompressed")
+    int compressionThresholdBytes = MessageCompression.DEFAULT_THRESHOLD_BYTES;
+
+    @Parameter(names = "--deadline-millis", description = "Deadline of every call, or 0 for none")
+    long deadlineMillis;
+
+    @Parameter(names = "--hedging",
+            description = "Hedge slow calls and retry unavailable ones, for idempotent methods only")
+    boolean hedging;
+
+    @Parameter(names = "--hedging-delay-micros",
+            description = "Delay after which a call is hedged, or 0 to hedge calls slower than --hedging-percentile")
+    long hedgingDelayMicros;
+
+    @Parameter(names = "--hedging-percentile",
+            description = "Percentile of recent call latencies after which a call is hedged")
+    double hedgingPercentile = 95;
+
+    @Parameter(names = "--hedging-budget",
+            description = "Most hedges and retries sent per call over time, between 0 and 1")
+    double hedgingBudget = 0.1;
+
+    @Parameter(names = "--trace-sample-rate",
+            description = "Fraction of calls to trace, the slowest traces are included in the results")
+    double traceSampleRate;
+
+    @Parameter(names = "--trace-buffer-size", description = "Number of recent traces to pick the slowest from")
+    int traceBufferSize = 1024;
+
+    @Parameter(names = "--output", description = "File to write the JSON results to")
+    String outputFile;
+
+    boolean isBatching() {
+        return batchSize > 1;
+    }
+
+    boolean isOpenLoop() {
+        return rate > 0;
+    }
+
+    boolean isTracing() {
+        return traceSampleRate > 0;
+    }
+
+    /**
+     * Returns whether requests carry their own workload, rather than leaving it to the server.
+     */
+    boolean hasWorkload() {
+        return workloadCpuMicros > 0 || workloadIoLatencyMicros > 0;
+    }
+
+    Workload workload() {
+        return Workload.newBuilder()
+                .setCpuMicros(workloadCpuMicros)
+                .setIoLatencyMicros(workloadIoLatencyMicros)
+                .setIoLatencyDistribution(workloadIoLatencyDistribution)
+                .build();
+    }
+
+    AllocatorSettings allocatorSettings() {
+        return new AllocatorSettings(allocator,
+                                     allocatorHeapArenas,
+                                     allocatorDirectArenas,
+                                     allocatorPageSize,
+                                     allocatorMaxOrder,
+                                     allocatorTinyCacheSize,
+                                     allocatorSmallCacheSize,
+                                     allocatorNormalCacheSize);
+    }
+
+    ClientTransportSettings transportSettings(ByteBufAllocator allocator) {
+        return new ClientTransportSettings(flowControlWindow, maxMessageSize, allocator);
+    }
+
+    TlsSettings tlsSettings() {
+        return new TlsSettings(tlsProvider, tlsCiphers, tlsSessionCacheSize, tlsSessionTimeoutSeconds);
+    }
+
+    /**
+     * Returns the addresses of the {@code --targets}.
+     *
+     * @throws ParameterException if a target is not a valid {@code host:port} address
+     */
+    List<InetSocketAddress> targetAddresses() {
+        List<InetSocketAddress> addresses = new ArrayList<>(targets.size());
+
+        for (String target : targets) {
+            HostAndPort hostAndPort;
+
+            try {
+                hostAndPort = HostAndPort.fromString(target);
+            } catch (IllegalArgumentException e) {
+                throw new ParameterException("--targets entry " + target + " is not a valid host:port address");
+            }
+
+            checkParameter(hostAndPort.hasPort(), "--targets entry " + target + " has no port");
+
+            addresses.add(new InetSocketAddress(hostAndPort.getHost(), hostAndPort.getPort()));
+        }
+
+        return addresses;
+    }
+
+    /**
+     * Checks the option values that JCommander cannot validate by type alone.
+     *
+     * @throws ParameterException if any option is out of range
+     */
+    void validate() {
+        checkParameter(channels > 0, "--channels must be positive");
+        checkParameter(concurrency > 0, "--concurrency must be positive");
+        checkParameter(rate >= 0, "--rate must not be negative");
+        checkParameter(outstandingCalls > 0, "--outstanding-calls must be positive");
+        checkParameter(durationSeconds > 0, "--duration must be positive");
+        checkParameter(warmupSeconds >= 0, "--warmup must not be negative");
+        checkParameter(payloadSize >= 0, "--payload-size must not be negative");
+        checkParameter(streamLength >= 0, "--stream-length must not be negative");
+        checkParameter(workloadCpuMicros >= 0, "--workload-cpu-micros must not be negative");
+        checkParameter(workloadIoLatencyMicros >= 0, "--workload-io-latency-micros must not be negative");
+        checkParameter(workloadIoLatencyDistribution != LatencyDistribution.UNRECOGNIZED,
+                       "--workload-io-latency-distribution must be a known distribution");
+        checkParameter(batchSize > 0, "--batch-size must be positive");
+        checkParameter(batchSize == 1 || method == RpcMethod.UNARY, "--batch-size only applies to UNARY");
+        checkParameter(batchWindowMicros > 0, "--batch-window-micros must be positive");
+        checkParameter(flowControlWindow >= 0, "--flow-control-window must not be negative");
+        checkParameter(maxMessageSize >= 0, "--max-message-size must not be negative");
+        checkParameter(allocatorHeapArenas >= 0, "--allocator-heap-arenas must not be negative");
+        checkParameter(allocatorDirectArenas >= 0, "--allocator-direct-arenas must not be negative");
+        checkParameter(allocatorPageSize >= 4096 && Integer.bitCount(allocatorPageSize) == 1,
+                       "--allocator-page-size must be a power of two of at least 4096");
+        checkParameter(allocatorMaxOrder >= 0 && allocatorMaxOrder <= 14,
+                       "--allocator-max-order must be between 0 and 14");
+        checkParameter((long) allocatorPageSize << allocatorMaxOrder <= 1 << 30,
+                       "--allocator-page-size and --allocator-max-order make chunks larger than 1 GiB");
+        checkParameter(allocatorTinyCacheSize >= 0, "--allocator-tiny-cache-size must not be negative");
+        checkParameter(allocatorSmallCacheSize >= 0, "--allocator-small-cache-size must not be negative");
+        checkParameter(allocatorNormalCacheSize >= 0, "--allocator-normal-cache-size must not be negative");
+        checkParameter(tlsSessionCacheSize >= 0, "--tls-session-cache-size must not be negative");
+        checkParameter(tlsSessionTimeoutSeconds >= 0, "--tls-session-timeout-seconds must not be negative");
+        checkParameter(compressionThresholdBytes >= 0, "--compression-threshold must not be negative");
+        checkParameter(deadlineMillis >= 0, "--deadline-millis must not be negative");
+        checkParameter(deadlineMillis == 0 || !isBatching(), "--deadline-millis does not apply to batched calls");
+        checkParameter(!hedging || method.isIdempotent(), "--hedging only applies to idempotent methods");
+        checkParameter(!hedging || !isBatching(), "--hedging does not apply to batched calls");
+        checkParameter(hedgingDelayMicros >= 0, "--hedging-delay-micros must not be negative");
+        checkParameter(hedgingPercentile > 0 && hedgingPercentile < 100, "--hedging-percentile must be below 100");
+        checkParameter(hedgingBudget >= 0 && hedgingBudget <= 1, "--hedging-budget must be between 0 and 1");
+        checkParameter(traceSampleRate >= 0 && traceSampleRate <= 1, "--trace-sample-rate must be between 0 and 1");
+        checkParameter(traceBufferSize > 0, "--trace-buffer-size must be positive");
+        targetAddresses();
+    }
+
+    private static void checkParameter(boolean expression, String message) {
+        if (!expression) {
+            throw new ParameterException(message);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.grpc.netty.NettyChannelBuilder;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelOption;
+
+/**
+ * The HTTP/2 settings of the client's connections. The client's flow-control window is the one that limits how fast
+ * the server can stream responses to it, see {@link ServerTransportSettings}.
+ */
+class ClientTransportSettings {
+
+    private final ByteBufAllocator allocator;
+    private final int flowControlWindow;
+    private final int maxMessageSize;
+
+    /**
+     * Creates client transport settings.
+     *
+     * @param flowControlWindow the initial flow-control window of each stream in bytes, or 0 for gRPC's default
+     * @param maxMessageSize the largest response in bytes that the client accepts, or 0 for gRPC's default
+     */
+    ClientTransportSettings(int flowControlWindow, int maxMessageSize) {
+        this(flowControlWindow, maxMessageSize, null);
+    }
+
+    /**
+     * Creates client transport settings with a buffer allocator of their own.
+     *
+     * @param flowControlWindow the initial flow-control window of each stream in bytes, or 0 for gRPC's default
+     * @param maxMessageSize the largest response in bytes that the client accepts, or 0 for gRPC's default
+     * @param allocator the allocator of the connections' buffers, or {@code null} for Netty's default
+     */
+    ClientTransportSettings(int flowControlWindow, int maxMessageSize, ByteBufAllocator allocator) {
+        checkArgument(flowControlWindow >= 0, "flowControlWindow must not be negative");
+        checkArgument(maxMessageSize >= 0, "maxMessageSize must not be negative");
+
+        this.allocator = allocator;
+        this.flowControlWindow = flowControlWindow;
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * Applies the settings to a channel builder.
+     *
+     * @param builder the builder to configure
+     * @return the builder
+     */
+    NettyChannelBuilder configure(NettyChannelBuilder builder) {
+        if (flowControlWindow > 0) {
+            builder.flowControlWindow(flowControlWindow);
+        }
+
+        if (maxMessageSize > 0) {
+            builder.maxInboundMessageSize(maxMessageSize);
+        }
+
+        if (allocator != null) {
+            builder.withOption(ChannelOption.ALLOCATOR, allocator);
+        }
+
+        return builder;
+    }
+}
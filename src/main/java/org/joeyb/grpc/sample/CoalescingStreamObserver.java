@@ -0,0 +1,107 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers the messages of a response stream and writes them to the underlying observer in bursts, see
+ * {@link WriteCoalescing}. Completing or failing the stream writes any buffered messages first.
+ *
+ * <p>Buffered messages are written either by the thread that fills the buffer or by the scheduler, so every write to
+ * the underlying observer happens under a lock to keep the messages in order.
+ */
+class CoalescingStreamObserver<T> implements StreamObserver<T> {
+
+    private final StreamObserver<T> delegate;
+    private final long delayNanos;
+    private final Object lock = new Object();
+    private final int maxBytes;
+    private final int maxMessages;
+    private final ScheduledExecutorService scheduler;
+
+    // Guarded by lock.
+    private List<T> buffer = new ArrayList<>();
+    private int bufferedBytes;
+    private ScheduledFuture<?> flushTimer;
+
+    CoalescingStreamObserver(StreamObserver<T> delegate,
+                             int maxMessages,
+                             int maxBytes,
+                             long delayNanos,
+                             ScheduledExecutorService scheduler) {
+        this.delegate = delegate;
+        this.delayNanos = delayNanos;
+        this.maxBytes = maxBytes;
+        this.maxMessages = maxMessages;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void onNext(T value) {
+        synchronized (lock) {
+            buffer.add(value);
+            bufferedBytes += MessageSizes.serializedSize(value);
+
+            if (buffer.size() >= maxMessages || bufferedBytes >= maxBytes) {
+                flush();
+            } else if (flushTimer == null) {
+                flushTimer = scheduler.schedule(this::flushOnTimer, delayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        synchronized (lock) {
+            flush();
+            delegate.onError(t);
+        }
+    }
+
+    @Override
+    public void onCompleted() {
+        synchronized (lock) {
+            flush();
+            delegate.onCompleted();
+        }
+    }
+
+    // Guarded by lock.
+    private void flush() {
+        if (flushTimer != null) {
+            flushTimer.cancel(false);
+            flushTimer = null;
+        }
+
+        if (buffer.isEmpty()) {
+            return;
+        }
+
+        // Swap the buffer out before writing. Transports that run callbacks inline can lead to onNext being called
+        // from within a write, and a write that throws must not leave its messages to be written again.
+        List<T> messages = buffer;
+
+        buffer = new ArrayList<>(messages.size());
+        bufferedBytes = 0;
+
+        for (T message : messages) {
+            delegate.onNext(message);
+        }
+    }
+
+    private void flushOnTimer() {
+        synchronized (lock) {
+            try {
+                flush();
+            } catch (StatusRuntimeException e) {
+                // The call was cancelled while its messages were buffered, so there is nobody left to write them to.
+            }
+        }
+    }
+}
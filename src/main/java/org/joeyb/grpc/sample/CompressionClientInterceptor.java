@@ -0,0 +1,43 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.MethodDescriptor;
+
+/**
+ * Compresses the requests of every call with the configured codec, except for messages that are smaller than the
+ * threshold.
+ */
+class CompressionClientInterceptor implements ClientInterceptor {
+
+    private final MessageCompression compression;
+    private final int thresholdBytes;
+
+    CompressionClientInterceptor(MessageCompression compression, int thresholdBytes) {
+        checkArgument(thresholdBytes >= 0, "thresholdBytes must not be negative");
+
+        this.compression = checkNotNull(compression, "compression");
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                               CallOptions callOptions,
+                                                               Channel next) {
+        ClientCall<ReqT, RespT> call = next.newCall(method, callOptions.withCompression(compression.messageEncoding()));
+
+        return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(call) {
+            @Override
+            public void sendMessage(ReqT message) {
+                delegate().setMessageCompression(MessageSizes.serializedSize(message) >= thresholdBytes);
+                super.sendMessage(message);
+            }
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+
+/**
+ * Compresses the responses of every call with the configured codec, except for messages that are smaller than the
+ * threshold. The codec is only used if the client advertised that it accepts it, otherwise responses are sent as-is.
+ */
+class CompressionServerInterceptor implements ServerInterceptor {
+
+    private final MessageCompression compression;
+    private final int thresholdBytes;
+
+    CompressionServerInterceptor(MessageCompression compression, int thresholdBytes) {
+        checkArgument(thresholdBytes >= 0, "thresholdBytes must not be negative");
+
+        this.compression = checkNotNull(compression, "compression");
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                                                                 Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        call.setCompression(compression.messageEncoding());
+
+        return next.startCall(new ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT>(call) {
+            @Override
+            public void sendMessage(RespT message) {
+                delegate().setMessageCompression(MessageSizes.serializedSize(message) >= thresholdBytes);
+                super.sendMessage(message);
+            }
+        }, headers);
+    }
+}
@@ -0,0 +1,89 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.grpc.netty.GrpcHttp2ConnectionHandler;
+import io.grpc.netty.ProtocolNegotiator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.AsciiString;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A server {@link ProtocolNegotiator} that closes every connection once it reaches a maximum age, so that long-lived
+ * clients reconnect and spread over servers that were added since they first connected. Connections are closed
+ * gracefully: the server sends a GOAWAY, which makes the client start new calls on a new connection, and then waits up
+ * to the grace period for the calls that are still running to finish.
+ *
+ * <p>The ages are jittered by up to 10% either way, so that connections that were opened together, such as after a
+ * deploy, do not all reconnect at the same time.
+ */
+final class ConnectionAgingProtocolNegotiator implements ProtocolNegotiator {
+
+    private static final double JITTER = 0.1;
+
+    private final ProtocolNegotiator delegate;
+    private final long maxAgeGraceNanos;
+    private final long maxAgeNanos;
+
+    /**
+     * Creates a negotiator that ages the connections that the delegate negotiates.
+     *
+     * @param delegate the negotiator of the connections' protocol, e.g. TLS
+     * @param maxAgeNanos the age at which a connection is closed
+     * @param maxAgeGraceNanos how long calls that are still running on an aged connection have to finish
+     */
+    ConnectionAgingProtocolNegotiator(ProtocolNegotiator delegate, long maxAgeNanos, long maxAgeGraceNanos) {
+        checkArgument(maxAgeNanos > 0, "maxAgeNanos must be positive");
+        checkArgument(maxAgeGraceNanos >= 0, "maxAgeGraceNanos must not be negative");
+
+        this.delegate = checkNotNull(delegate, "delegate");
+        this.maxAgeGraceNanos = maxAgeGraceNanos;
+        this.maxAgeNanos = maxAgeNanos;
+    }
+
+    @Override
+    public Handler newHandler(GrpcHttp2ConnectionHandler grpcHandler) {
+        // Closing the channel makes the HTTP/2 handler send a GOAWAY and wait this long for the open streams.
+        grpcHandler.gracefulShutdownTimeoutMillis(TimeUnit.NANOSECONDS.toMillis(maxAgeGraceNanos));
+
+        return new AgingHandler(delegate.newHandler(grpcHandler));
+    }
+
+    private long jitteredMaxAgeNanos() {
+        return (long) (maxAgeNanos * (1 + JITTER * ThreadLocalRandom.current().nextDouble(-1, 1)));
+    }
+
+    /**
+     * Schedules the connection to be closed and then hands over to the delegate's handler.
+     */
+    private final class AgingHandler extends ChannelHandlerAdapter implements Handler {
+
+        private final Handler negotiationHandler;
+
+        AgingHandler(Handler negotiationHandler) {
+            this.negotiationHandler = negotiationHandler;
+        }
+
+        @Override
+        public AsciiString scheme() {
+            return negotiationHandler.scheme();
+        }
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) {
+            Channel channel = ctx.channel();
+            ScheduledFuture<?> closing = channel.eventLoop()
+                    .schedule((Runnable) channel::close, jitteredMaxAgeNanos(), TimeUnit.NANOSECONDS);
+
+            channel.closeFuture().addListener(f -> closing.cancel(false));
+
+            ctx.pipeline().replace(this, null, negotiationHandler);
+        }
+    }
+}
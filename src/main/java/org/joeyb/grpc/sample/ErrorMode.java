@@ -0,0 +1,64 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.Status;
+import io.grpc.StatusException;
+
+/**
+ * How {@link TestServiceImpl} builds the errors that the {@code *Error} methods fail with. Those methods fail on every
+ * call, so under load the cost of the error itself, rather than of the work that led up to it, can dominate.
+ */
+public enum ErrorMode {
+
+    /**
+     * Fail with a regular exception that captures the stack trace and describes the whole request.
+     */
+    DETAILED {
+        @Override
+        StatusException createError(Status status, String prefix, String detail) {
+            return new StatusException(status.withDescription(prefix + detail));
+        }
+    },
+
+    /**
+     * Fail with an exception that skips capturing the stack trace, which only ever points into the service itself, and
+     * cut the request's description short at {@link #MAX_FAST_DETAIL_LENGTH} characters, so that large requests do
+     * not turn into equally large trailers.
+     */
+    FAST {
+        @Override
+        StatusException createError(Status status, String prefix, String detail) {
+            return new StacklessStatusException(status.withDescription(prefix + truncate(detail)));
+        }
+    };
+
+    /**
+     * The longest request description that {@link #FAST} errors include, in characters.
+     */
+    static final int MAX_FAST_DETAIL_LENGTH = 256;
+
+    static final String TRUNCATION_MARKER = "...";
+
+    /**
+     * Creates the exception that a call fails with.
+     *
+     * @param status the status of the error, without a description
+     * @param prefix the start of the description
+     * @param detail the part of the description that describes the request, which may be arbitrarily long
+     */
+    abstract StatusException createError(Status status, String prefix, String detail);
+
+    private static String truncate(String detail) {
+        if (detail.length() <= MAX_FAST_DETAIL_LENGTH) {
+            return detail;
+        }
+
+        int end = MAX_FAST_DETAIL_LENGTH;
+
+        // Never leave half of a surrogate pair at the end, which would not encode as valid UTF-8.
+        if (Character.isHighSurrogate(detail.charAt(end - 1))) {
+            end--;
+        }
+
+        return detail.substring(0, end) + TRUNCATION_MARKER;
+    }
+}
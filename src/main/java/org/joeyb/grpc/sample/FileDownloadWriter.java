@@ -0,0 +1,71 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+
+import java.io.IOException;
+
+/**
+ * Streams a file as {@link FileChunk}s while the call is ready to accept more messages, like the server streaming
+ * responses of {@link TestServiceImpl}. It is registered as the call's on-ready handler, so a slow client holds back
+ * the reads instead of the file piling up in the transport's buffers.
+ *
+ * @see MappedFileChunks
+ */
+class FileDownloadWriter implements Runnable {
+
+    private final MappedFileChunks chunks;
+    private final ServerCallStreamObserver<FileChunk> responseObserver;
+
+    private boolean completed;
+    private boolean writing;
+
+    /**
+     * Creates a writer that streams the given chunks. The writer closes the chunks once the call has finished.
+     *
+     * @param chunks the chunks of the file
+     * @param responseObserver the observer of the call's responses
+     */
+    FileDownloadWriter(MappedFileChunks chunks, ServerCallStreamObserver<FileChunk> responseObserver) {
+        this.chunks = chunks;
+        this.responseObserver = responseObserver;
+    }
+
+    @Override
+    public void run() {
+        // Transports that run callbacks inline can signal readiness from within onNext. The outer invocation re-checks
+        // isReady() on every iteration, so re-entrant calls can return immediately.
+        if (writing || completed) {
+            return;
+        }
+
+        writing = true;
+
+        try {
+            while (chunks.hasNext() && responseObserver.isReady() && !responseObserver.isCancelled()) {
+                responseObserver.onNext(chunks.next());
+            }
+
+            if (!chunks.hasNext()) {
+                close();
+                responseObserver.onCompleted();
+            }
+        } catch (IOException e) {
+            close();
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Failed to read file at offset " + chunks.position())
+                    .withCause(e)
+                    .asRuntimeException());
+        } finally {
+            writing = false;
+        }
+    }
+
+    /**
+     * Closes the file. Called once the call has finished, including when it was cancelled.
+     */
+    void close() {
+        completed = true;
+        chunks.close();
+    }
+}
@@ -0,0 +1,146 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.Status;
+import io.grpc.StatusException;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the {@link FileChunk}s of an upload to disk as they arrive. The chunks are written to a temporary file next
+ * to the target, which replaces the target once the client completes the stream, so a failed or cancelled upload
+ * never leaves a partial file behind.
+ *
+ * <p>Each chunk's data is written from the buffers that its {@link com.google.protobuf.ByteString} already holds, so
+ * the only heap copy of the file's bytes is the one made when the chunk was parsed.
+ */
+class FileUploadObserver implements StreamObserver<FileChunk> {
+
+    private final StreamObserver<UploadFileResponse> responseObserver;
+    private final FileResolver fileResolver;
+
+    private FileChannel channel;
+    private boolean failed;
+    private long size;
+    private Path target;
+    private Path temporaryFile;
+
+    /**
+     * Creates an observer that writes the uploaded file to the path that the resolver returns for its name.
+     *
+     * @param fileResolver resolves the file name of the first chunk to the path of the file
+     * @param responseObserver the observer of the call's response
+     */
+    FileUploadObserver(FileResolver fileResolver, StreamObserver<UploadFileResponse> responseObserver) {
+        this.fileResolver = fileResolver;
+        this.responseObserver = responseObserver;
+    }
+
+    @Override
+    public void onNext(FileChunk value) {
+        if (failed) {
+            return;
+        }
+
+        try {
+            if (channel == null) {
+                open(value.getFileName());
+            }
+
+            if (value.getOffset() != size) {
+                throw new StatusException(Status.INVALID_ARGUMENT.withDescription(
+                        "Chunk at offset " + value.getOffset() + " does not follow the " + size + " bytes received"));
+            }
+
+            for (ByteBuffer data : value.getData().asReadOnlyByteBufferList()) {
+                while (data.hasRemaining()) {
+                    size += channel.write(data);
+                }
+            }
+        } catch (IOException e) {
+            fail(new StatusException(Status.INTERNAL.withDescription("Failed to write file").withCause(e)));
+        } catch (StatusException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        if (!failed) {
+            failed = true;
+            discard();
+        }
+    }
+
+    @Override
+    public void onCompleted() {
+        if (failed) {
+            return;
+        }
+
+        try {
+            if (channel == null) {
+                throw new StatusException(Status.INVALID_ARGUMENT.withDescription("Upload did not send any chunks"));
+            }
+
+            channel.close();
+            Files.move(temporaryFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            fail(new StatusException(Status.INTERNAL.withDescription("Failed to write file").withCause(e)));
+            return;
+        } catch (StatusException e) {
+            fail(e);
+            return;
+        }
+
+        responseObserver.onNext(UploadFileResponse.newBuilder().setSize(size).build());
+        responseObserver.onCompleted();
+    }
+
+    private void open(String fileName) throws IOException, StatusException {
+        target = fileResolver.resolve(fileName);
+        Files.createDirectories(target.getParent());
+        temporaryFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+        channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE);
+    }
+
+    private void fail(StatusException e) {
+        failed = true;
+        discard();
+        responseObserver.onError(e);
+    }
+
+    private void discard() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+
+            if (temporaryFile != null) {
+                Files.deleteIfExists(temporaryFile);
+            }
+        } catch (IOException e) {
+            // The upload has already failed, a leftover temporary file is all that is lost.
+        }
+    }
+
+    /**
+     * Resolves the file names that clients send to paths on the server.
+     */
+    interface FileResolver {
+
+        /**
+         * Returns the path of the named file.
+         *
+         * @param fileName the file name sent by the client
+         * @throws StatusException if the name does not refer to a file that may be written
+         */
+        Path resolve(String fileName) throws StatusException;
+    }
+}
@@ -0,0 +1,107 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+
+/**
+ * The client side of an {@code UploadFile} call. It streams a file as {@link FileChunk}s while the call is ready to
+ * accept more messages, and passes the server's response on to the given observer.
+ *
+ * <p>Pass the writer as the response observer of {@code TestServiceStub.uploadFile}, and ignore the request observer
+ * that the stub returns. The writer sends the chunks and half-closes the call on its own.
+ *
+ * @see MappedFileChunks
+ */
+class FileUploadWriter implements ClientResponseObserver<FileChunk, UploadFileResponse> {
+
+    private final MappedFileChunks chunks;
+    private final String fileName;
+    private final StreamObserver<UploadFileResponse> responseObserver;
+
+    private boolean completed;
+    private ClientCallStreamObserver<FileChunk> requestObserver;
+    private boolean sentFileName;
+    private boolean writing;
+
+    /**
+     * Creates a writer that uploads the given chunks under the given name. The writer closes the chunks once the call
+     * has finished.
+     *
+     * @param chunks the chunks of the file
+     * @param fileName the path of the file on the server, relative to its file root
+     * @param responseObserver the observer of the call's response
+     */
+    FileUploadWriter(MappedFileChunks chunks, String fileName, StreamObserver<UploadFileResponse> responseObserver) {
+        this.chunks = chunks;
+        this.fileName = fileName;
+        this.responseObserver = responseObserver;
+    }
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<FileChunk> requestStream) {
+        requestObserver = requestStream;
+        requestObserver.setOnReadyHandler(this::write);
+    }
+
+    @Override
+    public void onNext(UploadFileResponse value) {
+        responseObserver.onNext(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        close();
+        responseObserver.onError(t);
+    }
+
+    @Override
+    public void onCompleted() {
+        responseObserver.onCompleted();
+    }
+
+    private void write() {
+        // Same re-entrancy guard as FileDownloadWriter.
+        if (writing || completed) {
+            return;
+        }
+
+        writing = true;
+
+        try {
+            while ((!sentFileName || chunks.hasNext()) && requestObserver.isReady()) {
+                if (sentFileName) {
+                    requestObserver.onNext(chunks.next());
+                } else {
+                    // The first chunk names the file, and is sent even if the file is empty.
+                    FileChunk chunk = chunks.hasNext() ? chunks.next() : FileChunk.getDefaultInstance();
+
+                    requestObserver.onNext(chunk.toBuilder().setFileName(fileName).build());
+                    sentFileName = true;
+                }
+            }
+
+            if (sentFileName && !chunks.hasNext()) {
+                close();
+                requestObserver.onCompleted();
+            }
+        } catch (IOException e) {
+            close();
+            // Failing the request stream cancels the call, which fails the response with the same status.
+            requestObserver.onError(Status.INTERNAL
+                    .withDescription("Failed to read file at offset " + chunks.position())
+                    .withCause(e)
+                    .asRuntimeException());
+        } finally {
+            writing = false;
+        }
+    }
+
+    private void close() {
+        completed = true;
+        chunks.close();
+    }
+}
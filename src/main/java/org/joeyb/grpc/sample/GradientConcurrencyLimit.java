@@ -0,0 +1,147 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A limit on concurrent calls that adapts to their latency, after the gradient limiter of Netflix's concurrency-limits
+ * library. Every few calls the average latency of the recent calls is compared with a slowly moving long-term
+ * average. While the two agree the limit grows by a fraction of its square root, so it keeps probing for more
+ * capacity. Once recent calls get slower than the long-term average, which means that calls are queueing somewhere,
+ * the limit shrinks in proportion to the slowdown.
+ *
+ * <p>Admission is lock-free. Only the limit updates, which happen once per {@link #SAMPLES_PER_UPDATE} calls, are
+ * synchronized.
+ */
+class GradientConcurrencyLimit {
+
+    /**
+     * The number of latency samples that are averaged into each limit update.
+     */
+    static final int SAMPLES_PER_UPDATE = 10;
+
+    // The long-term latency is an exponential moving average over roughly this many updates.
+    private static final int LONG_TERM_UPDATES = 100;
+
+    // How much of each newly computed limit is blended into the current one, to damp oscillation.
+    private static final double SMOOTHING = 0.2;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final int maxLimit;
+    private final int minLimit;
+
+    private volatile int limit;
+
+    // Guarded by this.
+    private double estimatedLimit;
+    private double longTermRttNanos;
+    private int windowMaxInFlight;
+    private int windowSampleCount;
+    private long windowRttSumNanos;
+
+    /**
+     * Creates a limit that starts at the given value and stays within the given bounds.
+     *
+     * @param initialLimit the limit before any calls have finished
+     * @param minLimit the lowest that the limit can go
+     * @param maxLimit the highest that the limit can go
+     */
+    GradientConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        checkArgument(minLimit > 0, "minLimit must be positive");
+        checkArgument(minLimit <= initialLimit && initialLimit <= maxLimit,
+                      "initialLimit must be between minLimit and maxLimit");
+
+        this.estimatedLimit = initialLimit;
+        this.limit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.minLimit = minLimit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    /**
+     * Admits a call if fewer than {@link #limit()} calls are in flight. Every admitted call must be followed by
+     * exactly one call to {@link #onSuccess(long)} or {@link #onIgnore()}.
+     *
+     * @return {@code true} if the call was admitted
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+
+            if (current >= limit) {
+                return false;
+            }
+
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases an admitted call and feeds its latency into the limit.
+     *
+     * @param rttNanos the time from admitting the call until it finished
+     */
+    void onSuccess(long rttNanos) {
+        int inFlightBeforeRelease = inFlight.getAndDecrement();
+
+        update(rttNanos, inFlightBeforeRelease);
+    }
+
+    /**
+     * Releases an admitted call whose latency says nothing about the server, such as a cancelled one.
+     */
+    void onIgnore() {
+        inFlight.decrementAndGet();
+    }
+
+    private synchronized void update(long rttNanos, int inFlightBeforeRelease) {
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlightBeforeRelease);
+        windowRttSumNanos += rttNanos;
+        windowSampleCount++;
+
+        if (windowSampleCount < SAMPLES_PER_UPDATE) {
+            return;
+        }
+
+        double shortTermRttNanos = Math.max(1, (double) windowRttSumNanos / windowSampleCount);
+        final int maxInFlight = windowMaxInFlight;
+
+        windowMaxInFlight = 0;
+        windowRttSumNanos = 0;
+        windowSampleCount = 0;
+
+        if (longTermRttNanos == 0) {
+            longTermRttNanos = shortTermRttNanos;
+        } else {
+            longTermRttNanos += (shortTermRttNanos - longTermRttNanos) / LONG_TERM_UPDATES;
+        }
+
+        // After a sustained slowdown the long-term average lags far behind. Once latency recovers, decay it faster so
+        // that the next slowdown is measured against the recovered latency rather than the old one.
+        if (longTermRttNanos > 2 * shortTermRttNanos) {
+            longTermRttNanos *= 0.95;
+        }
+
+        // A method that uses less than half of its limit says nothing about how much concurrency it could take.
+        if (maxInFlight < estimatedLimit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, longTermRttNanos / shortTermRttNanos));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit,
+                estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+        limit = (int) estimatedLimit;
+    }
+}
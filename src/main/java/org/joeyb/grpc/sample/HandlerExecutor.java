@@ -0,0 +1,28 @@
+package org.joeyb.grpc.sample;
+
+/**
+ * The executors that a server can run its call handlers on.
+ */
+public enum HandlerExecutor {
+
+    /**
+     * gRPC's default shared, unbounded cached thread pool.
+     */
+    DEFAULT,
+
+    /**
+     * Run handlers directly on the Netty event loop threads. This avoids a thread hop per call, but is only safe for
+     * services that never block.
+     */
+    DIRECT,
+
+    /**
+     * A {@link java.util.concurrent.ForkJoinPool} in async mode, bounded to a fixed parallelism.
+     */
+    FORK_JOIN,
+
+    /**
+     * A fixed size thread pool.
+     */
+    FIXED
+}
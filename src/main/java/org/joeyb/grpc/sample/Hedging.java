@@ -0,0 +1,404 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.grpc.Deadline;
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hedges and retries calls of idempotent methods to cut their tail latency. A call starts with one attempt, and if that
+ * attempt has not responded within the hedging delay, a second attempt is sent on the next channel, which with load
+ * balancing also goes to another server. The first attempt to respond with a message or to complete wins. Only its
+ * responses are passed on, and the other attempts are cancelled.
+ *
+ * <p>An attempt that fails does not win while another attempt is still outstanding, since that one may still succeed.
+ * Once the last outstanding attempt fails with {@code UNAVAILABLE} or {@code RESOURCE_EXHAUSTED}, the call is retried
+ * on the next channel, as long as its deadline has not passed and it has sent fewer than {@link #MAX_ATTEMPTS}
+ * attempts. Only when no retry can be sent does the error win. Calls of the {@code *Error} methods are expected to
+ * fail, so their first response of any kind wins and they are never retried.
+ *
+ * <p>The delay is either fixed or tracks a percentile of recent successful attempt latencies, so that only the slowest
+ * calls are hedged. Hedges and retries are paid for out of one {@link HedgingBudget}, and every attempt of a call
+ * shares its deadline.
+ */
+class Hedging {
+
+    /**
+     * Attempt latencies are gathered until they include at least this many attempts, and then set the hedging delay.
+     */
+    static final int MIN_DELAY_SAMPLES = 100;
+
+    /**
+     * The most attempts sent for one call, counting the first attempt, its hedge and its retries.
+     */
+    static final int MAX_ATTEMPTS = 3;
+
+    private static final Set<Status.Code> RETRYABLE_CODES =
+            EnumSet.of(Status.Code.UNAVAILABLE, Status.Code.RESOURCE_EXHAUSTED);
+
+    private static final long DELAY_UPDATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Recorder attemptLatencies = new Recorder(3);
+    private final Histogram pendingLatencies = new Histogram(3);
+    private final HedgingBudget budget;
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final RpcMethod method;
+    private final double percentile;
+    private final LongAdder retries = new LongAdder();
+    private final ScheduledExecutorService scheduler;
+    private final int streamLength;
+    private final List<TestServiceGrpc.TestServiceStub> stubs;
+    private final LongAdder throttledHedges = new LongAdder();
+    private final LongAdder throttledRetries = new LongAdder();
+
+    private volatile long delayNanos;
+
+    private Histogram latencyWindow;
+
+    /**
+     * Creates a hedging policy. Calls are hedged either after a fixed delay, or after they take longer than the given
+     * percentile of recent attempts. Calls are not hedged by percentile until {@link #MIN_DELAY_SAMPLES} attempts have
+     * been measured.
+     *
+     * @param stubs the stubs of the channels to send attempts on
+     * @param method the idempotent method to hedge
+     * @param streamLength the number of responses to ask for from streaming methods
+     * @param delayNanos the delay after which a call is hedged, or 0 to hedge by percentile
+     * @param percentile the percentile of attempt latencies to hedge after if there is no fixed delay, such as 95
+     * @param budget the budget that hedges are paid for out of
+     * @param scheduler the scheduler of the hedging timers and the delay updates
+     */
+    Hedging(List<TestServiceGrpc.TestServiceStub> stubs,
+            RpcMethod method,
+            int streamLength,
+            long delayNanos,
+            double percentile,
+            HedgingBudget budget,
+            ScheduledExecutorService scheduler) {
+        checkArgument(method.isIdempotent(), "Only idempotent methods can be hedged");
+        checkArgument(delayNanos >= 0, "delayNanos must not be negative");
+        checkArgument(percentile > 0 && percentile < 100, "percentile must be between 0 and 100");
+
+        this.budget = budget;
+        this.delayNanos = delayNanos > 0 ? delayNanos : Long.MAX_VALUE;
+        this.method = method;
+        this.percentile = percentile;
+        this.scheduler = scheduler;
+        this.streamLength = streamLength;
+        this.stubs = new ArrayList<>(stubs);
+
+        if (delayNanos == 0) {
+            scheduler.scheduleWithFixedDelay(this::updateDelay,
+                                             DELAY_UPDATE_INTERVAL_NANOS,
+                                             DELAY_UPDATE_INTERVAL_NANOS,
+                                             TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Starts a hedged call.
+     *
+     * @param stubIndex the index of the stub to send the first attempt on
+     * @param request the request
+     * @param deadline the deadline of every attempt, or {@code null} for none
+     * @param responseObserver the observer of the winning attempt's responses
+     */
+    void start(int stubIndex, TestRequest request, Deadline deadline, StreamObserver<TestResponse> responseObserver) {
+        budget.onCall();
+
+        new HedgedCall(stubIndex, request, deadline, responseObserver).start();
+    }
+
+    /**
+     * Returns the number of hedged attempts that were sent.
+     */
+    long hedges() {
+        return hedges.sum();
+    }
+
+    /**
+     * Returns the number of calls whose hedged attempt responded first.
+     */
+    long hedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * Returns the number of retries that were sent after every outstanding attempt of a call had failed.
+     */
+    long retries() {
+        return retries.sum();
+    }
+
+    /**
+     * Returns the number of hedges that were not sent because the budget was used up.
+     */
+    long throttledHedges() {
+        return throttledHedges.sum();
+    }
+
+    /**
+     * Returns the number of retries that were not sent because the budget was used up.
+     */
+    long throttledRetries() {
+        return throttledRetries.sum();
+    }
+
+    /**
+     * Returns the current hedging delay, or {@link Long#MAX_VALUE} if calls are not hedged yet.
+     */
+    long delayNanos() {
+        return delayNanos;
+    }
+
+    /**
+     * Sets the delay from the attempt latencies recorded since it was last set, once there are enough of them. Below
+     * {@link #MIN_DELAY_SAMPLES} attempts per update interval, the latencies of several intervals are combined.
+     */
+    synchronized void updateDelay() {
+        latencyWindow = attemptLatencies.getIntervalHistogram(latencyWindow);
+        pendingLatencies.add(latencyWindow);
+
+        if (pendingLatencies.getTotalCount() >= MIN_DELAY_SAMPLES) {
+            delayNanos = pendingLatencies.getValueAtPercentile(percentile);
+            pendingLatencies.reset();
+        }
+    }
+
+    /**
+     * The attempts of one call. All of the state is guarded by the call's lock.
+     */
+    private class HedgedCall {
+
+        private final List<Attempt> attempts = new ArrayList<>(MAX_ATTEMPTS);
+        private final Deadline deadline;
+        private final TestRequest request;
+        private final StreamObserver<TestResponse> responseObserver;
+        private final int stubIndex;
+
+        private ScheduledFuture<?> hedgeTimer;
+        private int outstandingAttempts;
+        private Attempt winner;
+
+        private HedgedCall(int stubIndex,
+                           TestRequest request,
+                           Deadline deadline,
+                           StreamObserver<TestResponse> responseObserver) {
+            this.deadline = deadline;
+            this.request = request;
+            this.responseObserver = responseObserver;
+            this.stubIndex = stubIndex;
+        }
+
+        synchronized void start() {
+            startAttempt(false);
+
+            long currentDelayNanos = delayNanos;
+
+            if (currentDelayNanos != Long.MAX_VALUE
+                    && (deadline == null || deadline.timeRemaining(TimeUnit.NANOSECONDS) > currentDelayNanos)) {
+                hedgeTimer = scheduler.schedule(this::hedge, currentDelayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private synchronized void hedge() {
+            if (winner != null || attempts.size() >= MAX_ATTEMPTS || isExpired()) {
+                return;
+            }
+
+            if (!budget.tryAcquire()) {
+                throttledHedges.increment();
+                return;
+            }
+
+            hedges.increment();
+            startAttempt(true);
+        }
+
+        /**
+         * Retries the call after its last outstanding attempt failed with the given status, if the status is worth
+         * retrying and the deadline, the attempt limit and the budget allow it.
+         *
+         * @return whether a retry was sent
+         */
+        private boolean retry(Status status) {
+            if (!RETRYABLE_CODES.contains(status.getCode()) || attempts.size() >= MAX_ATTEMPTS || isExpired()) {
+                return false;
+            }
+
+            if (!budget.tryAcquire()) {
+                throttledRetries.increment();
+                return false;
+            }
+
+            retries.increment();
+            startAttempt(false);
+
+            return true;
+        }
+
+        private boolean isExpired() {
+            return deadline != null && deadline.isExpired();
+        }
+
+        /**
+         * Sends an attempt on the channel after the previous attempt's, so that every attempt goes to another channel
+         * than the one before it.
+         */
+        private void startAttempt(boolean hedge) {
+            TestServiceGrpc.TestServiceStub stub = stubs.get((stubIndex + attempts.size()) % stubs.size());
+            Attempt attempt = new Attempt(this, hedge);
+
+            attempts.add(attempt);
+            outstandingAttempts++;
+            method.start(deadline != null ? stub.withDeadline(deadline) : stub, request, streamLength, attempt);
+        }
+
+        /**
+         * Records that the given attempt failed, and decides whether its error wins. It does not while another attempt
+         * is still outstanding, or if the call could be retried.
+         *
+         * @return whether the attempt's error is the call's result
+         */
+        private boolean fail(Attempt attempt, Throwable t) {
+            // The error methods respond by failing, so their errors are responses like any other.
+            if (method.expectsError()) {
+                return win(attempt, true);
+            }
+
+            synchronized (this) {
+                if (winner != null) {
+                    return winner == attempt;
+                }
+
+                attempt.failed = true;
+                outstandingAttempts--;
+
+                if (outstandingAttempts > 0 || retry(Status.fromThrowable(t))) {
+                    return false;
+                }
+            }
+
+            return win(attempt, false);
+        }
+
+        /**
+         * Makes the given attempt the winner if there is none yet, and cancels the others that are still outstanding.
+         *
+         * @param succeeded whether the attempt responded as the method is expected to, rather than failed
+         * @return whether the attempt is the winner
+         */
+        private boolean win(Attempt attempt, boolean succeeded) {
+            List<Attempt> losers = new ArrayList<>(MAX_ATTEMPTS - 1);
+
+            synchronized (this) {
+                if (winner != null) {
+                    return winner == attempt;
+                }
+
+                winner = attempt;
+
+                if (hedgeTimer != null) {
+                    hedgeTimer.cancel(false);
+                }
+
+                if (succeeded && attempt.hedge) {
+                    hedgeWins.increment();
+                }
+
+                for (Attempt other : attempts) {
+                    if (other != attempt && !other.failed) {
+                        losers.add(other);
+                    }
+                }
+            }
+
+            // Fast failures would pull the percentile down, and with it the delay after which calls are hedged. For the
+            // same reason, the slow attempts that the winner overtook count with the time they had taken so far, which
+            // is the least their latency would have been.
+            if (succeeded) {
+                long nowNanos = System.nanoTime();
+
+                attemptLatencies.recordValue(nowNanos - attempt.startNanos);
+
+                for (Attempt loser : losers) {
+                    if (loser.startNanos < attempt.startNanos) {
+                        attemptLatencies.recordValue(nowNanos - loser.startNanos);
+                    }
+                }
+            }
+
+            // Cancelling outside of the lock, since a direct executor may close the losing call right away.
+            for (Attempt loser : losers) {
+                loser.cancel();
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * One attempt of a call, which only passes its responses on if it wins.
+     */
+    private static class Attempt implements ClientResponseObserver<TestRequest, TestResponse> {
+
+        private final HedgedCall call;
+        private final boolean hedge;
+        private final long startNanos = System.nanoTime();
+
+        private boolean failed;
+        private ClientCallStreamObserver<TestRequest> requestStream;
+
+        private Attempt(HedgedCall call, boolean hedge) {
+            this.call = call;
+            this.hedge = hedge;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<TestRequest> requestStream) {
+            this.requestStream = requestStream;
+        }
+
+        @Override
+        public void onNext(TestResponse value) {
+            if (call.win(this, true)) {
+                call.responseObserver.onNext(value);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (call.fail(this, t)) {
+                call.responseObserver.onError(t);
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            if (call.win(this, true)) {
+                call.responseObserver.onCompleted();
+            }
+        }
+
+        private void cancel() {
+            // For unary and server streaming calls, the request stream's onError() cancels the call.
+            requestStream.onError(Status.CANCELLED.withDescription("Another attempt responded first").asException());
+        }
+    }
+}
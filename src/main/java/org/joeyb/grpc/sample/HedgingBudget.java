@@ -0,0 +1,62 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps hedged attempts at a fraction of all calls, so that hedging cannot multiply the load on servers that are already
+ * slow because they are overloaded. Every call deposits {@code ratio} tokens, up to {@code maxTokens}, and every hedge
+ * spends a whole token. A burst of slow calls can spend the saved up tokens, but over time no more than {@code ratio}
+ * hedges are sent per call. During an outage the tokens run out and calls stop being hedged.
+ */
+class HedgingBudget {
+
+    // Tokens are kept in thousandths, so that fractional deposits add up exactly.
+    private static final long TOKEN = 1000;
+
+    private final long deposit;
+    private final long maxTokens;
+    private final AtomicLong tokens;
+
+    /**
+     * Creates a budget that starts full.
+     *
+     * @param ratio the tokens deposited by each call, which is the long term ratio of hedges to calls
+     * @param maxTokens the most tokens that can be saved up for a burst of hedges
+     */
+    HedgingBudget(double ratio, int maxTokens) {
+        checkArgument(ratio >= 0 && ratio <= 1, "ratio must be between 0 and 1");
+        checkArgument(maxTokens > 0, "maxTokens must be positive");
+
+        this.deposit = Math.round(ratio * TOKEN);
+        this.maxTokens = maxTokens * TOKEN;
+        this.tokens = new AtomicLong(this.maxTokens);
+    }
+
+    /**
+     * Deposits the tokens of a call.
+     */
+    void onCall() {
+        tokens.accumulateAndGet(deposit, (current, added) -> Math.min(maxTokens, current + added));
+    }
+
+    /**
+     * Spends a token on a hedge.
+     *
+     * @return whether the hedge may be sent, or {@code false} if the budget is used up
+     */
+    boolean tryAcquire() {
+        long current;
+
+        do {
+            current = tokens.get();
+
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+
+        return true;
+    }
+}
@@ -0,0 +1,112 @@
+package org.joeyb.grpc.sample;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PoolChunkListMetric;
+import io.netty.buffer.PoolChunkMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A {@link PooledByteBufAllocator} that counts the buffers it allocates. Arenas only count the allocations that reach
+ * them, which are the ones that no thread-local cache could serve, so together the counts give the caches' hit rate.
+ */
+class InstrumentedPooledByteBufAllocator extends PooledByteBufAllocator {
+
+    private final LongAdder allocations = new LongAdder();
+    private final int chunkSize;
+
+    // Netty 4.1.8 deprecates every constructor that takes cache sizes without offering one that does not, so there is
+    // nothing to move to until the cache alignment constructor of later versions.
+    @SuppressWarnings("deprecation")
+    InstrumentedPooledByteBufAllocator(boolean preferDirect,
+                                       int heapArenas,
+                                       int directArenas,
+                                       int pageSize,
+                                       int maxOrder,
+                                       int tinyCacheSize,
+                                       int smallCacheSize,
+                                       int normalCacheSize) {
+        super(preferDirect,
+              heapArenas,
+              directArenas,
+              pageSize,
+              maxOrder,
+              tinyCacheSize,
+              smallCacheSize,
+              normalCacheSize);
+
+        this.chunkSize = pageSize << maxOrder;
+    }
+
+    @Override
+    protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+        allocations.increment();
+        return super.newHeapBuffer(initialCapacity, maxCapacity);
+    }
+
+    @Override
+    protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+        allocations.increment();
+        return super.newDirectBuffer(initialCapacity, maxCapacity);
+    }
+
+    /**
+     * Returns the current statistics of the pool and each of its arenas. The counters are read one after the other
+     * while buffers are being allocated, so they are only consistent with each other on an idle pool.
+     */
+    PooledAllocatorStats stats() {
+        PooledAllocatorStats.Builder builder = PooledAllocatorStats.newBuilder()
+                .setChunkSize(chunkSize)
+                .setThreadLocalCaches(numThreadLocalCaches());
+
+        long arenaAllocations = addArenas(directArenas(), builder::addDirectArenas)
+                + addArenas(heapArenas(), builder::addHeapArenas);
+        long allocations = Math.max(this.allocations.sum(), arenaAllocations);
+
+        return builder.setAllocations(allocations)
+                .setCacheHitRate(allocations > 0 ? 1 - (double) arenaAllocations / allocations : 0)
+                .build();
+    }
+
+    private static long addArenas(List<PoolArenaMetric> arenas, Consumer<ArenaStats> consumer) {
+        long allocations = 0;
+
+        for (PoolArenaMetric arena : arenas) {
+            ArenaStats stats = arenaStats(arena);
+
+            consumer.accept(stats);
+            allocations += stats.getAllocations();
+        }
+
+        return allocations;
+    }
+
+    private static ArenaStats arenaStats(PoolArenaMetric arena) {
+        long usedBytes = 0;
+        long pinnedBytes = 0;
+
+        for (PoolChunkListMetric chunkList : arena.chunkLists()) {
+            for (PoolChunkMetric chunk : chunkList) {
+                usedBytes += chunk.chunkSize();
+                pinnedBytes += chunk.chunkSize() - chunk.freeBytes();
+            }
+        }
+
+        return ArenaStats.newBuilder()
+                .setUsedBytes(usedBytes)
+                .setPinnedBytes(pinnedBytes)
+                .setAllocations(arena.numAllocations())
+                .setTinyAllocations(arena.numTinyAllocations())
+                .setSmallAllocations(arena.numSmallAllocations())
+                .setNormalAllocations(arena.numNormalAllocations())
+                .setHugeAllocations(arena.numHugeAllocations())
+                .setDeallocations(arena.numDeallocations())
+                .setActiveAllocations(arena.numActiveAllocations())
+                .setThreadCaches(arena.numThreadCaches())
+                .build();
+    }
+}
@@ -0,0 +1,214 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.Attributes;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer2;
+import io.grpc.Metadata;
+import io.grpc.ResolvedServerInfoGroup;
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Balances calls across the resolved addresses by sending each call to the ready subchannel with the fewest
+ * outstanding calls. Round robin spreads calls evenly, but when one server falls behind, it keeps getting its share and
+ * its calls queue up. Picking the least loaded subchannel steers calls away from it until it catches up.
+ *
+ * <p>The balancer only sees picks, not when calls end, so calls are counted by
+ * {@link OutstandingCallsClientInterceptor}, which must be installed on the same channel. Calls made without it are
+ * never counted, which degrades this to round robin.
+ */
+class LeastRequestsLoadBalancerFactory extends LoadBalancer2.Factory {
+
+    /**
+     * The call affinity key under which {@link OutstandingCallsClientInterceptor} passes each call's slot to the
+     * picker. The picker fills the slot with the outstanding call counter of the subchannel that it picks.
+     */
+    static final Attributes.Key<AtomicReference<AtomicInteger>> OUTSTANDING_CALLS_KEY =
+            Attributes.Key.of("outstanding-calls");
+
+    private static final LeastRequestsLoadBalancerFactory INSTANCE = new LeastRequestsLoadBalancerFactory();
+
+    private LeastRequestsLoadBalancerFactory() {
+    }
+
+    static LeastRequestsLoadBalancerFactory getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public LoadBalancer2 newLoadBalancer(LoadBalancer2.Helper helper) {
+        return new LeastRequestsLoadBalancer(helper);
+    }
+
+    /**
+     * A subchannel with its latest state and the number of calls that were sent to it and have not closed yet.
+     */
+    private static class Backend {
+
+        private final AtomicInteger outstandingCalls = new AtomicInteger();
+        private final LoadBalancer2.Subchannel subchannel;
+
+        private ConnectivityState state = ConnectivityState.IDLE;
+
+        private Backend(LoadBalancer2.Subchannel subchannel) {
+            this.subchannel = subchannel;
+        }
+    }
+
+    /**
+     * Keeps a subchannel per address. The channel calls every method from its own serialized executor, so the state
+     * needs no locking.
+     */
+    private static class LeastRequestsLoadBalancer extends LoadBalancer2 {
+
+        private final Map<EquivalentAddressGroup, Backend> backends = new HashMap<>();
+        private final Helper helper;
+
+        private Status nameResolutionError;
+
+        private LeastRequestsLoadBalancer(Helper helper) {
+            this.helper = helper;
+        }
+
+        @Override
+        public void handleResolvedAddresses(List<ResolvedServerInfoGroup> servers, Attributes attributes) {
+            Set<EquivalentAddressGroup> addresses = new HashSet<>();
+
+            for (ResolvedServerInfoGroup server : servers) {
+                EquivalentAddressGroup address = server.toEquivalentAddressGroup();
+
+                addresses.add(address);
+
+                if (!backends.containsKey(address)) {
+                    Backend backend = new Backend(helper.createSubchannel(address, Attributes.EMPTY));
+
+                    backends.put(address, backend);
+                    backend.subchannel.requestConnection();
+                }
+            }
+
+            backends.entrySet().removeIf(entry -> {
+                if (addresses.contains(entry.getKey())) {
+                    return false;
+                }
+
+                entry.getValue().subchannel.shutdown();
+
+                return true;
+            });
+
+            nameResolutionError = null;
+            updatePicker();
+        }
+
+        @Override
+        public void handleNameResolutionError(Status error) {
+            nameResolutionError = error;
+            updatePicker();
+        }
+
+        @Override
+        public void handleSubchannelState(Subchannel subchannel, ConnectivityStateInfo stateInfo) {
+            Backend backend = backends.get(subchannel.getAddresses());
+
+            if (backend == null || backend.subchannel != subchannel) {
+                return;
+            }
+
+            backend.state = stateInfo.getState();
+
+            // Keep reconnecting, so that a restarted server gets calls again.
+            if (backend.state == ConnectivityState.IDLE) {
+                subchannel.requestConnection();
+            }
+
+            updatePicker();
+        }
+
+        @Override
+        public void shutdown() {
+            for (Backend backend : backends.values()) {
+                backend.subchannel.shutdown();
+            }
+
+            backends.clear();
+        }
+
+        private void updatePicker() {
+            List<Backend> readyBackends = new ArrayList<>();
+
+            for (Backend backend : backends.values()) {
+                if (backend.state == ConnectivityState.READY) {
+                    readyBackends.add(backend);
+                }
+            }
+
+            helper.updatePicker(new Picker(readyBackends, nameResolutionError));
+        }
+    }
+
+    /**
+     * Picks the ready subchannel with the fewest outstanding calls. Ties, which are common when calls are short, are
+     * broken in round robin order, so that an idle channel does not send every call to the same subchannel.
+     */
+    private static class Picker extends LoadBalancer2.SubchannelPicker {
+
+        private final Backend[] backends;
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final Status nameResolutionError;
+
+        private Picker(List<Backend> backends, Status nameResolutionError) {
+            this.backends = backends.toArray(new Backend[backends.size()]);
+            this.nameResolutionError = nameResolutionError;
+        }
+
+        @Override
+        public LoadBalancer2.PickResult pickSubchannel(Attributes affinity, Metadata headers) {
+            if (backends.length == 0) {
+                // Calls wait for a subchannel to become ready, unless the addresses could not be resolved at all.
+                return nameResolutionError != null
+                        ? LoadBalancer2.PickResult.withError(nameResolutionError)
+                        : LoadBalancer2.PickResult.withNoResult();
+            }
+
+            int start = (nextIndex.getAndIncrement() & Integer.MAX_VALUE) % backends.length;
+            Backend picked = backends[start];
+            int pickedCalls = picked.outstandingCalls.get();
+
+            for (int i = 1; i < backends.length && pickedCalls > 0; i++) {
+                Backend backend = backends[(start + i) % backends.length];
+                int calls = backend.outstandingCalls.get();
+
+                if (calls < pickedCalls) {
+                    picked = backend;
+                    pickedCalls = calls;
+                }
+            }
+
+            AtomicReference<AtomicInteger> slot = affinity.get(OUTSTANDING_CALLS_KEY);
+
+            if (slot != null) {
+                picked.outstandingCalls.incrementAndGet();
+
+                // A call is picked again if the transport of its first pick went away before the call started.
+                AtomicInteger previous = slot.getAndSet(picked.outstandingCalls);
+
+                if (previous != null) {
+                    previous.decrementAndGet();
+                }
+            }
+
+            return LoadBalancer2.PickResult.withSubchannel(picked.subchannel);
+        }
+    }
+}
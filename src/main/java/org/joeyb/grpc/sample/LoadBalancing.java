@@ -0,0 +1,48 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.LoadBalancer2;
+import io.grpc.PickFirstBalancerFactory2;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.util.RoundRobinLoadBalancerFactory2;
+
+/**
+ * The policies that a client channel can balance its calls across several server addresses with.
+ */
+public enum LoadBalancing {
+
+    /**
+     * Every call goes to the first address that can be connected to, the same as a channel to a single address.
+     */
+    PICK_FIRST(PickFirstBalancerFactory2.getInstance()),
+
+    /**
+     * Calls rotate across a connection to every address.
+     */
+    ROUND_ROBIN(RoundRobinLoadBalancerFactory2.getInstance()),
+
+    /**
+     * Each call goes to the connection with the fewest outstanding calls.
+     */
+    LEAST_REQUESTS(LeastRequestsLoadBalancerFactory.getInstance()) {
+        @Override
+        NettyChannelBuilder configure(NettyChannelBuilder channelBuilder) {
+            return super.configure(channelBuilder).intercept(new OutstandingCallsClientInterceptor());
+        }
+    };
+
+    private final LoadBalancer2.Factory factory;
+
+    LoadBalancing(LoadBalancer2.Factory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Sets up the channel builder to balance calls with this policy.
+     *
+     * @param channelBuilder the builder of a channel that resolves to several addresses
+     * @return the channel builder
+     */
+    NettyChannelBuilder configure(NettyChannelBuilder channelBuilder) {
+        return channelBuilder.loadBalancerFactory(factory);
+    }
+}
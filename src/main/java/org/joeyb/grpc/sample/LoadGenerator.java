@@ -0,0 +1,253 @@
+package org.joeyb.grpc.sample;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.grpc.Deadline;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * Drives load against a {@link TestServiceGrpc} server and records the latency of every call that starts after the
+ * warmup period.
+ *
+ * <p>In open loop mode each generator starts calls on a fixed schedule, regardless of how many are still in flight.
+ * Latency is measured from the time a call was scheduled to start rather than the time it actually started, so a
+ * stalled client or server shows up in the results instead of silently lowering the request rate (coordinated
+ * omission). In closed loop mode each generator keeps a fixed number of calls in flight and starts a new call as soon
+ * as one finishes.
+ *
+ * <p>When batching is enabled, every generator's calls go through a {@link UnaryBatcher} for their channel, and the
+ * latency of each call includes the time it waited for its batch to be sent. When hedging is enabled, calls go through
+ * {@link Hedging}, and the latency of each call is that of its winning attempt.
+ */
+class LoadGenerator {
+
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    // Lets a burst of slow calls be hedged right away, while the budget ratio holds over longer periods.
+    private static final int HEDGING_BUDGET_MAX_TOKENS = 100;
+
+    private final ScheduledExecutorService batchScheduler;
+    private final List<UnaryBatcher> batchers;
+    private final LongAdder failedCalls = new LongAdder();
+    private final Hedging hedging;
+    private final ScheduledExecutorService hedgingScheduler;
+    private final ClientOptions options;
+    private final AtomicLong outstandingCalls = new AtomicLong();
+    private final Recorder recorder = new Recorder(3);
+    private final TestRequest request;
+    private final List<TestServiceGrpc.TestServiceStub> stubs;
+    private final TraceRecorder traceRecorder;
+
+    private volatile long measurementStartNanos;
+    private volatile long stopNanos;
+
+    /**
+     * Creates a load generator.
+     *
+     * @param channels the channels to spread calls across
+     * @param options the client options
+     * @param traceRecorder the recorder of the channels' traced calls, or {@code null} if calls are not traced
+     */
+    LoadGenerator(List<ManagedChannel> channels, ClientOptions options, TraceRecorder traceRecorder) {
+        this.options = options;
+        this.traceRecorder = traceRecorder;
+        TestRequest.Builder requestBuilder = TestRequest.newBuilder();
+
+        options.payloadType.fill(requestBuilder, options.payloadSize);
+
+        if (options.hasWorkload()) {
+            requestBuilder.setWorkload(options.workload());
+        }
+
+        this.request = requestBuilder.build();
+        this.stubs = new ArrayList<>(channels.size());
+
+        channels.forEach(c -> stubs.add(TestServiceGrpc.newStub(c)));
+
+        if (options.isBatching()) {
+            this.batchScheduler = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("unary-batcher").build());
+            this.batchers = stubs.stream()
+                    .map(s -> new UnaryBatcher(s,
+                                               options.batchSize,
+                                               TimeUnit.MICROSECONDS.toNanos(options.batchWindowMicros),
+                                               batchScheduler))
+                    .collect(Collectors.toList());
+        } else {
+            this.batchScheduler = null;
+            this.batchers = null;
+        }
+
+        if (options.hedging) {
+            this.hedgingScheduler = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hedging").build());
+            this.hedging = new Hedging(stubs,
+                                       options.method,
+                                       options.streamLength,
+                                       TimeUnit.MICROSECONDS.toNanos(options.hedgingDelayMicros),
+                                       options.hedgingPercentile,
+                                       new HedgingBudget(options.hedgingBudget, HEDGING_BUDGET_MAX_TOKENS),
+                                       hedgingScheduler);
+        } else {
+            this.hedgingScheduler = null;
+            this.hedging = null;
+        }
+    }
+
+    /**
+     * Runs the warmup and measurement periods, waits for outstanding calls to finish and returns the results.
+     */
+    LoadReport run() throws InterruptedException {
+        long startNanos = System.nanoTime();
+
+        measurementStartNanos = startNanos + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        stopNanos = measurementStartNanos + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+
+        List<Thread> generatorThreads = new ArrayList<>(options.concurrency);
+
+        for (int i = 0; i < options.concurrency; i++) {
+            int stubIndex = i % stubs.size();
+
+            if (options.isOpenLoop()) {
+                long intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(options.concurrency) / options.rate));
+                long firstStartNanos = startNanos + intervalNanos * i / options.concurrency;
+
+                Thread thread = new Thread(() -> runOpenLoop(stubIndex, firstStartNanos, intervalNanos),
+                                           "load-generator-" + i);
+                thread.setDaemon(true);
+                thread.start();
+
+                generatorThreads.add(thread);
+            } else {
+                for (int j = 0; j < options.outstandingCalls; j++) {
+                    startClosedLoopCall(stubIndex);
+                }
+            }
+        }
+
+        for (Thread thread : generatorThreads) {
+            thread.join();
+        }
+
+        sleepUntil(stopNanos);
+
+        if (batchers != null) {
+            batchers.forEach(UnaryBatcher::close);
+        }
+
+        awaitOutstandingCalls();
+
+        if (batchScheduler != null) {
+            batchScheduler.shutdownNow();
+        }
+
+        if (hedgingScheduler != null) {
+            hedgingScheduler.shutdownNow();
+        }
+
+        return new LoadReport(options, recorder.getIntervalHistogram(), failedCalls.sum(), hedging, traceRecorder);
+    }
+
+    private void awaitOutstandingCalls() throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+
+        while (outstandingCalls.get() > 0 && System.nanoTime() < deadlineNanos) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void recordCall(long startNanos, boolean succeeded) {
+        if (startNanos >= measurementStartNanos) {
+            if (succeeded) {
+                recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+            } else {
+                failedCalls.increment();
+            }
+        }
+    }
+
+    private void runOpenLoop(int stubIndex, long firstStartNanos, long intervalNanos) {
+        for (long startNanos = firstStartNanos; startNanos < stopNanos; startNanos += intervalNanos) {
+            sleepUntil(startNanos);
+            startCall(stubIndex, startNanos, null);
+        }
+    }
+
+    private void startCall(int stubIndex, long startNanos, Runnable onFinished) {
+        outstandingCalls.incrementAndGet();
+
+        StreamObserver<TestResponse> responseObserver = new StreamObserver<TestResponse>() {
+            @Override
+            public void onNext(TestResponse value) {
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // The error methods fail with UNKNOWN, so any other status, such as an exceeded deadline or a call
+                // rejected by admission control, is a failure for them too.
+                finish(options.method.expectsError() && Status.fromThrowable(t).getCode() == Status.Code.UNKNOWN);
+            }
+
+            @Override
+            public void onCompleted() {
+                finish(!options.method.expectsError());
+            }
+
+            private void finish(boolean succeeded) {
+                recordCall(startNanos, succeeded);
+                outstandingCalls.decrementAndGet();
+
+                if (onFinished != null) {
+                    onFinished.run();
+                }
+            }
+        };
+
+        Deadline deadline = options.deadlineMillis > 0
+                ? Deadline.after(options.deadlineMillis, TimeUnit.MILLISECONDS)
+                : null;
+
+        if (batchers != null) {
+            batchers.get(stubIndex).unary(request, responseObserver);
+        } else if (hedging != null) {
+            hedging.start(stubIndex, request, deadline, responseObserver);
+        } else {
+            TestServiceGrpc.TestServiceStub stub = stubs.get(stubIndex);
+
+            options.method.start(deadline != null ? stub.withDeadline(deadline) : stub,
+                                 request,
+                                 options.streamLength,
+                                 responseObserver);
+        }
+    }
+
+    private void startClosedLoopCall(int stubIndex) {
+        long startNanos = System.nanoTime();
+
+        if (startNanos < stopNanos) {
+            startCall(stubIndex, startNanos, () -> startClosedLoopCall(stubIndex));
+        }
+    }
+
+    private static void sleepUntil(long deadlineNanos) {
+        long remainingNanos;
+
+        while ((remainingNanos = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remainingNanos);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package org.joeyb.grpc.sample;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The results of a {@link LoadGenerator} run. Latencies are in microseconds. The full histogram is included in
+ * HdrHistogram's compressed, base64 encoded form so that results from several runs or clients can be merged later.
+ */
+class LoadReport {
+
+    private static final int SLOWEST_TRACES = 10;
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    final String method;
+    final String mode;
+    final double targetRate;
+    final List<String> targets;
+    final String loadBalancing;
+    final int channels;
+    final int concurrency;
+    final int outstandingCalls;
+    final int payloadSize;
+    final String payloadType;
+    final int streamLength;
+    final long workloadCpuMicros;
+    final long workloadIoLatencyMicros;
+    final String workloadIoLatencyDistribution;
+    final int batchSize;
+    final long batchWindowMicros;
+    final String compression;
+    final int compressionThresholdBytes;
+    final long deadlineMillis;
+    final boolean hedging;
+    final long hedgingDelayMicros;
+    final double hedgingPercentile;
+    final double hedgingBudget;
+    final double traceSampleRate;
+    final int warmupSeconds;
+    final int durationSeconds;
+
+    final long completedCalls;
+    final long failedCalls;
+    final long hedges;
+    final long hedgeWins;
+    final long throttledHedges;
+    final long retries;
+    final long throttledRetries;
+    final double achievedQps;
+    final Latency latencyMicros;
+    final String histogram;
+    final List<String> slowestTraces;
+
+    LoadReport(ClientOptions options,
+               Histogram histogram,
+               long failedCalls,
+               Hedging hedgingPolicy,
+               TraceRecorder traceRecorder) {
+        this.method = options.method.name();
+        this.mode = options.isOpenLoop() ? "open-loop" : "closed-loop";
+        this.targetRate = options.rate;
+        this.targets = options.targets.isEmpty()
+                ? Collections.singletonList(options.host + ":" + options.port)
+                : options.targets;
+        this.loadBalancing = options.targets.isEmpty() ? null : options.loadBalancing.name();
+        this.channels = options.channels;
+        this.concurrency = options.concurrency;
+        this.outstandingCalls = options.isOpenLoop() ? 0 : options.outstandingCalls;
+        this.payloadSize = options.payloadSize;
+        this.payloadType = options.payloadType.name();
+        this.streamLength = options.streamLength;
+        this.workloadCpuMicros = options.workloadCpuMicros;
+        this.workloadIoLatencyMicros = options.workloadIoLatencyMicros;
+        this.workloadIoLatencyDistribution = options.hasWorkload()
+                ? options.workloadIoLatencyDistribution.name()
+                : null;
+        this.batchSize = options.batchSize;
+        this.batchWindowMicros = options.isBatching() ? options.batchWindowMicros : 0;
+        this.compression = options.compression.name();
+        this.compressionThresholdBytes = options.compressionThresholdBytes;
+        this.deadlineMillis = options.deadlineMillis;
+        this.hedging = hedgingPolicy != null;
+        this.hedgingDelayMicros = hedging ? options.hedgingDelayMicros : 0;
+        this.hedgingPercentile = hedging && options.hedgingDelayMicros == 0 ? options.hedgingPercentile : 0;
+        this.hedgingBudget = hedging ? options.hedgingBudget : 0;
+        this.traceSampleRate = traceRecorder != null ? traceRecorder.sampleRate() : 0;
+        this.warmupSeconds = options.warmupSeconds;
+        this.durationSeconds = options.durationSeconds;
+
+        this.completedCalls = histogram.getTotalCount();
+        this.failedCalls = failedCalls;
+        this.hedges = hedging ? hedgingPolicy.hedges() : 0;
+        this.hedgeWins = hedging ? hedgingPolicy.hedgeWins() : 0;
+        this.throttledHedges = hedging ? hedgingPolicy.throttledHedges() : 0;
+        this.retries = hedging ? hedgingPolicy.retries() : 0;
+        this.throttledRetries = hedging ? hedgingPolicy.throttledRetries() : 0;
+        this.achievedQps = (double) (completedCalls + failedCalls) / durationSeconds;
+        this.latencyMicros = new Latency(histogram);
+        this.histogram = encode(histogram);
+        this.slowestTraces = traceRecorder != null
+                ? traceRecorder.slowest(SLOWEST_TRACES).stream().map(CallTrace::toString).collect(Collectors.toList())
+                : Collections.emptyList();
+    }
+
+    /**
+     * Prints a human readable summary of the results.
+     *
+     * @param out the stream to print to
+     */
+    void print(PrintStream out) {
+        out.printf("Method:          %s (%s%s)%n",
+                   method,
+                   mode,
+                   targetRate > 0 ? String.format(" at %.1f calls/s", targetRate) : "");
+        if (loadBalancing != null) {
+            out.printf("Targets:         %s (%s)%n", String.join(", ", targets), loadBalancing);
+        }
+
+        if (workloadIoLatencyDistribution != null) {
+            out.printf("Workload:        %d us CPU, %d us %s I/O latency%n",
+                       workloadCpuMicros,
+                       workloadIoLatencyMicros,
+                       workloadIoLatencyDistribution);
+        }
+
+        if (batchSize > 1) {
+            out.printf("Batching:        up to %d calls per UnaryBatch, %d us window%n", batchSize, batchWindowMicros);
+        }
+
+        if (!MessageCompression.IDENTITY.name().equals(compression)) {
+            out.printf("Compression:     %s for requests of %d bytes or more%n",
+                       compression,
+                       compressionThresholdBytes);
+        }
+
+        if (hedging) {
+            out.printf("Hedging:         after %s, budget %.0f%% of calls%n",
+                       hedgingDelayMicros > 0
+                               ? hedgingDelayMicros + " us"
+                               : String.format("the p%.1f latency", hedgingPercentile),
+                       hedgingBudget * 100);
+            out.printf("Hedges:          %d sent, %d won, %d over budget%n", hedges, hedgeWins, throttledHedges);
+            out.printf("Retries:         %d sent, %d over budget%n", retries, throttledRetries);
+        }
+
+        if (deadlineMillis > 0) {
+            out.printf("Deadline:        %d ms%n", deadlineMillis);
+        }
+
+        out.printf("Completed calls: %d%n", completedCalls);
+        out.printf("Failed calls:    %d%n", failedCalls);
+        out.printf("Achieved QPS:    %.1f%n", achievedQps);
+        out.printf("Latency (us):    p50=%d p90=%d p99=%d p99.9=%d max=%d mean=%.1f%n",
+                   latencyMicros.p50,
+                   latencyMicros.p90,
+                   latencyMicros.p99,
+                   latencyMicros.p999,
+                   latencyMicros.max,
+                   latencyMicros.mean);
+
+        if (!slowestTraces.isEmpty()) {
+            out.printf("Slowest traces:  %.2f%% of calls sampled%n", traceSampleRate * 100);
+            slowestTraces.forEach(trace -> out.printf("  %s%n", trace));
+        }
+    }
+
+    String toJson() {
+        return GSON.toJson(this);
+    }
+
+    private static String encode(Histogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length));
+    }
+
+    static class Latency {
+
+        final long p50;
+        final long p90;
+        final long p99;
+        final long p999;
+        final long max;
+        final double mean;
+
+        Latency(Histogram histogram) {
+            this.p50 = histogram.getValueAtPercentile(50);
+            this.p90 = histogram.getValueAtPercentile(90);
+            this.p99 = histogram.getValueAtPercentile(99);
+            this.p999 = histogram.getValueAtPercentile(99.9);
+            this.max = histogram.getMaxValue();
+            this.mean = histogram.getMean();
+        }
+    }
+}
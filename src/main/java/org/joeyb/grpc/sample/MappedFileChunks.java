@@ -0,0 +1,89 @@
+package org.joeyb.grpc.sample;
+
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Splits a file into {@link FileChunk}s whose data is read through a memory mapping.
+ *
+ * <p>The file is mapped in regions of up to {@link #MAPPING_BYTES}, and each chunk's data wraps a slice of the current
+ * region. The file's bytes are never copied into a heap array of their own. They only pass through the small buffer
+ * that protobuf reuses while the transport serializes a chunk into its direct buffers.
+ */
+class MappedFileChunks implements AutoCloseable {
+
+    /**
+     * The largest region of the file that is mapped at once. A region stays mapped until its buffer is garbage
+     * collected, so mapping the file piecewise bounds the address space that a transfer holds on to.
+     */
+    static final long MAPPING_BYTES = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final int chunkSize;
+    private final long size;
+
+    private MappedByteBuffer mapping;
+    private long mappingOffset;
+    private long position;
+
+    /**
+     * Creates chunks of the whole file. Closing the chunks closes the channel.
+     *
+     * @param channel a channel open for reading the file
+     * @param chunkSize the maximum number of file bytes per chunk
+     */
+    MappedFileChunks(FileChannel channel, int chunkSize) throws IOException {
+        this.channel = channel;
+        this.chunkSize = chunkSize;
+        this.size = channel.size();
+    }
+
+    boolean hasNext() {
+        return position < size;
+    }
+
+    long position() {
+        return position;
+    }
+
+    /**
+     * Returns the chunk at the current position and moves past it. Chunks never span two mapped regions, so a chunk
+     * at the end of a region can be shorter than the chunk size.
+     */
+    FileChunk next() throws IOException {
+        if (mapping == null || position >= mappingOffset + mapping.capacity()) {
+            mappingOffset = position;
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPING_BYTES, size - position));
+        }
+
+        ByteBuffer data = mapping.duplicate();
+        int start = (int) (position - mappingOffset);
+
+        data.position(start);
+        data.limit((int) Math.min(data.capacity(), (long) start + chunkSize));
+
+        FileChunk chunk = FileChunk.newBuilder()
+                .setOffset(position)
+                .setData(UnsafeByteOperations.unsafeWrap(data.slice()))
+                .build();
+
+        position += chunk.getData().size();
+
+        return chunk;
+    }
+
+    @Override
+    public void close() {
+        mapping = null;
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // The file was only read, so there is nothing that could have been lost.
+        }
+    }
+}
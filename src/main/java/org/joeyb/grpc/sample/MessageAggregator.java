@@ -0,0 +1,88 @@
+package org.joeyb.grpc.sample;
+
+import com.google.common.base.Utf8;
+
+/**
+ * Joins a stream of request messages into a single string as they arrive, retaining at most a fixed number of UTF-8
+ * encoded bytes. Once a message does not fit, it and every message after it are counted instead of retained, so the
+ * memory used by an aggregator is bounded regardless of the stream length.
+ *
+ * <p>The stream's size limit can be larger than the retained bytes. The whole stream is then measured against the size
+ * limit, but only its start is kept, which is enough for results that are cut short anyway, such as error
+ * descriptions.
+ */
+class MessageAggregator {
+
+    static final String SEPARATOR = ", ";
+
+    private static final int SEPARATOR_BYTES = Utf8.encodedLength(SEPARATOR);
+
+    private final StringBuilder joinedMessages = new StringBuilder();
+    private final int maxBytes;
+    private final int maxRetainedBytes;
+
+    private long droppedMessageCount;
+    private long retainedMessageCount;
+    private int retainedBytes;
+    private long totalBytes;
+
+    MessageAggregator(int maxRetainedBytes) {
+        this(maxRetainedBytes, maxRetainedBytes);
+    }
+
+    MessageAggregator(int maxBytes, int maxRetainedBytes) {
+        this.maxBytes = maxBytes;
+        this.maxRetainedBytes = Math.min(maxBytes, maxRetainedBytes);
+    }
+
+    /**
+     * Appends the message to the aggregated result if it fits in the retained byte limit.
+     *
+     * @param message the message to append
+     * @return {@code false} if the stream no longer fits in its size limit
+     */
+    boolean add(String message) {
+        int separatorBytes = retainedMessageCount + droppedMessageCount > 0 ? SEPARATOR_BYTES : 0;
+        int messageBytes = Utf8.encodedLength(message);
+
+        totalBytes += separatorBytes + messageBytes;
+
+        if (droppedMessageCount > 0 || (long) retainedBytes + separatorBytes + messageBytes > maxRetainedBytes) {
+            droppedMessageCount++;
+        } else {
+            if (retainedMessageCount > 0) {
+                joinedMessages.append(SEPARATOR);
+            }
+
+            joinedMessages.append(message);
+
+            retainedBytes += separatorBytes + messageBytes;
+            retainedMessageCount++;
+        }
+
+        return totalBytes <= maxBytes;
+    }
+
+    long droppedMessageCount() {
+        return droppedMessageCount;
+    }
+
+    long retainedMessageCount() {
+        return retainedMessageCount;
+    }
+
+    int maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the joined messages, followed by a note of how many were dropped if the stream was truncated.
+     */
+    String result() {
+        if (droppedMessageCount == 0) {
+            return joinedMessages.toString();
+        }
+
+        return joinedMessages + " ... (" + droppedMessageCount + " more)";
+    }
+}
@@ -0,0 +1,69 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.Codec;
+import io.grpc.CompressorRegistry;
+import io.grpc.DecompressorRegistry;
+
+/**
+ * The message compression codecs that the client and server can be configured with. Both sides install the same
+ * registries, so each side can decompress whatever the other one is allowed to send.
+ */
+public enum MessageCompression {
+
+    /**
+     * Messages are never compressed.
+     */
+    IDENTITY(Codec.Identity.NONE),
+
+    /**
+     * Messages at or above the size threshold are gzip compressed.
+     */
+    GZIP(new Codec.Gzip());
+
+    /**
+     * Messages smaller than this many serialized bytes are sent uncompressed unless configured otherwise. gzip has a
+     * fixed cost of several microseconds per message, and its header makes messages of a few dozen bytes larger, so
+     * below this size it saves too few bytes to be worth it. See {@code CompressionBenchmark}.
+     */
+    public static final int DEFAULT_THRESHOLD_BYTES = 1024;
+
+    private final Codec codec;
+
+    MessageCompression(Codec codec) {
+        this.codec = codec;
+    }
+
+    Codec codec() {
+        return codec;
+    }
+
+    String messageEncoding() {
+        return codec.getMessageEncoding();
+    }
+
+    /**
+     * Returns a registry of the compressors for every codec.
+     */
+    static CompressorRegistry compressorRegistry() {
+        CompressorRegistry registry = CompressorRegistry.newEmptyInstance();
+
+        for (MessageCompression compression : values()) {
+            registry.register(compression.codec);
+        }
+
+        return registry;
+    }
+
+    /**
+     * Returns a registry of the decompressors for every codec, advertising all but {@link #IDENTITY} to the peer.
+     */
+    static DecompressorRegistry decompressorRegistry() {
+        DecompressorRegistry registry = DecompressorRegistry.emptyInstance();
+
+        for (MessageCompression compression : values()) {
+            registry = registry.with(compression.codec, compression != IDENTITY);
+        }
+
+        return registry;
+    }
+}
@@ -0,0 +1,28 @@
+package org.joeyb.grpc.sample;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.MessageLite;
+
+/**
+ * Sizes the messages that interceptors see on their way to or from the marshallers.
+ */
+final class MessageSizes {
+
+    private MessageSizes() {
+    }
+
+    /**
+     * Returns the serialized size of the given message, or zero if its type is not known.
+     *
+     * @param message a protobuf message or a pre-encoded {@link ByteString}
+     */
+    static int serializedSize(Object message) {
+        // Protobuf messages memoize their size, so this does not re-walk messages that are also serialized.
+        if (message instanceof MessageLite) {
+            return ((MessageLite) message).getSerializedSize();
+        }
+
+        // Pre-encoded messages, see PreEncodedResponses.
+        return message instanceof ByteString ? ((ByteString) message).size() : 0;
+    }
+}
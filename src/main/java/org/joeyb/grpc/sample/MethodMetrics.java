@@ -0,0 +1,124 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.Status;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and a latency histogram for the calls of a single method. Recording only touches {@link LongAdder}s and
+ * a fixed size HdrHistogram {@link Recorder}, which are lock-free and do not allocate, so the metrics are cheap enough
+ * to leave on in production. Snapshots fold the recorder's interval histogram into a cumulative one under a lock
+ * that recording never takes.
+ */
+class MethodMetrics {
+
+    private static final long HIGHEST_TRACKABLE_LATENCY_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_VALUE_DIGITS = 2;
+
+    private static final Status.Code[] STATUS_CODES = Status.Code.values();
+
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder[] callsByStatus = new LongAdder[STATUS_CODES.length];
+    private final String fullMethodName;
+    private final LongAdder inFlightCalls = new LongAdder();
+    private final Recorder latencyRecorder =
+            new Recorder(HIGHEST_TRACKABLE_LATENCY_MICROS, SIGNIFICANT_VALUE_DIGITS);
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    private final Histogram cumulativeLatency =
+            new Histogram(HIGHEST_TRACKABLE_LATENCY_MICROS, SIGNIFICANT_VALUE_DIGITS);
+
+    private volatile int concurrencyLimit;
+    private Histogram intervalLatency;
+
+    MethodMetrics(String fullMethodName) {
+        this.fullMethodName = fullMethodName;
+
+        for (int i = 0; i < callsByStatus.length; i++) {
+            callsByStatus[i] = new LongAdder();
+        }
+    }
+
+    void callStarted() {
+        inFlightCalls.increment();
+    }
+
+    /**
+     * Records a finished call.
+     *
+     * @param code the status code that the call finished with
+     * @param latencyNanos the time from the start of the call until it finished
+     */
+    void callFinished(Status.Code code, long latencyNanos) {
+        inFlightCalls.decrement();
+        callsByStatus[code.ordinal()].increment();
+
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+
+        latencyRecorder.recordValue(Math.min(latencyMicros, HIGHEST_TRACKABLE_LATENCY_MICROS));
+    }
+
+    void callRejected() {
+        rejectedCalls.increment();
+    }
+
+    void concurrencyLimitChanged(int concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    void messageReceived(int bytes) {
+        messagesReceived.increment();
+        bytesReceived.add(bytes);
+    }
+
+    void messageSent(int bytes) {
+        messagesSent.increment();
+        bytesSent.add(bytes);
+    }
+
+    /**
+     * Returns the current values of the metrics.
+     */
+    MethodStats snapshot() {
+        MethodStats.Builder builder = MethodStats.newBuilder()
+                .setFullMethodName(fullMethodName)
+                .setInFlightCalls(inFlightCalls.sum())
+                .setMessagesReceived(messagesReceived.sum())
+                .setBytesReceived(bytesReceived.sum())
+                .setMessagesSent(messagesSent.sum())
+                .setBytesSent(bytesSent.sum())
+                .setConcurrencyLimit(concurrencyLimit)
+                .setRejectedCalls(rejectedCalls.sum());
+
+        for (int i = 0; i < callsByStatus.length; i++) {
+            long calls = callsByStatus[i].sum();
+
+            if (calls > 0) {
+                builder.putCallsByStatus(STATUS_CODES[i].name(), calls);
+            }
+        }
+
+        synchronized (cumulativeLatency) {
+            intervalLatency = latencyRecorder.getIntervalHistogram(intervalLatency);
+            cumulativeLatency.add(intervalLatency);
+
+            builder.setLatency(LatencyStats.newBuilder()
+                    .setCount(cumulativeLatency.getTotalCount())
+                    .setP50(cumulativeLatency.getValueAtPercentile(50))
+                    .setP90(cumulativeLatency.getValueAtPercentile(90))
+                    .setP99(cumulativeLatency.getValueAtPercentile(99))
+                    .setP999(cumulativeLatency.getValueAtPercentile(99.9))
+                    .setMax(cumulativeLatency.getMaxValue())
+                    .setMean(cumulativeLatency.getMean()));
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,107 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Records call counts by status, in-flight calls, latency and message counts and sizes into {@link ServerMetrics}.
+ */
+class MetricsServerInterceptor implements ServerInterceptor {
+
+    private final ServerMetrics metrics;
+
+    MetricsServerInterceptor(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                                                                 Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        MethodMetrics methodMetrics = metrics.forMethod(call.getMethodDescriptor().getFullMethodName());
+        MetricsServerCall<ReqT, RespT> metricsCall = new MetricsServerCall<>(call, methodMetrics);
+
+        ServerCall.Listener<ReqT> listener;
+
+        try {
+            listener = next.startCall(metricsCall, headers);
+        } catch (RuntimeException e) {
+            metricsCall.finish(Status.Code.UNKNOWN);
+            throw e;
+        }
+
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+            @Override
+            public void onMessage(ReqT message) {
+                methodMetrics.messageReceived(MessageSizes.serializedSize(message));
+                super.onMessage(message);
+            }
+
+            @Override
+            public void onCancel() {
+                metricsCall.finish(Status.Code.CANCELLED);
+                super.onCancel();
+            }
+
+            // A call that completes without having been closed through the interceptor had a handler that threw,
+            // which gRPC reports to the client as UNKNOWN.
+            @Override
+            public void onComplete() {
+                metricsCall.finish(Status.Code.UNKNOWN);
+                super.onComplete();
+            }
+        };
+    }
+
+    private static class MetricsServerCall<ReqT, RespT>
+            extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+
+        // The class literal can only name the raw type, which the updater works on regardless of type arguments.
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<MetricsServerCall> FINISHED_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(MetricsServerCall.class, "finished");
+
+        private final MethodMetrics methodMetrics;
+        private final long startNanos;
+
+        private volatile int finished;
+
+        private MetricsServerCall(ServerCall<ReqT, RespT> delegate, MethodMetrics methodMetrics) {
+            super(delegate);
+
+            this.methodMetrics = methodMetrics;
+            this.startNanos = System.nanoTime();
+
+            methodMetrics.callStarted();
+        }
+
+        @Override
+        public void sendMessage(RespT message) {
+            methodMetrics.messageSent(MessageSizes.serializedSize(message));
+            super.sendMessage(message);
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            finish(status.getCode());
+            super.close(status, trailers);
+        }
+
+        /**
+         * Records the call as finished, unless it already has been. A call finishes when the handler closes it, when it
+         * is cancelled, or when it completes after its handler threw, whichever happens first.
+         */
+        private void finish(Status.Code code) {
+            if (FINISHED_UPDATER.compareAndSet(this, 0, 1)) {
+                methodMetrics.callFinished(code, System.nanoTime() - startNanos);
+            }
+        }
+    }
+}
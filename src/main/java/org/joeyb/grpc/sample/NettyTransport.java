@@ -0,0 +1,94 @@
+package org.joeyb.grpc.sample;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * The Netty channel implementations that a server can run on.
+ */
+public enum NettyTransport {
+
+    /**
+     * Uses {@link #EPOLL} when the native library is available on this platform, otherwise {@link #NIO}.
+     */
+    AUTO {
+        @Override
+        NettyTransport resolve() {
+            return Epoll.isAvailable() ? EPOLL : NIO;
+        }
+
+        @Override
+        EventLoopGroup newEventLoopGroup(int threads, String name) {
+            return resolve().newEventLoopGroup(threads, name);
+        }
+
+        @Override
+        Class<? extends ServerChannel> serverChannelType() {
+            return resolve().serverChannelType();
+        }
+    },
+
+    /**
+     * The native Linux epoll transport.
+     */
+    EPOLL {
+        @Override
+        NettyTransport resolve() {
+            Epoll.ensureAvailability();
+            return this;
+        }
+
+        @Override
+        EventLoopGroup newEventLoopGroup(int threads, String name) {
+            return new EpollEventLoopGroup(threads, new DefaultThreadFactory(name, true));
+        }
+
+        @Override
+        Class<? extends ServerChannel> serverChannelType() {
+            return EpollServerSocketChannel.class;
+        }
+    },
+
+    /**
+     * The JDK NIO transport, available everywhere.
+     */
+    NIO {
+        @Override
+        NettyTransport resolve() {
+            return this;
+        }
+
+        @Override
+        EventLoopGroup newEventLoopGroup(int threads, String name) {
+            return new NioEventLoopGroup(threads, new DefaultThreadFactory(name, true));
+        }
+
+        @Override
+        Class<? extends ServerChannel> serverChannelType() {
+            return NioServerSocketChannel.class;
+        }
+    };
+
+    /**
+     * Returns the concrete transport that this one stands for.
+     *
+     * @throws UnsatisfiedLinkError if the transport requires a native library that is not available
+     */
+    abstract NettyTransport resolve();
+
+    /**
+     * Creates an event loop group for this transport.
+     *
+     * @param threads the number of event loop threads, or zero for Netty's default
+     * @param name the prefix for the names of the event loop threads
+     */
+    abstract EventLoopGroup newEventLoopGroup(int threads, String name);
+
+    abstract Class<? extends ServerChannel> serverChannelType();
+}
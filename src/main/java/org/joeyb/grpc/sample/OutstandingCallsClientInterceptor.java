@@ -0,0 +1,70 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Counts the outstanding calls of each subchannel for {@link LeastRequestsLoadBalancerFactory}. Every call gets an
+ * empty slot in its affinity attributes, which the picker fills with the counter that it incremented for the call.
+ * When the call closes, the counter is decremented again.
+ */
+class OutstandingCallsClientInterceptor implements ClientInterceptor {
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                               CallOptions callOptions,
+                                                               Channel next) {
+        AtomicReference<AtomicInteger> slot = new AtomicReference<>();
+        Attributes affinity = Attributes.newBuilder()
+                .setAll(callOptions.getAffinity())
+                .set(LeastRequestsLoadBalancerFactory.OUTSTANDING_CALLS_KEY, slot)
+                .build();
+
+        ClientCall<ReqT, RespT> call = next.newCall(method, callOptions.withAffinity(affinity));
+
+        return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(call) {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                super.start(new OutstandingCallListener<>(responseListener, slot), headers);
+            }
+        };
+    }
+
+    /**
+     * Decrements the counter in the call's slot when the call closes. Calls that fail before they are picked, such as
+     * ones whose deadline passes while no subchannel is ready, find the slot empty.
+     */
+    private static class OutstandingCallListener<RespT>
+            extends ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT> {
+
+        private final AtomicReference<AtomicInteger> slot;
+
+        private OutstandingCallListener(ClientCall.Listener<RespT> delegate, AtomicReference<AtomicInteger> slot) {
+            super(delegate);
+
+            this.slot = slot;
+        }
+
+        @Override
+        public void onClose(Status status, Metadata trailers) {
+            AtomicInteger outstandingCalls = slot.getAndSet(null);
+
+            if (outstandingCalls != null) {
+                outstandingCalls.decrementAndGet();
+            }
+
+            super.onClose(status, trailers);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.joeyb.grpc.sample;
+
+import com.google.common.base.Strings;
+import com.google.protobuf.ByteString;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The kinds of data that the client fills each request's payload with.
+ */
+public enum PayloadType {
+
+    /**
+     * The request's message is a string of ASCII characters, which the server echoes back in its response.
+     */
+    TEXT {
+        @Override
+        void fill(TestRequest.Builder request, int size) {
+            request.setMessage(Strings.repeat("x", size));
+        }
+    },
+
+    /**
+     * The request's payload is random bytes, which the server ignores, so only the request carries the data and it
+     * skips UTF-8 validation and decoding on both sides.
+     */
+    BINARY {
+        @Override
+        void fill(TestRequest.Builder request, int size) {
+            byte[] payload = new byte[size];
+            ThreadLocalRandom.current().nextBytes(payload);
+
+            request.setPayload(ByteString.copyFrom(payload));
+        }
+    };
+
+    /**
+     * Sets the payload of the request.
+     *
+     * @param request the builder of the request
+     * @param size the size of the payload in bytes
+     */
+    abstract void fill(TestRequest.Builder request, int size);
+}
@@ -0,0 +1,247 @@
+package org.joeyb.grpc.sample;
+
+import static io.grpc.stub.ServerCalls.asyncBidiStreamingCall;
+import static io.grpc.stub.ServerCalls.asyncUnaryCall;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.WireFormat;
+
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.protobuf.ProtoUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fast path for the unary and bi-directional streaming methods of {@link TestServiceImpl}. Requests keep their
+ * message as the raw UTF-8 {@link ByteString} read off the wire, and responses are written as a pre-encoded
+ * {@link TestResponse} made of a constant prefix followed by those same bytes, so neither direction materializes a
+ * Java string.
+ *
+ * <p>The encoded responses are byte-for-byte identical to {@code TestResponse.toByteString()}, so clients are unaware
+ * of the difference.
+ */
+final class PreEncodedResponses {
+
+    /**
+     * Marshaller for {@link TestRequest}s that keeps the message field as the bytes read off the wire.
+     */
+    static final MethodDescriptor.Marshaller<TestRequest> REQUEST_MARSHALLER = new RequestMarshaller();
+
+    /**
+     * Marshaller for pre-encoded {@link TestResponse}s.
+     */
+    static final MethodDescriptor.Marshaller<ByteString> RESPONSE_MARSHALLER = new ResponseMarshaller();
+
+    static final MethodDescriptor<TestRequest, ByteString> METHOD_BI_DIRECTIONAL_STREAMING =
+            TestServiceGrpc.METHOD_BI_DIRECTIONAL_STREAMING.toBuilder(REQUEST_MARSHALLER, RESPONSE_MARSHALLER).build();
+
+    static final MethodDescriptor<TestRequest, ByteString> METHOD_UNARY =
+            TestServiceGrpc.METHOD_UNARY.toBuilder(REQUEST_MARSHALLER, RESPONSE_MARSHALLER).build();
+
+    // Tag of TestRequest.message and TestResponse.message: field number 1, length-delimited wire type.
+    private static final int MESSAGE_TAG = 10;
+
+    private static final byte[] RESPONSE_PREFIX = TestServiceImpl.RESPONSE_PREFIX.getBytes(StandardCharsets.UTF_8);
+
+    private PreEncodedResponses() {
+    }
+
+    /**
+     * Binds the given service with its unary and bi-directional streaming methods replaced by the pre-encoded fast
+     * path. All other methods are bound exactly as {@link TestServiceImpl#bindService()} binds them.
+     *
+     * @param service the service to bind
+     */
+    static ServerServiceDefinition bindService(TestServiceImpl service) {
+        return ServiceDefinitions.replaceMethods(
+                service.bindService(),
+                ServerMethodDefinition.create(METHOD_BI_DIRECTIONAL_STREAMING,
+                                              asyncBidiStreamingCall(service::biDirectionalStreamingPreEncoded)),
+                ServerMethodDefinition.create(METHOD_UNARY, asyncUnaryCall(service::unaryPreEncoded)));
+    }
+
+    /**
+     * Encodes the {@link TestResponse} for a request with the given raw message. The result shares the message's
+     * backing bytes rather than copying them.
+     *
+     * @param message the UTF-8 encoded request message
+     */
+    static ByteString encodeResponse(ByteString message) {
+        int messageLength = RESPONSE_PREFIX.length + message.size();
+        byte[] header = new byte[1
+                + CodedOutputStream.computeUInt32SizeNoTag(messageLength)
+                + RESPONSE_PREFIX.length];
+
+        int position = 0;
+        header[position++] = MESSAGE_TAG;
+
+        int remaining = messageLength;
+        while ((remaining & ~0x7F) != 0) {
+            header[position++] = (byte) ((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        header[position++] = (byte) remaining;
+
+        System.arraycopy(RESPONSE_PREFIX, 0, header, position, RESPONSE_PREFIX.length);
+
+        return UnsafeByteOperations.unsafeWrap(header).concat(message);
+    }
+
+    private static class RequestMarshaller implements MethodDescriptor.Marshaller<TestRequest> {
+
+        private static final MethodDescriptor.Marshaller<TestRequest> DEFAULT_MARSHALLER =
+                ProtoUtils.marshaller(TestRequest.getDefaultInstance());
+
+        @Override
+        public InputStream stream(TestRequest value) {
+            return DEFAULT_MARSHALLER.stream(value);
+        }
+
+        @Override
+        public TestRequest parse(InputStream stream) {
+            try {
+                CodedInputStream input = CodedInputStream.newInstance(stream);
+                input.setSizeLimit(Integer.MAX_VALUE);
+                TestRequest.Builder builder = TestRequest.newBuilder();
+
+                // Every other field is copied as-is and merged by the generated parser afterwards, so the fast path
+                // keeps up with fields that are added to TestRequest later on.
+                ByteString.Output otherFields = null;
+                CodedOutputStream otherFieldsOutput = null;
+
+                int tag;
+                while ((tag = input.readTag()) != 0) {
+                    if (tag == MESSAGE_TAG) {
+                        builder.setMessageBytes(input.readBytes());
+                    } else {
+                        if (otherFields == null) {
+                            otherFields = ByteString.newOutput();
+                            otherFieldsOutput = CodedOutputStream.newInstance(otherFields);
+                        }
+
+                        copyField(tag, input, otherFieldsOutput);
+                    }
+                }
+
+                if (otherFields != null) {
+                    otherFieldsOutput.flush();
+
+                    CodedInputStream otherFieldsInput = otherFields.toByteString().newCodedInput();
+                    otherFieldsInput.setSizeLimit(Integer.MAX_VALUE);
+                    builder.mergeFrom(otherFieldsInput);
+                }
+
+                return builder.build();
+            } catch (IllegalArgumentException | IOException e) {
+                // setMessageBytes rejects invalid UTF-8 with an IllegalArgumentException, which the generated parser
+                // would have reported as an invalid byte sequence.
+                throw Status.INTERNAL
+                        .withDescription("Invalid protobuf byte sequence")
+                        .withCause(e)
+                        .asRuntimeException();
+            }
+        }
+
+        /**
+         * Copies the field with the given tag, which has just been read, from the input to the output. Groups do not
+         * exist in proto3, so they are skipped, just as the generated parser drops unknown fields.
+         */
+        private static void copyField(int tag, CodedInputStream input, CodedOutputStream output) throws IOException {
+            switch (WireFormat.getTagWireType(tag)) {
+                case WireFormat.WIRETYPE_VARINT:
+                    output.writeUInt32NoTag(tag);
+                    output.writeUInt64NoTag(input.readUInt64());
+                    break;
+                case WireFormat.WIRETYPE_FIXED64:
+                    output.writeUInt32NoTag(tag);
+                    output.writeFixed64NoTag(input.readFixed64());
+                    break;
+                case WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    output.writeUInt32NoTag(tag);
+                    output.writeBytesNoTag(input.readBytes());
+                    break;
+                case WireFormat.WIRETYPE_FIXED32:
+                    output.writeUInt32NoTag(tag);
+                    output.writeFixed32NoTag(input.readFixed32());
+                    break;
+                default:
+                    input.skipField(tag);
+                    break;
+            }
+        }
+    }
+
+    private static class ResponseMarshaller implements MethodDescriptor.Marshaller<ByteString> {
+
+        @Override
+        public InputStream stream(ByteString value) {
+            return new ByteStringInputStream(value);
+        }
+
+        @Override
+        public ByteString parse(InputStream stream) {
+            try {
+                return ByteString.readFrom(stream);
+            } catch (IOException e) {
+                throw Status.INTERNAL.withDescription("Failed to read response").withCause(e).asRuntimeException();
+            }
+        }
+    }
+
+    /**
+     * Input stream over a {@link ByteString} that the transport drains straight into its output buffer instead of
+     * copying through {@link #read(byte[], int, int)}.
+     */
+    private static class ByteStringInputStream extends InputStream implements Drainable, KnownLength {
+
+        private final ByteString value;
+
+        private int position;
+
+        private ByteStringInputStream(ByteString value) {
+            this.value = value;
+        }
+
+        @Override
+        public int available() {
+            return value.size() - position;
+        }
+
+        @Override
+        public int drainTo(OutputStream target) throws IOException {
+            int drained = available();
+            value.substring(position).writeTo(target);
+            position = value.size();
+            return drained;
+        }
+
+        @Override
+        public int read() {
+            return available() > 0 ? value.byteAt(position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            int available = available();
+            if (available == 0) {
+                return -1;
+            }
+
+            int count = Math.min(len, available);
+            value.copyTo(b, position, off, count);
+            position += count;
+            return count;
+        }
+    }
+}
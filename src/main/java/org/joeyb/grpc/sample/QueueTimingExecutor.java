@@ -0,0 +1,57 @@
+package org.joeyb.grpc.sample;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Wraps the handler executor to remember when each task was queued. gRPC queues a task to start each call as soon as
+ * the transport has received the call's headers, so while that task runs, {@link #currentTaskQueuedNanos()} tells the
+ * tracing interceptor when the headers arrived and how long the call then waited for a handler thread.
+ *
+ * <p>Timing a task costs a wrapper and a thread-local lookup, so tasks are passed to the handler executor as they are
+ * while the recorder's sample rate is 0 and no call can be traced.
+ */
+class QueueTimingExecutor implements Executor {
+
+    private static final ThreadLocal<long[]> CURRENT_TASK_QUEUED_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final Executor delegate;
+    private final TraceRecorder recorder;
+
+    QueueTimingExecutor(Executor delegate, TraceRecorder recorder) {
+        this.delegate = delegate;
+        this.recorder = recorder;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the task that is running on this thread was queued, or zero if
+     * the thread is not running one of this executor's tasks.
+     */
+    static long currentTaskQueuedNanos() {
+        return CURRENT_TASK_QUEUED_NANOS.get()[0];
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (recorder.sampleRate() == 0) {
+            delegate.execute(command);
+            return;
+        }
+
+        long queuedNanos = System.nanoTime();
+
+        delegate.execute(() -> run(command, queuedNanos));
+    }
+
+    private static void run(Runnable command, long queuedNanos) {
+        long[] current = CURRENT_TASK_QUEUED_NANOS.get();
+        long previous = current[0];
+
+        current[0] = queuedNanos;
+
+        try {
+            command.run();
+        } finally {
+            current[0] = previous;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.protobuf.ByteString;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of serialized responses, keyed by the serialized request they answer. The cache is split into
+ * {@link #SEGMENT_COUNT} segments by key hash, and each segment is an LRU map with its own lock and an even share of
+ * the entry and byte limits. Threads only contend when their keys fall into the same segment, at the cost of the
+ * eviction order only being LRU within a segment.
+ *
+ * <p>The byte limit counts the sizes of the keys and values, not the overhead of the map entries that hold them.
+ * Values larger than a segment's share of the byte limit are never cached.
+ */
+class ResponseCache {
+
+    /**
+     * The number of independently locked segments. A power of two, so that a segment is picked by masking the hash.
+     */
+    static final int SEGMENT_COUNT = 16;
+
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxEntries the maximum number of cached responses
+     * @param maxBytes the maximum number of request and response bytes held by the cache
+     */
+    ResponseCache(int maxEntries, long maxBytes) {
+        checkArgument(maxEntries > 0, "maxEntries must be positive");
+        checkArgument(maxBytes > 0, "maxBytes must be positive");
+
+        // Round the shares up, so that small limits still leave room for an entry in every segment.
+        int segmentMaxEntries = (maxEntries + SEGMENT_COUNT - 1) / SEGMENT_COUNT;
+        long segmentMaxBytes = (maxBytes + SEGMENT_COUNT - 1) / SEGMENT_COUNT;
+
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(segmentMaxEntries, segmentMaxBytes);
+        }
+    }
+
+    /**
+     * Returns the cached response to the given request, or {@code null} if there is none.
+     *
+     * @param request the serialized request
+     */
+    ByteString get(ByteString request) {
+        ByteString response = segmentFor(request).get(request);
+
+        if (response != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+
+        return response;
+    }
+
+    /**
+     * Caches the response to the given request, evicting the least recently used responses of its segment as needed.
+     *
+     * @param request the serialized request
+     * @param response the serialized response
+     */
+    void put(ByteString request, ByteString response) {
+        evictions.add(segmentFor(request).put(request, response));
+    }
+
+    /**
+     * Returns the cache's counters and current size.
+     */
+    ResponseCacheStats stats() {
+        long bytes = 0;
+        long entries = 0;
+
+        for (Segment segment : segments) {
+            bytes += segment.bytes();
+            entries += segment.size();
+        }
+
+        return ResponseCacheStats.newBuilder()
+                .setHits(hits.sum())
+                .setMisses(misses.sum())
+                .setEvictions(evictions.sum())
+                .setEntries(entries)
+                .setBytes(bytes)
+                .build();
+    }
+
+    private Segment segmentFor(ByteString request) {
+        int hash = request.hashCode();
+
+        // Mix the high bits into the low ones that pick the segment.
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1)];
+    }
+
+    /**
+     * A single LRU segment. Reads reorder the map, so every access is synchronized on the segment.
+     */
+    private static class Segment {
+
+        private final LinkedHashMap<ByteString, ByteString> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxBytes;
+        private final int maxEntries;
+
+        private long bytes;
+
+        private Segment(int maxEntries, long maxBytes) {
+            this.maxBytes = maxBytes;
+            this.maxEntries = maxEntries;
+        }
+
+        synchronized ByteString get(ByteString request) {
+            return entries.get(request);
+        }
+
+        /**
+         * Adds the entry and evicts the least recently used ones until the segment is within its limits again.
+         *
+         * @return the number of evicted entries
+         */
+        synchronized int put(ByteString request, ByteString response) {
+            long entryBytes = (long) request.size() + response.size();
+
+            if (entryBytes > maxBytes) {
+                return 0;
+            }
+
+            ByteString previous = entries.put(request, response);
+
+            bytes += entryBytes;
+
+            if (previous != null) {
+                bytes -= request.size() + previous.size();
+            }
+
+            int evicted = 0;
+            Iterator<Map.Entry<ByteString, ByteString>> eldest = entries.entrySet().iterator();
+
+            // The new entry is the most recently used and fits on its own, so it is never evicted.
+            while (entries.size() > maxEntries || bytes > maxBytes) {
+                Map.Entry<ByteString, ByteString> entry = eldest.next();
+
+                bytes -= entry.getKey().size() + entry.getValue().size();
+                eldest.remove();
+                evicted++;
+            }
+
+            return evicted;
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
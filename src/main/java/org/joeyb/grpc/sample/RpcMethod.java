@@ -0,0 +1,137 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.stub.StreamObserver;
+
+/**
+ * The {@link TestServiceGrpc} methods that the load generator can drive. Each constant starts one call of its method
+ * on an async stub, sending {@code streamLength} copies of the request for client and bi-directional streams and
+ * asking for {@code streamLength} responses for server streams.
+ */
+enum RpcMethod {
+
+    BI_DIRECTIONAL_STREAMING(false, false) {
+        @Override
+        void start(TestServiceGrpc.TestServiceStub stub,
+                   TestRequest request,
+                   int streamLength,
+                   StreamObserver<TestResponse> responseObserver) {
+            sendRequests(stub.biDirectionalStreaming(responseObserver), request, streamLength);
+        }
+    },
+
+    BI_DIRECTIONAL_STREAMING_ERROR(true, false) {
+        @Override
+        void start(TestServiceGrpc.TestServiceStub stub,
+                   TestRequest request,
+                   int streamLength,
+                   StreamObserver<TestResponse> responseObserver) {
+            sendRequests(stub.biDirectionalStreamingError(responseObserver), request, streamLength);
+        }
+    },
+
+    CLIENT_STREAMING(false, false) {
+        @Override
+        void start(TestServiceGrpc.TestServiceStub stub,
+                   TestRequest request,
+                   int streamLength,
+                   StreamObserver<TestResponse> responseObserver) {
+            sendRequests(stub.clientStreaming(responseObserver), request, streamLength);
+        }
+    },
+
+    CLIENT_STREAMING_ERROR(true, false) {
+        @Override
+        void start(TestServiceGrpc.TestServiceStub stub,
+                   TestRequest request,
+                   int streamLength,
+                   StreamObserver<TestResponse> responseObserver) {
+            sendRequests(stub.clientStreamingError(responseObserver), request, streamLength);
+        }
+    },
+
+    SERVER_STREAMING(false, true) {
+        @Override
+        void start(TestServiceGrpc.TestServiceStub stub,
+                   TestRequest request,
+                   int streamLength,
+                   StreamObserver<TestResponse> responseObserver) {
+            stub.serverStreaming(request.toBuilder().setResponseCount(streamLength).build(), responseObserver);
+        }
+    },
+
+    SERVER_STREAMING_ERROR(true, true) {
+        @Override
+        void start(TestServiceGrpc.TestServiceStub stub,
+                   TestRequest request,
+                   int streamLength,
+                   StreamObserver<TestResponse> responseObserver) {
+            stub.serverStreamingError(request, responseObserver);
+        }
+    },
+
+    UNARY(false, true) {
+        @Override
+        void start(TestServiceGrpc.TestServiceStub stub,
+                   TestRequest request,
+                   int streamLength,
+                   StreamObserver<TestResponse> responseObserver) {
+            stub.unary(request, responseObserver);
+        }
+    },
+
+    UNARY_ERROR(true, true) {
+        @Override
+        void start(TestServiceGrpc.TestServiceStub stub,
+                   TestRequest request,
+                   int streamLength,
+                   StreamObserver<TestResponse> responseObserver) {
+            stub.unaryError(request, responseObserver);
+        }
+    };
+
+    private final boolean expectsError;
+    private final boolean idempotent;
+
+    RpcMethod(boolean expectsError, boolean idempotent) {
+        this.expectsError = expectsError;
+        this.idempotent = idempotent;
+    }
+
+    /**
+     * Returns {@code true} if a successful call of this method ends in an error status.
+     */
+    boolean expectsError() {
+        return expectsError;
+    }
+
+    /**
+     * Returns {@code true} if a call of this method can safely be sent more than once, which is the case for the
+     * methods that take a single request.
+     */
+    boolean isIdempotent() {
+        return idempotent;
+    }
+
+    /**
+     * Starts a call of this method.
+     *
+     * @param stub the stub to start the call on
+     * @param request the request, or the request to repeat for streaming methods
+     * @param streamLength the number of requests or responses in a stream
+     * @param responseObserver the observer of the call's responses
+     */
+    abstract void start(TestServiceGrpc.TestServiceStub stub,
+                        TestRequest request,
+                        int streamLength,
+                        StreamObserver<TestResponse> responseObserver);
+
+    private static void sendRequests(StreamObserver<TestRequest> requestObserver,
+                                     TestRequest request,
+                                     int streamLength) {
+        for (int i = 0; i < streamLength; i++) {
+            requestObserver.onNext(request);
+        }
+
+        requestObserver.onCompleted();
+    }
+}
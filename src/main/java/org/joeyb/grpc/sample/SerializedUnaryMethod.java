@@ -0,0 +1,106 @@
+package org.joeyb.grpc.sample;
+
+import static io.grpc.stub.ServerCalls.asyncUnaryCall;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+
+import java.util.function.BiConsumer;
+
+/**
+ * A unary method of {@link TestServiceImpl} that receives its request as the bytes read off the wire and sends its
+ * response as pre-encoded bytes. Working on the serialized forms lets the layers in front of a method, such as
+ * {@link CachingUnaryMethod} and {@link SingleFlightUnaryMethod}, compare requests and reuse responses without
+ * parsing or serializing them.
+ */
+@FunctionalInterface
+interface SerializedUnaryMethod {
+
+    /**
+     * Handles a call.
+     *
+     * @param request the serialized request
+     * @param responseObserver the observer of the serialized response
+     */
+    void invoke(ByteString request, StreamObserver<ByteString> responseObserver);
+
+    /**
+     * Binds this method in place of the given method, receiving and sending the same messages in serialized form.
+     *
+     * @param method the method to replace
+     * @see ServiceDefinitions#replaceMethods
+     */
+    default ServerMethodDefinition<ByteString, ByteString> bind(MethodDescriptor<TestRequest, TestResponse> method) {
+        // Both directions carry raw protobuf bytes, which the pre-encoded response marshaller passes through as is.
+        MethodDescriptor<ByteString, ByteString> serializedMethod = method
+                .toBuilder(PreEncodedResponses.RESPONSE_MARSHALLER, PreEncodedResponses.RESPONSE_MARSHALLER)
+                .build();
+
+        return ServerMethodDefinition.create(serializedMethod, asyncUnaryCall(this::invoke));
+    }
+
+    /**
+     * Returns a method that parses each request, lets the given method handle it, and serializes its response.
+     *
+     * @param method the method to call, such as {@link TestServiceImpl#unary(TestRequest, StreamObserver)}
+     */
+    static SerializedUnaryMethod parsing(BiConsumer<TestRequest, StreamObserver<TestResponse>> method) {
+        return (request, responseObserver) -> {
+            TestRequest parsedRequest;
+
+            try {
+                parsedRequest = TestRequest.parseFrom(request);
+            } catch (InvalidProtocolBufferException e) {
+                responseObserver.onError(Status.INTERNAL
+                        .withDescription("Invalid protobuf byte sequence")
+                        .withCause(e)
+                        .asRuntimeException());
+                return;
+            }
+
+            method.accept(parsedRequest, new StreamObserver<TestResponse>() {
+                @Override
+                public void onNext(TestResponse value) {
+                    responseObserver.onNext(value.toByteString());
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    responseObserver.onError(t);
+                }
+
+                @Override
+                public void onCompleted() {
+                    responseObserver.onCompleted();
+                }
+            });
+        };
+    }
+
+    /**
+     * Returns a method that parses each request with {@link PreEncodedResponses#REQUEST_MARSHALLER}, lets the given
+     * method handle it, and passes its pre-encoded response through as is.
+     *
+     * @param method the method to call, such as {@link TestServiceImpl#unaryPreEncoded(TestRequest, StreamObserver)}
+     */
+    static SerializedUnaryMethod preEncoded(BiConsumer<TestRequest, StreamObserver<ByteString>> method) {
+        return (request, responseObserver) -> {
+            TestRequest parsedRequest;
+
+            try {
+                parsedRequest = PreEncodedResponses.REQUEST_MARSHALLER.parse(request.newInput());
+            } catch (StatusRuntimeException e) {
+                responseObserver.onError(e);
+                return;
+            }
+
+            method.accept(parsedRequest, responseObserver);
+        };
+    }
+}
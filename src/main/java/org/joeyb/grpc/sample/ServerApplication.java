@@ -1,46 +1,262 @@
 package org.joeyb.grpc.sample;
 
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterException;
 import com.google.common.io.Resources;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import io.grpc.Server;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
 import io.grpc.netty.GrpcSslContexts;
 import io.grpc.netty.NettyServerBuilder;
 import io.grpc.protobuf.service.ProtoReflectionService;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.util.concurrent.ThreadLocalRandom;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class ServerApplication {
 
     /**
      * Main server entry point.
      *
-     * @param args command-line arguments
+     * @param args command-line arguments, see {@link ServerOptions}
      */
     public static void main(String[] args) throws IOException, InterruptedException, URISyntaxException {
-        File caCert = new File(Resources.getResource("grpc-certs/ca.pem").toURI());
-        File serverCertChain = new File(Resources.getResource("grpc-certs/server1.pem").toURI());
-        File serverKey = new File(Resources.getResource("grpc-certs/server1.key").toURI());
+        ServerOptions options = new ServerOptions();
+        JCommander commander = new JCommander(options);
 
-        SslContextBuilder sslContextBuilder = GrpcSslContexts.forServer(serverCertChain, serverKey)
-                .trustManager(caCert)
-                .clientAuth(ClientAuth.REQUIRE);
+        commander.setProgramName(ServerApplication.class.getSimpleName());
+
+        try {
+            commander.parse(args);
+            options.validate();
+        } catch (ParameterException e) {
+            System.err.println(e.getMessage());
+            commander.usage();
+            System.exit(1);
+        }
+
+        if (options.help) {
+            commander.usage();
+            return;
+        }
+
+        ServerMetrics metrics = new ServerMetrics();
+        ByteBufAllocator allocator = options.allocatorSettings().newAllocator();
+
+        metrics.allocator(allocator);
+
+        if (options.memoryStatsIntervalSeconds > 0) {
+            printMemoryStats(metrics, options.memoryStatsIntervalSeconds);
+        }
+
+        TestServiceImpl.Builder testServiceBuilder = TestServiceImpl.newBuilder()
+                .aggregationOverflowPolicy(options.aggregationOverflowPolicy)
+                .errorMode(options.errorMode)
+                .fileRoot(options.fileRoot != null ? options.fileRoot.toPath() : null)
+                .maxAggregatedMessageBytes(options.maxAggregatedMessageBytes)
+                .maxBatchSize(options.maxBatchSize)
+                .serverStreamingResponseCount(options.serverStreamingResponseCount)
+                .workExecutor(options.isOffloadingWork()
+                                      ? newWorkExecutor(options.workExecutorThreads, options.workExecutorQueueSize)
+                                      : null)
+                .writeCoalescing(options.isCoalescingWrites() ? newWriteCoalescing(options) : null);
+
+        options.workloadMethods.forEach(method -> testServiceBuilder.workload(method, options.workload()));
+
+        TestServiceImpl testService = testServiceBuilder.build();
+
+        TraceRecorder traceRecorder = options.tracing
+                ? new TraceRecorder(options.traceBufferSize, options.traceSampleRate)
+                : null;
+
+        try (ServerThreading threading = ServerThreading.create(options, traceRecorder)) {
+            // ServerInterceptors runs the last interceptor first, so the metrics see every call, including the ones
+            // that admission control rejects.
+            List<ServerInterceptor> interceptors = new ArrayList<>();
+
+            if (options.admissionControl) {
+                interceptors.add(new AdmissionControlServerInterceptor(metrics,
+                                                                       options.initialConcurrencyLimit,
+                                                                       options.minConcurrencyLimit,
+                                                                       options.maxConcurrencyLimit));
+            }
+
+            if (options.compression != MessageCompression.IDENTITY) {
+                interceptors.add(new CompressionServerInterceptor(options.compression,
+                                                                  options.compressionThresholdBytes));
+            }
+
+            interceptors.add(new MetricsServerInterceptor(metrics));
+
+            // Added last, so that traces include the time spent in the other interceptors.
+            if (traceRecorder != null) {
+                interceptors.add(new TracingServerInterceptor(traceRecorder));
+            }
+
+            ServerServiceDefinition testServiceDefinition = options.preEncodedResponses
+                    ? PreEncodedResponses.bindService(testService)
+                    : testService.bindService();
+
+            if (options.isCachingResponses() || options.singleFlight) {
+                testServiceDefinition = bindUnaryMethods(testServiceDefinition, testService, metrics, options);
+            }
+
+            final NettyServerBuilder serverBuilder = options.transportSettings(allocator)
+                    .configure(threading.configure(NettyServerBuilder.forPort(options.port)), newSslContext(options))
+                    .compressorRegistry(MessageCompression.compressorRegistry())
+                    .decompressorRegistry(MessageCompression.decompressorRegistry())
+                    .addService(ProtoReflectionService.getInstance())
+                    .addService(new StatsServiceImpl(metrics))
+                    .addService(ServerInterceptors.intercept(testServiceDefinition, interceptors));
+
+            if (traceRecorder != null) {
+                serverBuilder.addService(new TracingServiceImpl(traceRecorder));
+            }
+
+            Server server = serverBuilder.build();
+
+            server.start();
+
+            System.out.println("Server running on port " + server.getPort() + " (" + threading + ")");
+
+            server.awaitTermination();
+        }
+    }
+
+    /**
+     * Rebinds the unary methods to work on serialized requests, behind the response cache and single-flight
+     * coalescing that the options turn on. The cache is in front, so that only its misses are coalesced. With
+     * pre-encoded responses, the unary method underneath still takes the pre-encoded fast path.
+     */
+    private static ServerServiceDefinition bindUnaryMethods(ServerServiceDefinition definition,
+                                                            TestServiceImpl testService,
+                                                            ServerMetrics metrics,
+                                                            ServerOptions options) {
+        SerializedUnaryMethod unary = options.preEncodedResponses
+                ? SerializedUnaryMethod.preEncoded(testService::unaryPreEncoded)
+                : SerializedUnaryMethod.parsing(testService::unary);
+        SerializedUnaryMethod unaryError = SerializedUnaryMethod.parsing(testService::unaryError);
+
+        if (options.singleFlight) {
+            unary = new SingleFlightUnaryMethod(unary);
+            unaryError = new SingleFlightUnaryMethod(unaryError);
+        }
 
-        final NettyServerBuilder serverBuilder = NettyServerBuilder.forPort(10000)
-                .sslContext(sslContextBuilder.build())
-                .addService(ProtoReflectionService.getInstance())
-                .addService(new TestServiceImpl(ThreadLocalRandom.current().nextInt(10, 20)));
+        if (options.isCachingResponses()) {
+            ResponseCache responseCache = new ResponseCache(options.responseCacheEntries, options.responseCacheBytes);
 
-        Server server = serverBuilder.build();
+            metrics.responseCache(responseCache);
+            unary = new CachingUnaryMethod(responseCache, unary);
+        }
 
-        server.start();
+        return ServiceDefinitions.replaceMethods(definition,
+                                                 unary.bind(TestServiceGrpc.METHOD_UNARY),
+                                                 unaryError.bind(TestServiceGrpc.METHOD_UNARY_ERROR));
+    }
+
+    /**
+     * Prints a summary of the allocator's and the JVM's direct memory use at the given interval, for as long as the
+     * server runs.
+     */
+    private static void printMemoryStats(ServerMetrics metrics, long intervalSeconds) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("memory-stats").build());
+
+        scheduler.scheduleAtFixedRate(() -> System.out.println(memoryStatsSummary(metrics.snapshot().getMemory())),
+                                      intervalSeconds,
+                                      intervalSeconds,
+                                      TimeUnit.SECONDS);
+    }
+
+    private static String memoryStatsSummary(MemoryStats stats) {
+        StringBuilder summary = new StringBuilder()
+                .append("memory: allocator=").append(stats.getAllocator())
+                .append(", jvmDirectBytes=").append(stats.getJvmDirectBufferBytes())
+                .append(", nettyDirectBytes=").append(stats.getNettyDirectMemoryBytes())
+                .append(", maxDirectMemory=").append(stats.getMaxDirectMemory());
+
+        if (stats.hasPooled()) {
+            PooledAllocatorStats pooled = stats.getPooled();
+
+            summary.append(", directUsedBytes=")
+                    .append(pooled.getDirectArenasList().stream().mapToLong(ArenaStats::getUsedBytes).sum())
+                    .append(", directPinnedBytes=")
+                    .append(pooled.getDirectArenasList().stream().mapToLong(ArenaStats::getPinnedBytes).sum())
+                    .append(", heapUsedBytes=")
+                    .append(pooled.getHeapArenasList().stream().mapToLong(ArenaStats::getUsedBytes).sum())
+                    .append(", allocations=").append(pooled.getAllocations())
+                    .append(String.format(", cacheHitRate=%.3f", pooled.getCacheHitRate()));
+        }
+
+        return summary.toString();
+    }
+
+    /**
+     * Returns a fixed size pool of daemon threads for simulated work, which rejects work once the given number of tasks
+     * is waiting for a thread.
+     *
+     * @param threads the number of threads
+     * @param queueSize the most tasks waiting for a thread
+     */
+    static ExecutorService newWorkExecutor(int threads, int queueSize) {
+        return new ThreadPoolExecutor(threads,
+                                      threads,
+                                      0,
+                                      TimeUnit.MILLISECONDS,
+                                      new ArrayBlockingQueue<>(queueSize),
+                                      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("work-%d").build());
+    }
 
-        System.out.println("Server running on port " + server.getPort());
+    private static WriteCoalescing newWriteCoalescing(ServerOptions options) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("write-coalescing").build());
 
-        server.awaitTermination();
+        return new WriteCoalescing(options.writeCoalescingMessages,
+                                   options.writeCoalescingBytes,
+                                   TimeUnit.MICROSECONDS.toNanos(options.writeCoalescingDelayMicros),
+                                   scheduler);
+    }
+
+    /**
+     * Returns the server's {@link SslContext} with the TLS settings and session ticket keys of the options.
+     */
+    private static SslContext newSslContext(ServerOptions options) throws IOException, URISyntaxException {
+        SslContext sslContext = options.tlsSettings().configure(newSslContextBuilder()).build();
+
+        if (options.tlsTicketKeyFile != null) {
+            TlsSettings.setTicketKeys(sslContext, Files.readAllBytes(options.tlsTicketKeyFile.toPath()));
+        }
+
+        return sslContext;
+    }
+
+    /**
+     * Returns an {@link SslContextBuilder} for the bundled server certificate that requires mutual auth.
+     */
+    static SslContextBuilder newSslContextBuilder() throws URISyntaxException {
+        File caCert = new File(Resources.getResource("grpc-certs/ca.pem").toURI());
+        File serverCertChain = new File(Resources.getResource("grpc-certs/server1.pem").toURI());
+        File serverKey = new File(Resources.getResource("grpc-certs/server1.key").toURI());
+
+        return GrpcSslContexts.forServer(serverCertChain, serverKey)
+                .trustManager(caCert)
+                .clientAuth(ClientAuth.REQUIRE);
     }
 }
@@ -0,0 +1,124 @@
+package org.joeyb.grpc.sample;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.internal.PlatformDependent;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link MethodMetrics} of every method that a server has handled calls for, keyed by full method name, along
+ * with the counters of the server's {@link ResponseCache} if it has one and the memory use of its buffer allocator.
+ */
+class ServerMetrics {
+
+    private static final AtomicLong NETTY_DIRECT_MEMORY_COUNTER = nettyDirectMemoryCounter();
+
+    private final ConcurrentMap<String, MethodMetrics> methodMetrics = new ConcurrentHashMap<>();
+
+    private volatile ByteBufAllocator allocator;
+    private volatile ResponseCache responseCache;
+
+    /**
+     * Returns the metrics for the given method, creating them on its first call.
+     *
+     * @param fullMethodName the full name of the method
+     */
+    MethodMetrics forMethod(String fullMethodName) {
+        // Check with a plain get first, computeIfAbsent locks the bin even when the key is present.
+        MethodMetrics metrics = methodMetrics.get(fullMethodName);
+
+        return metrics != null ? metrics : methodMetrics.computeIfAbsent(fullMethodName, MethodMetrics::new);
+    }
+
+    /**
+     * Includes the counters of the given cache in the snapshots.
+     *
+     * @param responseCache the server's response cache
+     */
+    void responseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Includes the memory use of the given allocator in the snapshots.
+     *
+     * @param allocator the allocator of the server's connections
+     */
+    void allocator(ByteBufAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    /**
+     * Returns the current metrics of every method, ordered by method name, and those of the response cache and the
+     * allocator.
+     */
+    GetStatsResponse snapshot() {
+        GetStatsResponse.Builder builder = GetStatsResponse.newBuilder();
+        ResponseCache cache = responseCache;
+
+        if (cache != null) {
+            builder.setResponseCache(cache.stats());
+        }
+
+        builder.setMemory(memoryStats(allocator));
+
+        methodMetrics.values().stream()
+                .map(MethodMetrics::snapshot)
+                .sorted(Comparator.comparing(MethodStats::getFullMethodName))
+                .forEach(builder::addMethods);
+
+        return builder.build();
+    }
+
+    /**
+     * Returns the direct memory use of the JVM and of Netty, and the type and statistics of the allocator, if it is
+     * one that {@link AllocatorSettings} created.
+     *
+     * @param allocator the allocator to report on, or {@code null} if there is none
+     */
+    static MemoryStats memoryStats(ByteBufAllocator allocator) {
+        MemoryStats.Builder builder = MemoryStats.newBuilder()
+                .setMaxDirectMemory(PlatformDependent.maxDirectMemory());
+
+        if (allocator instanceof InstrumentedPooledByteBufAllocator) {
+            builder.setAllocator(AllocatorType.POOLED.name())
+                    .setPooled(((InstrumentedPooledByteBufAllocator) allocator).stats());
+        } else if (allocator instanceof UnpooledByteBufAllocator) {
+            builder.setAllocator(AllocatorType.UNPOOLED.name());
+        }
+
+        for (BufferPoolMXBean bufferPool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (bufferPool.getName().equals("direct")) {
+                builder.setJvmDirectBuffers(bufferPool.getCount())
+                        .setJvmDirectBufferBytes(bufferPool.getMemoryUsed());
+            }
+        }
+
+        if (NETTY_DIRECT_MEMORY_COUNTER != null) {
+            builder.setNettyDirectMemoryBytes(NETTY_DIRECT_MEMORY_COUNTER.get());
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Returns the counter of the direct memory that Netty allocates without a cleaner, or {@code null} if Netty does
+     * not keep one. Netty 4.1.8 does not expose the counter, so it is read from its private field.
+     */
+    private static AtomicLong nettyDirectMemoryCounter() {
+        try {
+            Field counter = PlatformDependent.class.getDeclaredField("DIRECT_MEMORY_COUNTER");
+            counter.setAccessible(true);
+            return (AtomicLong) counter.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
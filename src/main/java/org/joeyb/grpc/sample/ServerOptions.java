@@ -0,0 +1,327 @@
+package org.joeyb.grpc.sample;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command-line options for {@link ServerApplication}.
+ */
+class ServerOptions {
+
+    @Parameter(names = "--help", help = true, description = "Print usage and exit")
+    boolean help;
+
+    @Parameter(names = "--port", description = "Port to listen on")
+    int port = 10000;
+
+    @Parameter(names = "--transport", description = "Netty transport: AUTO uses EPOLL when available, else NIO")
+    NettyTransport transport = NettyTransport.AUTO;
+
+    @Parameter(names = "--boss-threads", description = "Number of event loop threads accepting connections")
+    int bossThreads = 1;
+
+    @Parameter(names = "--worker-threads",
+            description = "Number of event loop threads serving connections, or 0 for Netty's default")
+    int workerThreads;
+
+    @Parameter(names = "--executor", description = "Executor that runs the call handlers")
+    HandlerExecutor executor = HandlerExecutor.DEFAULT;
+
+    @Parameter(names = "--executor-threads", description = "Number of threads for the FORK_JOIN and FIXED executors")
+    int executorThreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = "--flow-control-window",
+            description = "Initial HTTP/2 flow-control window of each stream in bytes, or 0 for gRPC's default")
+    int flowControlWindow;
+
+    @Parameter(names = "--max-message-size", description = "Largest request in bytes, or 0 for gRPC's default")
+    int maxMessageSize;
+
+    @Parameter(names = "--max-concurrent-calls-per-connection",
+            description = "Most calls that a client can run on one connection, or 0 for no limit")
+    int maxConcurrentCallsPerConnection;
+
+    @Parameter(names = "--max-connection-age-seconds",
+            description = "Age at which connections are closed so that clients reconnect, or 0 to keep them open")
+    long maxConnectionAgeSeconds;
+
+    @Parameter(names = "--max-connection-age-grace-seconds",
+            description = "How long calls that are still running on an aged connection have to finish")
+    long maxConnectionAgeGraceSeconds = 30;
+
+    @Parameter(names = "--allocator", description = "Allocator of the connections' buffers")
+    AllocatorType allocator = AllocatorType.POOLED;
+
+    @Parameter(names = "--allocator-heap-arenas", description = "Number of heap arenas of the POOLED allocator")
+    int allocatorHeapArenas = PooledByteBufAllocator.defaultNumHeapArena();
+
+    @Parameter(names = "--allocator-direct-arenas", description = "Number of direct arenas of the POOLED allocator")
+    int allocatorDirectArenas = PooledByteBufAllocator.defaultNumDirectArena();
+
+    @Parameter(names = "--allocator-page-size",
+            description = "Page size in bytes of the POOLED allocator, a power of two of at least 4096")
+    int allocatorPageSize = PooledByteBufAllocator.defaultPageSize();
+
+    @Parameter(names = "--allocator-max-order",
+            description = "Chunks of the POOLED allocator are 2 to the power of this many pages")
+    int allocatorMaxOrder = PooledByteBufAllocator.defaultMaxOrder();
+
+    @Parameter(names = "--allocator-tiny-cache-size",
+            description = "Buffers under 512 bytes that each thread caches per size, or 0 to not cache them")
+    int allocatorTinyCacheSize = PooledByteBufAllocator.defaultTinyCacheSize();
+
+    @Parameter(names = "--allocator-small-cache-size",
+            description = "Buffers under a page that each thread caches per size, or 0 to not cache them")
+    int allocatorSmallCacheSize = PooledByteBufAllocator.defaultSmallCacheSize();
+
+    @Parameter(names = "--allocator-normal-cache-size",
+            description = "Buffers of a page or more that each thread caches per size, or 0 to not cache them")
+    int allocatorNormalCacheSize = PooledByteBufAllocator.defaultNormalCacheSize();
+
+    @Parameter(names = "--memory-stats-interval-seconds",
+            description = "How often to print allocator and direct memory statistics, or 0 to never print them")
+    long memoryStatsIntervalSeconds;
+
+    @Parameter(names = "--server-streaming-response-count",
+            description = "Responses per server stream when the request does not specify a count")
+    int serverStreamingResponseCount = ThreadLocalRandom.current().nextInt(10, 20);
+
+    @Parameter(names = "--max-aggregated-message-bytes",
+            description = "Maximum message bytes retained per client stream")
+    int maxAggregatedMessageBytes = TestServiceImpl.DEFAULT_MAX_AGGREGATED_MESSAGE_BYTES;
+
+    @Parameter(names = "--aggregation-overflow-policy",
+            description = "What to do with client streams that exceed --max-aggregated-message-bytes")
+    AggregationOverflowPolicy aggregationOverflowPolicy = AggregationOverflowPolicy.TRUNCATE;
+
+    @Parameter(names = "--error-mode",
+            description = "How *Error method errors are built: FAST skips stack traces and caps descriptions")
+    ErrorMode errorMode = ErrorMode.DETAILED;
+
+    @Parameter(names = "--max-batch-size", description = "Maximum number of requests in a UnaryBatch call")
+    int maxBatchSize = TestServiceImpl.DEFAULT_MAX_BATCH_SIZE;
+
+    @Parameter(names = "--file-root",
+            description = "Directory that DownloadFile and UploadFile are confined to, file transfers are off if unset")
+    File fileRoot;
+
+    @Parameter(names = "--write-coalescing-messages",
+            description = "Maximum BiDirectionalStreaming responses written in one burst, or 1 to write each alone")
+    int writeCoalescingMessages = 1;
+
+    @Parameter(names = "--write-coalescing-bytes",
+            description = "Buffered BiDirectionalStreaming response bytes that cause a burst to be written immediately")
+    int writeCoalescingBytes = 16 * 1024;
+
+    @Parameter(names = "--write-coalescing-delay-micros",
+            description = "Longest time a BiDirectionalStreaming response is buffered before it is written")
+    long writeCoalescingDelayMicros = 100;
+
+    @Parameter(names = "--workload-cpu-micros",
+            description = "Microseconds of CPU work per request to the --workload-methods, unless it has a workload")
+    long workloadCpuMicros;
+
+    @Parameter(names = "--workload-io-latency-micros",
+            description = "Mean microseconds that requests to the --workload-methods block for, as if waiting on I/O")
+    long workloadIoLatencyMicros;
+
+    @Parameter(names = "--workload-io-latency-distribution",
+            description = "Distribution that the blocking time of each request is drawn from")
+    LatencyDistribution workloadIoLatencyDistribution = LatencyDistribution.CONSTANT;
+
+    @Parameter(names = "--workload-methods", description = "Comma-separated methods that do the server's workload")
+    List<RpcMethod> workloadMethods = new ArrayList<>(Arrays.asList(RpcMethod.UNARY,
+                                                                    RpcMethod.SERVER_STREAMING,
+                                                                    RpcMethod.CLIENT_STREAMING,
+                                                                    RpcMethod.BI_DIRECTIONAL_STREAMING));
+
+    @Parameter(names = "--work-executor-threads",
+            description = "Threads that simulated work is offloaded to, or 0 to do it on the handler threads")
+    int workExecutorThreads;
+
+    @Parameter(names = "--work-executor-queue-size",
+            description = "Most work waiting for a work executor thread, before calls fail with RESOURCE_EXHAUSTED")
+    int workExecutorQueueSize = 1024;
+
+    @Parameter(names = "--tls-provider", description = "TLS implementation: AUTO uses OPENSSL when available, else JDK")
+    TlsProvider tlsProvider = TlsProvider.AUTO;
+
+    @Parameter(names = "--tls-ciphers",
+            description = "Comma-separated cipher suites in order of preference, gRPC's defaults if unset")
+    List<String> tlsCiphers = new ArrayList<>();
+
+    @Parameter(names = "--tls-session-cache-size",
+            description = "Most TLS sessions kept for resumption, or 0 for the provider's default")
+    long tlsSessionCacheSize;
+
+    @Parameter(names = "--tls-session-timeout-seconds",
+            description = "How long a TLS session can be resumed for, or 0 for the provider's default")
+    long tlsSessionTimeoutSeconds;
+
+    @Parameter(names = "--tls-ticket-key-file",
+            description = "File of 48-byte session ticket keys shared between servers, the first encrypts new tickets")
+    File tlsTicketKeyFile;
+
+    @Parameter(names = "--compression", description = "Codec that responses are compressed with")
+    MessageCompression compression = MessageCompression.IDENTITY;
+
+    @Parameter(names = "--compression-threshold",
+            description = "Responses smaller than this many bytes are sent uncompressed")
+    int compressionThresholdBytes = MessageCompression.DEFAULT_THRESHOLD_BYTES;
+
+    @Parameter(names = "--admission-control",
+            description = "Reject unary calls over an adaptive per-method concurrency limit with RESOURCE_EXHAUSTED")
+    boolean admissionControl;
+
+    @Parameter(names = "--concurrency-limit-initial", description = "Initial per-method concurrency limit")
+    int initialConcurrencyLimit = 20;
+
+    @Parameter(names = "--concurrency-limit-min", description = "Lowest that a per-method concurrency limit can go")
+    int minConcurrencyLimit = 1;
+
+    @Parameter(names = "--concurrency-limit-max", description = "Highest that a per-method concurrency limit can go")
+    int maxConcurrencyLimit = 1000;
+
+    @Parameter(names = "--response-cache-entries",
+            description = "Maximum Unary responses cached by serialized request, or 0 to turn the cache off")
+    int responseCacheEntries;
+
+    @Parameter(names = "--response-cache-bytes",
+            description = "Maximum request and response bytes held by the Unary response cache")
+    long responseCacheBytes = 64L * 1024 * 1024;
+
+    @Parameter(names = "--single-flight",
+            description = "Share one computation between concurrent Unary and UnaryError calls with identical requests")
+    boolean singleFlight;
+
+    @Parameter(names = "--tracing",
+            description = "Trace a sample of calls, served by the Tracing service, which can change the sample rate")
+    boolean tracing;
+
+    @Parameter(names = "--trace-sample-rate", description = "Fraction of calls that --tracing starts out tracing")
+    double traceSampleRate = 0.01;
+
+    @Parameter(names = "--trace-buffer-size", description = "Number of recent traces kept for the Tracing service")
+    int traceBufferSize = 1024;
+
+    @Parameter(names = "--pre-encoded-responses",
+            description = "Serve Unary and BiDirectionalStreaming responses from pre-encoded bytes")
+    boolean preEncodedResponses;
+
+    boolean isCachingResponses() {
+        return responseCacheEntries > 0;
+    }
+
+    boolean isCoalescingWrites() {
+        return writeCoalescingMessages > 1;
+    }
+
+    boolean isOffloadingWork() {
+        return workExecutorThreads > 0;
+    }
+
+    Workload workload() {
+        return Workload.newBuilder()
+                .setCpuMicros(workloadCpuMicros)
+                .setIoLatencyMicros(workloadIoLatencyMicros)
+                .setIoLatencyDistribution(workloadIoLatencyDistribution)
+                .build();
+    }
+
+    AllocatorSettings allocatorSettings() {
+        return new AllocatorSettings(allocator,
+                                     allocatorHeapArenas,
+                                     allocatorDirectArenas,
+                                     allocatorPageSize,
+                                     allocatorMaxOrder,
+                                     allocatorTinyCacheSize,
+                                     allocatorSmallCacheSize,
+                                     allocatorNormalCacheSize);
+    }
+
+    ServerTransportSettings transportSettings(ByteBufAllocator allocator) {
+        return new ServerTransportSettings(flowControlWindow,
+                                           maxMessageSize,
+                                           maxConcurrentCallsPerConnection,
+                                           TimeUnit.SECONDS.toNanos(maxConnectionAgeSeconds),
+                                           TimeUnit.SECONDS.toNanos(maxConnectionAgeGraceSeconds),
+                                           allocator);
+    }
+
+    TlsSettings tlsSettings() {
+        return new TlsSettings(tlsProvider, tlsCiphers, tlsSessionCacheSize, tlsSessionTimeoutSeconds);
+    }
+
+    /**
+     * Checks the option values that JCommander cannot validate by type alone.
+     *
+     * @throws ParameterException if any option is out of range
+     */
+    void validate() {
+        checkParameter(bossThreads > 0, "--boss-threads must be positive");
+        checkParameter(workerThreads >= 0, "--worker-threads must not be negative");
+        checkParameter(executorThreads > 0, "--executor-threads must be positive");
+        checkParameter(flowControlWindow >= 0, "--flow-control-window must not be negative");
+        checkParameter(maxMessageSize >= 0, "--max-message-size must not be negative");
+        checkParameter(maxConcurrentCallsPerConnection >= 0,
+                       "--max-concurrent-calls-per-connection must not be negative");
+        checkParameter(maxConnectionAgeSeconds >= 0, "--max-connection-age-seconds must not be negative");
+        checkParameter(maxConnectionAgeGraceSeconds >= 0, "--max-connection-age-grace-seconds must not be negative");
+        checkParameter(allocatorHeapArenas >= 0, "--allocator-heap-arenas must not be negative");
+        checkParameter(allocatorDirectArenas >= 0, "--allocator-direct-arenas must not be negative");
+        checkParameter(allocatorPageSize >= 4096 && Integer.bitCount(allocatorPageSize) == 1,
+                       "--allocator-page-size must be a power of two of at least 4096");
+        checkParameter(allocatorMaxOrder >= 0 && allocatorMaxOrder <= 14,
+                       "--allocator-max-order must be between 0 and 14");
+        checkParameter((long) allocatorPageSize << allocatorMaxOrder <= 1 << 30,
+                       "--allocator-page-size and --allocator-max-order make chunks larger than 1 GiB");
+        checkParameter(allocatorTinyCacheSize >= 0, "--allocator-tiny-cache-size must not be negative");
+        checkParameter(allocatorSmallCacheSize >= 0, "--allocator-small-cache-size must not be negative");
+        checkParameter(allocatorNormalCacheSize >= 0, "--allocator-normal-cache-size must not be negative");
+        checkParameter(memoryStatsIntervalSeconds >= 0, "--memory-stats-interval-seconds must not be negative");
+        checkParameter(serverStreamingResponseCount >= 0, "--server-streaming-response-count must not be negative");
+        checkParameter(maxAggregatedMessageBytes >= 0, "--max-aggregated-message-bytes must not be negative");
+        checkParameter(maxBatchSize > 0, "--max-batch-size must be positive");
+        checkParameter(responseCacheEntries >= 0, "--response-cache-entries must not be negative");
+        checkParameter(responseCacheBytes > 0, "--response-cache-bytes must be positive");
+        checkParameter(writeCoalescingMessages > 0, "--write-coalescing-messages must be positive");
+        checkParameter(writeCoalescingBytes > 0, "--write-coalescing-bytes must be positive");
+        checkParameter(writeCoalescingDelayMicros > 0, "--write-coalescing-delay-micros must be positive");
+        checkParameter(workloadCpuMicros >= 0, "--workload-cpu-micros must not be negative");
+        checkParameter(workloadIoLatencyMicros >= 0, "--workload-io-latency-micros must not be negative");
+        checkParameter(workloadIoLatencyDistribution != LatencyDistribution.UNRECOGNIZED,
+                       "--workload-io-latency-distribution must be a known distribution");
+        checkParameter(workloadMethods.stream().noneMatch(RpcMethod::expectsError),
+                       "--workload-methods must not include the error methods");
+        checkParameter(workExecutorThreads >= 0, "--work-executor-threads must not be negative");
+        checkParameter(workExecutorQueueSize > 0, "--work-executor-queue-size must be positive");
+        checkParameter(tlsSessionCacheSize >= 0, "--tls-session-cache-size must not be negative");
+        checkParameter(tlsSessionTimeoutSeconds >= 0, "--tls-session-timeout-seconds must not be negative");
+        checkParameter(tlsTicketKeyFile == null || tlsProvider != TlsProvider.JDK,
+                       "--tls-ticket-key-file requires the OPENSSL provider");
+        checkParameter(compressionThresholdBytes >= 0, "--compression-threshold must not be negative");
+        checkParameter(traceSampleRate >= 0 && traceSampleRate <= 1, "--trace-sample-rate must be between 0 and 1");
+        checkParameter(traceBufferSize > 0, "--trace-buffer-size must be positive");
+        checkParameter(minConcurrencyLimit > 0, "--concurrency-limit-min must be positive");
+        checkParameter(minConcurrencyLimit <= initialConcurrencyLimit,
+                       "--concurrency-limit-initial must not be below --concurrency-limit-min");
+        checkParameter(initialConcurrencyLimit <= maxConcurrencyLimit,
+                       "--concurrency-limit-initial must not be above --concurrency-limit-max");
+    }
+
+    private static void checkParameter(boolean expression, String message) {
+        if (!expression) {
+            throw new ParameterException(message);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.joeyb.grpc.sample;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.grpc.netty.NettyServerBuilder;
+import io.netty.channel.EventLoopGroup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * The event loop groups and handler executor that a server runs on. Instances own the threads they create, so they
+ * must be closed once the server has terminated. When calls are traced, the handler executor is wrapped in a
+ * {@link QueueTimingExecutor}.
+ */
+final class ServerThreading implements AutoCloseable {
+
+    private final EventLoopGroup bossEventLoopGroup;
+    private final ExecutorService executor;
+    private final HandlerExecutor handlerExecutor;
+    private final TraceRecorder traceRecorder;
+    private final NettyTransport transport;
+    private final EventLoopGroup workerEventLoopGroup;
+
+    private ServerThreading(NettyTransport transport,
+                            EventLoopGroup bossEventLoopGroup,
+                            EventLoopGroup workerEventLoopGroup,
+                            HandlerExecutor handlerExecutor,
+                            ExecutorService executor,
+                            TraceRecorder traceRecorder) {
+        this.bossEventLoopGroup = bossEventLoopGroup;
+        this.executor = executor;
+        this.handlerExecutor = handlerExecutor;
+        this.traceRecorder = traceRecorder;
+        this.transport = transport;
+        this.workerEventLoopGroup = workerEventLoopGroup;
+    }
+
+    /**
+     * Creates the threads described by the given options, for a server whose calls are not traced.
+     *
+     * @param options the server options
+     */
+    static ServerThreading create(ServerOptions options) {
+        return create(options, null);
+    }
+
+    /**
+     * Creates the threads described by the given options.
+     *
+     * @param options the server options
+     * @param traceRecorder the recorder of the server's traced calls, or {@code null} if calls are not traced
+     */
+    static ServerThreading create(ServerOptions options, TraceRecorder traceRecorder) {
+        NettyTransport transport = options.transport.resolve();
+
+        return new ServerThreading(
+                transport,
+                transport.newEventLoopGroup(options.bossThreads, "grpc-boss"),
+                transport.newEventLoopGroup(options.workerThreads, "grpc-worker"),
+                options.executor,
+                newExecutorService(options.executor, options.executorThreads, traceRecorder != null),
+                traceRecorder);
+    }
+
+    /**
+     * Applies the transport, event loop groups and handler executor to the builder.
+     *
+     * @param builder the builder to configure
+     */
+    NettyServerBuilder configure(NettyServerBuilder builder) {
+        builder.channelType(transport.serverChannelType())
+                .bossEventLoopGroup(bossEventLoopGroup)
+                .workerEventLoopGroup(workerEventLoopGroup);
+
+        if (handlerExecutor == HandlerExecutor.DIRECT) {
+            builder.directExecutor();
+        } else if (executor != null) {
+            builder.executor(traceRecorder != null ? new QueueTimingExecutor(executor, traceRecorder) : executor);
+        }
+
+        return builder;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+
+        bossEventLoopGroup.shutdownGracefully();
+        workerEventLoopGroup.shutdownGracefully();
+    }
+
+    @Override
+    public String toString() {
+        return "transport=" + transport + ", executor=" + handlerExecutor;
+    }
+
+    private static ExecutorService newExecutorService(HandlerExecutor handlerExecutor, int threads, boolean tracing) {
+        switch (handlerExecutor) {
+            case DEFAULT:
+                // gRPC's shared executor cannot be wrapped, so traced servers get a cached thread pool of their own,
+                // which is what the shared executor is as well.
+                return tracing
+                        ? Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                                                                .setDaemon(true)
+                                                                .setNameFormat("grpc-handler-%d")
+                                                                .build())
+                        : null;
+            case FORK_JOIN:
+                return new ForkJoinPool(threads, pool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("grpc-handler-" + thread.getPoolIndex());
+                    return thread;
+                }, null, true);
+            case FIXED:
+                return Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("grpc-handler-%d")
+                        .build());
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.ProtocolNegotiator;
+import io.grpc.netty.ProtocolNegotiators;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.SslContext;
+
+/**
+ * The HTTP/2 settings of the server's connections. The flow-control window is how many bytes a stream can have in
+ * flight before the receiver acknowledges them, so a single stream cannot go faster than one window per round trip.
+ * Raising it speeds up streams on links with a high bandwidth-delay product, at the cost of the memory that a slow
+ * reader can make the other side buffer.
+ */
+class ServerTransportSettings {
+
+    private final ByteBufAllocator allocator;
+    private final int flowControlWindow;
+    private final int maxConcurrentCallsPerConnection;
+    private final long maxConnectionAgeGraceNanos;
+    private final long maxConnectionAgeNanos;
+    private final int maxMessageSize;
+
+    /**
+     * Creates server transport settings.
+     *
+     * @param flowControlWindow the initial flow-control window of each stream in bytes, or 0 for gRPC's default
+     * @param maxMessageSize the largest request in bytes that the server accepts, or 0 for gRPC's default
+     * @param maxConcurrentCallsPerConnection the most calls that a client can run on one connection, or 0 for no limit
+     * @param maxConnectionAgeNanos the age at which connections are closed, or 0 to keep them open
+     * @param maxConnectionAgeGraceNanos how long calls that are still running on an aged connection have to finish
+     */
+    ServerTransportSettings(int flowControlWindow,
+                            int maxMessageSize,
+                            int maxConcurrentCallsPerConnection,
+                            long maxConnectionAgeNanos,
+                            long maxConnectionAgeGraceNanos) {
+        this(flowControlWindow,
+             maxMessageSize,
+             maxConcurrentCallsPerConnection,
+             maxConnectionAgeNanos,
+             maxConnectionAgeGraceNanos,
+             null);
+    }
+
+    /**
+     * Creates server transport settings with a buffer allocator of their own.
+     *
+     * @param flowControlWindow the initial flow-control window of each stream in bytes, or 0 for gRPC's default
+     * @param maxMessageSize the largest request in bytes that the server accepts, or 0 for gRPC's default
+     * @param maxConcurrentCallsPerConnection the most calls that a client can run on one connection, or 0 for no limit
+     * @param maxConnectionAgeNanos the age at which connections are closed, or 0 to keep them open
+     * @param maxConnectionAgeGraceNanos how long calls that are still running on an aged connection have to finish
+     * @param allocator the allocator of the connections' buffers, or {@code null} for Netty's default
+     */
+    ServerTransportSettings(int flowControlWindow,
+                            int maxMessageSize,
+                            int maxConcurrentCallsPerConnection,
+                            long maxConnectionAgeNanos,
+                            long maxConnectionAgeGraceNanos,
+                            ByteBufAllocator allocator) {
+        checkArgument(flowControlWindow >= 0, "flowControlWindow must not be negative");
+        checkArgument(maxMessageSize >= 0, "maxMessageSize must not be negative");
+        checkArgument(maxConcurrentCallsPerConnection >= 0, "maxConcurrentCallsPerConnection must not be negative");
+        checkArgument(maxConnectionAgeNanos >= 0, "maxConnectionAgeNanos must not be negative");
+        checkArgument(maxConnectionAgeGraceNanos >= 0, "maxConnectionAgeGraceNanos must not be negative");
+
+        this.allocator = allocator;
+        this.flowControlWindow = flowControlWindow;
+        this.maxConcurrentCallsPerConnection = maxConcurrentCallsPerConnection;
+        this.maxConnectionAgeGraceNanos = maxConnectionAgeGraceNanos;
+        this.maxConnectionAgeNanos = maxConnectionAgeNanos;
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * Applies the settings to a server builder. The builder's connections are secured with the given context, which
+     * takes the place of {@link NettyServerBuilder#sslContext(SslContext)}, since aging connections and setting their
+     * allocator need a protocol negotiator of their own.
+     *
+     * @param builder the builder to configure
+     * @param sslContext the server's SSL context, or {@code null} for plaintext connections
+     * @return the builder
+     */
+    NettyServerBuilder configure(NettyServerBuilder builder, SslContext sslContext) {
+        if (flowControlWindow > 0) {
+            builder.flowControlWindow(flowControlWindow);
+        }
+
+        // Unlike the channel builder, this version of the server builder has no separate inbound limit, and its
+        // maxMessageSize only limits inbound messages.
+        if (maxMessageSize > 0) {
+            builder.maxMessageSize(maxMessageSize);
+        }
+
+        if (maxConcurrentCallsPerConnection > 0) {
+            builder.maxConcurrentCallsPerConnection(maxConcurrentCallsPerConnection);
+        }
+
+        ProtocolNegotiator negotiator = sslContext != null
+                ? ProtocolNegotiators.serverTls(sslContext)
+                : ProtocolNegotiators.serverPlaintext();
+
+        if (maxConnectionAgeNanos > 0) {
+            negotiator = new ConnectionAgingProtocolNegotiator(negotiator,
+                                                               maxConnectionAgeNanos,
+                                                               maxConnectionAgeGraceNanos);
+        }
+
+        if (allocator != null) {
+            negotiator = new AllocatorProtocolNegotiator(negotiator, allocator);
+        }
+
+        return builder.protocolNegotiator(negotiator);
+    }
+}
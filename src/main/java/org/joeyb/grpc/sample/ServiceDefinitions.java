@@ -0,0 +1,60 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rebinds the methods of a service. The generated {@code bindService()} methods are final, so this is how the fast
+ * paths of {@link TestServiceImpl} swap in methods with their own marshallers.
+ */
+final class ServiceDefinitions {
+
+    private ServiceDefinitions() {
+    }
+
+    /**
+     * Returns a copy of the definition with the methods of the same name replaced by the given ones. All other methods
+     * are bound exactly as they were.
+     *
+     * @param definition the definition to copy
+     * @param replacements the methods to bind instead of the existing ones of the same name
+     */
+    static ServerServiceDefinition replaceMethods(ServerServiceDefinition definition,
+                                                  ServerMethodDefinition<?, ?>... replacements) {
+        Map<String, ServerMethodDefinition<?, ?>> replacementsByName = new HashMap<>();
+
+        for (ServerMethodDefinition<?, ?> replacement : replacements) {
+            replacementsByName.put(replacement.getMethodDescriptor().getFullMethodName(), replacement);
+        }
+
+        ServiceDescriptor serviceDescriptor = definition.getServiceDescriptor();
+        ServiceDescriptor.Builder descriptorBuilder = ServiceDescriptor.newBuilder(serviceDescriptor.getName())
+                .setSchemaDescriptor(serviceDescriptor.getSchemaDescriptor());
+
+        for (MethodDescriptor<?, ?> method : serviceDescriptor.getMethods()) {
+            ServerMethodDefinition<?, ?> replacement = replacementsByName.get(method.getFullMethodName());
+
+            descriptorBuilder.addMethod(replacement != null ? replacement.getMethodDescriptor() : method);
+        }
+
+        ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(descriptorBuilder.build());
+
+        for (ServerMethodDefinition<?, ?> method : definition.getMethods()) {
+            ServerMethodDefinition<?, ?> replacement =
+                    replacementsByName.get(method.getMethodDescriptor().getFullMethodName());
+
+            if (replacement != null) {
+                builder.addMethod(replacement);
+            } else {
+                builder.addMethod(method);
+            }
+        }
+
+        return builder.build();
+    }
+}
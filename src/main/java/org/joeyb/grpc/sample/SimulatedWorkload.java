@@ -0,0 +1,121 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Simulated work that stands in for the processing time of a real service, as described by a {@link Workload}. Running
+ * it first keeps the thread busy for the workload's CPU time, and then blocks the thread for a time drawn from the
+ * workload's I/O latency distribution.
+ *
+ * <p>CPU work is measured in CPU time of the current thread rather than wall time where the JVM supports it, so a
+ * thread that is descheduled while it works still does the full amount of work, as it would in a real service.
+ */
+final class SimulatedWorkload implements Runnable {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    // Rounds of CPU work between clock reads, so that reading the clock is only a small part of the work.
+    private static final int CPU_WORK_ROUNDS = 256;
+
+    private static volatile long sink;
+
+    private final long cpuNanos;
+    private final LatencyDistribution ioLatencyDistribution;
+    private final long ioLatencyNanos;
+
+    private SimulatedWorkload(long cpuNanos, long ioLatencyNanos, LatencyDistribution ioLatencyDistribution) {
+        this.cpuNanos = cpuNanos;
+        this.ioLatencyDistribution = ioLatencyDistribution;
+        this.ioLatencyNanos = ioLatencyNanos;
+    }
+
+    /**
+     * Returns the simulated work described by the workload.
+     *
+     * @param workload the workload
+     * @throws IllegalArgumentException if the workload has negative times or an unknown latency distribution
+     */
+    static SimulatedWorkload of(Workload workload) {
+        checkNotNull(workload, "workload");
+        checkArgument(workload.getCpuMicros() >= 0, "CPU micros must not be negative");
+        checkArgument(workload.getIoLatencyMicros() >= 0, "I/O latency micros must not be negative");
+        checkArgument(workload.getIoLatencyDistribution() != LatencyDistribution.UNRECOGNIZED,
+                      "Unknown I/O latency distribution");
+
+        return new SimulatedWorkload(TimeUnit.MICROSECONDS.toNanos(workload.getCpuMicros()),
+                                     TimeUnit.MICROSECONDS.toNanos(workload.getIoLatencyMicros()),
+                                     workload.getIoLatencyDistribution());
+    }
+
+    /**
+     * Returns whether running the workload does nothing at all.
+     */
+    boolean isEmpty() {
+        return cpuNanos == 0 && ioLatencyNanos == 0;
+    }
+
+    /**
+     * Draws the time that one run of the workload blocks for from its latency distribution.
+     *
+     * @param random the source of randomness
+     */
+    long nextIoLatencyNanos(Random random) {
+        switch (ioLatencyDistribution) {
+            case UNIFORM:
+                return (long) (random.nextDouble() * 2 * ioLatencyNanos);
+            case EXPONENTIAL:
+                return (long) (-Math.log(1 - random.nextDouble()) * ioLatencyNanos);
+            default:
+                return ioLatencyNanos;
+        }
+    }
+
+    /**
+     * Does the CPU work and then blocks for the I/O latency. Blocking stops early if the thread is interrupted.
+     */
+    @Override
+    public void run() {
+        if (cpuNanos > 0) {
+            burnCpu(cpuNanos);
+        }
+
+        if (ioLatencyNanos > 0) {
+            block(nextIoLatencyNanos(ThreadLocalRandom.current()));
+        }
+    }
+
+    private static void block(long nanos) {
+        long deadlineNanos = System.nanoTime() + nanos;
+        long remainingNanos;
+
+        while ((remainingNanos = deadlineNanos - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remainingNanos);
+        }
+    }
+
+    private static void burnCpu(long nanos) {
+        boolean cpuTime = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+        long startNanos = cpuTime ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : System.nanoTime();
+        long state = startNanos;
+
+        do {
+            for (int i = 0; i < CPU_WORK_ROUNDS; i++) {
+                state = state * 6364136223846793005L + 1442695040888963407L;
+                state ^= state >>> 29;
+            }
+        } while ((cpuTime ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : System.nanoTime()) - startNanos < nanos);
+
+        // Publishing the result, however unlikely, keeps the JIT from removing the work.
+        if (state == 0) {
+            sink = state;
+        }
+    }
+}
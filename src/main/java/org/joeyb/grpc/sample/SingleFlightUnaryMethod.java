@@ -0,0 +1,157 @@
+package org.joeyb.grpc.sample;
+
+import com.google.protobuf.ByteString;
+
+import io.grpc.Context;
+import io.grpc.stub.StreamObserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Coalesces concurrent calls with identical serialized requests into one call of the delegate. The first call of a
+ * request starts a flight that invokes the delegate, and calls of the same request that arrive while the flight is
+ * in the air wait for it. When the delegate completes, its response or error is sent to every waiting call. Calls
+ * that arrive after that start a new flight, so unlike {@link CachingUnaryMethod}, nothing outlives the flight.
+ *
+ * <p>The delegate answers the flight, not any one of its calls, so cancelling a call, including the one that started
+ * the flight, does not cancel the shared work. A cancelled call just drops the result when it is sent to it. For the
+ * same reason the delegate runs in a fork of the first call's {@link Context}, which keeps its values but is not
+ * cancelled along with it.
+ */
+class SingleFlightUnaryMethod implements SerializedUnaryMethod {
+
+    private final SerializedUnaryMethod delegate;
+    private final ConcurrentMap<ByteString, Flight> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a method that coalesces identical calls of the given method.
+     *
+     * @param delegate the method that answers each flight
+     */
+    SingleFlightUnaryMethod(SerializedUnaryMethod delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void invoke(ByteString request, StreamObserver<ByteString> responseObserver) {
+        while (true) {
+            Flight flight = new Flight(request, responseObserver);
+            Flight existing = flights.putIfAbsent(request, flight);
+
+            if (existing == null) {
+                start(flight);
+                return;
+            }
+
+            // A flight that landed between the lookup and the join has already left the map, so the retry either
+            // joins a newer flight or starts one.
+            if (existing.join(responseObserver)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of flights that are waiting for the delegate.
+     */
+    int flightCount() {
+        return flights.size();
+    }
+
+    private void start(Flight flight) {
+        Context.current().fork().run(() -> {
+            try {
+                delegate.invoke(flight.request, flight);
+            } catch (RuntimeException e) {
+                flight.onError(e);
+            }
+        });
+    }
+
+    /**
+     * A call of the delegate and the calls that wait for its result.
+     */
+    private class Flight implements StreamObserver<ByteString> {
+
+        private final ByteString request;
+        private final List<StreamObserver<ByteString>> waiters = new ArrayList<>();
+
+        private boolean landed;
+        private ByteString response;
+
+        private Flight(ByteString request, StreamObserver<ByteString> responseObserver) {
+            this.request = request;
+
+            waiters.add(responseObserver);
+        }
+
+        /**
+         * Adds a call to the flight.
+         *
+         * @return whether the call was added, or {@code false} if the flight has already landed
+         */
+        synchronized boolean join(StreamObserver<ByteString> responseObserver) {
+            if (landed) {
+                return false;
+            }
+
+            waiters.add(responseObserver);
+
+            return true;
+        }
+
+        @Override
+        public void onNext(ByteString value) {
+            response = value;
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            for (StreamObserver<ByteString> waiter : land()) {
+                try {
+                    waiter.onError(t);
+                } catch (RuntimeException e) {
+                    // The waiter's call was cancelled, which must not keep the others from getting the error.
+                }
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            for (StreamObserver<ByteString> waiter : land()) {
+                try {
+                    if (response != null) {
+                        waiter.onNext(response);
+                    }
+
+                    waiter.onCompleted();
+                } catch (RuntimeException e) {
+                    // The waiter's call was cancelled, which must not keep the others from getting the response.
+                }
+            }
+        }
+
+        /**
+         * Takes the flight out of the map and closes it to new calls.
+         *
+         * @return the calls to send the result to, which are empty if the flight has already landed
+         */
+        private List<StreamObserver<ByteString>> land() {
+            flights.remove(request, this);
+
+            synchronized (this) {
+                if (landed) {
+                    return Collections.emptyList();
+                }
+
+                landed = true;
+
+                return waiters;
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.Status;
+import io.grpc.StatusException;
+
+/**
+ * A {@link StatusException} that does not capture a stack trace. Filling in the stack trace walks the whole thread
+ * stack, which is most of the cost of creating an exception, and is of no use for errors that are expected.
+ */
+class StacklessStatusException extends StatusException {
+
+    private static final long serialVersionUID = 1L;
+
+    StacklessStatusException(Status status) {
+        super(status);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,89 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.ImmutableList;
+
+import io.grpc.Attributes;
+import io.grpc.NameResolver;
+import io.grpc.ResolvedServerInfo;
+import io.grpc.ResolvedServerInfoGroup;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Resolves the {@code static} scheme to a fixed list of server addresses, such as several {@link ServerApplication}
+ * instances on different ports. Every address is its own group, so the load balancer gets a subchannel, and with it a
+ * connection, per address. The path of the target URI is ignored, since the addresses are given up front.
+ */
+class StaticNameResolverFactory extends NameResolver.Factory {
+
+    static final String SCHEME = "static";
+
+    private final List<InetSocketAddress> addresses;
+
+    /**
+     * Creates a factory that resolves every target to the given addresses.
+     *
+     * @param addresses the server addresses, in the order that they are handed to the load balancer
+     */
+    StaticNameResolverFactory(List<InetSocketAddress> addresses) {
+        checkArgument(!addresses.isEmpty(), "addresses must not be empty");
+
+        this.addresses = ImmutableList.copyOf(addresses);
+    }
+
+    /**
+     * Returns the target to build a channel for, which names the addresses for logging but is resolved by this factory
+     * alone.
+     */
+    String target() {
+        StringBuilder target = new StringBuilder(SCHEME).append(":///");
+
+        for (int i = 0; i < addresses.size(); i++) {
+            InetSocketAddress address = addresses.get(i);
+
+            target.append(i > 0 ? "," : "").append(address.getHostString()).append(':').append(address.getPort());
+        }
+
+        return target.toString();
+    }
+
+    @Override
+    public NameResolver newNameResolver(URI targetUri, Attributes params) {
+        if (!SCHEME.equals(targetUri.getScheme())) {
+            return null;
+        }
+
+        return new NameResolver() {
+            @Override
+            public String getServiceAuthority() {
+                InetSocketAddress address = addresses.get(0);
+
+                return address.getHostString() + ":" + address.getPort();
+            }
+
+            @Override
+            public void start(Listener listener) {
+                ImmutableList.Builder<ResolvedServerInfoGroup> groups = ImmutableList.builder();
+
+                for (InetSocketAddress address : addresses) {
+                    groups.add(ResolvedServerInfoGroup.builder().add(new ResolvedServerInfo(address)).build());
+                }
+
+                listener.onUpdate(groups.build(), Attributes.EMPTY);
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+    }
+
+    @Override
+    public String getDefaultScheme() {
+        return SCHEME;
+    }
+}
@@ -0,0 +1,21 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Serves snapshots of the {@link ServerMetrics} recorded by {@link MetricsServerInterceptor}.
+ */
+public class StatsServiceImpl extends StatsGrpc.StatsImplBase {
+
+    private final ServerMetrics metrics;
+
+    StatsServiceImpl(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void getStats(GetStatsRequest request, StreamObserver<GetStatsResponse> responseObserver) {
+        responseObserver.onNext(metrics.snapshot());
+        responseObserver.onCompleted();
+    }
+}
@@ -1,39 +1,107 @@
 package org.joeyb.grpc.sample;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import io.grpc.Context;
 import io.grpc.Status;
 import io.grpc.StatusException;
+import io.grpc.stub.CallStreamObserver;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.stream.Collectors;
-
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Implements {@link TestServiceGrpc}. The {@code Unary}, {@code UnaryBatch}, {@code ServerStreaming},
+ * {@code ClientStreaming} and {@code BiDirectionalStreaming} methods can do simulated work before they respond, as
+ * described by the {@link Workload} of a request, or by the server's default workload for the method when the request
+ * has none. If the service has a work executor, the work runs on it and the response is sent from its thread, so that
+ * the threads that gRPC calls the service on are never blocked by it.
+ */
 public class TestServiceImpl extends TestServiceGrpc.TestServiceImplBase {
 
+    public static final int DEFAULT_FILE_CHUNK_SIZE = 1024 * 1024;
+    public static final int DEFAULT_MAX_AGGREGATED_MESSAGE_BYTES = 1024 * 1024;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+    public static final int DEFAULT_SERVER_STREAMING_RESPONSE_COUNT = 10;
+
+    /**
+     * The largest file chunk the server sends, which leaves room for the chunk's other fields within gRPC's default
+     * maximum message size of 4 MiB.
+     */
+    static final int MAX_FILE_CHUNK_SIZE = 4 * 1024 * 1024 - 1024;
+
+    /**
+     * The largest payload the server attaches to a server streaming response, which leaves room for the response's
+     * other fields within gRPC's default maximum message size of 4 MiB.
+     */
+    static final int MAX_RESPONSE_PAYLOAD_SIZE = 4 * 1024 * 1024 - 1024;
+
+    static final String ERROR_PREFIX = "Error for ";
+
+    static final String RESPONSE_PREFIX = "Received ";
+
+    private final AggregationOverflowPolicy aggregationOverflowPolicy;
+    private final ErrorMode errorMode;
+    private final Path fileRoot;
+    private final int maxAggregatedMessageBytes;
+    private final int maxBatchSize;
     private final int serverStreamingResponseCount;
+    private final Executor workExecutor;
+    private final Map<RpcMethod, SimulatedWorkload> workloads;
+    private final WriteCoalescing writeCoalescing;
 
     public TestServiceImpl(int serverStreamingResponseCount) {
-        this.serverStreamingResponseCount = serverStreamingResponseCount;
+        this(newBuilder().serverStreamingResponseCount(serverStreamingResponseCount));
     }
 
-    @Override
-    public StreamObserver<TestRequest> biDirectionalStreaming(StreamObserver<TestResponse> responseObserver) {
-        return new StreamObserver<TestRequest>() {
-            @Override
-            public void onNext(TestRequest value) {
-                responseObserver.onNext(createResponse(value));
-            }
+    private TestServiceImpl(Builder builder) {
+        this.aggregationOverflowPolicy = builder.aggregationOverflowPolicy;
+        this.errorMode = builder.errorMode;
+        this.fileRoot = builder.fileRoot;
+        this.maxAggregatedMessageBytes = builder.maxAggregatedMessageBytes;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.serverStreamingResponseCount = builder.serverStreamingResponseCount;
+        this.workExecutor = builder.workExecutor;
+        this.workloads = new EnumMap<>(builder.workloads);
+        this.writeCoalescing = builder.writeCoalescing;
+    }
 
-            @Override
-            public void onError(Throwable t) {
-                responseObserver.onError(t);
-            }
+    public static Builder newBuilder() {
+        return new Builder();
+    }
 
-            @Override
-            public void onCompleted() {
-                responseObserver.onCompleted();
-            }
-        };
+    /**
+     * Responds to each request as it arrives, once the request's work is done. If the service coalesces writes, the
+     * responses are buffered and written in bursts instead.
+     */
+    @Override
+    public StreamObserver<TestRequest> biDirectionalStreaming(StreamObserver<TestResponse> observer) {
+        return respondToEach(observer, TestServiceImpl::createResponse);
+    }
+
+    /**
+     * Same as {@link #biDirectionalStreaming(StreamObserver)}, but responds with pre-encoded {@link TestResponse}s that
+     * reuse the raw bytes of each request's message.
+     *
+     * @see PreEncodedResponses
+     */
+    StreamObserver<TestRequest> biDirectionalStreamingPreEncoded(StreamObserver<ByteString> observer) {
+        return respondToEach(observer, request -> PreEncodedResponses.encodeResponse(request.getMessageBytes()));
     }
 
     @Override
@@ -41,26 +109,46 @@ public class TestServiceImpl extends TestServiceGrpc.TestServiceImplBase {
         return new ErrorResponseStreamObserver(responseObserver);
     }
 
+    /**
+     * Responds with the aggregated messages once the client half-closes. The work of the first request is done once,
+     * after the stream completes.
+     */
     @Override
     public StreamObserver<TestRequest> clientStreaming(StreamObserver<TestResponse> responseObserver) {
-        return new StreamObserver<TestRequest>() {
+        return new AggregatingStreamObserver(responseObserver) {
 
-            private final LinkedList<TestRequest> requests = new LinkedList<>();
+            private Runnable work;
+            private StatusException workError;
+            private boolean firstRequest = true;
 
             @Override
             public void onNext(TestRequest value) {
-                requests.add(value);
-            }
+                if (firstRequest) {
+                    firstRequest = false;
 
-            @Override
-            public void onError(Throwable t) {
-                responseObserver.onError(t);
+                    try {
+                        work = work(RpcMethod.CLIENT_STREAMING, value);
+                    } catch (StatusException e) {
+                        workError = e;
+                    }
+                }
+
+                super.onNext(value);
             }
 
             @Override
-            public void onCompleted() {
-                responseObserver.onNext(createResponse(requests));
-                responseObserver.onCompleted();
+            protected void onStreamCompleted(MessageAggregator aggregator) {
+                if (workError != null) {
+                    responseObserver.onError(workError);
+                    return;
+                }
+
+                TestResponse response = createResponse(aggregator);
+
+                performWork(work, responseObserver, () -> {
+                    responseObserver.onNext(response);
+                    responseObserver.onCompleted();
+                });
             }
         };
     }
@@ -70,13 +158,90 @@ public class TestServiceImpl extends TestServiceGrpc.TestServiceImplBase {
         return new ErrorResponseStreamObserver(responseObserver);
     }
 
+    /**
+     * Streams a file from the file root in chunks of {@link DownloadFileRequest#getChunkSize()} bytes, or of the
+     * default chunk size if the request does not specify one.
+     *
+     * @see FileDownloadWriter
+     */
+    @Override
+    public void downloadFile(DownloadFileRequest request, StreamObserver<FileChunk> responseObserver) {
+        if (request.getChunkSize() < 0 || request.getChunkSize() > MAX_FILE_CHUNK_SIZE) {
+            responseObserver.onError(new StatusException(Status.INVALID_ARGUMENT.withDescription(
+                    "Chunk size must be between 0 and " + MAX_FILE_CHUNK_SIZE)));
+            return;
+        }
+
+        int chunkSize = request.getChunkSize() > 0 ? request.getChunkSize() : DEFAULT_FILE_CHUNK_SIZE;
+
+        ServerCallStreamObserver<FileChunk> serverCallStreamObserver =
+                (ServerCallStreamObserver<FileChunk>) responseObserver;
+
+        FileDownloadWriter writer;
+
+        try {
+            MappedFileChunks chunks = new MappedFileChunks(FileChannel.open(resolveFile(request.getFileName())),
+                                                           chunkSize);
+
+            writer = new FileDownloadWriter(chunks, serverCallStreamObserver);
+        } catch (NoSuchFileException e) {
+            responseObserver.onError(new StatusException(Status.NOT_FOUND.withDescription(
+                    "File " + request.getFileName() + " does not exist")));
+            return;
+        } catch (IOException e) {
+            responseObserver.onError(new StatusException(Status.INTERNAL.withDescription(
+                    "Failed to open file " + request.getFileName()).withCause(e)));
+            return;
+        } catch (StatusException e) {
+            responseObserver.onError(e);
+            return;
+        }
+
+        serverCallStreamObserver.setOnCancelHandler(writer::close);
+        serverCallStreamObserver.setOnReadyHandler(writer);
+
+        writer.run();
+    }
+
+    /**
+     * Streams {@link TestRequest#getResponseCount()} copies of the response back to the client, or the server's
+     * default count if the request does not specify one. Responses are only produced while the transport reports that
+     * it is ready, so the stream length does not affect the amount of buffered data. The request's work is done once,
+     * before the first response.
+     */
     @Override
     public void serverStreaming(TestRequest request, StreamObserver<TestResponse> responseObserver) {
-        for (int i = 0; i < serverStreamingResponseCount; i++) {
-            responseObserver.onNext(createResponse(request));
+        if (request.getResponseCount() < 0) {
+            responseObserver.onError(new StatusException(Status.INVALID_ARGUMENT.withDescription(
+                    "Response count must not be negative")));
+            return;
         }
 
-        responseObserver.onCompleted();
+        if (request.getResponsePayloadSize() < 0 || request.getResponsePayloadSize() > MAX_RESPONSE_PAYLOAD_SIZE) {
+            responseObserver.onError(new StatusException(Status.INVALID_ARGUMENT.withDescription(
+                    "Response payload size must be between 0 and " + MAX_RESPONSE_PAYLOAD_SIZE)));
+            return;
+        }
+
+        int responseCount = request.getResponseCount() > 0
+                ? request.getResponseCount()
+                : serverStreamingResponseCount;
+
+        // The zeroed array is never shared or written to, so wrapping it saves copying the whole payload once more.
+        TestResponse response = createResponse(request).toBuilder()
+                .setPayload(UnsafeByteOperations.unsafeWrap(new byte[request.getResponsePayloadSize()]))
+                .build();
+
+        ServerCallStreamObserver<TestResponse> serverCallStreamObserver =
+                (ServerCallStreamObserver<TestResponse>) responseObserver;
+
+        FlowControlledResponseWriter writer =
+                new FlowControlledResponseWriter(serverCallStreamObserver, response, responseCount);
+
+        // The on-ready handler can only be set before this method returns, so the writer ignores it until started.
+        serverCallStreamObserver.setOnReadyHandler(writer);
+
+        performWork(RpcMethod.SERVER_STREAMING, request, responseObserver, writer::start);
     }
 
     @Override
@@ -84,10 +249,74 @@ public class TestServiceImpl extends TestServiceGrpc.TestServiceImplBase {
         responseObserver.onError(createError(request));
     }
 
+    /**
+     * Writes the uploaded chunks to a file in the file root as they arrive.
+     *
+     * @see FileUploadObserver
+     */
+    @Override
+    public StreamObserver<FileChunk> uploadFile(StreamObserver<UploadFileResponse> responseObserver) {
+        return new FileUploadObserver(this::resolveFile, responseObserver);
+    }
+
     @Override
     public void unary(TestRequest request, StreamObserver<TestResponse> responseObserver) {
-        responseObserver.onNext(createResponse(request));
-        responseObserver.onCompleted();
+        performWork(RpcMethod.UNARY, request, responseObserver, () -> {
+            responseObserver.onNext(createResponse(request));
+            responseObserver.onCompleted();
+        });
+    }
+
+    /**
+     * Responds to every request of the batch as {@link #unary(TestRequest, StreamObserver)} would, keeping the
+     * responses in request order. The work of the requests is done one after the other. Batches larger than the
+     * server's maximum batch size are rejected as a whole.
+     */
+    @Override
+    public void unaryBatch(TestBatchRequest request, StreamObserver<TestBatchResponse> responseObserver) {
+        if (request.getRequestsCount() > maxBatchSize) {
+            responseObserver.onError(new StatusException(Status.INVALID_ARGUMENT.withDescription(
+                    "Batch of " + request.getRequestsCount() + " requests exceeds the maximum of " + maxBatchSize)));
+            return;
+        }
+
+        TestBatchResponse.Builder response = TestBatchResponse.newBuilder();
+        List<Runnable> work = new ArrayList<>();
+
+        for (TestRequest batchedRequest : request.getRequestsList()) {
+            Runnable requestWork;
+
+            try {
+                requestWork = work(RpcMethod.UNARY, batchedRequest);
+            } catch (StatusException e) {
+                responseObserver.onError(e);
+                return;
+            }
+
+            if (requestWork != null) {
+                work.add(requestWork);
+            }
+
+            response.addResponses(createResponse(batchedRequest));
+        }
+
+        performWork(work.isEmpty() ? null : () -> work.forEach(Runnable::run), responseObserver, () -> {
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
+        });
+    }
+
+    /**
+     * Same as {@link #unary(TestRequest, StreamObserver)}, but responds with a pre-encoded {@link TestResponse} that
+     * reuses the raw bytes of the request's message.
+     *
+     * @see PreEncodedResponses
+     */
+    void unaryPreEncoded(TestRequest request, StreamObserver<ByteString> responseObserver) {
+        performWork(RpcMethod.UNARY, request, responseObserver, () -> {
+            responseObserver.onNext(PreEncodedResponses.encodeResponse(request.getMessageBytes()));
+            responseObserver.onCompleted();
+        });
     }
 
     @Override
@@ -95,53 +324,464 @@ public class TestServiceImpl extends TestServiceGrpc.TestServiceImplBase {
         responseObserver.onError(createError(request));
     }
 
-    private static Throwable createError(TestRequest request) {
-        return new StatusException(Status.UNKNOWN.withDescription("Error for " + request.getMessage()));
+    /**
+     * Resolves a file name that a client sent against the file root, making sure that it stays within the root.
+     */
+    private Path resolveFile(String fileName) throws StatusException {
+        if (fileRoot == null) {
+            throw new StatusException(Status.UNIMPLEMENTED.withDescription("File transfers are not enabled"));
+        }
+
+        Path file = fileRoot.resolve(fileName).normalize();
+
+        if (fileName.isEmpty() || !file.startsWith(fileRoot) || file.equals(fileRoot)) {
+            throw new StatusException(Status.INVALID_ARGUMENT.withDescription(
+                    "File name " + fileName + " is not a file within the file root"));
+        }
+
+        return file;
+    }
+
+    /**
+     * Returns the work to do for a request to the method: the request's own workload, or the server's default workload
+     * for the method if the request has none. Returns {@code null} if there is nothing to do.
+     *
+     * @throws StatusException if the request's workload is invalid
+     */
+    private Runnable work(RpcMethod method, TestRequest request) throws StatusException {
+        SimulatedWorkload workload;
+
+        if (request.hasWorkload()) {
+            try {
+                workload = SimulatedWorkload.of(request.getWorkload());
+            } catch (IllegalArgumentException e) {
+                throw new StatusException(Status.INVALID_ARGUMENT.withDescription(e.getMessage()));
+            }
+        } else {
+            workload = workloads.get(method);
+        }
+
+        return workload != null && !workload.isEmpty() ? workload : null;
     }
 
-    private static Throwable createError(Collection<TestRequest> requests) {
-        String joinedMessages = requests.stream().map(TestRequest::getMessage).collect(Collectors.joining(", "));
+    /**
+     * Does the request's work and then runs the continuation, or fails the call if the request's workload is invalid.
+     *
+     * @return whether the work was done or handed to the work executor
+     * @see #performWork(Runnable, StreamObserver, Runnable)
+     */
+    private boolean performWork(RpcMethod method,
+                                TestRequest request,
+                                StreamObserver<?> responseObserver,
+                                Runnable continuation) {
+        Runnable work;
+
+        try {
+            work = work(method, request);
+        } catch (StatusException e) {
+            responseObserver.onError(e);
+            return false;
+        }
 
-        return new StatusException(Status.UNKNOWN.withDescription("Error for " + joinedMessages));
+        return performWork(work, responseObserver, continuation);
     }
 
-    private static TestResponse createResponse(TestRequest request) {
+    /**
+     * Does the work and then runs the continuation, either right away or on the work executor. Offloaded work is
+     * skipped if the call is cancelled before it starts, in which case the call is failed with {@code CANCELLED}
+     * instead. Fails the call with {@code RESOURCE_EXHAUSTED} if the work executor rejects the work.
+     *
+     * @param work the work to do, or {@code null} to run the continuation right away
+     * @param responseObserver the observer that the call is failed through
+     * @param continuation the code that responds once the work is done
+     * @return whether the work was done or handed to the work executor
+     */
+    private boolean performWork(Runnable work, StreamObserver<?> responseObserver, Runnable continuation) {
+        if (work == null || workExecutor == null) {
+            if (work != null) {
+                work.run();
+            }
+
+            continuation.run();
+            return true;
+        }
+
+        try {
+            workExecutor.execute(Context.current().wrap(() -> {
+                if (Context.current().isCancelled()) {
+                    responseObserver.onError(new StatusException(Status.CANCELLED.withDescription(
+                            "Call was cancelled before its work started")));
+                    return;
+                }
+
+                work.run();
+                continuation.run();
+            }));
+        } catch (RejectedExecutionException e) {
+            responseObserver.onError(new StatusException(Status.RESOURCE_EXHAUSTED.withDescription(
+                    "Work executor rejected the call's work")));
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns a request observer that responds to each request once its work is done. With a work executor, the next
+     * request is only delivered once the previous one was responded to, which keeps the responses in request order and
+     * the work thread the only one writing to the call at a time. The client can half-close while the work of its last
+     * request is still running, in which case the call completes once that work is done.
+     */
+    private <T> StreamObserver<TestRequest> respondToEach(StreamObserver<T> observer,
+                                                         Function<TestRequest, T> responseFunction) {
+        CallStreamObserver<T> flowControl = workExecutor != null ? (CallStreamObserver<T>) observer : null;
+
+        if (flowControl != null) {
+            flowControl.disableAutoInboundFlowControl();
+            flowControl.request(1);
+        }
+
+        StreamObserver<T> responseObserver = coalesceWrites(observer);
+
+        return new StreamObserver<TestRequest>() {
+
+            private boolean failed;
+            private boolean halfClosed;
+            private boolean responding;
+
+            @Override
+            public void onNext(TestRequest value) {
+                if (failed) {
+                    return;
+                }
+
+                synchronized (this) {
+                    responding = true;
+                }
+
+                failed = !performWork(RpcMethod.BI_DIRECTIONAL_STREAMING, value, responseObserver, () -> {
+                    responseObserver.onNext(responseFunction.apply(value));
+
+                    boolean completing;
+
+                    synchronized (this) {
+                        responding = false;
+                        completing = halfClosed;
+                    }
+
+                    if (completing) {
+                        responseObserver.onCompleted();
+                    } else if (flowControl != null) {
+                        flowControl.request(1);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                if (!failed) {
+                    responseObserver.onError(t);
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+                if (failed) {
+                    return;
+                }
+
+                synchronized (this) {
+                    if (responding) {
+                        halfClosed = true;
+                        return;
+                    }
+                }
+
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    private <T> StreamObserver<T> coalesceWrites(StreamObserver<T> responseObserver) {
+        return writeCoalescing != null ? writeCoalescing.wrap(responseObserver) : responseObserver;
+    }
+
+    private Throwable createError(TestRequest request) {
+        return errorMode.createError(Status.UNKNOWN, ERROR_PREFIX, request.getMessage());
+    }
+
+    private Throwable createError(MessageAggregator aggregator) {
+        return errorMode.createError(Status.UNKNOWN, ERROR_PREFIX, aggregator.result());
+    }
+
+    private static Throwable createResourceExhaustedError(MessageAggregator aggregator) {
+        return new StatusException(Status.RESOURCE_EXHAUSTED.withDescription(
+                "Client stream exceeded " + aggregator.maxBytes() + " aggregated message bytes after "
+                        + aggregator.retainedMessageCount() + " messages"));
+    }
+
+    static TestResponse createResponse(TestRequest request) {
         return TestResponse.newBuilder()
-                .setMessage("Received " + request.getMessage())
+                .setMessage(RESPONSE_PREFIX + request.getMessage())
                 .build();
     }
 
-    private static TestResponse createResponse(Collection<TestRequest> requests) {
-        String joinedMessages = requests.stream().map(TestRequest::getMessage).collect(Collectors.joining(", "));
-
+    private static TestResponse createResponse(MessageAggregator aggregator) {
         return TestResponse.newBuilder()
-                .setMessage("Received " + joinedMessages)
+                .setMessage(RESPONSE_PREFIX + aggregator.result())
                 .build();
     }
 
-    private static class ErrorResponseStreamObserver implements StreamObserver<TestRequest> {
+    public static class Builder {
 
-        private final LinkedList<TestRequest> requests;
-        private final StreamObserver<TestResponse> responseObserver;
+        private final Map<RpcMethod, SimulatedWorkload> workloads = new EnumMap<>(RpcMethod.class);
 
-        private ErrorResponseStreamObserver(StreamObserver<TestResponse> responseObserver) {
-            this.requests = new LinkedList<>();
+        private AggregationOverflowPolicy aggregationOverflowPolicy = AggregationOverflowPolicy.TRUNCATE;
+        private ErrorMode errorMode = ErrorMode.DETAILED;
+        private Path fileRoot;
+        private int maxAggregatedMessageBytes = DEFAULT_MAX_AGGREGATED_MESSAGE_BYTES;
+        private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        private int serverStreamingResponseCount = DEFAULT_SERVER_STREAMING_RESPONSE_COUNT;
+        private Executor workExecutor;
+        private WriteCoalescing writeCoalescing;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets what happens once a client stream's messages no longer fit in the aggregated message byte limit.
+         *
+         * @param aggregationOverflowPolicy the overflow policy
+         */
+        public Builder aggregationOverflowPolicy(AggregationOverflowPolicy aggregationOverflowPolicy) {
+            this.aggregationOverflowPolicy = checkNotNull(aggregationOverflowPolicy, "aggregationOverflowPolicy");
+            return this;
+        }
+
+        /**
+         * Sets how the errors of the {@code *Error} methods are built.
+         *
+         * @param errorMode the error mode
+         */
+        public Builder errorMode(ErrorMode errorMode) {
+            this.errorMode = checkNotNull(errorMode, "errorMode");
+            return this;
+        }
+
+        /**
+         * Sets the directory that {@code DownloadFile} and {@code UploadFile} are confined to, or {@code null} to
+         * reject file transfers.
+         *
+         * @param fileRoot the file root
+         */
+        public Builder fileRoot(Path fileRoot) {
+            this.fileRoot = fileRoot != null ? fileRoot.toAbsolutePath().normalize() : null;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of UTF-8 encoded message bytes retained per client stream.
+         *
+         * @param maxAggregatedMessageBytes the retained byte limit
+         */
+        public Builder maxAggregatedMessageBytes(int maxAggregatedMessageBytes) {
+            checkArgument(maxAggregatedMessageBytes >= 0, "maxAggregatedMessageBytes must not be negative");
+            this.maxAggregatedMessageBytes = maxAggregatedMessageBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests accepted in a single {@code UnaryBatch} call.
+         *
+         * @param maxBatchSize the batch size limit
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets the number of server streaming responses sent when a request does not specify a count.
+         *
+         * @param serverStreamingResponseCount the default response count
+         */
+        public Builder serverStreamingResponseCount(int serverStreamingResponseCount) {
+            checkArgument(serverStreamingResponseCount >= 0, "serverStreamingResponseCount must not be negative");
+            this.serverStreamingResponseCount = serverStreamingResponseCount;
+            return this;
+        }
+
+        /**
+         * Sets the executor that simulated work runs on, or {@code null} to do the work on the threads that gRPC calls
+         * the service on. Calls whose work the executor rejects fail with {@code RESOURCE_EXHAUSTED}, so a bounded
+         * executor sheds load once its queue is full.
+         *
+         * @param workExecutor the work executor
+         */
+        public Builder workExecutor(Executor workExecutor) {
+            this.workExecutor = workExecutor;
+            return this;
+        }
+
+        /**
+         * Sets the simulated work done for requests to the method that do not carry a workload of their own.
+         *
+         * @param method the method, which must not be one of the error methods
+         * @param workload the method's default workload
+         */
+        Builder workload(RpcMethod method, Workload workload) {
+            checkNotNull(method, "method");
+            checkArgument(!method.expectsError(), "Error methods do not do simulated work");
+            this.workloads.put(method, SimulatedWorkload.of(workload));
+            return this;
+        }
+
+        /**
+         * Sets how bi-directional streaming responses are coalesced into bursts of writes, or {@code null} to write
+         * each response as soon as it is produced.
+         *
+         * @param writeCoalescing the write coalescing settings
+         */
+        Builder writeCoalescing(WriteCoalescing writeCoalescing) {
+            this.writeCoalescing = writeCoalescing;
+            return this;
+        }
+
+        public TestServiceImpl build() {
+            return new TestServiceImpl(this);
+        }
+    }
+
+    /**
+     * Folds each request of a client stream into a {@link MessageAggregator} as it arrives. If the aggregator
+     * overflows and the service rejects oversized streams, the call fails immediately and later requests are ignored.
+     */
+    private abstract class AggregatingStreamObserver implements StreamObserver<TestRequest> {
+
+        protected final StreamObserver<TestResponse> responseObserver;
+
+        private final MessageAggregator aggregator;
+
+        private boolean rejected;
+
+        private AggregatingStreamObserver(StreamObserver<TestResponse> responseObserver) {
+            this(responseObserver, maxAggregatedMessageBytes);
+        }
+
+        private AggregatingStreamObserver(StreamObserver<TestResponse> responseObserver, int maxRetainedBytes) {
+            this.aggregator = new MessageAggregator(maxAggregatedMessageBytes, maxRetainedBytes);
             this.responseObserver = responseObserver;
         }
 
         @Override
         public void onNext(TestRequest value) {
-            requests.add(value);
+            if (rejected) {
+                return;
+            }
+
+            if (!aggregator.add(value.getMessage())
+                    && aggregationOverflowPolicy == AggregationOverflowPolicy.REJECT) {
+                rejected = true;
+                responseObserver.onError(createResourceExhaustedError(aggregator));
+            }
         }
 
         @Override
         public void onError(Throwable t) {
-            responseObserver.onError(t);
+            if (!rejected) {
+                responseObserver.onError(t);
+            }
         }
 
         @Override
         public void onCompleted() {
-            responseObserver.onError(createError(requests));
+            if (!rejected) {
+                onStreamCompleted(aggregator);
+            }
+        }
+
+        /**
+         * Called once the client has finished sending requests, unless the call was already rejected.
+         *
+         * @param aggregator the aggregated messages of the stream
+         */
+        protected abstract void onStreamCompleted(MessageAggregator aggregator);
+    }
+
+    /**
+     * Writes the same response a fixed number of times, but only while the call is ready to accept more messages. It
+     * is registered as the call's on-ready handler so that writing resumes once the transport drains.
+     */
+    private static class FlowControlledResponseWriter implements Runnable {
+
+        private final TestResponse response;
+        private final ServerCallStreamObserver<TestResponse> responseObserver;
+
+        private boolean completed;
+        private int remainingResponseCount;
+        private boolean started;
+        private boolean writing;
+
+        private FlowControlledResponseWriter(ServerCallStreamObserver<TestResponse> responseObserver,
+                                             TestResponse response,
+                                             int responseCount) {
+            this.response = response;
+            this.responseObserver = responseObserver;
+            this.remainingResponseCount = responseCount;
+        }
+
+        /**
+         * Starts writing. Until then, the writer ignores the call's readiness. It is synchronized with {@link #run()},
+         * since offloaded work starts the writer on another thread than the one that signals readiness.
+         */
+        synchronized void start() {
+            started = true;
+            run();
+        }
+
+        @Override
+        public synchronized void run() {
+            // Transports that run callbacks inline can signal readiness from within onNext. The outer invocation
+            // re-checks isReady() on every iteration, so re-entrant calls can return immediately.
+            if (!started || writing || completed) {
+                return;
+            }
+
+            writing = true;
+
+            try {
+                while (remainingResponseCount > 0 && responseObserver.isReady() && !responseObserver.isCancelled()) {
+                    responseObserver.onNext(response);
+                    remainingResponseCount--;
+                }
+
+                if (remainingResponseCount == 0) {
+                    completed = true;
+                    responseObserver.onCompleted();
+                }
+            } finally {
+                writing = false;
+            }
+        }
+    }
+
+    /**
+     * Fails the call with the aggregated messages once the client half-closes. Fast errors only describe the start of
+     * the stream, so only that much of it is retained, while the stream as a whole is still held to the aggregated
+     * message byte limit.
+     */
+    private class ErrorResponseStreamObserver extends AggregatingStreamObserver {
+
+        private ErrorResponseStreamObserver(StreamObserver<TestResponse> responseObserver) {
+            super(responseObserver, errorMode == ErrorMode.FAST
+                    ? ErrorMode.MAX_FAST_DETAIL_LENGTH + 1
+                    : maxAggregatedMessageBytes);
+        }
+
+        @Override
+        protected void onStreamCompleted(MessageAggregator aggregator) {
+            responseObserver.onError(createError(aggregator));
         }
     }
 }
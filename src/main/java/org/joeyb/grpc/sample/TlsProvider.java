@@ -0,0 +1,51 @@
+package org.joeyb.grpc.sample;
+
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslProvider;
+
+/**
+ * The TLS implementations that the applications can secure their connections with.
+ */
+public enum TlsProvider {
+
+    /**
+     * Uses {@link #OPENSSL} when the native library is available on this platform, otherwise {@link #JDK}. This is the
+     * same choice that {@code GrpcSslContexts} makes by default.
+     */
+    AUTO {
+        @Override
+        SslProvider sslProvider() {
+            return OpenSsl.isAvailable() ? OPENSSL.sslProvider() : JDK.sslProvider();
+        }
+    },
+
+    /**
+     * The JDK's own TLS implementation. On Java 8 it needs the Jetty ALPN agent on the boot class path to negotiate
+     * HTTP/2.
+     */
+    JDK {
+        @Override
+        SslProvider sslProvider() {
+            return SslProvider.JDK;
+        }
+    },
+
+    /**
+     * BoringSSL through the bundled {@code netty-tcnative-boringssl-static}, which does the handshake cryptography in
+     * native code and supports session tickets.
+     */
+    OPENSSL {
+        @Override
+        SslProvider sslProvider() {
+            OpenSsl.ensureAvailability();
+            return SslProvider.OPENSSL;
+        }
+    };
+
+    /**
+     * Returns the Netty provider that this one stands for.
+     *
+     * @throws UnsatisfiedLinkError if the provider requires a native library that is not available
+     */
+    abstract SslProvider sslProvider();
+}
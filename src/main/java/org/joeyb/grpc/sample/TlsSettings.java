@@ -0,0 +1,96 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+
+import io.grpc.netty.GrpcSslContexts;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The TLS settings that the server and client share: which provider does the handshakes, which cipher suites they
+ * offer and how many sessions are kept for resumption. Resuming a session skips the certificate exchange and the
+ * expensive key agreement, which is what makes reconnecting after a server restart cheap.
+ */
+class TlsSettings {
+
+    private final List<String> ciphers;
+    private final TlsProvider provider;
+    private final long sessionCacheSize;
+    private final long sessionTimeoutSeconds;
+
+    /**
+     * Creates TLS settings.
+     *
+     * @param provider the provider of the TLS implementation
+     * @param ciphers the cipher suites to offer in order of preference, or empty for gRPC's defaults
+     * @param sessionCacheSize the most sessions to keep for resumption, or 0 for the provider's default
+     * @param sessionTimeoutSeconds how long a session can be resumed for, or 0 for the provider's default
+     */
+    TlsSettings(TlsProvider provider, List<String> ciphers, long sessionCacheSize, long sessionTimeoutSeconds) {
+        checkArgument(sessionCacheSize >= 0, "sessionCacheSize must not be negative");
+        checkArgument(sessionTimeoutSeconds >= 0, "sessionTimeoutSeconds must not be negative");
+
+        this.ciphers = ImmutableList.copyOf(ciphers);
+        this.provider = checkNotNull(provider, "provider");
+        this.sessionCacheSize = sessionCacheSize;
+        this.sessionTimeoutSeconds = sessionTimeoutSeconds;
+    }
+
+    /**
+     * Applies the settings to an SSL context builder, on top of the HTTP/2 settings that gRPC requires.
+     *
+     * @param builder the builder to configure
+     * @return the builder
+     */
+    SslContextBuilder configure(SslContextBuilder builder) {
+        GrpcSslContexts.configure(builder, provider.sslProvider());
+
+        if (!ciphers.isEmpty()) {
+            builder.ciphers(ciphers);
+        }
+
+        return builder.sessionCacheSize(sessionCacheSize)
+                .sessionTimeout(sessionTimeoutSeconds);
+    }
+
+    /**
+     * Sets the keys that session tickets are encrypted with. Servers that share their keys can resume each other's
+     * sessions, so clients that reconnect to a different server still get an abbreviated handshake. The first key
+     * encrypts new tickets, and the others are only used to decrypt tickets issued before a key rotation.
+     *
+     * @param sslContext an OpenSSL server context
+     * @param keys one or more keys of {@link OpenSslSessionTicketKey#TICKET_KEY_SIZE} bytes each, concatenated
+     * @throws IllegalArgumentException if the context does not support session tickets or the keys are malformed
+     */
+    static void setTicketKeys(SslContext sslContext, byte[] keys) {
+        checkArgument(sslContext.isServer() && sslContext.sessionContext() instanceof OpenSslSessionContext,
+                      "Session ticket keys require the OPENSSL provider on the server");
+        checkArgument(keys.length > 0 && keys.length % OpenSslSessionTicketKey.TICKET_KEY_SIZE == 0,
+                      "Session ticket keys must be a multiple of %s bytes long",
+                      OpenSslSessionTicketKey.TICKET_KEY_SIZE);
+
+        OpenSslSessionTicketKey[] ticketKeys = new OpenSslSessionTicketKey[
+                keys.length / OpenSslSessionTicketKey.TICKET_KEY_SIZE];
+
+        for (int i = 0; i < ticketKeys.length; i++) {
+            int offset = i * OpenSslSessionTicketKey.TICKET_KEY_SIZE;
+            int hmacKeyOffset = offset + OpenSslSessionTicketKey.NAME_SIZE;
+            int aesKeyOffset = hmacKeyOffset + OpenSslSessionTicketKey.HMAC_KEY_SIZE;
+
+            ticketKeys[i] = new OpenSslSessionTicketKey(
+                    Arrays.copyOfRange(keys, offset, hmacKeyOffset),
+                    Arrays.copyOfRange(keys, hmacKeyOffset, aesKeyOffset),
+                    Arrays.copyOfRange(keys, aesKeyOffset, aesKeyOffset + OpenSslSessionTicketKey.AES_KEY_SIZE));
+        }
+
+        ((OpenSslSessionContext) sslContext.sessionContext()).setTicketKeys(ticketKeys);
+    }
+}
@@ -0,0 +1,55 @@
+package org.joeyb.grpc.sample;
+
+/**
+ * The phases of a call that {@link CallTrace}s record the start of. Server and client traces each go through a subset
+ * of them, in roughly this order.
+ */
+enum TracePhase {
+
+    /**
+     * On the server, the transport received the call's headers and queued the call on the handler executor. On the
+     * client, the response headers arrived.
+     */
+    HEADERS_RECEIVED,
+
+    /**
+     * The call was started. On the server this happens on the handler executor, so the time since the headers were
+     * received is the time that the call spent queued.
+     */
+    CALL_STARTED,
+
+    /**
+     * The first message was handed to the call for serialization.
+     */
+    MESSAGE_SENT,
+
+    /**
+     * The first message was serialized and framed, and handed to the transport to flush.
+     */
+    MESSAGE_SERIALIZED,
+
+    /**
+     * The first message was received and deserialized.
+     */
+    MESSAGE_RECEIVED,
+
+    /**
+     * The client finished sending messages. On the server, unary and server streaming handlers run from here.
+     */
+    HALF_CLOSED,
+
+    /**
+     * The server's handler returned from handling the half-close.
+     */
+    HANDLER_RETURNED,
+
+    /**
+     * The call was closed with its status. On the server the trailers still have to be flushed.
+     */
+    CLOSED,
+
+    /**
+     * The server's transport flushed the trailers, or the call was cancelled.
+     */
+    COMPLETED
+}
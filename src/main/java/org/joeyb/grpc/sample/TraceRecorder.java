@@ -0,0 +1,103 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Decides which calls are traced and keeps the most recent {@link CallTrace}s in a fixed-size ring buffer. Recording a
+ * trace overwrites the oldest one with a single atomic write, so the tracing interceptors never block each other.
+ * Calls that are not sampled cost a random number at most, and allocate nothing.
+ *
+ * <p>The sample rate can be changed at any time, e.g. turned up while investigating a latency spike.
+ */
+class TraceRecorder {
+
+    private final AtomicLong recordedTraces = new AtomicLong();
+    private final AtomicReferenceArray<CallTrace> traces;
+
+    private volatile double sampleRate;
+
+    /**
+     * Creates a trace recorder.
+     *
+     * @param capacity the number of recent traces to keep
+     * @param sampleRate the fraction of calls to trace, from 0 to 1
+     */
+    TraceRecorder(int capacity, double sampleRate) {
+        checkArgument(capacity > 0, "capacity must be positive");
+
+        this.traces = new AtomicReferenceArray<>(capacity);
+
+        setSampleRate(sampleRate);
+    }
+
+    double sampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Changes the fraction of calls to trace.
+     *
+     * @param sampleRate the new sample rate, from 0 to 1
+     * @return the previous sample rate
+     */
+    synchronized double setSampleRate(double sampleRate) {
+        checkArgument(sampleRate >= 0 && sampleRate <= 1, "sampleRate must be between 0 and 1");
+
+        double previousSampleRate = this.sampleRate;
+
+        this.sampleRate = sampleRate;
+
+        return previousSampleRate;
+    }
+
+    /**
+     * Starts a trace of a call if the call is sampled.
+     *
+     * @param fullMethodName the full name of the call's method
+     * @return the trace, or {@code null} if the call is not sampled
+     */
+    CallTrace startTrace(String fullMethodName) {
+        double rate = sampleRate;
+
+        if (rate == 0 || (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+            return null;
+        }
+
+        return new CallTrace(fullMethodName);
+    }
+
+    /**
+     * Adds the trace of a finished call to the buffer, replacing the oldest trace once the buffer is full.
+     */
+    void record(CallTrace trace) {
+        traces.set((int) (recordedTraces.getAndIncrement() % traces.length()), trace);
+    }
+
+    /**
+     * Returns the slowest of the traces in the buffer, slowest first.
+     *
+     * @param limit the most traces to return
+     */
+    List<CallTrace> slowest(int limit) {
+        List<CallTrace> snapshot = new ArrayList<>(traces.length());
+
+        for (int i = 0; i < traces.length(); i++) {
+            CallTrace trace = traces.get(i);
+
+            if (trace != null) {
+                snapshot.add(trace);
+            }
+        }
+
+        snapshot.sort(Comparator.comparingLong(CallTrace::durationNanos).reversed());
+
+        return snapshot.size() > limit ? new ArrayList<>(snapshot.subList(0, limit)) : snapshot;
+    }
+}
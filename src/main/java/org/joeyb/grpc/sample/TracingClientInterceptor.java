@@ -0,0 +1,97 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * Traces a sample of the client's calls into a {@link TraceRecorder}: how long the requests took to serialize, and
+ * when the response headers, the first response and the status arrived. Calls that are not sampled are passed
+ * straight through.
+ */
+class TracingClientInterceptor implements ClientInterceptor {
+
+    private final TraceRecorder recorder;
+
+    TracingClientInterceptor(TraceRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                               CallOptions callOptions,
+                                                               Channel next) {
+        ClientCall<ReqT, RespT> call = next.newCall(method, callOptions);
+        CallTrace trace = recorder.startTrace(method.getFullMethodName());
+
+        return trace != null ? new TracingClientCall<>(call, trace) : call;
+    }
+
+    private class TracingClientCall<ReqT, RespT> extends ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT> {
+
+        private final CallTrace trace;
+
+        private TracingClientCall(ClientCall<ReqT, RespT> delegate, CallTrace trace) {
+            super(delegate);
+
+            this.trace = trace;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            trace.mark(TracePhase.CALL_STARTED);
+            super.start(new TracingClientCallListener<>(responseListener, trace), headers);
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            trace.mark(TracePhase.MESSAGE_SENT);
+            super.sendMessage(message);
+            trace.mark(TracePhase.MESSAGE_SERIALIZED);
+        }
+
+        @Override
+        public void halfClose() {
+            trace.mark(TracePhase.HALF_CLOSED);
+            super.halfClose();
+        }
+    }
+
+    private class TracingClientCallListener<RespT>
+            extends ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT> {
+
+        private final CallTrace trace;
+
+        private TracingClientCallListener(ClientCall.Listener<RespT> delegate, CallTrace trace) {
+            super(delegate);
+
+            this.trace = trace;
+        }
+
+        @Override
+        public void onHeaders(Metadata headers) {
+            trace.mark(TracePhase.HEADERS_RECEIVED);
+            super.onHeaders(headers);
+        }
+
+        @Override
+        public void onMessage(RespT message) {
+            trace.mark(TracePhase.MESSAGE_RECEIVED);
+            super.onMessage(message);
+        }
+
+        @Override
+        public void onClose(Status status, Metadata trailers) {
+            trace.finish(status.getCode());
+            trace.mark(TracePhase.CLOSED);
+            recorder.record(trace);
+            super.onClose(status, trailers);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * Traces a sample of the server's calls into a {@link TraceRecorder}: when the headers arrived, how long the call
+ * waited for a handler thread, how long the handler ran, and how long the responses took to serialize and flush.
+ * Calls that are not sampled are passed straight through.
+ *
+ * <p>The time that the headers arrived is only known if the server's handler executor is a
+ * {@link QueueTimingExecutor}.
+ */
+class TracingServerInterceptor implements ServerInterceptor {
+
+    private final TraceRecorder recorder;
+
+    TracingServerInterceptor(TraceRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                                                                 Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        CallTrace trace = recorder.startTrace(call.getMethodDescriptor().getFullMethodName());
+
+        if (trace == null) {
+            return next.startCall(call, headers);
+        }
+
+        long queuedNanos = QueueTimingExecutor.currentTaskQueuedNanos();
+
+        if (queuedNanos != 0) {
+            trace.mark(TracePhase.HEADERS_RECEIVED, queuedNanos);
+        }
+
+        trace.mark(TracePhase.CALL_STARTED);
+
+        ServerCall.Listener<ReqT> listener;
+
+        try {
+            listener = next.startCall(new TracingServerCall<>(call, trace), headers);
+        } catch (RuntimeException e) {
+            trace.finish(Status.Code.UNKNOWN);
+            trace.mark(TracePhase.COMPLETED);
+            recorder.record(trace);
+            throw e;
+        }
+
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+            @Override
+            public void onMessage(ReqT message) {
+                trace.mark(TracePhase.MESSAGE_RECEIVED);
+                super.onMessage(message);
+            }
+
+            @Override
+            public void onHalfClose() {
+                trace.mark(TracePhase.HALF_CLOSED);
+                super.onHalfClose();
+                trace.mark(TracePhase.HANDLER_RETURNED);
+            }
+
+            @Override
+            public void onCancel() {
+                trace.finish(Status.Code.CANCELLED);
+                trace.mark(TracePhase.COMPLETED);
+                recorder.record(trace);
+                super.onCancel();
+            }
+
+            @Override
+            public void onComplete() {
+                // A call whose handler threw is closed by gRPC itself, without going through close().
+                trace.finish(Status.Code.UNKNOWN);
+                trace.mark(TracePhase.COMPLETED);
+                recorder.record(trace);
+                super.onComplete();
+            }
+        };
+    }
+
+    private static class TracingServerCall<ReqT, RespT>
+            extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+
+        private final CallTrace trace;
+
+        private TracingServerCall(ServerCall<ReqT, RespT> delegate, CallTrace trace) {
+            super(delegate);
+
+            this.trace = trace;
+        }
+
+        @Override
+        public void sendMessage(RespT message) {
+            trace.mark(TracePhase.MESSAGE_SENT);
+            super.sendMessage(message);
+            trace.mark(TracePhase.MESSAGE_SERIALIZED);
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            trace.finish(status.getCode());
+            trace.mark(TracePhase.CLOSED);
+            super.close(status, trailers);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.joeyb.grpc.sample;
+
+import io.grpc.Status;
+import io.grpc.StatusException;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Serves the slowest of the recent traces recorded by {@link TracingServerInterceptor}, and lets the sample rate be
+ * changed while the server is running.
+ */
+public class TracingServiceImpl extends TracingGrpc.TracingImplBase {
+
+    private final TraceRecorder recorder;
+
+    TracingServiceImpl(TraceRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    public void getSlowestTraces(GetSlowestTracesRequest request,
+                                 StreamObserver<GetSlowestTracesResponse> responseObserver) {
+        GetSlowestTracesResponse.Builder response = GetSlowestTracesResponse.newBuilder()
+                .setSampleRate(recorder.sampleRate());
+
+        for (CallTrace trace : recorder.slowest(request.getLimit() > 0 ? request.getLimit() : Integer.MAX_VALUE)) {
+            response.addTraces(trace.toProto());
+        }
+
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void setSampleRate(SetSampleRateRequest request, StreamObserver<SetSampleRateResponse> responseObserver) {
+        if (!(request.getSampleRate() >= 0 && request.getSampleRate() <= 1)) {
+            responseObserver.onError(new StatusException(Status.INVALID_ARGUMENT.withDescription(
+                    "Sample rate " + request.getSampleRate() + " is not between 0 and 1")));
+            return;
+        }
+
+        responseObserver.onNext(SetSampleRateResponse.newBuilder()
+                                        .setPreviousSampleRate(recorder.setSampleRate(request.getSampleRate()))
+                                        .build());
+        responseObserver.onCompleted();
+    }
+}
@@ -0,0 +1,171 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers individual unary calls into {@code UnaryBatch} calls. A batch is sent as soon as it holds the maximum
+ * number of requests, or once the batching window has passed since its first request was added, whichever comes
+ * first. Each call's observer receives its own response, or the batch's error if the batch call fails.
+ */
+class UnaryBatcher implements AutoCloseable {
+
+    private final Object lock = new Object();
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private final TestServiceGrpc.TestServiceStub stub;
+    private final long windowNanos;
+
+    // Guarded by lock.
+    private Batch currentBatch;
+
+    /**
+     * Creates a batcher that sends its batches on the given stub.
+     *
+     * @param stub the stub to send batches on
+     * @param maxBatchSize the number of requests that causes a batch to be sent immediately
+     * @param windowNanos the longest time a request waits for its batch to fill up
+     * @param scheduler the scheduler that sends batches once their window has passed
+     */
+    UnaryBatcher(TestServiceGrpc.TestServiceStub stub,
+                 int maxBatchSize,
+                 long windowNanos,
+                 ScheduledExecutorService scheduler) {
+        checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+        checkArgument(windowNanos > 0, "windowNanos must be positive");
+
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = checkNotNull(scheduler, "scheduler");
+        this.stub = checkNotNull(stub, "stub");
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * Adds a unary call to the current batch.
+     *
+     * @param request the request of the call
+     * @param responseObserver the observer of the call's response
+     */
+    void unary(TestRequest request, StreamObserver<TestResponse> responseObserver) {
+        Batch fullBatch = null;
+
+        synchronized (lock) {
+            if (currentBatch == null) {
+                Batch batch = new Batch();
+
+                batch.flushTimer = scheduler.schedule(() -> flush(batch), windowNanos, TimeUnit.NANOSECONDS);
+                currentBatch = batch;
+            }
+
+            currentBatch.request.addRequests(request);
+            currentBatch.responseObservers.add(responseObserver);
+
+            if (currentBatch.responseObservers.size() >= maxBatchSize) {
+                fullBatch = currentBatch;
+                currentBatch = null;
+            }
+        }
+
+        if (fullBatch != null) {
+            fullBatch.flushTimer.cancel(false);
+            send(fullBatch);
+        }
+    }
+
+    /**
+     * Sends the current batch, if any, without waiting for its window to pass.
+     */
+    @Override
+    public void close() {
+        Batch batch;
+
+        synchronized (lock) {
+            batch = currentBatch;
+            currentBatch = null;
+        }
+
+        if (batch != null) {
+            batch.flushTimer.cancel(false);
+            send(batch);
+        }
+    }
+
+    private void flush(Batch batch) {
+        synchronized (lock) {
+            // The batch may already have been sent because it filled up before its window passed.
+            if (currentBatch != batch) {
+                return;
+            }
+
+            currentBatch = null;
+        }
+
+        send(batch);
+    }
+
+    private void send(Batch batch) {
+        stub.unaryBatch(batch.request.build(), new StreamObserver<TestBatchResponse>() {
+
+            // Whether the calls of the batch have been given their responses or an error. Only the first outcome of
+            // the batch call reaches them, since their observers must not be completed twice.
+            private boolean answered;
+
+            @Override
+            public void onNext(TestBatchResponse value) {
+                if (answered) {
+                    return;
+                }
+
+                if (value.getResponsesCount() != batch.responseObservers.size()) {
+                    onError(Status.INTERNAL
+                            .withDescription("Expected " + batch.responseObservers.size() + " responses, got "
+                                    + value.getResponsesCount())
+                            .asRuntimeException());
+                    return;
+                }
+
+                answered = true;
+
+                for (int i = 0; i < value.getResponsesCount(); i++) {
+                    StreamObserver<TestResponse> responseObserver = batch.responseObservers.get(i);
+
+                    responseObserver.onNext(value.getResponses(i));
+                    responseObserver.onCompleted();
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                if (answered) {
+                    return;
+                }
+
+                answered = true;
+                batch.responseObservers.forEach(o -> o.onError(t));
+            }
+
+            @Override
+            public void onCompleted() {
+                // Fails the calls if the server completed the batch without responding, rather than leave them hanging.
+                onError(Status.INTERNAL.withDescription("Batch completed without a response").asRuntimeException());
+            }
+        });
+    }
+
+    private static class Batch {
+
+        private final TestBatchRequest.Builder request = TestBatchRequest.newBuilder();
+        private final List<StreamObserver<TestResponse>> responseObservers = new ArrayList<>();
+
+        private ScheduledFuture<?> flushTimer;
+    }
+}
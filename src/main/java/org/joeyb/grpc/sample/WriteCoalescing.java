@@ -0,0 +1,53 @@
+package org.joeyb.grpc.sample;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.grpc.stub.StreamObserver;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Settings for buffering the messages of a response stream and writing them in bursts. Buffered messages are written
+ * once the buffer holds the maximum number of messages or bytes, or once the delay has passed since the first of them
+ * was buffered, whichever comes first.
+ *
+ * <p>The transport flushes after every message that a call sends, but a burst of messages sent back to back is
+ * written to the socket by a single flush of the connection's write queue. For streams of many small messages this
+ * trades up to the delay in latency for fewer write syscalls.
+ */
+final class WriteCoalescing {
+
+    private final long delayNanos;
+    private final int maxBytes;
+    private final int maxMessages;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Creates settings that flush buffered messages with the given scheduler once their delay has passed.
+     *
+     * @param maxMessages the number of buffered messages that causes them to be written immediately
+     * @param maxBytes the number of buffered message bytes that causes them to be written immediately
+     * @param delayNanos the longest time a message stays buffered
+     * @param scheduler the scheduler that writes buffered messages once their delay has passed
+     */
+    WriteCoalescing(int maxMessages, int maxBytes, long delayNanos, ScheduledExecutorService scheduler) {
+        checkArgument(maxMessages > 0, "maxMessages must be positive");
+        checkArgument(maxBytes > 0, "maxBytes must be positive");
+        checkArgument(delayNanos > 0, "delayNanos must be positive");
+
+        this.delayNanos = delayNanos;
+        this.maxBytes = maxBytes;
+        this.maxMessages = maxMessages;
+        this.scheduler = checkNotNull(scheduler, "scheduler");
+    }
+
+    /**
+     * Returns an observer that buffers the messages passed to it before writing them to the given observer.
+     *
+     * @param responseObserver the observer of the response stream
+     */
+    <T> StreamObserver<T> wrap(StreamObserver<T> responseObserver) {
+        return new CoalescingStreamObserver<>(responseObserver, maxMessages, maxBytes, delayNanos, scheduler);
+    }
+}
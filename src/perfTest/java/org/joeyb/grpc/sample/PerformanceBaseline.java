@@ -0,0 +1,79 @@
+package org.joeyb.grpc.sample;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The results of each performance scenario, as recorded in a JSON baseline file. Baselines are only comparable with
+ * runs on the machine that recorded them.
+ */
+class PerformanceBaseline {
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private final Map<String, ScenarioResult> results;
+
+    private PerformanceBaseline(Map<String, ScenarioResult> results) {
+        this.results = results;
+    }
+
+    /**
+     * Loads a baseline file, or returns an empty baseline if the file does not exist yet.
+     *
+     * @param file the baseline file
+     */
+    static PerformanceBaseline load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return new PerformanceBaseline(new TreeMap<>());
+        }
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return new PerformanceBaseline(GSON.fromJson(reader,
+                                                         new TypeToken<TreeMap<String, ScenarioResult>>() { }
+                                                                 .getType()));
+        }
+    }
+
+    /**
+     * Returns the recorded result of a scenario, or {@code null} if it has none.
+     */
+    ScenarioResult get(String scenario) {
+        return results.get(scenario);
+    }
+
+    void put(String scenario, ScenarioResult result) {
+        results.put(scenario, result);
+    }
+
+    void save(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            GSON.toJson(results, writer);
+        }
+    }
+
+    static class ScenarioResult {
+
+        final double callsPerSecond;
+        final double bytesPerCall;
+
+        ScenarioResult(double callsPerSecond, double bytesPerCall) {
+            this.callsPerSecond = callsPerSecond;
+            this.bytesPerCall = bytesPerCall;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.0f calls/s, %.0f bytes/call", callsPerSecond, bytesPerCall);
+        }
+    }
+}
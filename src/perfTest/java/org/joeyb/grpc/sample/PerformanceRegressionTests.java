@@ -0,0 +1,209 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput and allocations of each RPC shape against a real Netty server running in the same JVM, and
+ * compares them with the recorded {@link PerformanceBaseline}. A scenario fails if its throughput dropped, or its
+ * allocations per call rose, by more than the tolerance.
+ *
+ * <p>Allocations are counted on every thread of the JVM, so they include both the client's and the server's work. The
+ * requests are generated from a fixed seed, so that every run sends the same bytes.
+ *
+ * <p>The tests are configured through system properties, which the {@code perfTest} Gradle task sets:
+ * {@code perf.baseline} is the baseline file, {@code perf.tolerance} the fraction that results may regress by, and
+ * {@code perf.updateBaseline} records the results instead of checking them. Scenarios missing from the baseline are
+ * always recorded.
+ */
+public class PerformanceRegressionTests {
+
+    private static final long SEED = 0x5eed;
+
+    private static final int PAYLOAD_SIZE = 256;
+    private static final int STREAM_LENGTH = 10;
+
+    private static final int OUTSTANDING_CALLS = 16;
+    private static final int WARMUP_CALLS = 5_000;
+    private static final int MEASURED_CALLS = 20_000;
+
+    private static PerformanceBaseline baseline;
+    private static boolean baselineChanged;
+    private static Path baselineFile;
+    private static ManagedChannel channel;
+    private static TestRequest request;
+    private static Server server;
+    private static TestServiceGrpc.TestServiceStub stub;
+    private static double tolerance;
+    private static boolean updateBaseline;
+
+    /**
+     * Loads the baseline and starts the server.
+     */
+    @BeforeClass
+    public static void setUp() throws Exception {
+        baselineFile = Paths.get(System.getProperty("perf.baseline", "perf-baseline.json"));
+        tolerance = Double.parseDouble(System.getProperty("perf.tolerance", "0.2"));
+        updateBaseline = Boolean.getBoolean("perf.updateBaseline");
+        baseline = PerformanceBaseline.load(baselineFile);
+
+        server = NettyServerBuilder.forPort(0)
+                .addService(new TestServiceImpl(STREAM_LENGTH))
+                .build()
+                .start();
+        channel = NettyChannelBuilder.forAddress("localhost", server.getPort())
+                .negotiationType(NegotiationType.PLAINTEXT)
+                .build();
+        stub = TestServiceGrpc.newStub(channel);
+        request = TestRequest.newBuilder().setMessage(randomMessage(new Random(SEED), PAYLOAD_SIZE)).build();
+    }
+
+    /**
+     * Stops the server and saves the baseline if any scenario was recorded.
+     */
+    @AfterClass
+    public static void tearDown() throws Exception {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+
+        if (baselineChanged) {
+            baseline.save(baselineFile);
+        }
+    }
+
+    @Test
+    public void biDirectionalStreaming() throws InterruptedException {
+        checkScenario(RpcMethod.BI_DIRECTIONAL_STREAMING);
+    }
+
+    @Test
+    public void clientStreaming() throws InterruptedException {
+        checkScenario(RpcMethod.CLIENT_STREAMING);
+    }
+
+    @Test
+    public void serverStreaming() throws InterruptedException {
+        checkScenario(RpcMethod.SERVER_STREAMING);
+    }
+
+    @Test
+    public void unary() throws InterruptedException {
+        checkScenario(RpcMethod.UNARY);
+    }
+
+    private static void checkScenario(RpcMethod method) throws InterruptedException {
+        PerformanceBaseline.ScenarioResult result = measure(method);
+        PerformanceBaseline.ScenarioResult expected = baseline.get(method.name());
+
+        if (updateBaseline || expected == null) {
+            System.out.printf("%s: %s, recorded as the baseline%n", method, result);
+
+            baseline.put(method.name(), result);
+            baselineChanged = true;
+            return;
+        }
+
+        System.out.printf("%s: %s, baseline %s%n", method, result, expected);
+
+        assertThat(result.callsPerSecond)
+                .as("%s calls per second", method)
+                .isGreaterThanOrEqualTo(expected.callsPerSecond * (1 - tolerance));
+        assertThat(result.bytesPerCall)
+                .as("%s bytes allocated per call", method)
+                .isLessThanOrEqualTo(expected.bytesPerCall * (1 + tolerance));
+    }
+
+    private static PerformanceBaseline.ScenarioResult measure(RpcMethod method) throws InterruptedException {
+        runCalls(method, WARMUP_CALLS);
+
+        long startBytes = allocatedBytes();
+        long startNanos = System.nanoTime();
+
+        runCalls(method, MEASURED_CALLS);
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long bytes = allocatedBytes() - startBytes;
+
+        return new PerformanceBaseline.ScenarioResult(MEASURED_CALLS * 1e9 / elapsedNanos,
+                                                      (double) bytes / MEASURED_CALLS);
+    }
+
+    /**
+     * Runs the given number of calls, keeping a fixed number in flight, and waits for all of them to finish.
+     */
+    private static void runCalls(RpcMethod method, int calls) throws InterruptedException {
+        Semaphore outstandingCalls = new Semaphore(OUTSTANDING_CALLS);
+        AtomicLong failedCalls = new AtomicLong();
+
+        for (int i = 0; i < calls; i++) {
+            outstandingCalls.acquire();
+
+            method.start(stub, request, STREAM_LENGTH, new StreamObserver<TestResponse>() {
+                @Override
+                public void onNext(TestResponse value) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    failedCalls.incrementAndGet();
+                    outstandingCalls.release();
+                }
+
+                @Override
+                public void onCompleted() {
+                    outstandingCalls.release();
+                }
+            });
+        }
+
+        outstandingCalls.acquire(OUTSTANDING_CALLS);
+
+        assertThat(failedCalls.get()).as("%s failed calls", method).isZero();
+    }
+
+    /**
+     * Returns the bytes allocated so far by every live thread.
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        long bytes = 0;
+
+        for (long threadBytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (threadBytes > 0) {
+                bytes += threadBytes;
+            }
+        }
+
+        return bytes;
+    }
+
+    private static String randomMessage(Random random, int length) {
+        StringBuilder message = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++) {
+            message.append((char) ('a' + random.nextInt(26)));
+        }
+
+        return message.toString();
+    }
+}
@@ -0,0 +1,161 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcServerRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AdmissionControlServerInterceptorTests {
+
+    @Rule
+    public final GrpcServerRule grpcServerRule = new GrpcServerRule();
+
+    private final CountDownLatch handlerEntered = new CountDownLatch(1);
+    private final CountDownLatch handlerReleased = new CountDownLatch(1);
+
+    private TestServiceGrpc.TestServiceStub asyncStub;
+    private TestServiceGrpc.TestServiceBlockingStub stub;
+    private StatsGrpc.StatsBlockingStub statsStub;
+
+    @Before
+    public void setUpGrpcServer() {
+        ServerMetrics metrics = new ServerMetrics();
+
+        // Unary calls block until the test releases them, so that the single permitted call stays in flight.
+        TestServiceImpl service = new TestServiceImpl(10) {
+            @Override
+            public void unary(TestRequest request, StreamObserver<TestResponse> responseObserver) {
+                handlerEntered.countDown();
+
+                try {
+                    handlerReleased.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                super.unary(request, responseObserver);
+            }
+
+            @Override
+            public void unaryError(TestRequest request, StreamObserver<TestResponse> responseObserver) {
+                throw new IllegalStateException("Handler failed for " + request.getMessage());
+            }
+        };
+
+        grpcServerRule.getServiceRegistry().addService(ServerInterceptors.intercept(
+                service,
+                new AdmissionControlServerInterceptor(metrics, 1, 1, 1),
+                new MetricsServerInterceptor(metrics)));
+        grpcServerRule.getServiceRegistry().addService(new StatsServiceImpl(metrics));
+
+        asyncStub = TestServiceGrpc.newStub(grpcServerRule.getChannel());
+        stub = TestServiceGrpc.newBlockingStub(grpcServerRule.getChannel());
+        statsStub = StatsGrpc.newBlockingStub(grpcServerRule.getChannel());
+    }
+
+    @Test
+    public void callsOverLimitAreRejected() throws InterruptedException {
+        TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+        CompletionLatchObserver admittedCall = new CompletionLatchObserver();
+
+        asyncStub.unary(request, admittedCall);
+
+        assertThat(handlerEntered.await(10, TimeUnit.SECONDS)).isTrue();
+
+        try {
+            stub.unary(request);
+            fail("Call was expected to be rejected.");
+        } catch (StatusRuntimeException e) {
+            assertThat(e.getStatus().getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED);
+        }
+
+        handlerReleased.countDown();
+
+        assertThat(admittedCall.completed.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(stub.unary(request).getMessage()).contains(request.getMessage());
+
+        MethodStats stats = getMethodStats(TestServiceGrpc.METHOD_UNARY.getFullMethodName());
+
+        assertThat(stats.getConcurrencyLimit()).isEqualTo(1);
+        assertThat(stats.getRejectedCalls()).isEqualTo(1);
+        assertThat(stats.getCallsByStatusMap()).containsEntry("OK", 2L).containsEntry("RESOURCE_EXHAUSTED", 1L);
+    }
+
+    @Test
+    public void callsWhoseHandlerThrowsReturnTheirSlot() throws InterruptedException {
+        TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+
+        assertThat(unaryErrorStatus(request)).isEqualTo(Status.Code.UNKNOWN);
+
+        // The slot is returned once the server has finished the call, which can be just after the client sees its
+        // status. It must be returned soon, though, rather than never.
+        Status.Code status = unaryErrorStatus(request);
+
+        for (int i = 0; i < 100 && status == Status.Code.RESOURCE_EXHAUSTED; i++) {
+            Thread.sleep(10);
+            status = unaryErrorStatus(request);
+        }
+
+        assertThat(status).isEqualTo(Status.Code.UNKNOWN);
+    }
+
+    @Test
+    public void streamingCallsAreNotLimited() {
+        TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+
+        stub.serverStreaming(request).forEachRemaining(r -> assertThat(r.getMessage()).contains(request.getMessage()));
+
+        MethodStats stats = getMethodStats(TestServiceGrpc.METHOD_SERVER_STREAMING.getFullMethodName());
+
+        assertThat(stats.getConcurrencyLimit()).isZero();
+        assertThat(stats.getRejectedCalls()).isZero();
+    }
+
+    private Status.Code unaryErrorStatus(TestRequest request) {
+        try {
+            stub.unaryError(request);
+        } catch (StatusRuntimeException e) {
+            return e.getStatus().getCode();
+        }
+
+        throw new AssertionError("Call was expected to fail.");
+    }
+
+    private MethodStats getMethodStats(String fullMethodName) {
+        return statsStub.getStats(GetStatsRequest.getDefaultInstance()).getMethodsList().stream()
+                .filter(m -> m.getFullMethodName().equals(fullMethodName))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No stats for " + fullMethodName));
+    }
+
+    private static class CompletionLatchObserver implements StreamObserver<TestResponse> {
+
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public void onNext(TestResponse value) {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            fail("Unexpected error", t);
+        }
+
+        @Override
+        public void onCompleted() {
+            completed.countDown();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.internal.PlatformDependent;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class AllocatorSettingsTests {
+
+    @Test
+    public void pooledAllocatorReportsCacheHits() {
+        InstrumentedPooledByteBufAllocator allocator = (InstrumentedPooledByteBufAllocator) newPooledSettings(1, 1)
+                .newAllocator();
+
+        // The second buffer is served from the thread-local cache that the first one was released to.
+        allocator.directBuffer(256).release();
+        allocator.directBuffer(256).release();
+
+        PooledAllocatorStats stats = allocator.stats();
+
+        assertThat(stats.getAllocations()).isEqualTo(2);
+        assertThat(stats.getCacheHitRate()).isEqualTo(0.5);
+        assertThat(stats.getDirectArenasCount()).isEqualTo(1);
+        assertThat(stats.getDirectArenas(0).getAllocations()).isEqualTo(1);
+        assertThat(stats.getDirectArenas(0).getTinyAllocations()).isEqualTo(1);
+        assertThat(stats.getChunkSize()).isEqualTo(8192 << 4);
+    }
+
+    @Test
+    public void pooledAllocatorReportsPinnedBytes() {
+        InstrumentedPooledByteBufAllocator allocator = (InstrumentedPooledByteBufAllocator) newPooledSettings(1, 0)
+                .newAllocator();
+
+        ByteBuf buffer = allocator.directBuffer(8192);
+
+        try {
+            ArenaStats arena = allocator.stats().getDirectArenas(0);
+
+            assertThat(arena.getUsedBytes()).isEqualTo(8192 << 4);
+            assertThat(arena.getPinnedBytes()).isEqualTo(8192);
+            assertThat(arena.getActiveAllocations()).isEqualTo(1);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void unpooledAllocatorHasNoPoolStats() {
+        ByteBufAllocator allocator = AllocatorSettings.defaults(AllocatorType.UNPOOLED).newAllocator();
+
+        MemoryStats stats = ServerMetrics.memoryStats(allocator);
+
+        assertThat(stats.getAllocator()).isEqualTo("UNPOOLED");
+        assertThat(stats.hasPooled()).isFalse();
+        assertThat(stats.getMaxDirectMemory()).isPositive();
+    }
+
+    @Test
+    public void nettyDirectMemoryIsCounted() {
+        ByteBufAllocator allocator = AllocatorSettings.defaults(AllocatorType.UNPOOLED).newAllocator();
+        long beforeBytes = ServerMetrics.memoryStats(allocator).getNettyDirectMemoryBytes();
+
+        // Netty allocates direct buffers without a cleaner on Java 8, which hides them from the JVM's buffer pools.
+        assertThat(PlatformDependent.useDirectBufferNoCleaner()).isTrue();
+
+        ByteBuf buffer = allocator.directBuffer(1024 * 1024);
+
+        try {
+            assertThat(ServerMetrics.memoryStats(allocator).getNettyDirectMemoryBytes() - beforeBytes)
+                    .isGreaterThanOrEqualTo(1024 * 1024);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void serverAndClientConnectionsUseTheirAllocators() throws Exception {
+        InstrumentedPooledByteBufAllocator serverAllocator =
+                (InstrumentedPooledByteBufAllocator) AllocatorSettings.defaults(AllocatorType.POOLED).newAllocator();
+        InstrumentedPooledByteBufAllocator clientAllocator =
+                (InstrumentedPooledByteBufAllocator) AllocatorSettings.defaults(AllocatorType.POOLED).newAllocator();
+
+        Server server = new ServerTransportSettings(0, 0, 0, 0, 0, serverAllocator)
+                .configure(NettyServerBuilder.forPort(0), null)
+                .addService(new TestServiceImpl(10))
+                .build()
+                .start();
+        ManagedChannel channel = new ClientTransportSettings(0, 0, clientAllocator)
+                .configure(NettyChannelBuilder.forAddress("localhost", server.getPort()))
+                .negotiationType(NegotiationType.PLAINTEXT)
+                .build();
+
+        try {
+            TestResponse response = TestServiceGrpc.newBlockingStub(channel)
+                    .unary(TestRequest.newBuilder().setMessage("hello").build());
+
+            assertThat(response.getMessage()).isEqualTo("Received hello");
+            assertThat(serverAllocator.stats().getAllocations()).isPositive();
+            assertThat(clientAllocator.stats().getAllocations()).isPositive();
+        } finally {
+            channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static AllocatorSettings newPooledSettings(int directArenas, int cacheSize) {
+        return new AllocatorSettings(AllocatorType.POOLED,
+                                     0,
+                                     directArenas,
+                                     8192,
+                                     4,
+                                     cacheSize,
+                                     cacheSize,
+                                     cacheSize);
+    }
+}
@@ -0,0 +1,55 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.beust.jcommander.ParameterException;
+
+import org.junit.Test;
+
+import java.util.function.Consumer;
+
+public class ClientOptionsTests {
+
+    @Test
+    public void defaultsAreValid() {
+        new ClientOptions().validate();
+    }
+
+    @Test
+    public void outOfRangeValuesAreRejected() {
+        assertRejected(o -> o.concurrency = 0, "--concurrency must be positive");
+        assertRejected(o -> o.rate = -1, "--rate must not be negative");
+        assertRejected(o -> o.durationSeconds = 0, "--duration must be positive");
+        assertRejected(o -> o.payloadSize = -1, "--payload-size must not be negative");
+        assertRejected(o -> o.hedgingBudget = 2, "--hedging-budget must be between 0 and 1");
+        assertRejected(o -> o.targets.add("localhost"), "--targets entry localhost has no port");
+    }
+
+    @Test
+    public void optionsThatDoNotApplyTogetherAreRejected() {
+        assertRejected(o -> {
+            o.method = RpcMethod.SERVER_STREAMING;
+            o.batchSize = 10;
+        }, "--batch-size only applies to UNARY");
+        assertRejected(o -> {
+            o.hedging = true;
+            o.method = RpcMethod.CLIENT_STREAMING;
+        }, "--hedging only applies to idempotent methods");
+        assertRejected(o -> {
+            o.hedging = true;
+            o.batchSize = 10;
+        }, "--hedging does not apply to batched calls");
+        assertRejected(o -> {
+            o.deadlineMillis = 100;
+            o.batchSize = 10;
+        }, "--deadline-millis does not apply to batched calls");
+    }
+
+    private static void assertRejected(Consumer<ClientOptions> change, String message) {
+        ClientOptions options = new ClientOptions();
+
+        change.accept(options);
+
+        assertThatThrownBy(options::validate).isInstanceOf(ParameterException.class).hasMessage(message);
+    }
+}
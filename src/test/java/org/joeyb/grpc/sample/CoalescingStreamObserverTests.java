@@ -0,0 +1,187 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcServerRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class CoalescingStreamObserverTests {
+
+    private static final long NEVER_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    @Rule
+    public final GrpcServerRule grpcServerRule = new GrpcServerRule();
+
+    private final RecordingObserver recordingObserver = new RecordingObserver();
+
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUpScheduler() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDownScheduler() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void messagesAreWrittenOnceMaxMessagesAreBuffered() {
+        final int maxMessages = ThreadLocalRandom.current().nextInt(5, 10);
+
+        StreamObserver<TestResponse> observer = new CoalescingStreamObserver<>(
+                recordingObserver, maxMessages, Integer.MAX_VALUE, NEVER_NANOS, scheduler);
+
+        List<TestResponse> responses = newResponses(maxMessages);
+
+        for (int i = 0; i < maxMessages - 1; i++) {
+            observer.onNext(responses.get(i));
+        }
+
+        assertThat(recordingObserver.messages).isEmpty();
+
+        observer.onNext(responses.get(maxMessages - 1));
+
+        assertThat(recordingObserver.messages).isEqualTo(responses);
+    }
+
+    @Test
+    public void messagesAreWrittenOnceMaxBytesAreBuffered() {
+        List<TestResponse> responses = newResponses(2);
+
+        StreamObserver<TestResponse> observer = new CoalescingStreamObserver<>(
+                recordingObserver, Integer.MAX_VALUE, responses.get(0).getSerializedSize() + 1, NEVER_NANOS, scheduler);
+
+        observer.onNext(responses.get(0));
+
+        assertThat(recordingObserver.messages).isEmpty();
+
+        observer.onNext(responses.get(1));
+
+        assertThat(recordingObserver.messages).isEqualTo(responses);
+    }
+
+    @Test
+    public void messagesAreWrittenOnceDelayPasses() throws Exception {
+        StreamObserver<TestResponse> observer = new CoalescingStreamObserver<>(recordingObserver,
+                                                                               Integer.MAX_VALUE,
+                                                                               Integer.MAX_VALUE,
+                                                                               TimeUnit.MILLISECONDS.toNanos(10),
+                                                                               scheduler);
+
+        List<TestResponse> responses = newResponses(ThreadLocalRandom.current().nextInt(2, 10));
+
+        responses.forEach(observer::onNext);
+
+        // Run a task after the flush, the scheduler is single-threaded.
+        scheduler.schedule(() -> { }, 20, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS);
+
+        assertThat(recordingObserver.messages).isEqualTo(responses);
+    }
+
+    @Test
+    public void completionWritesBufferedMessagesFirst() {
+        StreamObserver<TestResponse> observer = new CoalescingStreamObserver<>(
+                recordingObserver, Integer.MAX_VALUE, Integer.MAX_VALUE, NEVER_NANOS, scheduler);
+
+        List<TestResponse> responses = newResponses(ThreadLocalRandom.current().nextInt(2, 10));
+
+        responses.forEach(observer::onNext);
+        observer.onCompleted();
+
+        assertThat(recordingObserver.messages).isEqualTo(responses);
+        assertThat(recordingObserver.completedAfterMessages).isEqualTo(responses.size());
+    }
+
+    @Test
+    public void biDirectionalStreamingWithWriteCoalescing() throws Exception {
+        final int requestCount = ThreadLocalRandom.current().nextInt(10, 20);
+
+        grpcServerRule.getServiceRegistry().addService(TestServiceImpl.newBuilder()
+                .writeCoalescing(new WriteCoalescing(4, Integer.MAX_VALUE, NEVER_NANOS, scheduler))
+                .build());
+
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        List<TestResponse> responses = new CopyOnWriteArrayList<>();
+
+        StreamObserver<TestRequest> requestObserver = TestServiceGrpc.newStub(grpcServerRule.getChannel())
+                .biDirectionalStreaming(new StreamObserver<TestResponse>() {
+                    @Override
+                    public void onNext(TestResponse value) {
+                        responses.add(value);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        completed.completeExceptionally(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        completed.complete(null);
+                    }
+                });
+
+        List<TestResponse> expectedResponses = new ArrayList<>();
+
+        for (int i = 0; i < requestCount; i++) {
+            TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+
+            requestObserver.onNext(request);
+            expectedResponses.add(TestServiceImpl.createResponse(request));
+        }
+
+        requestObserver.onCompleted();
+        completed.get(5, TimeUnit.SECONDS);
+
+        // The last partial burst is only written because the stream completes, since the delay never passes.
+        assertThat(responses).isEqualTo(expectedResponses);
+    }
+
+    private static List<TestResponse> newResponses(int count) {
+        List<TestResponse> responses = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            responses.add(TestResponse.newBuilder().setMessage(UUID.randomUUID().toString()).build());
+        }
+
+        return responses;
+    }
+
+    private static class RecordingObserver implements StreamObserver<TestResponse> {
+
+        private final List<TestResponse> messages = new CopyOnWriteArrayList<>();
+
+        private volatile int completedAfterMessages = -1;
+
+        @Override
+        public void onNext(TestResponse value) {
+            messages.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+            completedAfterMessages = messages.size();
+        }
+    }
+}
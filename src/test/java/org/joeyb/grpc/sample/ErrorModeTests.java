@@ -0,0 +1,54 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.base.Strings;
+
+import io.grpc.Status;
+import io.grpc.StatusException;
+
+import org.junit.Test;
+
+public class ErrorModeTests {
+
+    @Test
+    public void detailedErrorsKeepTheStackTraceAndWholeDescription() {
+        String detail = Strings.repeat("x", ErrorMode.MAX_FAST_DETAIL_LENGTH * 2);
+
+        StatusException error = ErrorMode.DETAILED.createError(Status.UNKNOWN, "Error for ", detail);
+
+        assertThat(error.getStatus().getCode()).isEqualTo(Status.Code.UNKNOWN);
+        assertThat(error.getStatus().getDescription()).isEqualTo("Error for " + detail);
+        assertThat(error.getStackTrace()).isNotEmpty();
+    }
+
+    @Test
+    public void fastErrorsSkipTheStackTrace() {
+        StatusException error = ErrorMode.FAST.createError(Status.UNKNOWN, "Error for ", "foo");
+
+        assertThat(error.getStatus().getCode()).isEqualTo(Status.Code.UNKNOWN);
+        assertThat(error.getStatus().getDescription()).isEqualTo("Error for foo");
+        assertThat(error.getStackTrace()).isEmpty();
+    }
+
+    @Test
+    public void fastErrorsTruncateLongDescriptions() {
+        String detail = Strings.repeat("x", ErrorMode.MAX_FAST_DETAIL_LENGTH + 1);
+
+        StatusException error = ErrorMode.FAST.createError(Status.UNKNOWN, "Error for ", detail);
+
+        assertThat(error.getStatus().getDescription()).isEqualTo(
+                "Error for " + Strings.repeat("x", ErrorMode.MAX_FAST_DETAIL_LENGTH) + ErrorMode.TRUNCATION_MARKER);
+    }
+
+    @Test
+    public void fastErrorsDoNotSplitSurrogatePairs() {
+        // A character that takes two chars, straddling the truncation point.
+        String detail = Strings.repeat("x", ErrorMode.MAX_FAST_DETAIL_LENGTH - 1) + "\uD834\uDD1E"; // G clef
+
+        StatusException error = ErrorMode.FAST.createError(Status.UNKNOWN, "", detail);
+
+        assertThat(error.getStatus().getDescription()).isEqualTo(
+                Strings.repeat("x", ErrorMode.MAX_FAST_DETAIL_LENGTH - 1) + ErrorMode.TRUNCATION_MARKER);
+    }
+}
@@ -0,0 +1,152 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import com.google.protobuf.ByteString;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcServerRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class FileTransferTests {
+
+    @Rule
+    public final GrpcServerRule grpcServerRule = new GrpcServerRule();
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path fileRoot;
+    private TestServiceGrpc.TestServiceStub asyncStub;
+    private TestServiceGrpc.TestServiceBlockingStub stub;
+
+    @Before
+    public void setUpGrpcServer() throws IOException {
+        fileRoot = temporaryFolder.newFolder("root").toPath();
+
+        grpcServerRule.getServiceRegistry().addService(TestServiceImpl.newBuilder().fileRoot(fileRoot).build());
+
+        asyncStub = TestServiceGrpc.newStub(grpcServerRule.getChannel());
+        stub = TestServiceGrpc.newBlockingStub(grpcServerRule.getChannel());
+    }
+
+    @Test
+    public void downloadFileStreamsChunksInOrder() throws IOException {
+        final int chunkSize = ThreadLocalRandom.current().nextInt(100, 200);
+
+        byte[] content = randomBytes(ThreadLocalRandom.current().nextInt(10, 20) * chunkSize + 1);
+
+        Files.write(fileRoot.resolve("download.bin"), content);
+
+        Iterator<FileChunk> chunks = stub.downloadFile(DownloadFileRequest.newBuilder()
+                .setFileName("download.bin")
+                .setChunkSize(chunkSize)
+                .build());
+
+        ByteString received = ByteString.EMPTY;
+
+        while (chunks.hasNext()) {
+            FileChunk chunk = chunks.next();
+
+            assertThat(chunk.getOffset()).isEqualTo(received.size());
+            assertThat(chunk.getData().size()).isLessThanOrEqualTo(chunkSize);
+
+            received = received.concat(chunk.getData());
+        }
+
+        assertThat(received.toByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    public void uploadFileWritesFileOnceStreamCompletes() throws Exception {
+        byte[] content = randomBytes(ThreadLocalRandom.current().nextInt(10_000, 20_000));
+        Path source = temporaryFolder.newFile("source.bin").toPath();
+
+        Files.write(source, content);
+
+        CompletableFuture<UploadFileResponse> response = new CompletableFuture<>();
+
+        asyncStub.uploadFile(new FileUploadWriter(new MappedFileChunks(FileChannel.open(source), 1000),
+                                                  "uploads/upload.bin",
+                                                  new FutureObserver<>(response)));
+
+        assertThat(response.get(5, TimeUnit.SECONDS).getSize()).isEqualTo(content.length);
+        assertThat(Files.readAllBytes(fileRoot.resolve("uploads/upload.bin"))).isEqualTo(content);
+
+        // Only the uploaded file is left, the temporary file it was written to has been moved into place.
+        assertThat(fileRoot.resolve("uploads").toFile().list()).containsExactly("upload.bin");
+    }
+
+    @Test
+    public void fileNamesOutsideFileRootAreRejected() throws IOException {
+        Files.write(temporaryFolder.getRoot().toPath().resolve("secret.bin"), randomBytes(10));
+
+        for (String fileName : new String[] { "", "../secret.bin", "uploads/../../secret.bin" }) {
+            try {
+                stub.downloadFile(DownloadFileRequest.newBuilder().setFileName(fileName).build()).hasNext();
+                fail("Call completed but was expected to fail.");
+            } catch (StatusRuntimeException e) {
+                assertThat(e.getStatus().getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+            }
+        }
+    }
+
+    @Test
+    public void fileTransfersAreUnimplementedWithoutFileRoot() {
+        grpcServerRule.getServiceRegistry().addService(new TestServiceImpl(10));
+
+        try {
+            stub.downloadFile(DownloadFileRequest.newBuilder().setFileName("download.bin").build()).hasNext();
+            fail("Call completed but was expected to fail.");
+        } catch (StatusRuntimeException e) {
+            assertThat(e.getStatus().getCode()).isEqualTo(Status.Code.UNIMPLEMENTED);
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+
+        ThreadLocalRandom.current().nextBytes(bytes);
+
+        return bytes;
+    }
+
+    private static class FutureObserver<T> implements StreamObserver<T> {
+
+        private final CompletableFuture<T> future;
+
+        private FutureObserver(CompletableFuture<T> future) {
+            this.future = future;
+        }
+
+        @Override
+        public void onNext(T value) {
+            future.complete(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            future.completeExceptionally(t);
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class GradientConcurrencyLimitTests {
+
+    private static final long FAST_RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW_RTT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void tryAcquireRejectsCallsOverLimit() {
+        GradientConcurrencyLimit limit = new GradientConcurrencyLimit(2, 1, 10);
+
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isFalse();
+
+        limit.onIgnore();
+
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.inFlight()).isEqualTo(2);
+    }
+
+    @Test
+    public void limitGrowsWhileLatencyIsSteady() {
+        GradientConcurrencyLimit limit = new GradientConcurrencyLimit(10, 1, 100);
+
+        runAtLimit(limit, FAST_RTT_NANOS, 50);
+
+        assertThat(limit.limit()).isGreaterThan(10);
+    }
+
+    @Test
+    public void limitShrinksWhenLatencyRises() {
+        GradientConcurrencyLimit limit = new GradientConcurrencyLimit(50, 1, 100);
+
+        runAtLimit(limit, FAST_RTT_NANOS, 5);
+
+        int limitBeforeSlowdown = limit.limit();
+
+        runAtLimit(limit, SLOW_RTT_NANOS, 20);
+
+        assertThat(limit.limit()).isLessThan(limitBeforeSlowdown);
+    }
+
+    @Test
+    public void limitStaysWithinBounds() {
+        GradientConcurrencyLimit limit = new GradientConcurrencyLimit(10, 5, 20);
+
+        runAtLimit(limit, FAST_RTT_NANOS, 200);
+
+        assertThat(limit.limit()).isEqualTo(20);
+
+        runAtLimit(limit, SLOW_RTT_NANOS, 50);
+
+        assertThat(limit.limit()).isEqualTo(5);
+    }
+
+    @Test
+    public void limitDoesNotGrowWhileUnderused() {
+        GradientConcurrencyLimit limit = new GradientConcurrencyLimit(10, 1, 100);
+
+        for (int i = 0; i < 100 * GradientConcurrencyLimit.SAMPLES_PER_UPDATE; i++) {
+            assertThat(limit.tryAcquire()).isTrue();
+            limit.onSuccess(FAST_RTT_NANOS);
+        }
+
+        assertThat(limit.limit()).isEqualTo(10);
+    }
+
+    /**
+     * Fills the limit with calls and then finishes all of them with the given latency, the given number of times.
+     */
+    private static void runAtLimit(GradientConcurrencyLimit limit, long rttNanos, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            int admitted = 0;
+
+            while (limit.tryAcquire()) {
+                admitted++;
+            }
+
+            for (int i = 0; i < admitted; i++) {
+                limit.onSuccess(rttNanos);
+            }
+        }
+    }
+}
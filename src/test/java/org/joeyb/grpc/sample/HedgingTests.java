@@ -0,0 +1,333 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientInterceptors;
+import io.grpc.Deadline;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcServerRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class HedgingTests {
+
+    @Rule
+    public final GrpcServerRule stuckServerRule = new GrpcServerRule();
+
+    @Rule
+    public final GrpcServerRule serverRule = new GrpcServerRule();
+
+    private final CountDownLatch stuckCallCancelled = new CountDownLatch(1);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private List<TestServiceGrpc.TestServiceStub> stubs;
+
+    @Before
+    public void setUpGrpcServers() {
+        // Unary calls to the first server never respond, as if the server had stalled.
+        stuckServerRule.getServiceRegistry().addService(new TestServiceImpl(10) {
+            @Override
+            public void unary(TestRequest request, StreamObserver<TestResponse> responseObserver) {
+                ((ServerCallStreamObserver<TestResponse>) responseObserver).setOnCancelHandler(
+                        stuckCallCancelled::countDown);
+            }
+        });
+        serverRule.getServiceRegistry().addService(new TestServiceImpl(10));
+
+        stubs = Arrays.asList(TestServiceGrpc.newStub(stuckServerRule.getChannel()),
+                              TestServiceGrpc.newStub(serverRule.getChannel()));
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void slowCallIsHedgedAndLosingAttemptIsCancelled() throws Exception {
+        Hedging hedging = newHedging(new HedgingBudget(1, 10));
+        TestRequest request = newRequest();
+        CompletableFuture<TestResponse> response = new CompletableFuture<>();
+
+        hedging.start(0, request, null, futureObserver(response));
+
+        assertThat(response.get(5, TimeUnit.SECONDS)).isEqualTo(TestServiceImpl.createResponse(request));
+        assertThat(stuckCallCancelled.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(hedging.hedges()).isEqualTo(1);
+        assertThat(hedging.hedgeWins()).isEqualTo(1);
+    }
+
+    @Test
+    public void fastCallIsNotHedged() throws Exception {
+        Hedging hedging = newHedging(new HedgingBudget(1, 10));
+        TestRequest request = newRequest();
+        CompletableFuture<TestResponse> response = new CompletableFuture<>();
+
+        hedging.start(1, request, null, futureObserver(response));
+
+        assertThat(response.get(5, TimeUnit.SECONDS)).isEqualTo(TestServiceImpl.createResponse(request));
+        assertThat(hedging.hedges()).isZero();
+        assertThat(hedging.hedgeWins()).isZero();
+    }
+
+    @Test
+    public void hedgesStopWhenBudgetIsUsedUp() throws Exception {
+        // The budget starts with a single token and calls never deposit more.
+        Hedging hedging = newHedging(new HedgingBudget(0, 1));
+
+        CompletableFuture<TestResponse> first = new CompletableFuture<>();
+        CompletableFuture<TestResponse> second = new CompletableFuture<>();
+
+        hedging.start(0, newRequest(), null, futureObserver(first));
+        first.get(5, TimeUnit.SECONDS);
+
+        hedging.start(0, newRequest(), Deadline.after(500, TimeUnit.MILLISECONDS), futureObserver(second));
+
+        assertThat(Status.fromThrowable(second.handle((r, t) -> t).get(5, TimeUnit.SECONDS)).getCode())
+                .isEqualTo(Status.Code.DEADLINE_EXCEEDED);
+        assertThat(hedging.hedges()).isEqualTo(1);
+        assertThat(hedging.throttledHedges()).isEqualTo(1);
+    }
+
+    @Test
+    public void percentileDelayIsSetFromSeveralIntervalsAtLowCallRates() throws Exception {
+        Hedging hedging = new Hedging(stubs, RpcMethod.UNARY, 1, 0, 95, new HedgingBudget(1, 10), scheduler);
+
+        // Fewer calls than needed per interval, as with a client that sends less than one call every 10ms.
+        sendCalls(hedging, Hedging.MIN_DELAY_SAMPLES / 2);
+        hedging.updateDelay();
+
+        assertThat(hedging.delayNanos()).isEqualTo(Long.MAX_VALUE);
+
+        sendCalls(hedging, Hedging.MIN_DELAY_SAMPLES / 2);
+        hedging.updateDelay();
+
+        assertThat(hedging.delayNanos()).isPositive().isNotEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void errorDoesNotWinWhileHedgeIsOutstanding() throws Exception {
+        CompletableFuture<StreamObserver<TestResponse>> firstAttempt = new CompletableFuture<>();
+        CompletableFuture<StreamObserver<TestResponse>> hedgedAttempt = new CompletableFuture<>();
+        CountDownLatch firstAttemptClosed = new CountDownLatch(1);
+
+        stuckServerRule.getServiceRegistry().addService(respondingLater(firstAttempt));
+        serverRule.getServiceRegistry().addService(respondingLater(hedgedAttempt));
+
+        Hedging hedging = new Hedging(Arrays.asList(TestServiceGrpc.newStub(ClientInterceptors.intercept(
+                                                            stuckServerRule.getChannel(),
+                                                            closeLatchInterceptor(firstAttemptClosed))),
+                                                    stubs.get(1)),
+                                      RpcMethod.UNARY,
+                                      1,
+                                      TimeUnit.MILLISECONDS.toNanos(20),
+                                      95,
+                                      new HedgingBudget(1, 10),
+                                      scheduler);
+        TestRequest request = newRequest();
+        CompletableFuture<TestResponse> response = new CompletableFuture<>();
+
+        hedging.start(0, request, null, futureObserver(response));
+
+        // The first attempt fails fast once the hedge is in flight, which must leave the hedge to answer the call.
+        assertThat(hedgedAttempt.get(5, TimeUnit.SECONDS)).isNotNull();
+
+        firstAttempt.get(5, TimeUnit.SECONDS).onError(Status.UNAVAILABLE.asRuntimeException());
+
+        assertThat(firstAttemptClosed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(response).isNotDone();
+
+        hedgedAttempt.get().onNext(TestServiceImpl.createResponse(request));
+        hedgedAttempt.get().onCompleted();
+
+        assertThat(response.get(5, TimeUnit.SECONDS)).isEqualTo(TestServiceImpl.createResponse(request));
+        assertThat(hedging.hedges()).isEqualTo(1);
+        assertThat(hedging.hedgeWins()).isEqualTo(1);
+        assertThat(hedging.retries()).isZero();
+    }
+
+    @Test
+    public void unavailableCallIsRetriedOnNextStub() throws Exception {
+        stuckServerRule.getServiceRegistry().addService(failing(Status.UNAVAILABLE));
+
+        Hedging hedging = newUnhedged(new HedgingBudget(1, 10));
+        TestRequest request = newRequest();
+        CompletableFuture<TestResponse> response = new CompletableFuture<>();
+
+        hedging.start(0, request, Deadline.after(5, TimeUnit.SECONDS), futureObserver(response));
+
+        assertThat(response.get(5, TimeUnit.SECONDS)).isEqualTo(TestServiceImpl.createResponse(request));
+        assertThat(hedging.retries()).isEqualTo(1);
+        assertThat(hedging.hedges()).isZero();
+    }
+
+    @Test
+    public void retriesStopWhenBudgetIsUsedUp() throws Exception {
+        stuckServerRule.getServiceRegistry().addService(failing(Status.UNAVAILABLE));
+
+        // The budget starts with a single token, which is spent before the call.
+        HedgingBudget budget = new HedgingBudget(0, 1);
+
+        assertThat(budget.tryAcquire()).isTrue();
+
+        Hedging hedging = newUnhedged(budget);
+        CompletableFuture<TestResponse> response = new CompletableFuture<>();
+
+        hedging.start(0, newRequest(), null, futureObserver(response));
+
+        assertThat(Status.fromThrowable(response.handle((r, t) -> t).get(5, TimeUnit.SECONDS)).getCode())
+                .isEqualTo(Status.Code.UNAVAILABLE);
+        assertThat(hedging.retries()).isZero();
+        assertThat(hedging.throttledRetries()).isEqualTo(1);
+    }
+
+    @Test
+    public void nonRetryableErrorIsNotRetried() throws Exception {
+        stuckServerRule.getServiceRegistry().addService(failing(Status.INVALID_ARGUMENT));
+
+        Hedging hedging = newUnhedged(new HedgingBudget(1, 10));
+        CompletableFuture<TestResponse> response = new CompletableFuture<>();
+
+        hedging.start(0, newRequest(), null, futureObserver(response));
+
+        assertThat(Status.fromThrowable(response.handle((r, t) -> t).get(5, TimeUnit.SECONDS)).getCode())
+                .isEqualTo(Status.Code.INVALID_ARGUMENT);
+        assertThat(hedging.retries()).isZero();
+        assertThat(hedging.throttledRetries()).isZero();
+    }
+
+    @Test
+    public void budgetRefillsWithCalls() {
+        HedgingBudget budget = new HedgingBudget(0.5, 1);
+
+        assertThat(budget.tryAcquire()).isTrue();
+        assertThat(budget.tryAcquire()).isFalse();
+
+        budget.onCall();
+
+        assertThat(budget.tryAcquire()).isFalse();
+
+        budget.onCall();
+        budget.onCall();
+        budget.onCall();
+
+        // The budget holds at most one token, no matter how many calls deposit into it.
+        assertThat(budget.tryAcquire()).isTrue();
+        assertThat(budget.tryAcquire()).isFalse();
+    }
+
+    private Hedging newHedging(HedgingBudget budget) {
+        return new Hedging(stubs, RpcMethod.UNARY, 1, TimeUnit.MILLISECONDS.toNanos(20), 95, budget, scheduler);
+    }
+
+    /**
+     * Sends the given number of calls to the responsive server, one after the other.
+     */
+    private static void sendCalls(Hedging hedging, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            CompletableFuture<TestResponse> response = new CompletableFuture<>();
+
+            hedging.start(1, newRequest(), null, futureObserver(response));
+            response.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Returns a hedging policy whose delay is too long for any call of a test to be hedged.
+     */
+    private Hedging newUnhedged(HedgingBudget budget) {
+        return new Hedging(stubs, RpcMethod.UNARY, 1, TimeUnit.MINUTES.toNanos(1), 95, budget, scheduler);
+    }
+
+    /**
+     * Counts the latch down once a call has been closed and its listener has seen the status.
+     */
+    private static ClientInterceptor closeLatchInterceptor(CountDownLatch closed) {
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                                       CallOptions callOptions,
+                                                                       Channel next) {
+                return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(
+                        next.newCall(method, callOptions)) {
+                    @Override
+                    public void start(Listener<RespT> responseListener, Metadata headers) {
+                        super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(
+                                responseListener) {
+                            @Override
+                            public void onClose(Status status, Metadata trailers) {
+                                super.onClose(status, trailers);
+                                closed.countDown();
+                            }
+                        }, headers);
+                    }
+                };
+            }
+        };
+    }
+
+    private static TestServiceImpl failing(Status status) {
+        return new TestServiceImpl(10) {
+            @Override
+            public void unary(TestRequest request, StreamObserver<TestResponse> responseObserver) {
+                responseObserver.onError(status.asRuntimeException());
+            }
+        };
+    }
+
+    /**
+     * Returns a service whose unary calls are answered by the test, through the observer that completes the future.
+     */
+    private static TestServiceImpl respondingLater(CompletableFuture<StreamObserver<TestResponse>> responseObserver) {
+        return new TestServiceImpl(10) {
+            @Override
+            public void unary(TestRequest request, StreamObserver<TestResponse> observer) {
+                responseObserver.complete(observer);
+            }
+        };
+    }
+
+    private static StreamObserver<TestResponse> futureObserver(CompletableFuture<TestResponse> future) {
+        return new StreamObserver<TestResponse>() {
+            @Override
+            public void onNext(TestResponse value) {
+                future.complete(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                future.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        };
+    }
+
+    private static TestRequest newRequest() {
+        return TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+    }
+}
@@ -0,0 +1,152 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LoadBalancingTests {
+
+    private final List<ManagedChannel> channels = new ArrayList<>();
+    private final List<Server> servers = new ArrayList<>();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        channels.forEach(ManagedChannel::shutdownNow);
+        servers.forEach(Server::shutdownNow);
+
+        for (Server server : servers) {
+            server.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void roundRobinSpreadsCallsAcrossEveryServer() throws IOException {
+        AtomicInteger firstCalls = new AtomicInteger();
+        AtomicInteger secondCalls = new AtomicInteger();
+
+        TestServiceGrpc.TestServiceBlockingStub stub = TestServiceGrpc.newBlockingStub(newChannel(
+                LoadBalancing.ROUND_ROBIN,
+                startServer(countingInterceptor(firstCalls, true)),
+                startServer(countingInterceptor(secondCalls, true))));
+
+        for (int i = 0; i < 20; i++) {
+            stub.unary(newRequest());
+        }
+
+        assertThat(firstCalls.get() + secondCalls.get()).isEqualTo(20);
+        assertThat(firstCalls.get()).isPositive();
+        assertThat(secondCalls.get()).isPositive();
+    }
+
+    @Test
+    public void leastRequestsAvoidsServerWithOutstandingCalls() throws Exception {
+        AtomicInteger fastCalls = new AtomicInteger();
+        AtomicInteger stuckCalls = new AtomicInteger();
+
+        TestServiceGrpc.TestServiceFutureStub stub = TestServiceGrpc.newFutureStub(newChannel(
+                LoadBalancing.LEAST_REQUESTS,
+                startServer(countingInterceptor(fastCalls, true)),
+                startServer(countingInterceptor(stuckCalls, false))));
+
+        for (int i = 0; i < 20; i++) {
+            final int stuckBefore = stuckCalls.get();
+            ListenableFuture<TestResponse> response = stub.unary(newRequest());
+
+            // Wait for the call to either complete or get stuck, so that the next pick sees its outcome.
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+            while (!response.isDone() && stuckCalls.get() == stuckBefore && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+
+        // Once a call is stuck on the second server, every following call goes to the first one.
+        assertThat(stuckCalls.get()).isLessThanOrEqualTo(1);
+        assertThat(fastCalls.get() + stuckCalls.get()).isEqualTo(20);
+    }
+
+    @Test
+    public void targetAddressesAreParsed() {
+        ClientOptions options = new ClientOptions();
+
+        options.targets.add("localhost:10000");
+        options.targets.add("127.0.0.1:10001");
+
+        assertThat(options.targetAddresses()).containsExactly(
+                new InetSocketAddress("localhost", 10000),
+                new InetSocketAddress("127.0.0.1", 10001));
+        assertThat(new StaticNameResolverFactory(options.targetAddresses()).target())
+                .isEqualTo("static:///localhost:10000,127.0.0.1:10001");
+    }
+
+    private ManagedChannel newChannel(LoadBalancing loadBalancing, Server... targets) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+
+        for (Server server : targets) {
+            addresses.add(new InetSocketAddress("localhost", server.getPort()));
+        }
+
+        StaticNameResolverFactory nameResolverFactory = new StaticNameResolverFactory(addresses);
+        ManagedChannel channel = loadBalancing.configure(NettyChannelBuilder.forTarget(nameResolverFactory.target())
+                .nameResolverFactory(nameResolverFactory)
+                .negotiationType(NegotiationType.PLAINTEXT))
+                .build();
+
+        channels.add(channel);
+
+        return channel;
+    }
+
+    private Server startServer(ServerInterceptor interceptor) throws IOException {
+        Server server = NettyServerBuilder.forPort(0)
+                .addService(ServerInterceptors.intercept(new TestServiceImpl(10), interceptor))
+                .build()
+                .start();
+
+        servers.add(server);
+
+        return server;
+    }
+
+    /**
+     * Returns an interceptor that counts calls and either lets them through or leaves them outstanding forever.
+     */
+    private static ServerInterceptor countingInterceptor(AtomicInteger calls, boolean answer) {
+        return new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                                                                         Metadata headers,
+                                                                         ServerCallHandler<ReqT, RespT> next) {
+                calls.incrementAndGet();
+
+                return answer ? next.startCall(call, headers) : new ServerCall.Listener<ReqT>() { };
+            }
+        };
+    }
+
+    private static TestRequest newRequest() {
+        return TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+    }
+}
@@ -0,0 +1,195 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcServerRule;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LoadGeneratorTests {
+
+    @Rule
+    public final GrpcServerRule grpcServerRule = new GrpcServerRule();
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger inFlightCalls = new AtomicInteger();
+    private final AtomicInteger maxInFlightCalls = new AtomicInteger();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDownScheduler() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void closedLoopKeepsOutstandingCallsOfEveryGeneratorInFlight() throws Exception {
+        grpcServerRule.getServiceRegistry().addService(respondingAfter(5, TimeUnit.MILLISECONDS));
+
+        ClientOptions options = newOptions(RpcMethod.UNARY);
+        options.concurrency = 2;
+        options.outstandingCalls = 3;
+
+        LoadReport report = run(options);
+
+        assertThat(maxInFlightCalls.get()).isEqualTo(6);
+        assertThat(report.mode).isEqualTo("closed-loop");
+        assertThat(report.completedCalls).isEqualTo(calls.get());
+        assertThat(report.failedCalls).isZero();
+        assertThat(report.achievedQps).isEqualTo(calls.get() / 1.0);
+    }
+
+    @Test
+    public void openLoopStartsCallsOnScheduleRegardlessOfLatency() throws Exception {
+        // Calls take longer than the interval between them, which must not slow the schedule down.
+        grpcServerRule.getServiceRegistry().addService(respondingAfter(250, TimeUnit.MILLISECONDS));
+
+        ClientOptions options = newOptions(RpcMethod.UNARY);
+        options.concurrency = 2;
+        options.rate = 20;
+        options.durationSeconds = 2;
+
+        LoadReport report = run(options);
+
+        assertThat(calls.get()).isEqualTo(40);
+        assertThat(maxInFlightCalls.get()).isGreaterThan(options.concurrency);
+        assertThat(report.mode).isEqualTo("open-loop");
+        assertThat(report.completedCalls).isEqualTo(40);
+        assertThat(report.achievedQps).isEqualTo(20.0);
+
+        // Latency is measured from the scheduled start, so it includes the server's delay.
+        assertThat(report.latencyMicros.p50).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toMicros(250));
+    }
+
+    @Test
+    public void payloadTypeSelectsTheFieldThatCarriesThePayload() throws Exception {
+        List<TestRequest> requests = new CopyOnWriteArrayList<>();
+
+        grpcServerRule.getServiceRegistry().addService(new TestServiceImpl(10) {
+            @Override
+            public void unary(TestRequest request, StreamObserver<TestResponse> responseObserver) {
+                requests.add(request);
+                super.unary(request, responseObserver);
+            }
+        });
+
+        ClientOptions options = newOptions(RpcMethod.UNARY);
+        options.payloadSize = 100;
+
+        run(options);
+
+        assertThat(requests).isNotEmpty().allSatisfy(r -> {
+            assertThat(r.getMessage()).hasSize(100);
+            assertThat(r.getPayload().isEmpty()).isTrue();
+        });
+
+        requests.clear();
+        options.payloadType = PayloadType.BINARY;
+
+        run(options);
+
+        assertThat(requests).isNotEmpty().allSatisfy(r -> {
+            assertThat(r.getMessage()).isEmpty();
+            assertThat(r.getPayload().size()).isEqualTo(100);
+        });
+    }
+
+    @Test
+    public void unaryCallsThatCompleteAreSuccesses() throws Exception {
+        grpcServerRule.getServiceRegistry().addService(new TestServiceImpl(10));
+
+        LoadReport report = run(newOptions(RpcMethod.UNARY));
+
+        assertThat(report.completedCalls).isPositive();
+        assertThat(report.failedCalls).isZero();
+    }
+
+    @Test
+    public void unaryCallsThatFailAreFailures() throws Exception {
+        grpcServerRule.getServiceRegistry().addService(failing(Status.UNAVAILABLE));
+
+        LoadReport report = run(newOptions(RpcMethod.UNARY));
+
+        assertThat(report.completedCalls).isZero();
+        assertThat(report.failedCalls).isPositive();
+    }
+
+    @Test
+    public void errorCallsThatFailWithUnknownAreSuccesses() throws Exception {
+        grpcServerRule.getServiceRegistry().addService(new TestServiceImpl(10));
+
+        LoadReport report = run(newOptions(RpcMethod.UNARY_ERROR));
+
+        assertThat(report.completedCalls).isPositive();
+        assertThat(report.failedCalls).isZero();
+    }
+
+    @Test
+    public void errorCallsThatFailWithAnotherStatusAreFailures() throws Exception {
+        // As when admission control or a full work executor rejects the call.
+        grpcServerRule.getServiceRegistry().addService(failing(Status.RESOURCE_EXHAUSTED));
+
+        LoadReport report = run(newOptions(RpcMethod.UNARY_ERROR));
+
+        assertThat(report.completedCalls).isZero();
+        assertThat(report.failedCalls).isPositive();
+    }
+
+    private LoadReport run(ClientOptions options) throws InterruptedException {
+        return new LoadGenerator(Collections.singletonList(grpcServerRule.getChannel()), options, null).run();
+    }
+
+    /**
+     * Returns a service that counts its unary calls and answers each of them after the given delay.
+     */
+    private TestServiceImpl respondingAfter(long delay, TimeUnit unit) {
+        return new TestServiceImpl(10) {
+            @Override
+            public void unary(TestRequest request, StreamObserver<TestResponse> responseObserver) {
+                calls.incrementAndGet();
+                maxInFlightCalls.accumulateAndGet(inFlightCalls.incrementAndGet(), Math::max);
+
+                scheduler.schedule(() -> {
+                    inFlightCalls.decrementAndGet();
+                    super.unary(request, responseObserver);
+                }, delay, unit);
+            }
+        };
+    }
+
+    private static TestServiceImpl failing(Status status) {
+        return new TestServiceImpl(10) {
+            @Override
+            public void unary(TestRequest request, StreamObserver<TestResponse> responseObserver) {
+                responseObserver.onError(status.asRuntimeException());
+            }
+
+            @Override
+            public void unaryError(TestRequest request, StreamObserver<TestResponse> responseObserver) {
+                responseObserver.onError(status.asRuntimeException());
+            }
+        };
+    }
+
+    /**
+     * Returns the options of a closed loop run of a second, without warmup.
+     */
+    private static ClientOptions newOptions(RpcMethod method) {
+        ClientOptions options = new ClientOptions();
+        options.method = method;
+        options.warmupSeconds = 0;
+        options.durationSeconds = 1;
+        return options;
+    }
+}
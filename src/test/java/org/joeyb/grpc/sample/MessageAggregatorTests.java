@@ -0,0 +1,78 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class MessageAggregatorTests {
+
+    @Test
+    public void addJoinsMessagesThatFit() {
+        MessageAggregator aggregator = new MessageAggregator(100);
+
+        assertThat(aggregator.add("foo")).isTrue();
+        assertThat(aggregator.add("bar")).isTrue();
+        assertThat(aggregator.add("")).isTrue();
+
+        assertThat(aggregator.result()).isEqualTo("foo, bar, ");
+        assertThat(aggregator.retainedMessageCount()).isEqualTo(3);
+        assertThat(aggregator.droppedMessageCount()).isZero();
+    }
+
+    @Test
+    public void addAcceptsMessagesThatExactlyFillTheLimit() {
+        MessageAggregator aggregator = new MessageAggregator(8);
+
+        assertThat(aggregator.add("foo")).isTrue();
+        assertThat(aggregator.add("bar")).isTrue();
+
+        assertThat(aggregator.result()).isEqualTo("foo, bar");
+    }
+
+    @Test
+    public void addCountsUtf8EncodedBytes() {
+        MessageAggregator aggregator = new MessageAggregator(5);
+
+        assertThat(aggregator.add("\u20ac\u20ac")).isFalse(); // Two euro signs, each three bytes in UTF-8.
+        assertThat(aggregator.droppedMessageCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void addDropsEveryMessageAfterTheFirstThatDoesNotFit() {
+        MessageAggregator aggregator = new MessageAggregator(10);
+
+        assertThat(aggregator.add("foo")).isTrue();
+        assertThat(aggregator.add("too long to fit")).isFalse();
+        assertThat(aggregator.add("a")).isFalse();
+
+        assertThat(aggregator.retainedMessageCount()).isEqualTo(1);
+        assertThat(aggregator.droppedMessageCount()).isEqualTo(2);
+        assertThat(aggregator.result()).isEqualTo("foo ... (2 more)");
+    }
+
+    @Test
+    public void addChecksTheWholeStreamAgainstItsLimitWhenRetainingLess() {
+        MessageAggregator aggregator = new MessageAggregator(15, 8);
+
+        assertThat(aggregator.add("foo")).isTrue();
+        assertThat(aggregator.add("bar")).isTrue();
+        assertThat(aggregator.add("baz")).isTrue();
+        assertThat(aggregator.add("qux")).isFalse();
+
+        assertThat(aggregator.retainedMessageCount()).isEqualTo(2);
+        assertThat(aggregator.droppedMessageCount()).isEqualTo(2);
+        assertThat(aggregator.result()).isEqualTo("foo, bar ... (2 more)");
+    }
+
+    @Test
+    public void addRetainsBoundedStateForLongStreams() {
+        MessageAggregator aggregator = new MessageAggregator(1024);
+
+        for (int i = 0; i < 1_000_000; i++) {
+            aggregator.add("message");
+        }
+
+        assertThat(aggregator.result().length()).isLessThan(1100);
+        assertThat(aggregator.retainedMessageCount() + aggregator.droppedMessageCount()).isEqualTo(1_000_000);
+    }
+}
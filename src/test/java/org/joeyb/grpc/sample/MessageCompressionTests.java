@@ -0,0 +1,112 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.base.Strings;
+
+import io.grpc.Codec;
+import io.grpc.Decompressor;
+import io.grpc.DecompressorRegistry;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MessageCompressionTests {
+
+    private static final int THRESHOLD_BYTES = 256;
+
+    private final AtomicInteger clientDecompressions = new AtomicInteger();
+    private final AtomicInteger serverDecompressions = new AtomicInteger();
+
+    private ManagedChannel channel;
+    private Server server;
+    private TestServiceGrpc.TestServiceBlockingStub stub;
+
+    @Before
+    public void setUpGrpcServer() throws IOException {
+        // Compression only happens on a real transport, the in-process transport passes messages through as-is.
+        server = NettyServerBuilder.forPort(0)
+                .compressorRegistry(MessageCompression.compressorRegistry())
+                .decompressorRegistry(newCountingDecompressorRegistry(serverDecompressions))
+                .addService(ServerInterceptors.intercept(
+                        new TestServiceImpl(10),
+                        new CompressionServerInterceptor(MessageCompression.GZIP, THRESHOLD_BYTES)))
+                .build()
+                .start();
+
+        channel = NettyChannelBuilder.forAddress("localhost", server.getPort())
+                .negotiationType(NegotiationType.PLAINTEXT)
+                .compressorRegistry(MessageCompression.compressorRegistry())
+                .decompressorRegistry(newCountingDecompressorRegistry(clientDecompressions))
+                .intercept(new CompressionClientInterceptor(MessageCompression.GZIP, THRESHOLD_BYTES))
+                .build();
+
+        stub = TestServiceGrpc.newBlockingStub(channel);
+    }
+
+    @After
+    public void tearDownGrpcServer() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void messagesAtThresholdAreCompressed() {
+        TestRequest request = TestRequest.newBuilder().setMessage(Strings.repeat("x", THRESHOLD_BYTES)).build();
+
+        assertThat(stub.unary(request).getMessage()).isEqualTo("Received " + request.getMessage());
+        assertThat(serverDecompressions.get()).isEqualTo(1);
+        assertThat(clientDecompressions.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void messagesBelowThresholdAreNotCompressed() {
+        TestRequest request = TestRequest.newBuilder().setMessage(Strings.repeat("x", THRESHOLD_BYTES / 2)).build();
+
+        assertThat(stub.unary(request).getMessage()).isEqualTo("Received " + request.getMessage());
+        assertThat(serverDecompressions.get()).isZero();
+        assertThat(clientDecompressions.get()).isZero();
+    }
+
+    @Test
+    public void thresholdAppliesPerMessage() {
+        // The request is too small to be compressed, but its response is just large enough.
+        TestRequest request = TestRequest.newBuilder()
+                .setMessage(Strings.repeat("x", THRESHOLD_BYTES - "Received ".length()))
+                .build();
+
+        assertThat(request.getSerializedSize()).isLessThan(THRESHOLD_BYTES);
+        assertThat(stub.unary(request).getSerializedSize()).isGreaterThanOrEqualTo(THRESHOLD_BYTES);
+        assertThat(serverDecompressions.get()).isZero();
+        assertThat(clientDecompressions.get()).isEqualTo(1);
+    }
+
+    private static DecompressorRegistry newCountingDecompressorRegistry(AtomicInteger decompressions) {
+        Codec gzip = MessageCompression.GZIP.codec();
+
+        return MessageCompression.decompressorRegistry().with(new Decompressor() {
+            @Override
+            public String getMessageEncoding() {
+                return gzip.getMessageEncoding();
+            }
+
+            @Override
+            public InputStream decompress(InputStream is) throws IOException {
+                decompressions.incrementAndGet();
+                return gzip.decompress(is);
+            }
+        }, true);
+    }
+}
@@ -0,0 +1,128 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+import io.grpc.ServerInterceptors;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcServerRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class MetricsServerInterceptorTests {
+
+    @Rule
+    public final GrpcServerRule grpcServerRule = new GrpcServerRule();
+
+    private final ServerMetrics metrics = new ServerMetrics();
+
+    private TestServiceGrpc.TestServiceBlockingStub stub;
+    private StatsGrpc.StatsBlockingStub statsStub;
+
+    @Before
+    public void setUpGrpcServer() {
+        grpcServerRule.getServiceRegistry().addService(
+                ServerInterceptors.intercept(new TestServiceImpl(10), new MetricsServerInterceptor(metrics)));
+        grpcServerRule.getServiceRegistry().addService(new StatsServiceImpl(metrics));
+
+        stub = TestServiceGrpc.newBlockingStub(grpcServerRule.getChannel());
+        statsStub = StatsGrpc.newBlockingStub(grpcServerRule.getChannel());
+    }
+
+    @Test
+    public void serverStreamingRecordsMessageCountsAndBytes() {
+        final int responseCount = ThreadLocalRandom.current().nextInt(10, 20);
+
+        TestRequest request = TestRequest.newBuilder()
+                .setMessage(UUID.randomUUID().toString())
+                .setResponseCount(responseCount)
+                .build();
+
+        Iterator<TestResponse> responses = stub.serverStreaming(request);
+
+        int responseBytes = 0;
+
+        while (responses.hasNext()) {
+            responseBytes += responses.next().getSerializedSize();
+        }
+
+        MethodStats stats = getMethodStats(TestServiceGrpc.METHOD_SERVER_STREAMING.getFullMethodName());
+
+        assertThat(stats.getMessagesReceived()).isEqualTo(1);
+        assertThat(stats.getBytesReceived()).isEqualTo(request.getSerializedSize());
+        assertThat(stats.getMessagesSent()).isEqualTo(responseCount);
+        assertThat(stats.getBytesSent()).isEqualTo(responseBytes);
+    }
+
+    @Test
+    public void unaryRecordsCallsByStatusAndLatency() {
+        final int callCount = ThreadLocalRandom.current().nextInt(10, 20);
+
+        TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+
+        for (int i = 0; i < callCount; i++) {
+            stub.unary(request);
+        }
+
+        MethodStats stats = getMethodStats(TestServiceGrpc.METHOD_UNARY.getFullMethodName());
+
+        assertThat(stats.getCallsByStatusMap()).containsOnlyKeys("OK");
+        assertThat(stats.getCallsByStatusMap().get("OK")).isEqualTo(callCount);
+        assertThat(stats.getInFlightCalls()).isZero();
+        assertThat(stats.getLatency().getCount()).isEqualTo(callCount);
+        assertThat(stats.getLatency().getMax()).isGreaterThanOrEqualTo(stats.getLatency().getP50());
+    }
+
+    @Test
+    public void unaryErrorRecordsErrorStatus() {
+        TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+
+        assertThatThrownBy(() -> stub.unaryError(request)).isInstanceOf(StatusRuntimeException.class);
+
+        MethodStats stats = getMethodStats(TestServiceGrpc.METHOD_UNARY_ERROR.getFullMethodName());
+
+        assertThat(stats.getCallsByStatusMap()).containsOnlyKeys("UNKNOWN");
+        assertThat(stats.getInFlightCalls()).isZero();
+        assertThat(stats.getMessagesSent()).isZero();
+    }
+
+    @Test
+    public void unaryWhoseHandlerThrowsRecordsUnknownStatus() throws InterruptedException {
+        grpcServerRule.getServiceRegistry().addService(ServerInterceptors.intercept(new TestServiceImpl(10) {
+            @Override
+            public void unary(TestRequest request, StreamObserver<TestResponse> responseObserver) {
+                throw new IllegalStateException("Handler failed for " + request.getMessage());
+            }
+        }, new MetricsServerInterceptor(metrics)));
+
+        TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+
+        assertThatThrownBy(() -> stub.unary(request)).isInstanceOf(StatusRuntimeException.class);
+
+        // The server finishes the call just after the client sees its status.
+        MethodStats stats = getMethodStats(TestServiceGrpc.METHOD_UNARY.getFullMethodName());
+
+        for (int i = 0; i < 100 && stats.getInFlightCalls() > 0; i++) {
+            Thread.sleep(10);
+            stats = getMethodStats(TestServiceGrpc.METHOD_UNARY.getFullMethodName());
+        }
+
+        assertThat(stats.getInFlightCalls()).isZero();
+        assertThat(stats.getCallsByStatusMap()).containsOnly(entry("UNKNOWN", 1L));
+    }
+
+    private MethodStats getMethodStats(String fullMethodName) {
+        return statsStub.getStats(GetStatsRequest.getDefaultInstance()).getMethodsList().stream()
+                .filter(m -> m.getFullMethodName().equals(fullMethodName))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No stats for " + fullMethodName));
+    }
+}
@@ -0,0 +1,173 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.base.Strings;
+import com.google.protobuf.ByteString;
+
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcServerRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class PreEncodedResponsesTests {
+
+    @Rule
+    public final GrpcServerRule grpcServerRule = new GrpcServerRule().directExecutor();
+
+    private TestServiceGrpc.TestServiceStub asyncStub;
+    private TestServiceGrpc.TestServiceBlockingStub stub;
+
+    @Before
+    public void setUpGrpcServer() {
+        grpcServerRule.getServiceRegistry().addService(PreEncodedResponses.bindService(new TestServiceImpl(10)));
+
+        asyncStub = TestServiceGrpc.newStub(grpcServerRule.getChannel());
+        stub = TestServiceGrpc.newBlockingStub(grpcServerRule.getChannel());
+    }
+
+    @Test
+    public void encodeResponseMatchesProtobufEncoding() {
+        // Covers single and multi-byte length prefixes, and a message with non-ASCII characters.
+        for (String message : new String[] { "", "abc", Strings.repeat("x", 200), "\u20ac" }) { // Euro sign
+            TestRequest request = TestRequest.newBuilder().setMessage(message).build();
+
+            assertThat(PreEncodedResponses.encodeResponse(request.getMessageBytes()))
+                    .isEqualTo(TestServiceImpl.createResponse(request).toByteString());
+        }
+    }
+
+    @Test
+    public void requestMarshallerParsesAllFields() throws Exception {
+        TestRequest request = TestRequest.newBuilder()
+                .setMessage(UUID.randomUUID().toString())
+                .setResponseCount(ThreadLocalRandom.current().nextInt(1, 100))
+                .setResponsePayloadSize(ThreadLocalRandom.current().nextInt(1, 100))
+                .setPayload(ByteString.copyFromUtf8(UUID.randomUUID().toString()))
+                .setWorkload(Workload.newBuilder().setCpuMicros(ThreadLocalRandom.current().nextInt(1, 100)))
+                .build();
+
+        assertThat(PreEncodedResponses.REQUEST_MARSHALLER.parse(request.toByteString().newInput()))
+                .isEqualTo(request);
+    }
+
+    @Test
+    public void requestMarshallerParsesRequestsLargerThanTheDefaultSizeLimit() {
+        // CodedInputStream stops at 64 MiB by default, the transport's max inbound message size is the actual limit.
+        ByteString large = ByteString.copyFrom(new byte[64 * 1024 * 1024 + 1]);
+
+        TestRequest parsed = PreEncodedResponses.REQUEST_MARSHALLER
+                .parse(TestRequest.newBuilder().setMessageBytes(large).build().toByteString().newInput());
+
+        assertThat(parsed.getMessageBytes().size()).isEqualTo(large.size());
+
+        parsed = PreEncodedResponses.REQUEST_MARSHALLER
+                .parse(TestRequest.newBuilder().setPayload(large).build().toByteString().newInput());
+
+        assertThat(parsed.getPayload().size()).isEqualTo(large.size());
+    }
+
+    @Test
+    public void unary() {
+        TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+
+        assertThat(stub.unary(request)).isEqualTo(TestServiceImpl.createResponse(request));
+    }
+
+    @Test
+    public void serializedUnaryPassesPreEncodedResponseThrough() throws Exception {
+        TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+        ByteString response = PreEncodedResponses.encodeResponse(request.getMessageBytes());
+        CompletableFuture<ByteString> sentResponse = new CompletableFuture<>();
+
+        SerializedUnaryMethod.preEncoded((r, observer) -> {
+            assertThat(r).isEqualTo(request);
+
+            observer.onNext(response);
+            observer.onCompleted();
+        }).invoke(request.toByteString(), new StreamObserver<ByteString>() {
+            @Override
+            public void onNext(ByteString value) {
+                sentResponse.complete(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                sentResponse.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+
+        // The response is not parsed and serialized again on its way to the cache or the transport.
+        assertThat(sentResponse.get(5, TimeUnit.SECONDS)).isSameAs(response);
+    }
+
+    @Test
+    public void biDirectionalStreaming() throws Exception {
+        final int requestCount = ThreadLocalRandom.current().nextInt(10, 20);
+
+        List<TestResponse> responses = new ArrayList<>();
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+
+        StreamObserver<TestRequest> requestObserver = asyncStub.biDirectionalStreaming(
+                new StreamObserver<TestResponse>() {
+                    @Override
+                    public void onNext(TestResponse value) {
+                        responses.add(value);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        completed.completeExceptionally(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        completed.complete(null);
+                    }
+                });
+
+        List<TestResponse> expectedResponses = new ArrayList<>();
+
+        for (int i = 0; i < requestCount; i++) {
+            TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+
+            requestObserver.onNext(request);
+            expectedResponses.add(TestServiceImpl.createResponse(request));
+        }
+
+        requestObserver.onCompleted();
+        completed.get(5, TimeUnit.SECONDS);
+
+        assertThat(responses).isEqualTo(expectedResponses);
+    }
+
+    @Test
+    public void otherMethodsAreUnchanged() {
+        TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+
+        Iterator<TestResponse> responses = stub.serverStreaming(request);
+
+        int responseCount = 0;
+
+        while (responses.hasNext()) {
+            assertThat(responses.next().getMessage()).isEqualTo("Received " + request.getMessage());
+            responseCount++;
+        }
+
+        assertThat(responseCount).isEqualTo(10);
+    }
+}
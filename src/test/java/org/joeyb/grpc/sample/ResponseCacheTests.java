@@ -0,0 +1,140 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import com.google.common.base.Strings;
+import com.google.protobuf.ByteString;
+
+import io.grpc.Status;
+import io.grpc.testing.GrpcServerRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResponseCacheTests {
+
+    @Rule
+    public final GrpcServerRule grpcServerRule = new GrpcServerRule();
+
+    @Test
+    public void cachedResponsesAreReturned() {
+        ResponseCache cache = new ResponseCache(100, 1024 * 1024);
+        ByteString request = ByteString.copyFromUtf8(UUID.randomUUID().toString());
+        ByteString response = ByteString.copyFromUtf8(UUID.randomUUID().toString());
+
+        assertThat(cache.get(request)).isNull();
+
+        cache.put(request, response);
+
+        assertThat(cache.get(request)).isEqualTo(response);
+        assertThat(cache.stats()).isEqualTo(ResponseCacheStats.newBuilder()
+                .setHits(1)
+                .setMisses(1)
+                .setEntries(1)
+                .setBytes(request.size() + response.size())
+                .build());
+    }
+
+    @Test
+    public void entryLimitEvictsLeastRecentlyUsed() {
+        final int entryCount = ThreadLocalRandom.current().nextInt(100, 200);
+
+        // Every segment holds at most one entry.
+        ResponseCache cache = new ResponseCache(ResponseCache.SEGMENT_COUNT, 1024 * 1024);
+
+        for (int i = 0; i < entryCount; i++) {
+            cache.put(ByteString.copyFromUtf8("request " + i), ByteString.copyFromUtf8("response " + i));
+        }
+
+        ResponseCacheStats stats = cache.stats();
+
+        assertThat(stats.getEntries()).isLessThanOrEqualTo(ResponseCache.SEGMENT_COUNT);
+        assertThat(stats.getEvictions()).isEqualTo(entryCount - stats.getEntries());
+
+        // The last entry is the most recently used one of its segment, so it was kept.
+        assertThat(cache.get(ByteString.copyFromUtf8("request " + (entryCount - 1))))
+                .isEqualTo(ByteString.copyFromUtf8("response " + (entryCount - 1)));
+    }
+
+    @Test
+    public void byteLimitEvictsEntriesAndSkipsOversizedOnes() {
+        final int segmentBytes = 100;
+
+        ResponseCache cache = new ResponseCache(1000, ResponseCache.SEGMENT_COUNT * segmentBytes);
+
+        ByteString request = ByteString.copyFromUtf8("request");
+        ByteString oversizedResponse = ByteString.copyFromUtf8(Strings.repeat("x", segmentBytes));
+
+        cache.put(request, oversizedResponse);
+
+        assertThat(cache.get(request)).isNull();
+        assertThat(cache.stats().getEntries()).isZero();
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(ByteString.copyFromUtf8("request " + i), ByteString.copyFromUtf8(Strings.repeat("x", 40)));
+        }
+
+        ResponseCacheStats stats = cache.stats();
+
+        assertThat(stats.getBytes()).isLessThanOrEqualTo(ResponseCache.SEGMENT_COUNT * segmentBytes);
+        assertThat(stats.getEvictions()).isEqualTo(1000 - stats.getEntries());
+    }
+
+    @Test
+    public void unaryIsServedFromCache() {
+        TestServiceImpl service = new TestServiceImpl(10);
+        ResponseCache cache = new ResponseCache(100, 1024 * 1024);
+
+        grpcServerRule.getServiceRegistry().addService(ServiceDefinitions.replaceMethods(
+                service.bindService(),
+                new CachingUnaryMethod(cache, SerializedUnaryMethod.parsing(service::unary))
+                        .bind(TestServiceGrpc.METHOD_UNARY)));
+
+        TestServiceGrpc.TestServiceBlockingStub stub = TestServiceGrpc.newBlockingStub(grpcServerRule.getChannel());
+        TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+
+        assertThat(stub.unary(request)).isEqualTo(TestServiceImpl.createResponse(request));
+        assertThat(stub.unary(request)).isEqualTo(TestServiceImpl.createResponse(request));
+
+        assertThat(cache.stats().getHits()).isEqualTo(1);
+        assertThat(cache.stats().getMisses()).isEqualTo(1);
+        assertThat(cache.get(request.toByteString())).isEqualTo(TestServiceImpl.createResponse(request).toByteString());
+    }
+
+    @Test
+    public void failedResponsesAreNotCached() {
+        ResponseCache cache = new ResponseCache(100, 1024 * 1024);
+        AtomicInteger invocations = new AtomicInteger();
+        TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+
+        // The first invocation fails, and every later one succeeds.
+        SerializedUnaryMethod method = new CachingUnaryMethod(cache, (r, responseObserver) -> {
+            if (invocations.getAndIncrement() == 0) {
+                responseObserver.onError(Status.UNAVAILABLE.asRuntimeException());
+            } else {
+                responseObserver.onNext(TestServiceImpl.createResponse(request).toByteString());
+                responseObserver.onCompleted();
+            }
+        });
+
+        grpcServerRule.getServiceRegistry().addService(ServiceDefinitions.replaceMethods(
+                new TestServiceImpl(10).bindService(),
+                method.bind(TestServiceGrpc.METHOD_UNARY)));
+
+        TestServiceGrpc.TestServiceBlockingStub stub = TestServiceGrpc.newBlockingStub(grpcServerRule.getChannel());
+
+        assertThat(Status.fromThrowable(catchThrowable(() -> stub.unary(request))).getCode())
+                .isEqualTo(Status.Code.UNAVAILABLE);
+        assertThat(cache.stats().getEntries()).isZero();
+
+        assertThat(stub.unary(request)).isEqualTo(TestServiceImpl.createResponse(request));
+        assertThat(stub.unary(request)).isEqualTo(TestServiceImpl.createResponse(request));
+
+        assertThat(invocations.get()).isEqualTo(2);
+    }
+}
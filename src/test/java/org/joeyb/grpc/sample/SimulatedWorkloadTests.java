@@ -0,0 +1,232 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.within;
+
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcServerRule;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class SimulatedWorkloadTests {
+
+    @Rule
+    public final GrpcServerRule grpcServerRule = new GrpcServerRule();
+
+    private final ExecutorService workExecutor = ServerApplication.newWorkExecutor(4, 100);
+
+    @After
+    public void tearDown() {
+        workExecutor.shutdownNow();
+    }
+
+    @Test
+    public void cpuWorkTakesAtLeastTheGivenCpuTime() {
+        ThreadMXBean threadMxBean = ManagementFactory.getThreadMXBean();
+        SimulatedWorkload workload = SimulatedWorkload.of(Workload.newBuilder().setCpuMicros(20_000).build());
+
+        long startNanos = threadMxBean.getCurrentThreadCpuTime();
+
+        workload.run();
+
+        assertThat(threadMxBean.getCurrentThreadCpuTime() - startNanos).isGreaterThanOrEqualTo(20_000_000);
+    }
+
+    @Test
+    public void ioLatencyIsDrawnWithTheGivenMean() {
+        Random random = new Random(42);
+
+        for (LatencyDistribution distribution : new LatencyDistribution[] {
+                LatencyDistribution.CONSTANT, LatencyDistribution.UNIFORM, LatencyDistribution.EXPONENTIAL}) {
+            SimulatedWorkload workload = SimulatedWorkload.of(Workload.newBuilder()
+                                                                      .setIoLatencyMicros(1000)
+                                                                      .setIoLatencyDistribution(distribution)
+                                                                      .build());
+
+            double meanNanos = IntStream.range(0, 100_000)
+                    .mapToLong(i -> workload.nextIoLatencyNanos(random))
+                    .average()
+                    .getAsDouble();
+
+            assertThat(meanNanos).as(distribution.name()).isCloseTo(1_000_000, within(20_000.0));
+        }
+    }
+
+    @Test
+    public void requestWorkloadOverridesServerWorkload() throws Exception {
+        // The server's workload would block for longer than the test waits for the response.
+        addService(TestServiceImpl.newBuilder()
+                           .workload(RpcMethod.UNARY, Workload.newBuilder().setIoLatencyMicros(60_000_000).build()));
+
+        TestRequest request = TestRequest.newBuilder()
+                .setMessage("quick")
+                .setWorkload(Workload.getDefaultInstance())
+                .build();
+
+        assertThat(unary(request).get(5, TimeUnit.SECONDS)).isEqualTo(TestServiceImpl.createResponse(request));
+    }
+
+    @Test
+    public void invalidWorkloadFailsCallWithInvalidArgument() {
+        addService(TestServiceImpl.newBuilder());
+
+        TestRequest request = TestRequest.newBuilder()
+                .setWorkload(Workload.newBuilder().setCpuMicros(-1).build())
+                .build();
+
+        Throwable t = catchThrowable(() -> unary(request).get(5, TimeUnit.SECONDS));
+
+        assertThat(Status.fromThrowable(t).getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+    }
+
+    @Test
+    public void offloadedWorkRunsOnWorkExecutor() throws Exception {
+        List<String> workThreads = new ArrayList<>();
+
+        addService(TestServiceImpl.newBuilder().workExecutor(command -> workExecutor.execute(() -> {
+            synchronized (workThreads) {
+                workThreads.add(Thread.currentThread().getName());
+            }
+
+            command.run();
+        })));
+
+        TestRequest request = TestRequest.newBuilder()
+                .setMessage("offloaded")
+                .setWorkload(Workload.newBuilder().setCpuMicros(100).setIoLatencyMicros(1000).build())
+                .build();
+
+        assertThat(unary(request).get(5, TimeUnit.SECONDS)).isEqualTo(TestServiceImpl.createResponse(request));
+        assertThat(serverStreaming(request.toBuilder().setResponseCount(3).build()).get(5, TimeUnit.SECONDS))
+                .hasSize(3);
+
+        synchronized (workThreads) {
+            assertThat(workThreads).hasSize(2).allMatch(name -> name.startsWith("work-"));
+        }
+    }
+
+    @Test
+    public void rejectedWorkFailsCallWithResourceExhausted() {
+        addService(TestServiceImpl.newBuilder().workExecutor(command -> {
+            throw new RejectedExecutionException();
+        }));
+
+        TestRequest request = TestRequest.newBuilder()
+                .setWorkload(Workload.newBuilder().setCpuMicros(100).build())
+                .build();
+
+        Throwable t = catchThrowable(() -> unary(request).get(5, TimeUnit.SECONDS));
+
+        assertThat(Status.fromThrowable(t).getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED);
+    }
+
+    @Test
+    public void offloadedWorkOfCancelledCallIsSkippedAndFailsItWithCancelled() throws Exception {
+        Queue<Runnable> queuedWork = new ConcurrentLinkedQueue<>();
+        TestServiceImpl service = TestServiceImpl.newBuilder().workExecutor(queuedWork::add).build();
+        TestRequest request = TestRequest.newBuilder()
+                .setWorkload(Workload.newBuilder().setCpuMicros(60_000_000).build())
+                .build();
+        CompletableFuture<List<TestResponse>> responses = new CompletableFuture<>();
+        Context.CancellableContext context = Context.current().withCancellation();
+
+        context.run(() -> service.unary(request, collect(responses)));
+        context.cancel(null);
+
+        assertThat(queuedWork).hasSize(1);
+
+        // The work would take a minute if it were not skipped.
+        queuedWork.poll().run();
+
+        Throwable t = catchThrowable(() -> responses.get(5, TimeUnit.SECONDS));
+
+        assertThat(Status.fromThrowable(t).getCode()).isEqualTo(Status.Code.CANCELLED);
+    }
+
+    @Test
+    public void offloadedBiDirectionalStreamingKeepsRequestOrder() throws Exception {
+        addService(TestServiceImpl.newBuilder().workExecutor(workExecutor));
+
+        // Uniform latencies make later requests regularly finish their work before earlier ones would have.
+        List<TestRequest> requests = IntStream.range(0, 50)
+                .mapToObj(i -> TestRequest.newBuilder()
+                        .setMessage(Integer.toString(i))
+                        .setWorkload(Workload.newBuilder()
+                                             .setIoLatencyMicros(500)
+                                             .setIoLatencyDistribution(LatencyDistribution.UNIFORM))
+                        .build())
+                .collect(Collectors.toList());
+
+        CompletableFuture<List<TestResponse>> responses = new CompletableFuture<>();
+        StreamObserver<TestRequest> requestObserver =
+                TestServiceGrpc.newStub(grpcServerRule.getChannel()).biDirectionalStreaming(collect(responses));
+
+        requests.forEach(requestObserver::onNext);
+        requestObserver.onCompleted();
+
+        assertThat(responses.get(5, TimeUnit.SECONDS))
+                .containsExactlyElementsOf(requests.stream()
+                                                   .map(TestServiceImpl::createResponse)
+                                                   .collect(Collectors.toList()));
+    }
+
+    private void addService(TestServiceImpl.Builder builder) {
+        grpcServerRule.getServiceRegistry().addService(builder.build());
+    }
+
+    private CompletableFuture<List<TestResponse>> serverStreaming(TestRequest request) {
+        CompletableFuture<List<TestResponse>> responses = new CompletableFuture<>();
+
+        TestServiceGrpc.newStub(grpcServerRule.getChannel()).serverStreaming(request, collect(responses));
+
+        return responses;
+    }
+
+    private CompletableFuture<TestResponse> unary(TestRequest request) {
+        CompletableFuture<List<TestResponse>> responses = new CompletableFuture<>();
+
+        TestServiceGrpc.newStub(grpcServerRule.getChannel()).unary(request, collect(responses));
+
+        return responses.thenApply(r -> r.get(0));
+    }
+
+    private static StreamObserver<TestResponse> collect(CompletableFuture<List<TestResponse>> future) {
+        List<TestResponse> responses = new ArrayList<>();
+
+        return new StreamObserver<TestResponse>() {
+            @Override
+            public void onNext(TestResponse value) {
+                responses.add(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                future.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                future.complete(responses);
+            }
+        };
+    }
+}
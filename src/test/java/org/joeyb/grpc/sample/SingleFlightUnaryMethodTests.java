@@ -0,0 +1,232 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.testing.GrpcServerRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class SingleFlightUnaryMethodTests {
+
+    @Rule
+    public final GrpcServerRule grpcServerRule = new GrpcServerRule();
+
+    private final Semaphore arrivedCalls = new Semaphore(0);
+    private final Queue<Runnable> deferredCalls = new ConcurrentLinkedQueue<>();
+
+    private SingleFlightUnaryMethod unary;
+    private SingleFlightUnaryMethod unaryError;
+    private TestServiceGrpc.TestServiceFutureStub stub;
+
+    @Before
+    public void setUp() {
+        TestServiceImpl service = new TestServiceImpl(10);
+
+        unary = new SingleFlightUnaryMethod(deferred(SerializedUnaryMethod.parsing(service::unary)));
+        unaryError = new SingleFlightUnaryMethod(deferred(SerializedUnaryMethod.parsing(service::unaryError)));
+
+        grpcServerRule.getServiceRegistry().addService(ServiceDefinitions.replaceMethods(
+                service.bindService(),
+                counted(unary).bind(TestServiceGrpc.METHOD_UNARY),
+                counted(unaryError).bind(TestServiceGrpc.METHOD_UNARY_ERROR)));
+
+        stub = TestServiceGrpc.newFutureStub(grpcServerRule.getChannel());
+    }
+
+    @Test
+    public void identicalConcurrentCallsShareOneInvocation() throws Exception {
+        TestRequest request = newRequest();
+        TestRequest otherRequest = newRequest();
+
+        List<ListenableFuture<TestResponse>> responses = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            responses.add(stub.unary(request));
+        }
+
+        final ListenableFuture<TestResponse> otherResponse = stub.unary(otherRequest);
+
+        awaitArrivedCalls(4);
+
+        assertThat(deferredCalls).hasSize(2);
+        assertThat(unary.flightCount()).isEqualTo(2);
+
+        runDeferredCalls();
+
+        for (ListenableFuture<TestResponse> response : responses) {
+            assertThat(response.get(5, TimeUnit.SECONDS)).isEqualTo(TestServiceImpl.createResponse(request));
+        }
+
+        assertThat(otherResponse.get(5, TimeUnit.SECONDS)).isEqualTo(TestServiceImpl.createResponse(otherRequest));
+        assertThat(unary.flightCount()).isZero();
+
+        // The flight has landed, so the next call starts a new one.
+        stub.unary(request);
+
+        awaitArrivedCalls(1);
+
+        assertThat(deferredCalls).hasSize(1);
+
+        runDeferredCalls();
+    }
+
+    @Test
+    public void errorsFanOutToEveryCall() throws Exception {
+        TestRequest request = newRequest();
+
+        final ListenableFuture<TestResponse> first = stub.unaryError(request);
+        final ListenableFuture<TestResponse> second = stub.unaryError(request);
+
+        awaitArrivedCalls(2);
+
+        assertThat(deferredCalls).hasSize(1);
+
+        runDeferredCalls();
+
+        for (ListenableFuture<TestResponse> response : Arrays.asList(first, second)) {
+            Throwable thrown = catchThrowable(() -> response.get(5, TimeUnit.SECONDS));
+
+            assertThat(thrown).isInstanceOf(ExecutionException.class);
+
+            Status status = Status.fromThrowable(thrown.getCause());
+
+            assertThat(status.getCode()).isEqualTo(Status.Code.UNKNOWN);
+            assertThat(status.getDescription()).isEqualTo("Error for " + request.getMessage());
+        }
+
+        assertThat(unaryError.flightCount()).isZero();
+    }
+
+    @Test
+    public void cancellingOneCallDoesNotCancelTheSharedWork() throws Exception {
+        TestRequest request = newRequest();
+
+        ListenableFuture<TestResponse> cancelled = stub.unary(request);
+        final ListenableFuture<TestResponse> remaining = stub.unary(request);
+
+        awaitArrivedCalls(2);
+
+        assertThat(deferredCalls).hasSize(1);
+
+        cancelled.cancel(true);
+
+        runDeferredCalls();
+
+        assertThat(remaining.get(5, TimeUnit.SECONDS)).isEqualTo(TestServiceImpl.createResponse(request));
+        assertThat(cancelled.isCancelled()).isTrue();
+        assertThat(unary.flightCount()).isZero();
+    }
+
+    @Test
+    public void cancellingTheFirstCallDoesNotStrandOffloadedWork() throws Exception {
+        Queue<Runnable> queuedWork = new ConcurrentLinkedQueue<>();
+        TestServiceImpl service = TestServiceImpl.newBuilder()
+                .workExecutor(queuedWork::add)
+                .workload(RpcMethod.UNARY, Workload.newBuilder().setCpuMicros(1).build())
+                .build();
+        SingleFlightUnaryMethod offloaded = new SingleFlightUnaryMethod(SerializedUnaryMethod.parsing(service::unary));
+        Queue<Context> callContexts = new ConcurrentLinkedQueue<>();
+
+        grpcServerRule.getServiceRegistry().addService(ServiceDefinitions.replaceMethods(
+                service.bindService(),
+                counted((request, responseObserver) -> {
+                    callContexts.add(Context.current());
+                    offloaded.invoke(request, responseObserver);
+                }).bind(TestServiceGrpc.METHOD_UNARY)));
+
+        TestRequest request = newRequest();
+
+        // The first call starts the flight, whose work waits in the queue while the call is cancelled.
+        ListenableFuture<TestResponse> cancelled = stub.unary(request);
+
+        awaitArrivedCalls(1);
+
+        CountDownLatch firstCallCancelled = new CountDownLatch(1);
+
+        callContexts.peek().addListener(context -> firstCallCancelled.countDown(), MoreExecutors.directExecutor());
+        cancelled.cancel(true);
+
+        assertThat(firstCallCancelled.await(5, TimeUnit.SECONDS)).isTrue();
+
+        final ListenableFuture<TestResponse> remaining = stub.unary(request);
+
+        awaitArrivedCalls(1);
+
+        assertThat(offloaded.flightCount()).isEqualTo(1);
+        assertThat(queuedWork).hasSize(1);
+
+        queuedWork.poll().run();
+
+        assertThat(remaining.get(5, TimeUnit.SECONDS)).isEqualTo(TestServiceImpl.createResponse(request));
+        assertThat(offloaded.flightCount()).isZero();
+    }
+
+    @Test
+    public void delegateExceptionsFanOutAsErrors() throws Exception {
+        SingleFlightUnaryMethod failing = new SingleFlightUnaryMethod((request, responseObserver) -> {
+            throw Status.UNAVAILABLE.withDescription("failed").asRuntimeException();
+        });
+
+        grpcServerRule.getServiceRegistry().addService(ServiceDefinitions.replaceMethods(
+                new TestServiceImpl(10).bindService(), failing.bind(TestServiceGrpc.METHOD_UNARY)));
+
+        Throwable thrown = catchThrowable(() -> stub.unary(newRequest()).get(5, TimeUnit.SECONDS));
+
+        assertThat(thrown.getCause()).isInstanceOf(StatusRuntimeException.class);
+        assertThat(Status.fromThrowable(thrown.getCause()).getCode()).isEqualTo(Status.Code.UNAVAILABLE);
+        assertThat(failing.flightCount()).isZero();
+    }
+
+    /**
+     * Counts the calls that have reached the given method, whether they started a flight or joined one.
+     */
+    private SerializedUnaryMethod counted(SerializedUnaryMethod method) {
+        return (request, responseObserver) -> {
+            method.invoke(request, responseObserver);
+            arrivedCalls.release();
+        };
+    }
+
+    /**
+     * Holds calls of the given method back until {@link #runDeferredCalls()}, which keeps their flights in the air.
+     */
+    private SerializedUnaryMethod deferred(SerializedUnaryMethod method) {
+        return (request, responseObserver) -> deferredCalls.add(() -> method.invoke(request, responseObserver));
+    }
+
+    private void awaitArrivedCalls(int count) throws InterruptedException {
+        assertThat(arrivedCalls.tryAcquire(count, 5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private void runDeferredCalls() {
+        Runnable call;
+
+        while ((call = deferredCalls.poll()) != null) {
+            call.run();
+        }
+    }
+
+    private static TestRequest newRequest() {
+        return TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+    }
+}
@@ -3,6 +3,7 @@ package org.joeyb.grpc.sample;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
 
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import io.grpc.testing.GrpcServerRule;
 
@@ -157,6 +158,101 @@ public class TestServiceImplTests {
         }
     }
 
+    @Test
+    public void clientStreamingExceedingAggregationLimitIsRejected() throws InterruptedException {
+        grpcServerRule.getServiceRegistry().addService(TestServiceImpl.newBuilder()
+                .aggregationOverflowPolicy(AggregationOverflowPolicy.REJECT)
+                .maxAggregatedMessageBytes(100)
+                .build());
+
+        final CountDownLatch errorLatch = new CountDownLatch(1);
+        final int requestCount = ThreadLocalRandom.current().nextInt(10, 20);
+
+        List<TestRequest> requests = IntStream.range(0, requestCount)
+                .mapToObj(i -> TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build())
+                .collect(Collectors.toList());
+
+        StreamObserver<TestRequest> requestObserver = stub.clientStreaming(
+                new StreamObserver<TestResponse>() {
+
+                    @Override
+                    public void onNext(TestResponse value) {
+                        fail("Unexpected response");
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        assertThat(Status.fromThrowable(t).getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED);
+                        errorLatch.countDown();
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        fail("Unexpected completion");
+                    }
+                });
+
+        requests.forEach(requestObserver::onNext);
+        requestObserver.onCompleted();
+
+        if (!errorLatch.await(10, TimeUnit.SECONDS)) {
+            fail("Request did not complete on time.");
+        }
+    }
+
+    @Test
+    public void clientStreamingExceedingAggregationLimitIsTruncated() throws InterruptedException {
+        grpcServerRule.getServiceRegistry().addService(TestServiceImpl.newBuilder()
+                .aggregationOverflowPolicy(AggregationOverflowPolicy.TRUNCATE)
+                .maxAggregatedMessageBytes(100)
+                .build());
+
+        final CountDownLatch completionLatch = new CountDownLatch(1);
+        final int requestCount = ThreadLocalRandom.current().nextInt(10, 20);
+
+        List<TestRequest> requests = IntStream.range(0, requestCount)
+                .mapToObj(i -> TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build())
+                .collect(Collectors.toList());
+
+        StreamObserver<TestRequest> requestObserver = stub.clientStreaming(
+                new StreamObserver<TestResponse>() {
+
+                    private int responseCount = 0;
+
+                    @Override
+                    public void onNext(TestResponse value) {
+                        assertThat(responseCount).isLessThan(1);
+
+                        // Two 36 character UUIDs and a separator fit in 100 bytes, a third does not.
+                        assertThat(value.getMessage())
+                                .contains(requests.get(0).getMessage())
+                                .contains(requests.get(1).getMessage())
+                                .doesNotContain(requests.get(2).getMessage())
+                                .endsWith("(" + (requestCount - 2) + " more)");
+
+                        responseCount++;
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        fail("Unexpected error", t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        assertThat(responseCount).isEqualTo(1);
+                        completionLatch.countDown();
+                    }
+                });
+
+        requests.forEach(requestObserver::onNext);
+        requestObserver.onCompleted();
+
+        if (!completionLatch.await(10, TimeUnit.SECONDS)) {
+            fail("Request did not complete on time.");
+        }
+    }
+
     @Test
     public void clientStreamingError() throws InterruptedException {
         final CountDownLatch errorLatch = new CountDownLatch(1);
@@ -194,6 +290,54 @@ public class TestServiceImplTests {
         }
     }
 
+    @Test
+    public void clientStreamingErrorWithFastErrorsRetainsOnlyTheStartOfTheStream() throws InterruptedException {
+        grpcServerRule.getServiceRegistry().addService(TestServiceImpl.newBuilder()
+                .errorMode(ErrorMode.FAST)
+                .build());
+
+        final CountDownLatch errorLatch = new CountDownLatch(1);
+
+        TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+
+        StreamObserver<TestRequest> requestObserver = stub.clientStreamingError(
+                new StreamObserver<TestResponse>() {
+                    @Override
+                    public void onNext(TestResponse value) {
+                        fail("Unexpected response");
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        Status status = Status.fromThrowable(t);
+
+                        assertThat(status.getCode()).isEqualTo(Status.Code.UNKNOWN);
+                        assertThat(status.getDescription())
+                                .startsWith(TestServiceImpl.ERROR_PREFIX + request.getMessage())
+                                .endsWith(" more)");
+                        assertThat(status.getDescription().length()).isLessThanOrEqualTo(
+                                TestServiceImpl.ERROR_PREFIX.length() + ErrorMode.MAX_FAST_DETAIL_LENGTH
+                                        + ErrorMode.TRUNCATION_MARKER.length());
+                        errorLatch.countDown();
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        fail("Unexpected completion");
+                    }
+                });
+
+        for (int i = 0; i < 100; i++) {
+            requestObserver.onNext(request);
+        }
+
+        requestObserver.onCompleted();
+
+        if (!errorLatch.await(10, TimeUnit.SECONDS)) {
+            fail("Request did not complete on time.");
+        }
+    }
+
     @Test
     public void serverStreaming() throws InterruptedException {
         final CountDownLatch completionLatch = new CountDownLatch(1);
@@ -262,6 +406,118 @@ public class TestServiceImplTests {
         }
     }
 
+    @Test
+    public void serverStreamingWithOversizedPayload() throws InterruptedException {
+        final CountDownLatch errorLatch = new CountDownLatch(1);
+
+        TestRequest request = TestRequest.newBuilder()
+                .setMessage(UUID.randomUUID().toString())
+                .setResponsePayloadSize(Integer.MAX_VALUE)
+                .build();
+
+        stub.serverStreaming(
+                request,
+                new StreamObserver<TestResponse>() {
+                    @Override
+                    public void onNext(TestResponse value) {
+                        fail("Unexpected response");
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        assertThat(Status.fromThrowable(t).getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+                        errorLatch.countDown();
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        fail("Unexpected completion");
+                    }
+                });
+
+        if (!errorLatch.await(10, TimeUnit.SECONDS)) {
+            fail("Request did not complete on time.");
+        }
+    }
+
+    @Test
+    public void serverStreamingWithNegativeResponseCount() throws InterruptedException {
+        final CountDownLatch errorLatch = new CountDownLatch(1);
+
+        TestRequest request = TestRequest.newBuilder()
+                .setMessage(UUID.randomUUID().toString())
+                .setResponseCount(-1)
+                .build();
+
+        stub.serverStreaming(
+                request,
+                new StreamObserver<TestResponse>() {
+                    @Override
+                    public void onNext(TestResponse value) {
+                        fail("Unexpected response");
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        assertThat(Status.fromThrowable(t).getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+                        errorLatch.countDown();
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        fail("Unexpected completion");
+                    }
+                });
+
+        if (!errorLatch.await(10, TimeUnit.SECONDS)) {
+            fail("Request did not complete on time.");
+        }
+    }
+
+    @Test
+    public void serverStreamingWithRequestedResponseCount() throws InterruptedException {
+        final CountDownLatch completionLatch = new CountDownLatch(1);
+        final int responseCount = ThreadLocalRandom.current().nextInt(50_000, 100_000);
+        final int responsePayloadSize = ThreadLocalRandom.current().nextInt(1, 100);
+
+        TestRequest request = TestRequest.newBuilder()
+                .setMessage(UUID.randomUUID().toString())
+                .setResponseCount(responseCount)
+                .setResponsePayloadSize(responsePayloadSize)
+                .build();
+
+        stub.serverStreaming(
+                request,
+                new StreamObserver<TestResponse>() {
+
+                    private int receivedCount = 0;
+
+                    @Override
+                    public void onNext(TestResponse value) {
+                        assertThat(receivedCount).isLessThan(responseCount);
+                        assertThat(value.getMessage()).contains(request.getMessage());
+                        assertThat(value.getPayload().size()).isEqualTo(responsePayloadSize);
+
+                        receivedCount++;
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        fail("Unexpected error", t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        assertThat(receivedCount).isEqualTo(responseCount);
+                        completionLatch.countDown();
+                    }
+                });
+
+        if (!completionLatch.await(10, TimeUnit.SECONDS)) {
+            fail("Request did not complete on time.");
+        }
+    }
+
     @Test
     public void unary() throws InterruptedException {
         final CountDownLatch completionLatch = new CountDownLatch(1);
@@ -299,6 +555,92 @@ public class TestServiceImplTests {
         }
     }
 
+    @Test
+    public void unaryBatch() throws InterruptedException {
+        final CountDownLatch completionLatch = new CountDownLatch(1);
+        final int requestCount = ThreadLocalRandom.current().nextInt(10, 20);
+
+        List<TestRequest> requests = IntStream.range(0, requestCount)
+                .mapToObj(i -> TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build())
+                .collect(Collectors.toList());
+
+        stub.unaryBatch(
+                TestBatchRequest.newBuilder().addAllRequests(requests).build(),
+                new StreamObserver<TestBatchResponse>() {
+
+                    private int responseCount = 0;
+
+                    @Override
+                    public void onNext(TestBatchResponse value) {
+                        assertThat(responseCount).isLessThan(1);
+                        assertThat(value.getResponsesCount()).isEqualTo(requestCount);
+
+                        for (int i = 0; i < requestCount; i++) {
+                            assertThat(value.getResponses(i).getMessage()).contains(requests.get(i).getMessage());
+                        }
+
+                        responseCount++;
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        fail("Unexpected error", t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        assertThat(responseCount).isEqualTo(1);
+                        completionLatch.countDown();
+                    }
+                });
+
+        if (!completionLatch.await(10, TimeUnit.SECONDS)) {
+            fail("Request did not complete on time.");
+        }
+    }
+
+    @Test
+    public void unaryBatchExceedingMaxBatchSize() throws InterruptedException {
+        final CountDownLatch errorLatch = new CountDownLatch(1);
+        final int maxBatchSize = ThreadLocalRandom.current().nextInt(10, 20);
+
+        grpcServerRule.getServiceRegistry().addService(TestServiceImpl.newBuilder()
+                .maxBatchSize(maxBatchSize)
+                .build());
+
+        TestRequest request = TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+        TestBatchRequest.Builder batchRequest = TestBatchRequest.newBuilder();
+
+        for (int i = 0; i <= maxBatchSize; i++) {
+            batchRequest.addRequests(request);
+        }
+
+        stub.unaryBatch(
+                batchRequest.build(),
+                new StreamObserver<TestBatchResponse>() {
+                    @Override
+                    public void onNext(TestBatchResponse value) {
+                        fail("Unexpected response");
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        assertThat(Status.fromThrowable(t).getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+                        assertThat(t.getMessage()).contains(String.valueOf(maxBatchSize));
+                        errorLatch.countDown();
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        fail("Unexpected completion");
+                    }
+                });
+
+        if (!errorLatch.await(10, TimeUnit.SECONDS)) {
+            fail("Request did not complete on time.");
+        }
+    }
+
     @Test
     public void unaryError() throws InterruptedException {
         final CountDownLatch errorLatch = new CountDownLatch(1);
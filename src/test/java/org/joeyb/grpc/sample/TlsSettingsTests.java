@@ -0,0 +1,84 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.ImmutableList;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.ReferenceCountUtil;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import javax.net.ssl.SSLEngine;
+
+public class TlsSettingsTests {
+
+    private static final String CIPHER = "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256";
+
+    @Test
+    public void configureAppliesCiphersAndSessionCache() throws Exception {
+        TlsSettings settings = new TlsSettings(TlsProvider.OPENSSL, ImmutableList.of(CIPHER), 123, 45);
+
+        SslContext sslContext = settings.configure(ServerApplication.newSslContextBuilder()).build();
+
+        SSLEngine engine = sslContext.newEngine(ByteBufAllocator.DEFAULT);
+
+        try {
+            assertThat(engine.getEnabledCipherSuites()).containsExactly(CIPHER);
+        } finally {
+            ReferenceCountUtil.release(engine);
+        }
+
+        assertThat(sslContext.sessionCacheSize()).isEqualTo(123);
+        assertThat(sslContext.sessionTimeout()).isEqualTo(45);
+    }
+
+    @Test
+    public void configureKeepsGrpcCiphersByDefault() throws Exception {
+        TlsSettings settings = new TlsSettings(TlsProvider.OPENSSL, Collections.emptyList(), 0, 0);
+
+        SslContext sslContext = settings.configure(ServerApplication.newSslContextBuilder()).build();
+
+        assertThat(sslContext.cipherSuites()).isNotEmpty();
+        assertThat(sslContext.applicationProtocolNegotiator().protocols()).contains("h2");
+    }
+
+    @Test
+    public void setTicketKeysAcceptsSeveralKeys() throws Exception {
+        SslContext sslContext = newServerContext(SslProvider.OPENSSL);
+
+        TlsSettings.setTicketKeys(sslContext, new byte[OpenSslSessionTicketKey.TICKET_KEY_SIZE * 2]);
+    }
+
+    @Test
+    public void setTicketKeysRejectsPartialKeys() throws Exception {
+        SslContext sslContext = newServerContext(SslProvider.OPENSSL);
+
+        assertThatThrownBy(() -> TlsSettings.setTicketKeys(
+                sslContext, new byte[OpenSslSessionTicketKey.TICKET_KEY_SIZE + 1]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void setTicketKeysRequiresOpenSsl() throws Exception {
+        SslContext sslContext = newServerContext(SslProvider.JDK);
+
+        assertThatThrownBy(() -> TlsSettings.setTicketKeys(
+                sslContext, new byte[OpenSslSessionTicketKey.TICKET_KEY_SIZE]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // ALPN is turned off, since the JDK provider cannot negotiate it on Java 8 without the Jetty ALPN agent.
+    private static SslContext newServerContext(SslProvider provider) throws Exception {
+        return ServerApplication.newSslContextBuilder()
+                .sslProvider(provider)
+                .applicationProtocolConfig(ApplicationProtocolConfig.DISABLED)
+                .build();
+    }
+}
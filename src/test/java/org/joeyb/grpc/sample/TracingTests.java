@@ -0,0 +1,186 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.grpc.ClientInterceptors;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcServerRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class TracingTests {
+
+    @Rule
+    public final GrpcServerRule grpcServerRule = new GrpcServerRule();
+
+    private final TraceRecorder clientRecorder = new TraceRecorder(16, 1);
+    private final TraceRecorder serverRecorder = new TraceRecorder(16, 1);
+
+    private TestServiceGrpc.TestServiceBlockingStub stub;
+    private TracingGrpc.TracingBlockingStub tracingStub;
+
+    @Before
+    public void setUpGrpcServer() {
+        grpcServerRule.getServiceRegistry().addService(ServerInterceptors.intercept(
+                new TestServiceImpl(10), new TracingServerInterceptor(serverRecorder)));
+        grpcServerRule.getServiceRegistry().addService(new TracingServiceImpl(serverRecorder));
+
+        stub = TestServiceGrpc.newBlockingStub(ClientInterceptors.intercept(
+                grpcServerRule.getChannel(), new TracingClientInterceptor(clientRecorder)));
+        tracingStub = TracingGrpc.newBlockingStub(grpcServerRule.getChannel());
+    }
+
+    @Test
+    public void sampledCallsAreTracedOnBothSides() throws InterruptedException {
+        stub.unary(newRequest());
+
+        // Phases that started within the same nanosecond can come in either order.
+        assertThat(phases(awaitTrace(clientRecorder))).containsExactlyInAnyOrder("CALL_STARTED",
+                                                                                 "MESSAGE_SENT",
+                                                                                 "MESSAGE_SERIALIZED",
+                                                                                 "HALF_CLOSED",
+                                                                                 "HEADERS_RECEIVED",
+                                                                                 "MESSAGE_RECEIVED",
+                                                                                 "CLOSED");
+
+        Trace serverTrace = awaitTrace(serverRecorder);
+
+        assertThat(serverTrace.getFullMethodName()).isEqualTo(TestServiceGrpc.METHOD_UNARY.getFullMethodName());
+        assertThat(serverTrace.getStatus()).isEqualTo(Status.Code.OK.name());
+        assertThat(serverTrace.getPhases(0).getPhase()).isEqualTo(TracePhase.CALL_STARTED.name());
+        assertThat(phases(serverTrace)).containsExactlyInAnyOrder("CALL_STARTED",
+                                                                  "MESSAGE_RECEIVED",
+                                                                  "HALF_CLOSED",
+                                                                  "MESSAGE_SENT",
+                                                                  "MESSAGE_SERIALIZED",
+                                                                  "CLOSED",
+                                                                  "HANDLER_RETURNED",
+                                                                  "COMPLETED");
+    }
+
+    @Test
+    public void failedCallsAreTracedWithTheirStatus() throws InterruptedException {
+        assertThatThrownBy(() -> stub.unaryError(newRequest())).isInstanceOf(RuntimeException.class);
+
+        assertThat(awaitTrace(serverRecorder).getStatus()).isEqualTo(Status.Code.UNKNOWN.name());
+    }
+
+    @Test
+    public void callsWhoseHandlerThrowsAreTracedAsUnknown() throws InterruptedException {
+        grpcServerRule.getServiceRegistry().addService(ServerInterceptors.intercept(new TestServiceImpl(10) {
+            @Override
+            public void unary(TestRequest request, StreamObserver<TestResponse> responseObserver) {
+                throw new IllegalStateException("Handler failure");
+            }
+        }, new TracingServerInterceptor(serverRecorder)));
+
+        assertThatThrownBy(() -> stub.unary(newRequest())).isInstanceOf(RuntimeException.class);
+
+        assertThat(awaitTrace(serverRecorder).getStatus()).isEqualTo(Status.Code.UNKNOWN.name());
+    }
+
+    @Test
+    public void callsAreNotTracedWithoutSampling() {
+        clientRecorder.setSampleRate(0);
+        serverRecorder.setSampleRate(0);
+
+        stub.unary(newRequest());
+
+        assertThat(clientRecorder.slowest(10)).isEmpty();
+        assertThat(serverRecorder.slowest(10)).isEmpty();
+    }
+
+    @Test
+    public void recorderKeepsOnlyTheMostRecentTraces() {
+        TraceRecorder recorder = new TraceRecorder(2, 1);
+
+        for (int i = 0; i < 3; i++) {
+            CallTrace trace = recorder.startTrace("method-" + i);
+
+            trace.mark(TracePhase.CALL_STARTED, 1);
+            trace.mark(TracePhase.CLOSED, 1 + i);
+            recorder.record(trace);
+        }
+
+        assertThat(recorder.slowest(10).stream().map(CallTrace::fullMethodName).collect(Collectors.toList()))
+                .containsExactly("method-2", "method-1");
+    }
+
+    @Test
+    public void sampleRateCanBeChangedThroughTheTracingService() {
+        SetSampleRateResponse response = tracingStub.setSampleRate(SetSampleRateRequest.newBuilder()
+                                                                           .setSampleRate(0.5)
+                                                                           .build());
+
+        assertThat(response.getPreviousSampleRate()).isEqualTo(1);
+        assertThat(serverRecorder.sampleRate()).isEqualTo(0.5);
+
+        assertThatThrownBy(() -> tracingStub.setSampleRate(SetSampleRateRequest.newBuilder()
+                                                                  .setSampleRate(2)
+                                                                  .build()))
+                .satisfies(t -> assertThat(Status.fromThrowable(t).getCode())
+                        .isEqualTo(Status.Code.INVALID_ARGUMENT));
+    }
+
+    @Test
+    public void queueTimingExecutorExposesWhenTheRunningTaskWasQueued() throws Exception {
+        CompletableFuture<Long> queuedNanos = new CompletableFuture<>();
+        Executor executor = new QueueTimingExecutor(Runnable::run, serverRecorder);
+        long beforeNanos = System.nanoTime();
+
+        executor.execute(() -> queuedNanos.complete(QueueTimingExecutor.currentTaskQueuedNanos()));
+
+        assertThat(queuedNanos.get(5, TimeUnit.SECONDS)).isGreaterThanOrEqualTo(beforeNanos);
+        assertThat(QueueTimingExecutor.currentTaskQueuedNanos()).isZero();
+    }
+
+    @Test
+    public void queueTimingExecutorPassesTasksThroughWithoutSampling() {
+        List<Runnable> executed = new ArrayList<>();
+        Executor executor = new QueueTimingExecutor(executed::add, serverRecorder);
+        Runnable task = () -> { };
+
+        serverRecorder.setSampleRate(0);
+        executor.execute(task);
+
+        assertThat(executed).containsExactly(task);
+    }
+
+    /**
+     * Waits for a trace to be recorded, since the server may record its trace after the client has its response.
+     */
+    private Trace awaitTrace(TraceRecorder recorder) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (recorder.slowest(1).isEmpty() && System.nanoTime() < deadlineNanos) {
+            Thread.sleep(10);
+        }
+
+        List<CallTrace> traces = recorder.slowest(1);
+
+        assertThat(traces).hasSize(1);
+
+        return traces.get(0).toProto();
+    }
+
+    private static List<String> phases(Trace trace) {
+        return trace.getPhasesList().stream().map(PhaseTiming::getPhase).collect(Collectors.toList());
+    }
+
+    private static TestRequest newRequest() {
+        return TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build();
+    }
+}
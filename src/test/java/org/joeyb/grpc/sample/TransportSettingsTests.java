@@ -0,0 +1,161 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import com.google.common.base.Strings;
+
+import io.grpc.Attributes;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerTransportFilter;
+import io.grpc.Status;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TransportSettingsTests {
+
+    private static final long MAX_CONNECTION_AGE_MILLIS = 200;
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private ManagedChannel channel;
+    private Server server;
+
+    @After
+    public void tearDownGrpcServer() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void agedConnectionsAreReplaced() throws Exception {
+        start(new ServerTransportSettings(0,
+                                          0,
+                                          0,
+                                          TimeUnit.MILLISECONDS.toNanos(MAX_CONNECTION_AGE_MILLIS),
+                                          TimeUnit.SECONDS.toNanos(5)));
+
+        TestServiceGrpc.TestServiceBlockingStub stub = TestServiceGrpc.newBlockingStub(channel);
+
+        stub.unary(newRequest("first"));
+
+        awaitConnectionAged();
+
+        assertThat(stub.unary(newRequest("second")).getMessage()).isEqualTo("Received second");
+        assertThat(connections.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void callsOnAgedConnectionsFinishWithinGracePeriod() throws Exception {
+        start(new ServerTransportSettings(0,
+                                          0,
+                                          0,
+                                          TimeUnit.MILLISECONDS.toNanos(MAX_CONNECTION_AGE_MILLIS),
+                                          TimeUnit.SECONDS.toNanos(5)));
+
+        CountDownLatch completed = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicInteger responses = new AtomicInteger();
+
+        StreamObserver<TestRequest> requestObserver = TestServiceGrpc.newStub(channel)
+                .biDirectionalStreaming(new StreamObserver<TestResponse>() {
+                    @Override
+                    public void onNext(TestResponse value) {
+                        responses.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        error.set(t);
+                        completed.countDown();
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        completed.countDown();
+                    }
+                });
+
+        requestObserver.onNext(newRequest("before"));
+
+        awaitConnectionAged();
+
+        requestObserver.onNext(newRequest("after"));
+        requestObserver.onCompleted();
+
+        assertThat(completed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(error.get()).isNull();
+        assertThat(responses.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void requestsOverMaxMessageSizeAreRejected() throws Exception {
+        start(new ServerTransportSettings(0, 1024, 0, 0, 0));
+
+        TestServiceGrpc.TestServiceBlockingStub stub = TestServiceGrpc.newBlockingStub(channel);
+
+        assertThat(stub.unary(newRequest(Strings.repeat("x", 512))).getMessage()).startsWith("Received x");
+
+        // The server resets the stream, which the client only sees as a cancellation.
+        Throwable error = catchThrowable(() -> stub.unary(newRequest(Strings.repeat("x", 2048))));
+
+        assertThat(Status.fromThrowable(error).getCode()).isEqualTo(Status.Code.CANCELLED);
+    }
+
+    @Test
+    public void responsesOverClientMaxMessageSizeAreRejected() throws Exception {
+        start(new ServerTransportSettings(0, 0, 0, 0, 0), new ClientTransportSettings(0, 1024));
+
+        TestServiceGrpc.TestServiceBlockingStub stub = TestServiceGrpc.newBlockingStub(channel);
+
+        assertThat(stub.unary(newRequest(Strings.repeat("x", 512))).getMessage()).startsWith("Received x");
+
+        Throwable error = catchThrowable(() -> stub.unary(newRequest(Strings.repeat("x", 2048))));
+
+        assertThat(Status.fromThrowable(error).getCode()).isEqualTo(Status.Code.INTERNAL);
+    }
+
+    private void start(ServerTransportSettings serverSettings) throws IOException {
+        start(serverSettings, new ClientTransportSettings(0, 0));
+    }
+
+    private void start(ServerTransportSettings serverSettings, ClientTransportSettings clientSettings)
+            throws IOException {
+        server = serverSettings.configure(NettyServerBuilder.forPort(0), null)
+                .addService(new TestServiceImpl(10))
+                .addTransportFilter(new ServerTransportFilter() {
+                    @Override
+                    public Attributes transportReady(Attributes transportAttrs) {
+                        connections.incrementAndGet();
+                        return transportAttrs;
+                    }
+                })
+                .build()
+                .start();
+
+        channel = clientSettings.configure(NettyChannelBuilder.forAddress("localhost", server.getPort()))
+                .negotiationType(NegotiationType.PLAINTEXT)
+                .build();
+    }
+
+    // Waits out the longest that the connection can live, jitter included.
+    private static void awaitConnectionAged() throws InterruptedException {
+        Thread.sleep(MAX_CONNECTION_AGE_MILLIS * 2);
+    }
+
+    private static TestRequest newRequest(String message) {
+        return TestRequest.newBuilder().setMessage(message).build();
+    }
+}
@@ -0,0 +1,185 @@
+package org.joeyb.grpc.sample;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcServerRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class UnaryBatcherTests {
+
+    private static final int MAX_SERVER_BATCH_SIZE = 100;
+
+    @Rule
+    public final GrpcServerRule grpcServerRule = new GrpcServerRule();
+
+    private final ConcurrentLinkedQueue<Integer> batchSizes = new ConcurrentLinkedQueue<>();
+
+    private ScheduledExecutorService scheduler;
+    private TestServiceGrpc.TestServiceStub stub;
+
+    @Before
+    public void setUpGrpcServer() {
+        TestServiceImpl service = TestServiceImpl.newBuilder().maxBatchSize(MAX_SERVER_BATCH_SIZE).build();
+
+        grpcServerRule.getServiceRegistry().addService(new TestServiceGrpc.TestServiceImplBase() {
+            @Override
+            public void unaryBatch(TestBatchRequest request, StreamObserver<TestBatchResponse> responseObserver) {
+                batchSizes.add(request.getRequestsCount());
+                service.unaryBatch(request, responseObserver);
+            }
+        });
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        stub = TestServiceGrpc.newStub(grpcServerRule.getChannel());
+    }
+
+    @After
+    public void tearDownScheduler() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void fullBatchesAreSentImmediately() throws Exception {
+        final int batchSize = ThreadLocalRandom.current().nextInt(10, 20);
+
+        // The window is far longer than the test, so only a full batch can be sent.
+        UnaryBatcher batcher = new UnaryBatcher(stub, batchSize, TimeUnit.HOURS.toNanos(1), scheduler);
+
+        List<TestRequest> requests = newRequests(2 * batchSize);
+        List<CompletableFuture<TestResponse>> responses = startCalls(batcher, requests);
+
+        for (int i = 0; i < requests.size(); i++) {
+            assertThat(responses.get(i).get(10, TimeUnit.SECONDS).getMessage())
+                    .isEqualTo("Received " + requests.get(i).getMessage());
+        }
+
+        assertThat(batchSizes).containsExactly(batchSize, batchSize);
+    }
+
+    @Test
+    public void partialBatchIsSentOnceWindowPasses() throws Exception {
+        final int requestCount = ThreadLocalRandom.current().nextInt(10, 20);
+
+        UnaryBatcher batcher =
+                new UnaryBatcher(stub, MAX_SERVER_BATCH_SIZE, TimeUnit.MILLISECONDS.toNanos(10), scheduler);
+
+        List<TestRequest> requests = newRequests(requestCount);
+        List<CompletableFuture<TestResponse>> responses = startCalls(batcher, requests);
+
+        for (int i = 0; i < requests.size(); i++) {
+            assertThat(responses.get(i).get(10, TimeUnit.SECONDS).getMessage())
+                    .isEqualTo("Received " + requests.get(i).getMessage());
+        }
+
+        assertThat(batchSizes).containsExactly(requestCount);
+    }
+
+    @Test
+    public void closeSendsPartialBatch() throws Exception {
+        UnaryBatcher batcher = new UnaryBatcher(stub, MAX_SERVER_BATCH_SIZE, TimeUnit.HOURS.toNanos(1), scheduler);
+
+        List<CompletableFuture<TestResponse>> responses = startCalls(batcher, newRequests(1));
+
+        batcher.close();
+
+        assertThat(responses.get(0).get(10, TimeUnit.SECONDS)).isNotNull();
+        assertThat(batchSizes).containsExactly(1);
+    }
+
+    @Test
+    public void batchErrorFailsEveryCall() throws Exception {
+        final int batchSize = MAX_SERVER_BATCH_SIZE + 1;
+
+        UnaryBatcher batcher = new UnaryBatcher(stub, batchSize, TimeUnit.HOURS.toNanos(1), scheduler);
+
+        for (CompletableFuture<TestResponse> response : startCalls(batcher, newRequests(batchSize))) {
+            try {
+                response.get(10, TimeUnit.SECONDS);
+                fail("Call completed but was expected to fail.");
+            } catch (ExecutionException e) {
+                assertThat(Status.fromThrowable(e).getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+            }
+        }
+    }
+
+    @Test
+    public void batchCompletedWithoutResponseFailsEveryCall() throws Exception {
+        grpcServerRule.getServiceRegistry().addService(new TestServiceGrpc.TestServiceImplBase() {
+            @Override
+            public void unaryBatch(TestBatchRequest request, StreamObserver<TestBatchResponse> responseObserver) {
+                responseObserver.onCompleted();
+            }
+        });
+
+        UnaryBatcher batcher = new UnaryBatcher(stub, MAX_SERVER_BATCH_SIZE, TimeUnit.HOURS.toNanos(1), scheduler);
+
+        List<CompletableFuture<TestResponse>> responses = startCalls(batcher, newRequests(2));
+
+        batcher.close();
+
+        for (CompletableFuture<TestResponse> response : responses) {
+            try {
+                response.get(10, TimeUnit.SECONDS);
+                fail("Call completed but was expected to fail.");
+            } catch (ExecutionException e) {
+                assertThat(Status.fromThrowable(e).getCode()).isEqualTo(Status.Code.INTERNAL);
+            }
+        }
+    }
+
+    private static List<TestRequest> newRequests(int count) {
+        List<TestRequest> requests = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            requests.add(TestRequest.newBuilder().setMessage(UUID.randomUUID().toString()).build());
+        }
+
+        return requests;
+    }
+
+    private static List<CompletableFuture<TestResponse>> startCalls(UnaryBatcher batcher, List<TestRequest> requests) {
+        List<CompletableFuture<TestResponse>> responses = new ArrayList<>(requests.size());
+
+        for (TestRequest request : requests) {
+            CompletableFuture<TestResponse> response = new CompletableFuture<>();
+
+            batcher.unary(request, new StreamObserver<TestResponse>() {
+                @Override
+                public void onNext(TestResponse value) {
+                    response.complete(value);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    response.completeExceptionally(t);
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+            });
+
+            responses.add(response);
+        }
+
+        return responses;
+    }
+}